@@ -8,13 +8,25 @@ package com.mortennobel.imagescaling;
 
 import java.awt.image.BufferedImage;
 import java.awt.image.DataBuffer;
+import java.lang.ref.SoftReference;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
 
 /**
  * Based on work from Java Image Util ( http://schmidt.devlib.org/jiu/ )
  *
  * Note that the filter method is not thread safe
  *
+ * Both passes are run on the common {@link ForkJoinPool} rather than on
+ * newly created threads, and are not split up at all for small images.
+ * Sub-sampling weights are cached by filter and source/destination size, and
+ * work buffers are reused by the invoking thread.
+ *
  * @author Morten Nobel-Joergensen
  * @author Heinz Doerr
  */
@@ -22,6 +34,80 @@ public class ResampleOp extends AdvancedResizeOp
 {
 	private final int MAX_CHANNEL_VALUE= 255;
 
+	/**
+	 * Minimum number of weighted samples (destination samples times
+	 * contributors) that a pass must compute per thread in order to be split
+	 * up. Below this, the overhead of handing off work to other threads
+	 * outweighs the benefit.
+	 */
+	static final int MIN_WORK_PER_THREAD = 1 << 18;
+
+	/**
+	 * Maximum number of entries in {@link #SUBSAMPLING_CACHE}.
+	 */
+	private static final int MAX_CACHED_SUBSAMPLINGS = 32;
+
+	/**
+	 * Maximum number of contributors (destination size times contributors per
+	 * destination pixel) of a {@link SubSamplingData} that will be cached.
+	 */
+	private static final int MAX_CACHED_CONTRIBUTORS = 1 << 16;
+
+	/**
+	 * Maximum size in bytes of a work buffer that will be kept around for
+	 * reuse by {@link #BUFFERS}.
+	 */
+	private static final int MAX_RETAINED_BUFFER_SIZE = 1 << 22;
+
+	private static final Map<SubSamplingKey,SubSamplingData> SUBSAMPLING_CACHE =
+			Collections.synchronizedMap(new LinkedHashMap<SubSamplingKey,SubSamplingData>(16, 0.75f, true) {
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<SubSamplingKey,SubSamplingData> eldest) {
+					return size() > MAX_CACHED_SUBSAMPLINGS;
+				}
+			});
+
+	/**
+	 * Work buffers of the current thread, which may be reclaimed by the
+	 * garbage collector when memory is tight.
+	 */
+	private static final ThreadLocal<SoftReference<WorkBuffers>> BUFFERS =
+			new ThreadLocal<>();
+
+	static final class SubSamplingKey {
+		private final ResampleFilter filter;
+		private final int srcSize;
+		private final int dstSize;
+
+		SubSamplingKey(ResampleFilter filter, int srcSize, int dstSize) {
+			this.filter = filter;
+			this.srcSize = srcSize;
+			this.dstSize = dstSize;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof SubSamplingKey)) {
+				return false;
+			}
+			SubSamplingKey other = (SubSamplingKey) obj;
+			// Filters are compared by identity, as they don't implement
+			// equals() and may be parameterized.
+			return filter == other.filter && srcSize == other.srcSize &&
+					dstSize == other.dstSize;
+		}
+
+		@Override
+		public int hashCode() {
+			return (System.identityHashCode(filter) * 31 + srcSize) * 31 + dstSize;
+		}
+	}
+
+	private static final class WorkBuffers {
+		private byte[][] workPixels = new byte[0][0];
+		private byte[] outPixels = new byte[0];
+	}
+
 	private int nrChannels;
 	private int srcWidth;
 	private int srcHeight;
@@ -117,50 +203,29 @@ public class ResampleOp extends AdvancedResizeOp
 		this.srcWidth = srcImg.getWidth();
         this.srcHeight = srcImg.getHeight();
 
-        byte[][] workPixels = new byte[srcHeight][dstWidth*nrChannels];
+		final WorkBuffers buffers = getWorkBuffers(srcHeight, dstWidth*nrChannels, dstWidth*dstHeight*nrChannels);
+		final byte[][] workPixels = buffers.workPixels;
 
         this.processedItems = 0;
 		this.totalItems = srcHeight + dstWidth;
 
 		// Pre-calculate  sub-sampling
-		horizontalSubsamplingData = createSubSampling(filter, srcWidth, dstWidth);
-		verticalSubsamplingData = createSubSampling(filter,srcHeight, dstHeight);
+		horizontalSubsamplingData = getSubSampling(filter, srcWidth, dstWidth);
+		verticalSubsamplingData = getSubSampling(filter,srcHeight, dstHeight);
 
 
         final BufferedImage scrImgCopy = srcImg;
-        final byte[][] workPixelsCopy = workPixels;
-        Thread[] threads = new Thread[numberOfThreads-1];
-        for (int i=1;i<numberOfThreads;i++){
-            final int finalI = i;
-            threads[i-1] = new Thread(new Runnable(){
-                public void run(){
-                    horizontallyFromSrcToWork(scrImgCopy, workPixelsCopy,finalI,numberOfThreads);
-                }
-            });
-            threads[i-1].start();
-        }
-        horizontallyFromSrcToWork(scrImgCopy, workPixelsCopy,0,numberOfThreads);
-        waitForAllThreads(threads);
+		final int horizontalThreads = getThreadCount(srcHeight, dstWidth, horizontalSubsamplingData);
+		runInParallel(horizontalThreads,
+				start -> horizontallyFromSrcToWork(scrImgCopy, workPixels, start, horizontalThreads));
 
-        byte[] outPixels = new byte[dstWidth*dstHeight*nrChannels];
+		final byte[] outPixels = buffers.outPixels;
         // --------------------------------------------------
 		// Apply filter to sample vertically from Work to Dst
 		// --------------------------------------------------
-        final byte[] outPixelsCopy = outPixels;
-        for (int i=1;i<numberOfThreads;i++){
-            final int finalI = i;
-            threads[i-1] = new Thread(new Runnable(){
-                public void run(){
-					verticalFromWorkToDst(workPixelsCopy, outPixelsCopy, finalI,numberOfThreads);
-                }
-            });
-            threads[i-1].start();
-        }
-        verticalFromWorkToDst(workPixelsCopy, outPixelsCopy, 0,numberOfThreads);
-        waitForAllThreads(threads);
-
-        //noinspection UnusedAssignment
-        workPixels = null; // free memory
+		final int verticalThreads = getThreadCount(dstWidth, dstHeight, verticalSubsamplingData);
+		runInParallel(verticalThreads,
+				start -> verticalFromWorkToDst(workPixels, outPixels, start, verticalThreads));
 		BufferedImage out;
 		if (dest!=null && dstWidth==dest.getWidth() && dstHeight==dest.getHeight()){
 			out = dest;
@@ -180,15 +245,80 @@ public class ResampleOp extends AdvancedResizeOp
 		return out;
     }
 
-    private void waitForAllThreads(Thread[] threads) {
+	/**
+	 * @return Number of threads, up to {@link #numberOfThreads}, to split a
+	 *         pass over the given number of rows/columns into.
+	 */
+	private int getThreadCount(int rows, int columns, SubSamplingData subSampling) {
+		final long work = (long) rows * columns * subSampling.numContributors;
+		return (int) Math.max(1, Math.min(numberOfThreads, work / MIN_WORK_PER_THREAD));
+	}
+
+	/**
+	 * Invokes the given slice of a pass with a start index of
+	 * {@literal 0..threadCount-1}, running all but the first on the common
+	 * {@link ForkJoinPool}, and waits for all of them to complete.
+	 */
+	private static void runInParallel(int threadCount, IntConsumer slice) {
+		final ForkJoinTask<?>[] tasks = new ForkJoinTask<?>[threadCount - 1];
+		for (int i = 1; i < threadCount; i++) {
+			final int start = i;
+			tasks[i - 1] = ForkJoinPool.commonPool().submit(() -> slice.accept(start));
+		}
         try {
-            for (Thread t:threads){
-                t.join(Long.MAX_VALUE);
+			slice.accept(0);
+		} finally {
+			// The slices write into shared buffers, so all of them must be
+			// done before returning, even if this one failed.
+			for (ForkJoinTask<?> task : tasks) {
+				task.join();
             }
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            throw new RuntimeException(e);
         }
+	}
+
+	/**
+	 * @return Buffers of at least the given sizes, which are reused across
+	 *         invocations by the current thread as long as they are not too
+	 *         large. They are not cleared between uses.
+	 */
+	private static WorkBuffers getWorkBuffers(int workRows, int workRowLength, int outLength) {
+		final long workSize = (long) workRows * workRowLength;
+		if (workSize > MAX_RETAINED_BUFFER_SIZE || outLength > MAX_RETAINED_BUFFER_SIZE) {
+			WorkBuffers buffers = new WorkBuffers();
+			buffers.workPixels = new byte[workRows][workRowLength];
+			buffers.outPixels = new byte[outLength];
+			return buffers;
+		}
+		final SoftReference<WorkBuffers> ref = BUFFERS.get();
+		WorkBuffers buffers = (ref != null) ? ref.get() : null;
+		if (buffers == null) {
+			buffers = new WorkBuffers();
+			BUFFERS.set(new SoftReference<>(buffers));
+		}
+		if (buffers.workPixels.length < workRows ||
+				(workRows > 0 && buffers.workPixels[0].length < workRowLength)) {
+			buffers.workPixels = new byte[workRows][workRowLength];
+		}
+		if (buffers.outPixels.length < outLength) {
+			buffers.outPixels = new byte[outLength];
+		}
+		return buffers;
+	}
+
+	/**
+	 * @return Cached sub-sampling data for the given arguments, or new data
+	 *         if none is cached.
+	 */
+	static SubSamplingData getSubSampling(ResampleFilter filter, int srcSize, int dstSize) {
+		final SubSamplingKey key = new SubSamplingKey(filter, srcSize, dstSize);
+		SubSamplingData data = SUBSAMPLING_CACHE.get(key);
+		if (data == null) {
+			data = createSubSampling(filter, srcSize, dstSize);
+			if ((long) dstSize * data.numContributors <= MAX_CACHED_CONTRIBUTORS) {
+				SUBSAMPLING_CACHE.put(key, data);
+			}
+		}
+		return data;
     }
 
     static SubSamplingData createSubSampling(ResampleFilter filter, int srcSize, int dstSize) {
@@ -300,7 +430,7 @@ public class ResampleOp extends AdvancedResizeOp
 
     private void verticalFromWorkToDst(byte[][] workPixels, byte[] outPixels, int start, int delta) {
 		if (nrChannels==1){
-			verticalFromWorkToDstGray(workPixels, outPixels, start,numberOfThreads);
+			verticalFromWorkToDstGray(workPixels, outPixels, start, delta);
 			return;
 		}
 		boolean useChannel3 = nrChannels>3;
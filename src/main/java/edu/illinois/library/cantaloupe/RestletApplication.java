@@ -227,6 +227,8 @@ public class RestletApplication extends Application {
 
         // Disable support for ranging. This will tell Restlet not to honor the
         // Range request header, as well as not to send an Accept-Ranges header.
+        // Resources that can serve ranges efficiently do so themselves; see
+        // AbstractResource.newRangeRepresentation().
         getRangeService().setEnabled(false);
     }
 
@@ -5,12 +5,17 @@ import edu.illinois.library.cantaloupe.image.Identifier;
 import edu.illinois.library.cantaloupe.image.Info;
 import edu.illinois.library.cantaloupe.operation.OperationList;
 import edu.illinois.library.cantaloupe.processor.Processor;
+import edu.illinois.library.cantaloupe.processor.imageio.ImageStructureCache;
+import edu.illinois.library.cantaloupe.resolver.ResolverMetadataCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Map;
 
 /**
  * Simplified interface to the caching architecture.
@@ -44,6 +49,40 @@ public final class CacheFacade {
         return CacheFactory.getDerivativeCache();
     }
 
+    /**
+     * @return Statistics of the derivative cache, if it records them
+     *         (currently only {@link HeapCache} and {@link TieredCache}, which
+     *         record hits, misses, and evictions, {@link JdbcCache}, which
+     *         records last-accessed time updates, and {@link
+     *         FilesystemCache}, which records the size of its index, do);
+     *         otherwise an empty map.
+     */
+    public Map<String, Long> getDerivativeCacheStatistics() {
+        DerivativeCache derivativeCache = getDerivativeCache();
+        if (derivativeCache instanceof HeapCache) {
+            return ((HeapCache) derivativeCache).getStatistics();
+        } else if (derivativeCache instanceof TieredCache) {
+            return ((TieredCache) derivativeCache).getStatistics();
+        } else if (derivativeCache instanceof JdbcCache) {
+            return ((JdbcCache) derivativeCache).getStatistics();
+        } else if (derivativeCache instanceof FilesystemCache) {
+            return ((FilesystemCache) derivativeCache).getStatistics();
+        }
+        return Collections.emptyMap();
+    }
+
+    /**
+     * @see DerivativeCache#getDerivativeImageFile(OperationList)
+     */
+    public Path getDerivativeImageFile(OperationList opList)
+            throws IOException {
+        DerivativeCache derivativeCache = getDerivativeCache();
+        if (derivativeCache != null) {
+            return derivativeCache.getDerivativeImageFile(opList);
+        }
+        return null;
+    }
+
     /**
      * Retrieves an info corresponding to the given identifier from the info
      * or derivative cache.
@@ -116,6 +155,13 @@ public final class CacheFacade {
         // Purge the info service.
         InfoService.getInstance().purgeObjectCache();
 
+        // Purge the resolver metadata cache.
+        ResolverMetadataCache.getInstance().purge();
+
+        // Purge the image structure cache, whose keys may be based on
+        // resolver metadata.
+        ImageStructureCache.getInstance().purge();
+
         // Purge the derivative cache.
         DerivativeCache derivativeCache = getDerivativeCache();
         if (derivativeCache != null) {
@@ -136,6 +182,13 @@ public final class CacheFacade {
         // Purge it from the info service.
         InfoService.getInstance().purgeObjectCache(identifier);
 
+        // Purge it from the resolver metadata cache.
+        ResolverMetadataCache.getInstance().purge(identifier);
+
+        // Purge it from the image structure cache, whose keys may be based
+        // on resolver metadata.
+        ImageStructureCache.getInstance().purge(identifier);
+
         // Purge it from the derivative cache.
         DerivativeCache derivativeCache = getDerivativeCache();
         if (derivativeCache != null) {
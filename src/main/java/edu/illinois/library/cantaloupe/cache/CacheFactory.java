@@ -29,16 +29,38 @@ public final class CacheFactory {
     private static Thread sourceCacheShutdownHook;
 
     /**
-     * @return Set of single instances of all available derivative caches.
+     * Lazy-initialized by {@link #getAllDerivativeCaches()}. Some
+     * implementations (e.g. {@link TieredCache}) allocate resources in their
+     * constructor, so these are only instantiated once.
+     */
+    private static volatile Set<DerivativeCache> allDerivativeCaches;
+
+    /**
+     * @return Unmodifiable set of single instances of all available
+     *         derivative caches. These are shared across calls and are not
+     *         {@link Cache#initialize() initialized}, so they are only good
+     *         for introspection.
      */
     public static Set<DerivativeCache> getAllDerivativeCaches() {
-        return new HashSet<>(Arrays.asList(
-                new AzureStorageCache(),
-                new FilesystemCache(),
-                new HeapCache(),
-                new JdbcCache(),
-                new RedisCache(),
-                new S3Cache()));
+        Set<DerivativeCache> caches = allDerivativeCaches;
+        if (caches == null) {
+            synchronized (CacheFactory.class) {
+                caches = allDerivativeCaches;
+                if (caches == null) {
+                    caches = Collections.unmodifiableSet(
+                            new HashSet<>(Arrays.asList(
+                                    new AzureStorageCache(),
+                                    new FilesystemCache(),
+                                    new HeapCache(),
+                                    new JdbcCache(),
+                                    new RedisCache(),
+                                    new S3Cache(),
+                                    new TieredCache())));
+                    allDerivativeCaches = caches;
+                }
+            }
+        }
+        return caches;
     }
 
     /**
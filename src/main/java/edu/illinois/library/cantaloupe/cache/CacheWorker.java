@@ -35,9 +35,12 @@ class CacheWorker implements Runnable {
             LOGGER.error(e.getMessage());
         }
 
-        // If the derivative cache is HeapCache, and its persistence is
-        // enabled, dump it.
+        // If the derivative cache is HeapCache, or TieredCache with a
+        // HeapCache L1, and its persistence is enabled, dump it.
         DerivativeCache cache = cacheFacade.getDerivativeCache();
+        if (cache instanceof TieredCache) {
+            cache = ((TieredCache) cache).getL1();
+        }
         if (cache != null && cache instanceof HeapCache) {
             HeapCache heapCache = (HeapCache) cache;
             if (heapCache.isPersistenceEnabled()) {
@@ -7,6 +7,7 @@ import edu.illinois.library.cantaloupe.image.Info;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.file.Path;
 
 /**
  * <p>Interface to be implemented by cache that cache derivative images and
@@ -30,6 +31,27 @@ public interface DerivativeCache extends Cache {
      */
     Info getImageInfo(Identifier identifier) throws IOException;
 
+    /**
+     * <p>Returns a file containing the cached image corresponding to the given
+     * operation list, which clients can read with random access, e.g. in
+     * order to serve byte ranges of it.</p>
+     *
+     * <p>This default implementation returns {@literal null}, which is
+     * appropriate for caches that don't store images in files.</p>
+     *
+     * <p><strong>Clients must not write to the returned path.</strong></p>
+     *
+     * @param opList Operation list for which to retrieve a file.
+     * @return File corresponding to the given operation list, or {@literal
+     *         null} if a valid image does not exist in the cache.
+     * @throws IOException
+     * @since 4.0
+     */
+    default Path getDerivativeImageFile(OperationList opList)
+            throws IOException {
+        return null;
+    }
+
     /**
      * <p>Returns an input stream corresponding to the given operation list,
      * or <code>null</code> if a valid image corresponding to the given
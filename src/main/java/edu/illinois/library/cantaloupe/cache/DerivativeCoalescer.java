@@ -0,0 +1,467 @@
+package edu.illinois.library.cantaloupe.cache;
+
+import edu.illinois.library.cantaloupe.operation.OperationList;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Coalesces concurrent requests for identical derivative images, so that
+ * only one of them (the "originator") actually has to be rendered.</p>
+ *
+ * <p>A client calls {@link #acquire(OperationList)} before rendering. If no
+ * other render of an equal operation list is in progress, the returned
+ * {@link Flight} will be {@link Flight#isOriginator() an originator}, and the
+ * client is expected to write the derivative image into
+ * {@link Flight#newOutputStream()} and then call either
+ * {@link Flight#complete()} or {@link Flight#abort()}. Otherwise, the client
+ * is a "follower" and can read the same bytes, as they are being produced,
+ * from {@link Flight#newInputStream()}.</p>
+ *
+ * <p>Followers can only join a flight while its output is still buffered
+ * (see below). A client that finds an equal render in progress that it can
+ * no longer follow will, if it {@link #acquire(OperationList, boolean) says}
+ * that the render is being written to the derivative cache, be a "waiter"
+ * instead, which {@link Flight#awaitCompletion() waits} for the render to
+ * finish and then reads the image from the cache. Otherwise, it originates
+ * an independent render.</p>
+ *
+ * <p>The bytes of a flight are buffered in memory only for the duration of
+ * the render. As long as no follower has joined, only the first {@link
+ * #JOIN_WINDOW_SIZE} bytes are buffered; beyond that, the flight stops
+ * accepting followers and releases its buffer, so that renders that nobody
+ * follows don't hold a copy of their output. A flight with followers stops
+ * accepting new ones once its buffer grows beyond {@link #MAX_BUFFER_SIZE},
+ * and releases the buffer as soon as there are no more followers reading
+ * from it.</p>
+ *
+ * @since 4.0
+ */
+public final class DerivativeCoalescer {
+
+    /**
+     * Thrown from a follower's {@link Flight#newInputStream() input stream}
+     * when the originating render has failed.
+     */
+    public static class AbortedFlightException extends IOException {
+        AbortedFlightException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Handle to a render that is in progress, which may be shared by
+     * several clients.
+     */
+    public static final class Flight {
+
+        private final Buffer buffer;
+        private final boolean isOriginator, isWaiter;
+
+        private Flight(Buffer buffer, boolean isOriginator, boolean isWaiter) {
+            this.buffer = buffer;
+            this.isOriginator = isOriginator;
+            this.isWaiter = isWaiter;
+        }
+
+        /**
+         * Blocks until the originating render has finished. Only waiters may
+         * call this method.
+         *
+         * @return Whether the render succeeded, in which case its image will
+         *         be available from the derivative cache.
+         * @throws IllegalStateException if the caller is not a waiter.
+         */
+        public boolean awaitCompletion() throws IOException {
+            if (!isWaiter) {
+                throw new IllegalStateException("Not a waiter");
+            }
+            return buffer.awaitFinish();
+        }
+
+        /**
+         * Marks the render as failed. Any followers will receive an
+         * {@link AbortedFlightException}. Only the originator may call this
+         * method, and subsequent calls have no effect.
+         */
+        public void abort() {
+            checkOriginator();
+            buffer.finish(false);
+        }
+
+        /**
+         * Marks the render as successfully completed. Only the originator may
+         * call this method, and subsequent calls have no effect.
+         */
+        public void complete() {
+            checkOriginator();
+            buffer.finish(true);
+        }
+
+        private void checkOriginator() {
+            if (!isOriginator) {
+                throw new IllegalStateException("Not the originator");
+            }
+        }
+
+        /**
+         * For testing only!
+         *
+         * @return Number of bytes currently held in memory by the flight.
+         */
+        int getBufferedLength() {
+            return buffer.getBufferedLength();
+        }
+
+        /**
+         * @return Whether the caller is responsible for rendering the image.
+         */
+        public boolean isOriginator() {
+            return isOriginator;
+        }
+
+        /**
+         * @return Whether the caller can't follow the render and must {@link
+         *         #awaitCompletion() wait} for it to finish instead.
+         */
+        public boolean isWaiter() {
+            return isWaiter;
+        }
+
+        /**
+         * @return Stream from which to read the image being rendered by the
+         *         originator, which will block until more data becomes
+         *         available. Must be closed by the caller.
+         * @throws IllegalStateException if the caller is the originator or a
+         *         waiter.
+         */
+        public InputStream newInputStream() {
+            if (isOriginator) {
+                throw new IllegalStateException("Originators can't read");
+            } else if (isWaiter) {
+                throw new IllegalStateException("Waiters can't read");
+            }
+            return new FlightInputStream(buffer);
+        }
+
+        /**
+         * @return Stream to which the originator should write the rendered
+         *         image. Closing it does nothing; use {@link #complete()} or
+         *         {@link #abort()} instead.
+         * @throws IllegalStateException if the caller is not the originator.
+         */
+        public OutputStream newOutputStream() {
+            checkOriginator();
+            return new FlightOutputStream(buffer);
+        }
+
+    }
+
+    /**
+     * Growable byte buffer shared by the originator and followers of a
+     * flight.
+     */
+    private final class Buffer {
+
+        private final String key;
+        private byte[] data = new byte[8192];
+        private int length;
+        private int numFollowers;
+        private boolean isFinished, isSucceeded, isOverflowed;
+
+        Buffer(String key) {
+            this.key = key;
+        }
+
+        synchronized void append(byte[] b, int off, int len) {
+            if (!isOverflowed && numFollowers == 0 &&
+                    length + len > JOIN_WINDOW_SIZE) {
+                // Nobody has joined early enough to be worth buffering for,
+                // so turn away any latecomers.
+                isOverflowed = true;
+            }
+            if (isOverflowed && numFollowers == 0) {
+                // Nobody will ever read this.
+                data = null;
+                return;
+            }
+            if (length + len > data.length) {
+                int newLength = Math.max(data.length * 2, length + len);
+                data = Arrays.copyOf(data, newLength);
+            }
+            System.arraycopy(b, off, data, length, len);
+            length += len;
+            if (length > MAX_BUFFER_SIZE) {
+                isOverflowed = true;
+            }
+            notifyAll();
+        }
+
+        synchronized void finish(boolean succeeded) {
+            if (!isFinished) {
+                isFinished = true;
+                isSucceeded = succeeded;
+                flights.remove(key, this);
+                notifyAll();
+            }
+        }
+
+        /**
+         * @return Whether a new follower was added.
+         */
+        synchronized boolean addFollower() {
+            if (isFinished || isOverflowed) {
+                return false;
+            }
+            numFollowers++;
+            return true;
+        }
+
+        /**
+         * Blocks until the flight is finished.
+         *
+         * @return Whether it succeeded.
+         */
+        synchronized boolean awaitFinish() throws IOException {
+            while (!isFinished) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException(e.getMessage(), e);
+                }
+            }
+            return isSucceeded;
+        }
+
+        synchronized int getBufferedLength() {
+            return (data != null) ? length : 0;
+        }
+
+        synchronized boolean isOverflowed() {
+            return isOverflowed;
+        }
+
+        synchronized void removeFollower() {
+            numFollowers--;
+            if (isOverflowed && numFollowers == 0) {
+                data = null;
+            }
+        }
+
+        /**
+         * Blocks until data at the given position becomes available or the
+         * flight is finished.
+         *
+         * @return Number of bytes read, or {@literal -1} at the end of the
+         *         stream.
+         */
+        synchronized int read(int pos, byte[] b, int off, int len)
+                throws IOException {
+            while (pos >= length && !isFinished) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException(e.getMessage(), e);
+                }
+            }
+            if (isFinished && !isSucceeded) {
+                throw new AbortedFlightException("Coalesced render failed: " +
+                        key);
+            }
+            if (pos >= length) {
+                return -1;
+            }
+            final int count = Math.min(len, length - pos);
+            System.arraycopy(data, pos, b, off, count);
+            return count;
+        }
+
+    }
+
+    private static final class FlightInputStream extends InputStream {
+
+        private final Buffer buffer;
+        private boolean isClosed;
+        private int pos;
+
+        FlightInputStream(Buffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public void close() {
+            if (!isClosed) {
+                isClosed = true;
+                buffer.removeFollower();
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            int count = read(b, 0, 1);
+            return (count < 0) ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            int count = buffer.read(pos, b, off, len);
+            if (count > 0) {
+                pos += count;
+            }
+            return count;
+        }
+
+    }
+
+    private static final class FlightOutputStream extends OutputStream {
+
+        private final Buffer buffer;
+
+        FlightOutputStream(Buffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public void write(int b) {
+            buffer.append(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            buffer.append(b, off, len);
+        }
+
+    }
+
+    private static final Logger LOGGER =
+            LoggerFactory.getLogger(DerivativeCoalescer.class);
+
+    /**
+     * Size beyond which a flight that no follower has joined will stop
+     * accepting followers and buffering its output.
+     */
+    static final int JOIN_WINDOW_SIZE = 1024 * 1024;
+
+    /**
+     * Size beyond which a flight will stop accepting followers.
+     */
+    static final int MAX_BUFFER_SIZE = 1024 * 1024 * 32;
+
+    private static DerivativeCoalescer instance;
+
+    private final AtomicLong coalescedCount = new AtomicLong();
+    private final AtomicLong originatedCount = new AtomicLong();
+
+    /**
+     * Map of in-progress flights keyed by {@link OperationList#toString()}.
+     */
+    private final ConcurrentMap<String, Buffer> flights =
+            new ConcurrentHashMap<>();
+
+    /**
+     * For testing only!
+     */
+    static synchronized void clearInstance() {
+        instance = null;
+    }
+
+    /**
+     * @return Shared instance.
+     */
+    public static synchronized DerivativeCoalescer getInstance() {
+        if (instance == null) {
+            instance = new DerivativeCoalescer();
+        }
+        return instance;
+    }
+
+    /**
+     * Equivalent to {@link #acquire(OperationList, boolean)} with a {@literal
+     * false} second argument.
+     */
+    public Flight acquire(OperationList opList) {
+        return acquire(opList, false);
+    }
+
+    /**
+     * @param opList   Operation list describing the derivative image to
+     *                 render. Should be frozen.
+     * @param isCached Whether originators write the image to the derivative
+     *                 cache before {@link Flight#complete() completing}, so
+     *                 that it can be read from there afterwards.
+     * @return         Flight which is either the originator of a new render,
+     *                 a follower of one that is already in progress, or, if
+     *                 {@literal isCached} is {@literal true} and that one
+     *                 can't be followed anymore, a {@link Flight#isWaiter()
+     *                 waiter} on it.
+     */
+    public Flight acquire(OperationList opList, boolean isCached) {
+        final String key = opList.toString();
+        while (true) {
+            final Buffer newBuffer = new Buffer(key);
+            final Buffer buffer = flights.putIfAbsent(key, newBuffer);
+            if (buffer == null) {
+                originatedCount.incrementAndGet();
+                LOGGER.debug("acquire(): originating {}", key);
+                return new Flight(newBuffer, true, false);
+            } else if (buffer.addFollower()) {
+                coalescedCount.incrementAndGet();
+                LOGGER.debug("acquire(): following {}", key);
+                return new Flight(buffer, false, false);
+            } else if (buffer.isOverflowed()) {
+                if (isCached) {
+                    // The existing flight is too big to follow, but its image
+                    // will be in the cache once it finishes.
+                    coalescedCount.incrementAndGet();
+                    LOGGER.debug("acquire(): flight is too big to follow; " +
+                            "waiting for {}", key);
+                    return new Flight(buffer, false, true);
+                }
+                // The existing flight is too big to follow, so render
+                // independently of it.
+                originatedCount.incrementAndGet();
+                LOGGER.debug("acquire(): flight is too big to follow; " +
+                        "originating {} independently", key);
+                return new Flight(newBuffer, true, false);
+            }
+            // Otherwise the flight finished in the meantime; try again.
+        }
+    }
+
+    /**
+     * @return Number of renders that were avoided by following another one.
+     */
+    public long getCoalescedCount() {
+        return coalescedCount.get();
+    }
+
+    /**
+     * @return Number of renders that were actually performed.
+     */
+    public long getOriginatedCount() {
+        return originatedCount.get();
+    }
+
+    /**
+     * @return Number of renders currently in progress.
+     */
+    public int size() {
+        return flights.size();
+    }
+
+    private DerivativeCoalescer() {}
+
+}
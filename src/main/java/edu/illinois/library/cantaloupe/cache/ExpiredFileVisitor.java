@@ -37,6 +37,7 @@ class ExpiredFileVisitor extends SimpleFileVisitor<Path> {
             if (Files.isRegularFile(path) && FilesystemCache.isExpired(path)) {
                 final long size = Files.size(path);
                 Files.deleteIfExists(path);
+                FilesystemCache.indexRemove(path);
                 deletedFileCount++;
                 deletedFileSize += size;
             }
@@ -29,12 +29,16 @@ import java.nio.file.attribute.FileTime;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.EnumSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -104,6 +108,23 @@ import java.util.stream.Collectors;
  *     <li>Symbolic links are followed.</li>
  *     <li>This implementation is both thread- and process-safe.</li>
  * </ul>
+ *
+ * <h1>Index</h1>
+ *
+ * <p>If {@link Key#FILESYSTEMCACHE_INDEX_ENABLED} or {@link
+ * Key#FILESYSTEMCACHE_MAX_SIZE} is set, the files in the cache are tracked
+ * by a {@link FilesystemCacheIndex}, which is persisted in an {@literal
+ * index} subdirectory. Once it has been opened, it is used instead of the
+ * filesystem to find the derivative images of an identifier, to find expired
+ * files, and to compute {@link #getStatistics() statistics}, so the tree
+ * doesn't have to be walked. It also supplies last-accessed times to {@link
+ * #isExpired(Path)}, as the filesystem's own may be unreliable. There is one
+ * index per cache directory, shared by all instances using it, as the
+ * directory is.</p>
+ *
+ * <p>If {@link Key#FILESYSTEMCACHE_MAX_SIZE} is set, the least recently used
+ * files are deleted in the background whenever the total size exceeds
+ * it.</p>
  */
 class FilesystemCache implements SourceCache, DerivativeCache {
 
@@ -122,7 +143,7 @@ class FilesystemCache implements SourceCache, DerivativeCache {
 
         private final Path destinationFile;
         private boolean isClosed = false;
-        private final Object lock;
+        private final CountDownLatch latch;
         private final Path tempFile;
         private T toRemove;
         private OutputStream wrappedOutputStream;
@@ -131,19 +152,22 @@ class FilesystemCache implements SourceCache, DerivativeCache {
          * @param tempFile Pathname of the temp file to write to.
          * @param destinationFile Pathname to move tempFile to when it is done
          *                        being written.
-         * @param toRemove Object to remove from the set when done.
-         * @param lock Object to perform notification upon closure.
+         * @param toRemove Key under which the latch has been registered in
+         *                 {@link #imagesBeingWritten}, to unregister when
+         *                 done.
+         * @param latch Latch to release upon closure, which will wake only
+         *              the threads waiting on the same image.
          */
         ConcurrentFileOutputStream(Path tempFile,
                                    Path destinationFile,
                                    T toRemove,
-                                   Object lock) throws IOException {
-            imagesBeingWritten.add(toRemove);
+                                   CountDownLatch latch) throws IOException {
             this.tempFile = tempFile;
             this.destinationFile = destinationFile;
             this.toRemove = toRemove;
-            this.lock = lock;
+            this.latch = latch;
             this.wrappedOutputStream = Files.newOutputStream(tempFile);
+            tempFiles.put(tempFile, System.currentTimeMillis());
         }
 
         /**
@@ -178,10 +202,15 @@ class FilesystemCache implements SourceCache, DerivativeCache {
 
                     // If the written file isn't empty, move it into place.
                     // Otherwise, delete it.
-                    if (Files.size(tempFile) > 0) {
+                    final long size = Files.size(tempFile);
+                    if (size > 0) {
                         CFOS_LOGGER.debug("close(): moving {} to {}",
                                 tempFile, destinationFile);
                         Files.move(tempFile, destinationFile);
+                        final FilesystemCacheIndex index = index();
+                        if (index != null) {
+                            index.add(destinationFile, size);
+                        }
                     } else {
                         CFOS_LOGGER.debug("close(): deleting zero-byte file: {}",
                                 tempFile);
@@ -190,13 +219,11 @@ class FilesystemCache implements SourceCache, DerivativeCache {
                 } catch (IOException e) {
                     CFOS_LOGGER.warn("close(): {}", e.getMessage(), e);
                 } finally {
-                    imagesBeingWritten.remove(toRemove);
+                    tempFiles.remove(tempFile);
 
                     // Release other threads waiting on this image to be
                     // written.
-                    synchronized(lock) {
-                        lock.notifyAll();
-                    }
+                    release(imagesBeingWritten, toRemove, latch);
                 }
             }
         }
@@ -231,32 +258,58 @@ class FilesystemCache implements SourceCache, DerivativeCache {
     // efficiency. A collision here and there is not a big deal.
     private static final String HASH_ALGORITHM = "MD5";
     private static final String DERIVATIVE_IMAGE_FOLDER = "image";
+    private static final String INDEX_FOLDER = "index";
     private static final String INFO_FOLDER = "info";
     private static final String SOURCE_IMAGE_FOLDER = "source";
 
+    private static final String INDEX_LOG_FILENAME = "index.log";
     private static final String INFO_EXTENSION = ".json";
     private static final String TEMP_EXTENSION = ".tmp";
 
     /**
-     * Set of {@link Identifier}s or {@link OperationList}s) for which image
-     * files are currently being written from any thread.
+     * Indexes of the cache directories in use, by root path. Lazy-populated
+     * by {@link #index()}.
      */
-    private static final Set<Object> imagesBeingWritten =
-            ConcurrentHashMap.newKeySet();
+    private static final Map<Path, FilesystemCacheIndex> indexes =
+            new ConcurrentHashMap<>();
 
     /**
-     * Set of {@link OperationList}s for which image files are currently being
-     * purged by {@link #purge(OperationList)} from any thread.
+     * Root paths of the cache directories that have been crawled by {@link
+     * #cleanUp()} since their index was opened.
      */
-    private final Set<OperationList> imagesBeingPurged =
+    private static final Set<Path> cleanedRootPaths =
             ConcurrentHashMap.newKeySet();
 
     /**
-     * Set of identifiers for which info files are currently being purged by
-     * {@link #purge(Identifier)} from any thread.
+     * Creation times of the temp files of all open {@link
+     * ConcurrentFileOutputStream}s, by path, enabling abandoned ones to be
+     * cleaned up without crawling the cache directory.
      */
-    private final Set<Identifier> infosBeingPurged =
-            ConcurrentHashMap.newKeySet();
+    private static final Map<Path, Long> tempFiles = new ConcurrentHashMap<>();
+
+    /**
+     * Latches of the {@link Identifier}s or {@link OperationList}s for which
+     * image files are currently being written from any thread, which are
+     * released when they have been written.
+     */
+    private static final ConcurrentMap<Object, CountDownLatch>
+            imagesBeingWritten = new ConcurrentHashMap<>();
+
+    /**
+     * Latches of the {@link OperationList}s for which image files are
+     * currently being purged by {@link #purge(OperationList)} from any
+     * thread, which are released when they have been purged.
+     */
+    private final ConcurrentMap<OperationList, CountDownLatch>
+            imagesBeingPurged = new ConcurrentHashMap<>();
+
+    /**
+     * Latches of the identifiers for which info files are currently being
+     * purged by {@link #purge(Identifier)} from any thread, which are
+     * released when they have been purged.
+     */
+    private final ConcurrentMap<Identifier, CountDownLatch>
+            infosBeingPurged = new ConcurrentHashMap<>();
 
     /**
      * Toggled by {@link #purge()} and {@link #purgeInvalid()}.
@@ -266,15 +319,6 @@ class FilesystemCache implements SourceCache, DerivativeCache {
 
     private long minCleanableAge = 1000 * 60 * 10;
 
-    /**
-     * Several different lock objects for context-dependent synchronization.
-     * Reduces contention for the instance.
-     */
-    private final Object derivativeImageWriteLock = new Object();
-    private final Object imagePurgeLock = new Object();
-    private final Object infoPurgeLock = new Object();
-    private final Object sourceImageWriteLock = new Object();
-
     /**
      * Rather than using a global lock, per-identifier locks allow for
      * simultaneous writes to different infos. Map entries are added on demand
@@ -283,6 +327,63 @@ class FilesystemCache implements SourceCache, DerivativeCache {
     private final Map<Identifier,ReadWriteLock> infoLocks =
             new ConcurrentHashMap<>();
 
+    /**
+     * Registers a new latch for the given key in the given map, first waiting
+     * for any latch that another thread has already registered for it to be
+     * {@link #release released}. Waiting threads are woken only by the
+     * release of the same key.
+     *
+     * @return Registered latch, to pass to {@link #release}.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    private static <K> CountDownLatch acquire(
+            ConcurrentMap<K, CountDownLatch> latches,
+            K key) throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(1);
+        CountDownLatch existing;
+        while ((existing = latches.putIfAbsent(key, latch)) != null) {
+            existing.await();
+        }
+        return latch;
+    }
+
+    /**
+     * Waits for the latch registered for the given key in the given map, if
+     * any, to be {@link #release released}.
+     *
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    private static <K> void await(ConcurrentMap<K, CountDownLatch> latches,
+                                  K key) throws InterruptedException {
+        final CountDownLatch latch = latches.get(key);
+        if (latch != null) {
+            latch.await();
+        }
+    }
+
+    /**
+     * Waits for all of the latches registered in the given map at the time
+     * of invocation to be {@link #release released}.
+     *
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    private static void awaitAll(ConcurrentMap<?, CountDownLatch> latches)
+            throws InterruptedException {
+        for (CountDownLatch latch : new ArrayList<>(latches.values())) {
+            latch.await();
+        }
+    }
+
+    /**
+     * Unregisters the given latch and wakes the threads waiting on it.
+     */
+    private static <K> void release(ConcurrentMap<K, CountDownLatch> latches,
+                                    K key,
+                                    CountDownLatch latch) {
+        latches.remove(key, latch);
+        latch.countDown();
+    }
+
     /**
      * Returns the last-accessed time of the given file. On some OS/filesystem
      * combinations, this may be unreliable, in which case the last-modified
@@ -294,7 +395,7 @@ class FilesystemCache implements SourceCache, DerivativeCache {
      * @throws NoSuchFileException If the given file does not exist.
      * @throws IOException If there is some other error.
      */
-    private static FileTime getLastAccessedTime(Path file) throws IOException {
+    static FileTime getLastAccessedTime(Path file) throws IOException {
         try {
             // Last-accessed time is not reliable on macOS+APFS as of 10.13.2.
             if (SystemUtils.IS_OS_MAC) {
@@ -309,6 +410,24 @@ class FilesystemCache implements SourceCache, DerivativeCache {
         }
     }
 
+    /**
+     * @return Value of {@link Key#FILESYSTEMCACHE_MAX_SIZE} in bytes, or
+     *         {@literal 0} if it is not set or invalid.
+     */
+    static long getMaxByteSize() {
+        final String humanSize = Configuration.getInstance().
+                getString(Key.FILESYSTEMCACHE_MAX_SIZE, "");
+        if (!humanSize.isEmpty()) {
+            try {
+                return Math.max(0, StringUtil.toBytes(humanSize));
+            } catch (NumberFormatException e) {
+                LOGGER.error("getMaxByteSize(): invalid value for {}: {}",
+                        Key.FILESYSTEMCACHE_MAX_SIZE, humanSize);
+            }
+        }
+        return 0;
+    }
+
     /**
      * @param uniqueString String from which to derive the path.
      * @return Directory path composed of fragments of a hash of the given
@@ -338,11 +457,87 @@ class FilesystemCache implements SourceCache, DerivativeCache {
     }
 
     /**
-     * Determines whether the given file is expired by comparing the result of
-     * {@link #getLastAccessedTime(Path)} to either
-     * {@link Key#DERIVATIVE_CACHE_TTL} or {@link Key#SOURCE_CACHE_TTL},
-     * depending on the given path. If the selected key is set to {@literal 0},
-     * {@literal false} will be returned.
+     * @return Index of the current cache directory, or {@literal null} if
+     *         neither {@link Key#FILESYSTEMCACHE_INDEX_ENABLED} nor {@link
+     *         Key#FILESYSTEMCACHE_MAX_SIZE} is set. The index is {@link
+     *         FilesystemCacheIndex#open() opened} in the background upon
+     *         creation.
+     */
+    static FilesystemCacheIndex index() {
+        final Path rootPath = rootPath();
+        final long maxByteSize = getMaxByteSize();
+        if (maxByteSize <= 0 && !Configuration.getInstance().
+                getBoolean(Key.FILESYSTEMCACHE_INDEX_ENABLED, false)) {
+            // If the index has been disabled at runtime, discard it without
+            // closing it, as it won't be told about files written from now
+            // on, and would be wrong when restored.
+            final FilesystemCacheIndex index = indexes.remove(rootPath);
+            if (index != null) {
+                index.discard();
+            }
+            return null;
+        }
+        final FilesystemCacheIndex index = indexes.computeIfAbsent(rootPath,
+                path -> {
+                    final FilesystemCacheIndex newIndex =
+                            new FilesystemCacheIndex(path, maxByteSize,
+                                    new FilesystemCacheIndexLog(path
+                                            .resolve(INDEX_FOLDER)
+                                            .resolve(INDEX_LOG_FILENAME)));
+                    cleanedRootPaths.remove(path);
+                    ThreadPool.getInstance().submit(() -> {
+                        try {
+                            newIndex.open();
+                        } catch (IOException e) {
+                            LOGGER.error("index(): failed to open the " +
+                                    "index of {}: {}", path, e.getMessage());
+                        }
+                    }, ThreadPool.Priority.LOW);
+                    return newIndex;
+                });
+        index.setMaxByteSize(maxByteSize);
+        return index;
+    }
+
+    /**
+     * @return Index of the current cache directory, if it is {@link
+     *         FilesystemCacheIndex#isAuthoritative() authoritative}, or
+     *         {@literal null} otherwise.
+     */
+    private static FilesystemCacheIndex authoritativeIndex() {
+        final FilesystemCacheIndex index = index();
+        return (index != null && index.isAuthoritative()) ? index : null;
+    }
+
+    /**
+     * Records an access of the given file in the {@link #index()}, if there
+     * is one.
+     */
+    private static void indexAccess(Path file) {
+        final FilesystemCacheIndex index = index();
+        if (index != null) {
+            index.access(file);
+        }
+    }
+
+    /**
+     * Removes the given file, which has been deleted, from the
+     * {@link #index()}, if there is one.
+     */
+    static void indexRemove(Path file) {
+        final FilesystemCacheIndex index = index();
+        if (index != null) {
+            index.remove(file);
+        }
+    }
+
+    /**
+     * Determines whether the given file is expired by comparing its
+     * last-accessed time, as recorded in the {@link #index()} if it is
+     * indexed, and otherwise as returned by {@link #getLastAccessedTime(Path)},
+     * to either {@link Key#DERIVATIVE_CACHE_TTL} or
+     * {@link Key#SOURCE_CACHE_TTL}, depending on the given path. If the
+     * selected key is set to {@literal 0}, {@literal false} will be returned.
      *
      * @param file Path to check.
      * @return Whether the given file is expired.
@@ -354,8 +549,13 @@ class FilesystemCache implements SourceCache, DerivativeCache {
                 config.getLong(Key.SOURCE_CACHE_TTL, 0) :
                 config.getLong(Key.DERIVATIVE_CACHE_TTL, 0);
         final long ttlMsec = 1000 * ttlSec;
-        final long fileAge = System.currentTimeMillis()
-                - getLastAccessedTime(file).toMillis();
+
+        final FilesystemCacheIndex index = index();
+        long lastAccessed = (index != null) ? index.getLastAccessed(file) : 0;
+        if (lastAccessed == 0) {
+            lastAccessed = getLastAccessedTime(file).toMillis();
+        }
+        final long fileAge = System.currentTimeMillis() - lastAccessed;
 
         LOGGER.debug("Age of {}: {} msec", file.getFileName(), fileAge);
 
@@ -374,6 +574,16 @@ class FilesystemCache implements SourceCache, DerivativeCache {
         return Paths.get(pathname);
     }
 
+    /**
+     * @return Paths of the source image, derivative image, and info cache
+     *         folders, which are all of the folders containing cached
+     *         content.
+     */
+    private static List<Path> rootContentPaths() {
+        return Arrays.asList(rootSourceImagePath(),
+                rootDerivativeImagePath(), rootInfoPath());
+    }
+
     /**
      * @return Path of the derivative image cache folder, or
      *         <code>null</code> if {@link Key#FILESYSTEMCACHE_PATHNAME} is
@@ -470,6 +680,10 @@ class FilesystemCache implements SourceCache, DerivativeCache {
         return "_" + Thread.currentThread().getName() + TEMP_EXTENSION;
     }
 
+    static boolean isTempFile(Path file) {
+        return file.getFileName().toString().endsWith(TEMP_EXTENSION);
+    }
+
     private ReadWriteLock acquireInfoLock(final Identifier identifier) {
         ReadWriteLock lock = infoLocks.get(identifier);
         if (lock == null) {
@@ -480,7 +694,14 @@ class FilesystemCache implements SourceCache, DerivativeCache {
     }
 
     /**
-     * Deletes temporary and zero-byte files.
+     * <p>Deletes temporary and zero-byte files.</p>
+     *
+     * <p>If the {@link #index()} is {@link
+     * FilesystemCacheIndex#isAuthoritative() authoritative}, the cache
+     * directory is crawled only the first time this is called after it has
+     * been opened, to clean up after previous processes. After that, only
+     * the temp files of output streams that have been abandoned by this
+     * process are deleted.</p>
      *
      * @see DetritalFileVisitor
      */
@@ -488,19 +709,53 @@ class FilesystemCache implements SourceCache, DerivativeCache {
     public void cleanUp() throws IOException {
         final Path path = rootPath();
 
+        if (authoritativeIndex() != null && !cleanedRootPaths.add(path)) {
+            cleanUpAbandonedTempFiles();
+            return;
+        }
+
         LOGGER.info("cleanUp(): cleaning directory: {}", path);
         DetritalFileVisitor visitor =
                 new DetritalFileVisitor(minCleanableAge, TEMP_EXTENSION);
 
-        Files.walkFileTree(path,
-                EnumSet.of(FileVisitOption.FOLLOW_LINKS),
-                Integer.MAX_VALUE,
-                visitor);
+        for (Path contentPath : rootContentPaths()) {
+            if (Files.exists(contentPath)) {
+                Files.walkFileTree(contentPath,
+                        EnumSet.of(FileVisitOption.FOLLOW_LINKS),
+                        Integer.MAX_VALUE,
+                        visitor);
+            }
+        }
         LOGGER.info("cleanUp(): cleaned {} item(s) totaling {} bytes",
                 visitor.getDeletedFileCount(),
                 visitor.getDeletedFileSize());
     }
 
+    /**
+     * Deletes the temp files of output streams that were opened more than
+     * {@link #setMinCleanableAge(long) the minimum cleanable age} ago and
+     * have not been closed.
+     */
+    private void cleanUpAbandonedTempFiles() {
+        final long threshold = System.currentTimeMillis() - minCleanableAge;
+        int count = 0;
+        for (Map.Entry<Path, Long> entry : tempFiles.entrySet()) {
+            if (entry.getValue() < threshold &&
+                    tempFiles.remove(entry.getKey(), entry.getValue())) {
+                try {
+                    if (Files.deleteIfExists(entry.getKey())) {
+                        count++;
+                    }
+                } catch (IOException e) {
+                    LOGGER.warn("cleanUpAbandonedTempFiles(): unable to " +
+                            "delete {}: {}", entry.getKey(), e.getMessage());
+                }
+            }
+        }
+        LOGGER.info("cleanUpAbandonedTempFiles(): deleted {} temp file(s)",
+                count);
+    }
+
     /**
      * @param identifier
      * @return All cached image files deriving from the image with the given
@@ -512,6 +767,10 @@ class FilesystemCache implements SourceCache, DerivativeCache {
                 hashedPathFragment(identifier.toString()));
         final String expectedNamePrefix =
                 StringUtil.filesystemSafe(identifier.toString());
+        final FilesystemCacheIndex index = authoritativeIndex();
+        if (index != null) {
+            return index.getFiles(cachePath, expectedNamePrefix);
+        }
         try {
             return Files.list(cachePath)
                     .filter(p -> p.getFileName().toString().startsWith(expectedNamePrefix))
@@ -522,6 +781,45 @@ class FilesystemCache implements SourceCache, DerivativeCache {
         }
     }
 
+    @Override
+    public Path getDerivativeImageFile(OperationList ops) throws IOException {
+        final Path cacheFile = derivativeImageFile(ops);
+        if (Files.exists(cacheFile)) {
+            if (!isExpired(cacheFile)) {
+                LOGGER.info("getDerivativeImageFile(): hit: {} ({})",
+                        ops, cacheFile);
+                indexAccess(cacheFile);
+                return cacheFile;
+            } else {
+                purgeAsync(cacheFile);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return Statistics of the {@link #index()}: the number of files
+     *         ({@literal size}), their total size ({@literal byteSize}), the
+     *         maximum total size ({@literal maxByteSize}, {@literal 0} if
+     *         there is none), and the number and total size of files that
+     *         have been evicted to stay within it ({@literal evictions} and
+     *         {@literal evictedBytes}). If there is no index, or it has not
+     *         been opened yet, the map is empty.
+     */
+    Map<String, Long> getStatistics() {
+        final FilesystemCacheIndex index = authoritativeIndex();
+        if (index == null) {
+            return Collections.emptyMap();
+        }
+        final Map<String, Long> map = new LinkedHashMap<>();
+        map.put("size", (long) index.size());
+        map.put("byteSize", index.getByteSize());
+        map.put("maxByteSize", index.getMaxByteSize());
+        map.put("evictions", index.getEvictionCount());
+        map.put("evictedBytes", index.getEvictedByteCount());
+        return map;
+    }
+
     @Override
     public Info getImageInfo(Identifier identifier) throws IOException {
         final ReadWriteLock lock = acquireInfoLock(identifier);
@@ -531,7 +829,9 @@ class FilesystemCache implements SourceCache, DerivativeCache {
             final Path cacheFile = infoFile(identifier);
             if (!isExpired(cacheFile)) {
                 LOGGER.info("getImageInfo(): hit: {}", cacheFile);
-                return Info.fromJSON(cacheFile.toFile());
+                final Info info = Info.fromJSON(cacheFile.toFile());
+                indexAccess(cacheFile);
+                return info;
             } else {
                 purgeAsync(cacheFile);
             }
@@ -545,16 +845,10 @@ class FilesystemCache implements SourceCache, DerivativeCache {
 
     @Override
     public Path getSourceImageFile(Identifier identifier) throws IOException {
-        synchronized (sourceImageWriteLock) {
-            while (imagesBeingWritten.contains(identifier)) {
-                try {
-                    LOGGER.debug("getSourceImageFile(): waiting on {}...",
-                            identifier);
-                    sourceImageWriteLock.wait();
-                } catch (InterruptedException e) {
-                    break;
-                }
-            }
+        try {
+            await(imagesBeingWritten, identifier);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
 
         Path file = null;
@@ -564,6 +858,7 @@ class FilesystemCache implements SourceCache, DerivativeCache {
             if (!isExpired(cacheFile)) {
                 LOGGER.info("getSourceImageFile(): hit: {} ({})",
                         identifier, cacheFile);
+                indexAccess(cacheFile);
                 file = cacheFile;
             } else {
                 purgeAsync(cacheFile);
@@ -584,6 +879,7 @@ class FilesystemCache implements SourceCache, DerivativeCache {
                     LOGGER.info("newDerivativeImageInputStream(): " +
                                     "hit: {} ({})", ops, cacheFile);
                     inputStream = Files.newInputStream(cacheFile);
+                    indexAccess(cacheFile);
                 } catch (NoSuchFileException e) {
                     LOGGER.error(e.getMessage(), e);
                 }
@@ -606,7 +902,7 @@ class FilesystemCache implements SourceCache, DerivativeCache {
     public OutputStream newDerivativeImageOutputStream(OperationList ops)
             throws IOException {
         return newOutputStream(ops, derivativeImageTempFile(ops),
-                derivativeImageFile(ops), derivativeImageWriteLock);
+                derivativeImageFile(ops));
     }
 
     /**
@@ -621,7 +917,7 @@ class FilesystemCache implements SourceCache, DerivativeCache {
     public OutputStream newSourceImageOutputStream(Identifier identifier)
             throws IOException {
         return newOutputStream(identifier, sourceImageTempFile(identifier),
-                sourceImageFile(identifier), sourceImageWriteLock);
+                sourceImageFile(identifier));
     }
 
     /**
@@ -629,18 +925,17 @@ class FilesystemCache implements SourceCache, DerivativeCache {
      * @param tempFile Temporary file to write to.
      * @param destFile Destination file that tempFile will be moved to when
      *                 writing is complete.
-     * @param notifyObj Object to perform notification upon stream closure.
      * @return Output stream for writing.
      * @throws IOException IF anything goes wrong.
      */
     private OutputStream newOutputStream(Object imageIdentifier,
                                          Path tempFile,
-                                         Path destFile,
-                                         Object notifyObj) throws IOException {
-        // If the image is being written in another thread, it may (or may not)
-        // be present in the imagesBeingWritten set. If so, return a null
-        // output stream to avoid interfering.
-        if (imagesBeingWritten.contains(imageIdentifier)) {
+                                         Path destFile) throws IOException {
+        // If the image is being written in another thread, a latch will
+        // already have been registered for it. If so, return a null output
+        // stream to avoid interfering.
+        final CountDownLatch latch = new CountDownLatch(1);
+        if (imagesBeingWritten.putIfAbsent(imageIdentifier, latch) != null) {
             LOGGER.info("newOutputStream(): miss, but cache file for {} is " +
                     "being written in another thread, so returning a {}",
                     imageIdentifier, NullOutputStream.class.getSimpleName());
@@ -656,8 +951,9 @@ class FilesystemCache implements SourceCache, DerivativeCache {
             Files.createDirectories(tempFile.getParent());
 
             return new ConcurrentFileOutputStream<>(tempFile, destFile,
-                    imageIdentifier, notifyObj);
+                    imageIdentifier, latch);
         } catch (FileAlreadyExistsException e) {
+            release(imagesBeingWritten, imageIdentifier, latch);
             // The image either already exists in its complete form, or is
             // being written by another thread/process. Either way, there is no
             // need to write over it.
@@ -665,12 +961,16 @@ class FilesystemCache implements SourceCache, DerivativeCache {
                     tempFile.getParent(),
                     NullOutputStream.class.getSimpleName());
             return new NullOutputStream();
+        } catch (IOException | RuntimeException e) {
+            release(imagesBeingWritten, imageIdentifier, latch);
+            throw e;
         }
     }
 
     /**
-     * <p>Crawls the cache directory, deleting all files (but not folders)
-     * within it (including temp files).</p>
+     * <p>Crawls the source image, derivative image, and info directories,
+     * deleting all files (but not folders) within them (including temp
+     * files).</p>
      *
      * <p>Will do nothing and return immediately if a global purge is in
      * progress in another thread.</p>
@@ -682,38 +982,42 @@ class FilesystemCache implements SourceCache, DerivativeCache {
                     "Aborting.");
             return;
         }
-        synchronized (imagePurgeLock) {
-            while (!imagesBeingPurged.isEmpty()) {
-                try {
-                    LOGGER.debug("purge(): waiting...");
-                    imagePurgeLock.wait();
-                } catch (InterruptedException e) {
-                    break;
-                }
-            }
+        try {
+            LOGGER.debug("purge(): waiting for purges in progress...");
+            awaitAll(imagesBeingPurged);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
         try {
             isGlobalPurgeInProgress.set(true);
 
-            final Path path = rootPath();
-
-            DeletingFileVisitor visitor = new DeletingFileVisitor();
-            visitor.setRootPathToExclude(path);
-            visitor.setLogger(LOGGER);
+            // Clear the index first, so that any files written while
+            // purging and not deleted will still be indexed.
+            final FilesystemCacheIndex index = index();
+            if (index != null) {
+                index.clear();
+            }
 
             LOGGER.info("purge(): purging...");
-            Files.walkFileTree(path,
-                    EnumSet.of(FileVisitOption.FOLLOW_LINKS),
-                    Integer.MAX_VALUE,
-                    visitor);
+            long deletedFileCount = 0, deletedFileSize = 0;
+            for (Path path : rootContentPaths()) {
+                if (!Files.exists(path)) {
+                    continue;
+                }
+                DeletingFileVisitor visitor = new DeletingFileVisitor();
+                visitor.setRootPathToExclude(path);
+                visitor.setLogger(LOGGER);
+                Files.walkFileTree(path,
+                        EnumSet.of(FileVisitOption.FOLLOW_LINKS),
+                        Integer.MAX_VALUE,
+                        visitor);
+                deletedFileCount += visitor.getDeletedFileCount();
+                deletedFileSize += visitor.getDeletedFileSize();
+            }
             LOGGER.info("purge(): purged {} item(s) totaling {} bytes",
-                    visitor.getDeletedFileCount(),
-                    visitor.getDeletedFileSize());
+                    deletedFileCount, deletedFileSize);
         } finally {
             isGlobalPurgeInProgress.set(false);
-            synchronized (imagePurgeLock) {
-                imagePurgeLock.notifyAll();
-            }
         }
     }
 
@@ -730,19 +1034,14 @@ class FilesystemCache implements SourceCache, DerivativeCache {
                     "progress. Aborting.");
             return;
         }
-        synchronized (infoPurgeLock) {
-            while (infosBeingPurged.contains(identifier)) {
-                try {
-                    LOGGER.debug("purge(Identifier): waiting on {}...",
-                            identifier);
-                    infoPurgeLock.wait();
-                } catch (InterruptedException e) {
-                    break;
-                }
-            }
+        final CountDownLatch latch;
+        try {
+            latch = acquire(infosBeingPurged, identifier);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
         }
         try {
-            infosBeingPurged.add(identifier);
             LOGGER.info("purge(Identifier): purging {}...", identifier);
 
             // Delete the source image.
@@ -750,6 +1049,7 @@ class FilesystemCache implements SourceCache, DerivativeCache {
             try {
                 LOGGER.info("purge(Identifier): deleting {}", sourceFile);
                 Files.deleteIfExists(sourceFile);
+                indexRemove(sourceFile);
             } catch (IOException e) {
                 LOGGER.warn(e.getMessage());
             }
@@ -758,6 +1058,7 @@ class FilesystemCache implements SourceCache, DerivativeCache {
             try {
                 LOGGER.info("purge(Identifier): deleting {}", infoFile);
                 Files.deleteIfExists(infoFile);
+                indexRemove(infoFile);
             } catch (IOException e) {
                 LOGGER.warn(e.getMessage());
             }
@@ -766,12 +1067,13 @@ class FilesystemCache implements SourceCache, DerivativeCache {
                 try {
                     LOGGER.info("purge(Identifier): deleting {}", imageFile);
                     Files.deleteIfExists(imageFile);
+                    indexRemove(imageFile);
                 } catch (IOException e) {
                     LOGGER.warn(e.getMessage());
                 }
             }
         } finally {
-            infosBeingPurged.remove(identifier);
+            release(infosBeingPurged, identifier, latch);
         }
     }
 
@@ -792,33 +1094,26 @@ class FilesystemCache implements SourceCache, DerivativeCache {
                     "progress. Aborting.");
             return;
         }
-        synchronized (imagePurgeLock) {
-            while (imagesBeingPurged.contains(opList)) {
-                try {
-                    LOGGER.debug("purge(OperationList): waiting on {}...",
-                            opList);
-                    imagePurgeLock.wait();
-                } catch (InterruptedException e) {
-                    break;
-                }
-            }
+        final CountDownLatch latch;
+        try {
+            latch = acquire(imagesBeingPurged, opList);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
         }
         try {
-            imagesBeingPurged.add(opList);
             LOGGER.info("purge(OperationList): purging {}...", opList);
 
             Path file = derivativeImageFile(opList);
             try {
                 Files.deleteIfExists(file);
+                indexRemove(file);
             } catch (IOException e) {
                 LOGGER.warn("purge(OperationList(): unable to delete {}",
                         file);
             }
         } finally {
-            imagesBeingPurged.remove(opList);
-            synchronized (imagePurgeLock) {
-                imagePurgeLock.notifyAll();
-            }
+            release(imagesBeingPurged, opList, latch);
         }
     }
 
@@ -827,6 +1122,7 @@ class FilesystemCache implements SourceCache, DerivativeCache {
             LOGGER.debug("purgeAsync(): deleting stale file: {}", path);
             try {
                 Files.deleteIfExists(path);
+                indexRemove(path);
             } catch (IOException e) {
                 LOGGER.warn("purgeAsync(): unable to delete {}", path);
             }
@@ -834,8 +1130,13 @@ class FilesystemCache implements SourceCache, DerivativeCache {
     }
 
     /**
-     * <p>Crawls the image directory, deleting all expired files within it
-     * (temporary or not), and then does the same in the info directory.</p>
+     * <p>Crawls the source image, derivative image, and info directories,
+     * deleting all expired files within them (temporary or not).</p>
+     *
+     * <p>If the {@link #index()} is {@link
+     * FilesystemCacheIndex#isAuthoritative() authoritative}, the files that
+     * have not been accessed within the time-to-live are looked up in it
+     * instead, and temp files are left to {@link #cleanUp()}.</p>
      *
      * <p>Will do nothing and return immediately if a global purge is in
      * progress in another thread.</p>
@@ -847,36 +1148,83 @@ class FilesystemCache implements SourceCache, DerivativeCache {
                     "Aborting.");
             return;
         }
-        synchronized (imagePurgeLock) {
-            while (!imagesBeingPurged.isEmpty()) {
-                try {
-                    LOGGER.debug("purgeInvalid(): waiting...");
-                    imagePurgeLock.wait();
-                } catch (InterruptedException e) {
-                    break;
-                }
-            }
+        try {
+            LOGGER.debug("purgeInvalid(): waiting for purges in progress...");
+            awaitAll(imagesBeingPurged);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
 
         try {
             isGlobalPurgeInProgress.set(true);
 
+            final FilesystemCacheIndex index = authoritativeIndex();
+            if (index != null) {
+                purgeInvalid(index);
+                return;
+            }
+
             final ExpiredFileVisitor visitor = new ExpiredFileVisitor();
 
             LOGGER.info("purgeInvalid(): purging...");
-            Files.walkFileTree(rootPath(),
-                    EnumSet.of(FileVisitOption.FOLLOW_LINKS),
-                    Integer.MAX_VALUE,
-                    visitor);
+            for (Path path : rootContentPaths()) {
+                if (Files.exists(path)) {
+                    Files.walkFileTree(path,
+                            EnumSet.of(FileVisitOption.FOLLOW_LINKS),
+                            Integer.MAX_VALUE,
+                            visitor);
+                }
+            }
             LOGGER.info("purgeInvalid(): purged {} item(s) totaling {} bytes",
                     visitor.getDeletedFileCount(),
                     visitor.getDeletedFileSize());
         } finally {
             isGlobalPurgeInProgress.set(false);
-            synchronized (imagePurgeLock) {
-                imagePurgeLock.notifyAll();
+        }
+    }
+
+    /**
+     * Deletes all expired files in the given index. As the index is ordered
+     * by last-accessed time, only the files that have not been accessed
+     * within the shorter of the two time-to-lives are considered.
+     */
+    private void purgeInvalid(FilesystemCacheIndex index) {
+        final Configuration config = Configuration.getInstance();
+        long minTtlSec = Long.MAX_VALUE;
+        for (Key key : new Key[] { Key.SOURCE_CACHE_TTL,
+                Key.DERIVATIVE_CACHE_TTL }) {
+            final long ttlSec = config.getLong(key, 0);
+            if (ttlSec > 0) {
+                minTtlSec = Math.min(minTtlSec, ttlSec);
+            }
+        }
+        if (minTtlSec == Long.MAX_VALUE) {
+            LOGGER.info("purgeInvalid(): nothing expires");
+            return;
+        }
+
+        LOGGER.info("purgeInvalid(): purging using the index...");
+        final Map<Path, Long> candidates = index.getLeastRecentlyAccessed(
+                System.currentTimeMillis() - 1000 * minTtlSec);
+        long deletedFileCount = 0, deletedFileSize = 0;
+        for (Map.Entry<Path, Long> candidate : candidates.entrySet()) {
+            final Path file = candidate.getKey();
+            try {
+                if (isExpired(file)) {
+                    if (Files.deleteIfExists(file)) {
+                        deletedFileCount++;
+                        deletedFileSize += candidate.getValue();
+                    }
+                    index.remove(file);
+                }
+            } catch (NoSuchFileException e) {
+                index.remove(file);
+            } catch (IOException e) {
+                LOGGER.warn("purgeInvalid(): {}", e.getMessage());
             }
         }
+        LOGGER.info("purgeInvalid(): purged {} item(s) totaling {} bytes",
+                deletedFileCount, deletedFileSize);
     }
 
     @Override
@@ -907,7 +1255,12 @@ class FilesystemCache implements SourceCache, DerivativeCache {
             }
 
             LOGGER.debug("put(): moving {} to {}", tempFile, destFile);
+            final long size = Files.size(tempFile);
             Files.move(tempFile, destFile);
+            final FilesystemCacheIndex index = index();
+            if (index != null) {
+                index.add(destFile, size);
+            }
         } catch (FileAlreadyExistsException e) {
             // When this method runs concurrently with an equal Identifier
             // argument, all of the other invocations of Files.move() will
@@ -938,4 +1291,16 @@ class FilesystemCache implements SourceCache, DerivativeCache {
         minCleanableAge = age;
     }
 
+    /**
+     * Closes the {@link #index()}, if there is one, so that it can be
+     * restored without crawling the cache directory when it is next used.
+     */
+    @Override
+    public void shutdown() {
+        final FilesystemCacheIndex index = indexes.remove(rootPath());
+        if (index != null) {
+            index.close();
+        }
+    }
+
 }
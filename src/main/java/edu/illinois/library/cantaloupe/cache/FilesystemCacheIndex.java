@@ -0,0 +1,1070 @@
+package edu.illinois.library.cantaloupe.cache;
+
+import edu.illinois.library.cantaloupe.async.ThreadPool;
+import edu.illinois.library.cantaloupe.cache.FilesystemCacheIndexLog.Record;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.channels.FileLock;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>In-memory index of the files in a {@link FilesystemCache} directory,
+ * recording the size and last-accessed time of each, which enables the cache
+ * to be kept within a maximum size by evicting the least recently used files
+ * first.</p>
+ *
+ * <p>Last-accessed times are recorded by the cache as files are accessed,
+ * rather than read from the filesystem, so they are accurate even on
+ * filesystems mounted with {@literal noatime}. As accesses are by far the
+ * most frequent change, {@link #access(Path)} only puts the time in a
+ * concurrent map, without locking the index. Pending accesses are applied
+ * to the index in batches when it is next changed or queried, or when enough
+ * of them have accumulated.</p>
+ *
+ * <h1>Persistence</h1>
+ *
+ * <p>If the index has a {@link FilesystemCacheIndexLog log}, every change is
+ * appended to it (outside of the lock that guards the index itself), and
+ * when the index is {@link #open() opened}, it is
+ * restored from the log rather than by crawling the cache directory. Only if
+ * the log doesn't exist, or was not {@link #close() closed} cleanly, is the
+ * directory crawled, using the last-accessed times reported by the
+ * filesystem (see {@link FilesystemCache#getLastAccessedTime(Path)}) for any
+ * files that the log doesn't know about. The log is {@link #compact()
+ * compacted} in the background when it has accumulated enough superseded
+ * records.</p>
+ *
+ * <p>An open index with a log holds an exclusive lock on it, and is then
+ * {@link #isAuthoritative() authoritative}: no other process can be writing
+ * to the same directory through an index of its own, so the index knows
+ * about every file in it, and can answer queries such as {@link
+ * #getFiles(Path, String)} and {@link #getLeastRecentlyAccessed(long)}
+ * without the directory having to be crawled.</p>
+ *
+ * <p>Only complete files are indexed; temp files are not.</p>
+ *
+ * @since 4.0
+ */
+class FilesystemCacheIndex {
+
+    private static class Entry {
+
+        private long lastAccessed;
+        private final long size;
+
+        Entry(long size, long lastAccessed) {
+            this.size = size;
+            this.lastAccessed = lastAccessed;
+        }
+
+    }
+
+    private static final Logger LOGGER =
+            LoggerFactory.getLogger(FilesystemCacheIndex.class);
+
+    /**
+     * The log is compacted when it contains more than this many records and
+     * more than twice as many records as there are entries.
+     */
+    private static final long MIN_COMPACTION_RECORD_COUNT = 100000;
+
+    /**
+     * Pending accesses are applied asynchronously when there are at least
+     * this many of them.
+     */
+    private static final int MAX_PENDING_ACCESSES = 1000;
+
+    /**
+     * Entries in order of last access, least recent first, keyed by path
+     * relative to {@link #rootPath}. Access order is maintained manually (by
+     * removing and re-inserting) rather than by {@link LinkedHashMap}'s
+     * access-order mode, so that entries can be looked up without counting
+     * as an access.
+     */
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>();
+
+    /**
+     * Keys of {@link #entries} in lexical order, enabling them to be queried
+     * by prefix.
+     */
+    private final TreeSet<String> sortedKeys = new TreeSet<>();
+
+    /**
+     * Last-accessed times, keyed like {@link #entries}, that have been
+     * recorded by {@link #access(Path)} but not yet {@link
+     * #applyPendingAccesses() applied}.
+     */
+    private final ConcurrentMap<String, Long> pendingAccesses =
+            new ConcurrentHashMap<>();
+
+    /**
+     * Serializes writes to {@link #appender}, which are done outside of the
+     * instance's monitor, with the opening, replacement, and closing of it.
+     * It must be acquired before the monitor, never while holding it.
+     */
+    private final Object writeLock = new Object();
+
+    private final AtomicBoolean isApplyingAccesses = new AtomicBoolean(false);
+
+    private final AtomicBoolean isCompacting = new AtomicBoolean(false);
+
+    private final AtomicBoolean isEvicting = new AtomicBoolean(false);
+
+    private final AtomicLong evictedByteCount = new AtomicLong();
+
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    private long byteSize = 0;
+
+    private volatile long maxByteSize;
+
+    private final Path rootPath;
+
+    /**
+     * Log to which changes are appended. Set to {@literal null} if it can't
+     * be used.
+     */
+    private FilesystemCacheIndexLog log;
+
+    /**
+     * Writer appending to {@link #log}, which is opened by {@link #open()}.
+     */
+    private FilesystemCacheIndexLog.Writer appender;
+
+    /**
+     * Records of changes made before {@link #appender} was opened, which
+     * will be appended when it is.
+     */
+    private List<Record> pendingRecords = new ArrayList<>();
+
+    /**
+     * Records of changes made since {@link #appender} was opened, in order,
+     * which have yet to be written to it by {@link #writeRecords()}.
+     */
+    private final List<Record> unwrittenRecords = new ArrayList<>();
+
+    /**
+     * Records of changes made while {@link #compact() compacting}, which
+     * will be appended to the compacted log.
+     */
+    private List<Record> compactionBacklog;
+
+    /**
+     * Number of records in the log.
+     */
+    private long recordCount;
+
+    private FileLock lock;
+
+    private volatile boolean isAuthoritative;
+
+    private boolean isClosed;
+
+    /**
+     * Keys of entries that have been removed before the index has been
+     * {@link #open() loaded} or while it was being {@link #rebuild()
+     * rebuilt}, which must not be resurrected by the results. {@literal
+     * null} otherwise.
+     */
+    private Set<String> removedWhileLoading;
+
+    private boolean isClearedWhileLoading;
+
+    /**
+     * Creates an index that is not persisted.
+     *
+     * @param rootPath    Root directory of the cache.
+     * @param maxByteSize Maximum total size of the indexed files, or
+     *                    {@literal 0} for no maximum.
+     */
+    FilesystemCacheIndex(Path rootPath, long maxByteSize) {
+        this(rootPath, maxByteSize, null);
+    }
+
+    /**
+     * @param rootPath    Root directory of the cache.
+     * @param maxByteSize Maximum total size of the indexed files, or
+     *                    {@literal 0} for no maximum.
+     * @param log         Log in which to persist the index. Its directory
+     *                    will be excluded from crawls of the cache directory.
+     *                    May be {@literal null}.
+     */
+    FilesystemCacheIndex(Path rootPath, long maxByteSize,
+                         FilesystemCacheIndexLog log) {
+        this.rootPath = rootPath;
+        this.maxByteSize = maxByteSize;
+        this.log = log;
+        if (log != null) {
+            beginLoading();
+        }
+    }
+
+    /**
+     * Records an access of the given file, if it is indexed, without locking
+     * the index. The access is applied to the index later.
+     */
+    void access(Path file) {
+        pendingAccesses.put(key(file), System.currentTimeMillis());
+        if (pendingAccesses.size() >= MAX_PENDING_ACCESSES) {
+            applyPendingAccessesAsync();
+        }
+    }
+
+    /**
+     * Adds or replaces an entry for the given file, which has just been
+     * written, and then {@link #evictAsync() evicts} other files if the
+     * maximum size has been exceeded.
+     */
+    void add(Path file, long size) {
+        synchronized (this) {
+            // Earlier accesses of other files have to be ordered before this.
+            applyPendingAccesses();
+            final String key = key(file);
+            final Entry entry = new Entry(size, System.currentTimeMillis());
+            putEntry(key, entry);
+            append(Record.add(key, size, entry.lastAccessed));
+        }
+        writeRecords();
+        if (isFull()) {
+            evictAsync();
+        }
+    }
+
+    /**
+     * Queues the given record to be appended to the log by {@link
+     * #writeRecords()}, or, if the log hasn't been opened yet, when it is.
+     * Must be called while synchronized on the instance.
+     */
+    private void append(Record record) {
+        if (log == null || isClosed) {
+            return;
+        }
+        if (compactionBacklog != null) {
+            compactionBacklog.add(record);
+        }
+        if (appender != null) {
+            unwrittenRecords.add(record);
+        } else if (pendingRecords != null) {
+            pendingRecords.add(record);
+        }
+    }
+
+    /**
+     * Moves the entries of all files in {@link #pendingAccesses} to the end
+     * of {@link #entries}, in order of access, and records the accesses in
+     * the log. Must be called while synchronized on the instance.
+     */
+    private void applyPendingAccesses() {
+        if (pendingAccesses.isEmpty()) {
+            return;
+        }
+        final List<Map.Entry<String, Long>> accesses =
+                new ArrayList<>(pendingAccesses.size());
+        final Iterator<Map.Entry<String, Long>> it =
+                pendingAccesses.entrySet().iterator();
+        while (it.hasNext()) {
+            final Map.Entry<String, Long> access = it.next();
+            final String key = access.getKey();
+            final Long time = access.getValue();
+            // If the file has been accessed again in the meantime, the newer
+            // access stays pending.
+            pendingAccesses.remove(key, time);
+            accesses.add(new AbstractMap.SimpleImmutableEntry<>(key, time));
+        }
+        accesses.sort(Comparator.comparingLong(Map.Entry::getValue));
+
+        for (Map.Entry<String, Long> access : accesses) {
+            final String key = access.getKey();
+            final Entry entry = entries.get(key);
+            // Accesses of files that have since been replaced don't count.
+            if (entry != null && access.getValue() >= entry.lastAccessed) {
+                entries.remove(key);
+                entry.lastAccessed = access.getValue();
+                entries.put(key, entry);
+                append(Record.access(key, entry.lastAccessed));
+            }
+        }
+    }
+
+    /**
+     * Invokes {@link #applyPendingAccesses()} in another thread, unless it is
+     * already running, and then {@link #writeRecords() writes} the records
+     * of the accesses to the log.
+     */
+    private void applyPendingAccessesAsync() {
+        if (isApplyingAccesses.compareAndSet(false, true)) {
+            try {
+                ThreadPool.getInstance().submit(() -> {
+                    try {
+                        synchronized (this) {
+                            applyPendingAccesses();
+                        }
+                        writeRecords();
+                    } finally {
+                        isApplyingAccesses.set(false);
+                    }
+                }, ThreadPool.Priority.LOW);
+            } catch (RejectedExecutionException e) {
+                isApplyingAccesses.set(false);
+                LOGGER.error("applyPendingAccessesAsync(): {}",
+                        e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Writes all {@link #unwrittenRecords} to the log, without holding the
+     * instance's monitor while doing so, and then {@link #compactAsync()
+     * compacts} it if it has accumulated enough superseded records. Must not
+     * be called while synchronized on the instance.
+     */
+    private void writeRecords() {
+        synchronized (writeLock) {
+            final List<Record> records;
+            final FilesystemCacheIndexLog.Writer appender;
+            synchronized (this) {
+                if (unwrittenRecords.isEmpty()) {
+                    return;
+                }
+                records = new ArrayList<>(unwrittenRecords);
+                unwrittenRecords.clear();
+                // This can only be replaced or closed while holding
+                // writeLock.
+                appender = this.appender;
+            }
+            try {
+                for (Record record : records) {
+                    appender.write(record);
+                }
+            } catch (IOException e) {
+                synchronized (this) {
+                    if (this.appender == appender) {
+                        LOGGER.error("writeRecords(): failed to write to " +
+                                "{}; the index will no longer be " +
+                                "persisted: {}",
+                                log.getPath(), e.getMessage());
+                        abandonLog();
+                    }
+                }
+                return;
+            }
+            final boolean isCompactable;
+            synchronized (this) {
+                recordCount += records.size();
+                isCompactable = recordCount > MIN_COMPACTION_RECORD_COUNT &&
+                        recordCount > 2L * entries.size();
+            }
+            if (isCompactable) {
+                compactAsync();
+            }
+        }
+    }
+
+    /**
+     * Stops persisting the index, leaving the log in an unclean state so
+     * that the cache directory will be crawled when it is next opened. Must
+     * be called while synchronized on the instance, and also on {@link
+     * #writeLock} if the log has been opened.
+     */
+    private void abandonLog() {
+        isAuthoritative = false;
+        if (appender != null) {
+            try {
+                appender.close();
+            } catch (IOException e) {
+                LOGGER.warn("abandonLog(): {}", e.getMessage());
+            }
+            appender = null;
+        }
+        releaseLock();
+        log = null;
+        pendingRecords = null;
+        unwrittenRecords.clear();
+        compactionBacklog = null;
+    }
+
+    /**
+     * Starts tracking removals, unless they are already being tracked, in
+     * which case the ones made since then are still relevant.
+     */
+    private void beginLoading() {
+        if (removedWhileLoading == null) {
+            removedWhileLoading = new HashSet<>();
+            isClearedWhileLoading = false;
+        }
+    }
+
+    void clear() {
+        synchronized (this) {
+            pendingAccesses.clear();
+            entries.clear();
+            sortedKeys.clear();
+            byteSize = 0;
+            if (removedWhileLoading != null) {
+                isClearedWhileLoading = true;
+            }
+            append(Record.clear());
+        }
+        writeRecords();
+    }
+
+    /**
+     * Stops the index, appending a {@link Record.Type#CLOSE} record to the
+     * log, if it has been opened, so that it will be restored from the log
+     * when it is opened again. It may not be used afterwards.
+     */
+    void close() {
+        synchronized (writeLock) {
+            synchronized (this) {
+                doClose();
+            }
+        }
+    }
+
+    /**
+     * Must be called while synchronized on {@link #writeLock} and the
+     * instance.
+     */
+    private void doClose() {
+        if (isClosed) {
+            return;
+        }
+        applyPendingAccesses();
+        if (appender != null) {
+            try {
+                for (Record record : unwrittenRecords) {
+                    appender.write(record);
+                }
+                unwrittenRecords.clear();
+                appender.write(Record.close());
+                appender.commit();
+                LOGGER.info("close(): closed the index of {} ({} files " +
+                        "totaling {} bytes)", rootPath, size(), byteSize);
+            } catch (IOException e) {
+                LOGGER.error("close(): failed to write to {}: {}",
+                        log.getPath(), e.getMessage());
+            } finally {
+                try {
+                    appender.close();
+                } catch (IOException e) {
+                    LOGGER.warn("close(): {}", e.getMessage());
+                }
+                appender = null;
+            }
+        }
+        releaseLock();
+        isAuthoritative = false;
+        isClosed = true;
+    }
+
+    /**
+     * Stops the index without closing its log, so that the cache directory
+     * will be crawled when it is next opened. It may not be used
+     * afterwards.
+     */
+    void discard() {
+        synchronized (writeLock) {
+            synchronized (this) {
+                abandonLog();
+                isClosed = true;
+            }
+        }
+    }
+
+    /**
+     * Rewrites the log from the current contents of the index, discarding
+     * superseded records, and then starts appending to the new log. Changes
+     * made while this is running are appended to the new log as well.
+     */
+    void compact() throws IOException {
+        final List<Record> snapshot;
+        final FilesystemCacheIndexLog log;
+        synchronized (this) {
+            log = this.log;
+            if (log == null || isClosed) {
+                return;
+            }
+            applyPendingAccesses();
+            snapshot = new ArrayList<>(entries.size());
+            for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                snapshot.add(Record.add(e.getKey(), e.getValue().size,
+                        e.getValue().lastAccessed));
+            }
+            // Any pending records are reflected in the snapshot.
+            pendingRecords = null;
+            compactionBacklog = new ArrayList<>();
+        }
+        try (FilesystemCacheIndexLog.Writer compactor = log.newCompactor()) {
+            for (Record record : snapshot) {
+                compactor.write(record);
+            }
+            synchronized (writeLock) {
+                synchronized (this) {
+                    if (this.log != log || isClosed) {
+                        return;
+                    }
+                    for (Record record : compactionBacklog) {
+                        compactor.write(record);
+                    }
+                    compactor.write(Record.open());
+                    compactor.commit();
+                    recordCount = snapshot.size() +
+                            compactionBacklog.size() + 1;
+                    // The backlog includes all of these.
+                    unwrittenRecords.clear();
+                    if (appender != null) {
+                        appender.close();
+                    }
+                    appender = log.newAppender();
+                }
+            }
+            LOGGER.info("compact(): compacted {} to {} records",
+                    log.getPath(), snapshot.size());
+        } catch (IOException e) {
+            synchronized (this) {
+                if (appender == null && this.log == log) {
+                    // The log can't be appended to without the snapshot.
+                    abandonLog();
+                }
+            }
+            throw e;
+        } finally {
+            synchronized (this) {
+                compactionBacklog = null;
+            }
+        }
+    }
+
+    /**
+     * Invokes {@link #compact()} in another thread, unless it is already
+     * running.
+     */
+    private void compactAsync() {
+        if (isCompacting.compareAndSet(false, true)) {
+            try {
+                ThreadPool.getInstance().submit(() -> {
+                    try {
+                        compact();
+                    } catch (IOException e) {
+                        LOGGER.error("compactAsync(): {}", e.getMessage());
+                    } finally {
+                        isCompacting.set(false);
+                    }
+                }, ThreadPool.Priority.LOW);
+            } catch (RejectedExecutionException e) {
+                isCompacting.set(false);
+                LOGGER.error("compactAsync(): {}", e.getMessage());
+            }
+        }
+    }
+
+    private void endLoading() {
+        removedWhileLoading = null;
+        isClearedWhileLoading = false;
+    }
+
+    /**
+     * Deletes the least recently used files until the total size is within
+     * the maximum size.
+     *
+     * @return Number of deleted files.
+     */
+    int evict() {
+        int count = 0;
+        long size = 0;
+        synchronized (this) {
+            applyPendingAccesses();
+        }
+        while (true) {
+            final Path file;
+            final Entry entry;
+            synchronized (this) {
+                if (!isFull()) {
+                    break;
+                }
+                final String key = entries.keySet().iterator().next();
+                entry = removeEntry(key);
+                append(Record.remove(key));
+                file = rootPath.resolve(key);
+            }
+            try {
+                LOGGER.debug("evict(): deleting {}", file);
+                if (Files.deleteIfExists(file)) {
+                    count++;
+                    size += entry.size;
+                }
+            } catch (IOException e) {
+                LOGGER.warn("evict(): unable to delete {}: {}",
+                        file, e.getMessage());
+            }
+            writeRecords();
+        }
+        writeRecords();
+        if (count > 0) {
+            evictionCount.addAndGet(count);
+            evictedByteCount.addAndGet(size);
+            LOGGER.info("evict(): evicted {} files totaling {} bytes",
+                    count, size);
+        }
+        return count;
+    }
+
+    /**
+     * Invokes {@link #evict()} in another thread, unless it is already
+     * running.
+     */
+    void evictAsync() {
+        if (isEvicting.compareAndSet(false, true)) {
+            try {
+                ThreadPool.getInstance().submit(() -> {
+                    try {
+                        evict();
+                    } finally {
+                        isEvicting.set(false);
+                    }
+                }, ThreadPool.Priority.LOW);
+            } catch (RejectedExecutionException e) {
+                isEvicting.set(false);
+                LOGGER.error("evictAsync(): {}", e.getMessage());
+            }
+        }
+    }
+
+    synchronized long getByteSize() {
+        return byteSize;
+    }
+
+    /**
+     * @return Total size of the files that have been {@link #evict()
+     *         evicted}.
+     */
+    long getEvictedByteCount() {
+        return evictedByteCount.get();
+    }
+
+    /**
+     * @return Number of files that have been {@link #evict() evicted}.
+     */
+    long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    /**
+     * @param dir        Directory containing the files.
+     * @param namePrefix Filename prefix.
+     * @return           All indexed files in the given directory whose names
+     *                   start with the given prefix.
+     */
+    synchronized Set<Path> getFiles(Path dir, String namePrefix) {
+        final String prefix = key(dir.resolve(namePrefix));
+        final Set<Path> files = new LinkedHashSet<>();
+        for (String key : sortedKeys.subSet(prefix, true,
+                prefix + Character.MAX_VALUE, false)) {
+            files.add(rootPath.resolve(key));
+        }
+        return files;
+    }
+
+    /**
+     * @return Last-accessed time of the given file in epoch milliseconds, or
+     *         {@literal 0} if it is not indexed. This does not count as an
+     *         access.
+     */
+    synchronized long getLastAccessed(Path file) {
+        applyPendingAccesses();
+        final Entry entry = entries.get(key(file));
+        return (entry != null) ? entry.lastAccessed : 0;
+    }
+
+    /**
+     * @param before Epoch milliseconds.
+     * @return       Sizes of all indexed files last accessed before the given
+     *               time, by path, least recently accessed first.
+     */
+    synchronized Map<Path, Long> getLeastRecentlyAccessed(long before) {
+        applyPendingAccesses();
+        final Map<Path, Long> files = new LinkedHashMap<>();
+        for (Map.Entry<String, Entry> e : entries.entrySet()) {
+            if (e.getValue().lastAccessed >= before) {
+                break;
+            }
+            files.put(rootPath.resolve(e.getKey()), e.getValue().size);
+        }
+        return files;
+    }
+
+    long getMaxByteSize() {
+        return maxByteSize;
+    }
+
+    /**
+     * @return Whether the index has been {@link #open() opened} with
+     *         exclusive use of its log, in which case it contains every file
+     *         in the cache, and can be queried instead of the filesystem.
+     */
+    boolean isAuthoritative() {
+        return isAuthoritative;
+    }
+
+    private synchronized boolean isFull() {
+        return maxByteSize > 0 && byteSize > maxByteSize;
+    }
+
+    private String key(Path file) {
+        return rootPath.relativize(file).toString();
+    }
+
+    /**
+     * Reads the log, and merges its entries into the index.
+     *
+     * @return Whether the log was closed cleanly.
+     */
+    private boolean load() throws IOException {
+        final LinkedHashMap<String, Entry> loaded = new LinkedHashMap<>();
+        final boolean isClean;
+        synchronized (this) {
+            beginLoading();
+        }
+        try {
+            isClean = log.read(record -> {
+                // Nothing else touches this until the appender is opened.
+                recordCount++;
+                final String key = record.getKey();
+                switch (record.getType()) {
+                    case ADD:
+                        loaded.remove(key);
+                        loaded.put(key, new Entry(record.getSize(),
+                                record.getLastAccessed()));
+                        break;
+                    case ACCESS:
+                        final Entry entry = loaded.remove(key);
+                        if (entry != null) {
+                            entry.lastAccessed = record.getLastAccessed();
+                            loaded.put(key, entry);
+                        }
+                        break;
+                    case REMOVE:
+                        loaded.remove(key);
+                        break;
+                    case CLEAR:
+                        loaded.clear();
+                        break;
+                }
+            });
+            synchronized (this) {
+                if (!isClearedWhileLoading) {
+                    // The loaded entries are older than the ones that were
+                    // added while loading, so they go first.
+                    final LinkedHashMap<String, Entry> current =
+                            new LinkedHashMap<>(entries);
+                    entries.clear();
+                    sortedKeys.clear();
+                    byteSize = 0;
+                    for (Map.Entry<String, Entry> e : loaded.entrySet()) {
+                        if (!current.containsKey(e.getKey()) &&
+                                !removedWhileLoading.contains(e.getKey())) {
+                            putEntry(e.getKey(), e.getValue());
+                        }
+                    }
+                    for (Map.Entry<String, Entry> e : current.entrySet()) {
+                        putEntry(e.getKey(), e.getValue());
+                    }
+                }
+            }
+        } finally {
+            synchronized (this) {
+                endLoading();
+            }
+        }
+        LOGGER.info("load(): loaded {} files totaling {} bytes from {}",
+                size(), getByteSize(), log.getPath());
+        return isClean;
+    }
+
+    /**
+     * <p>Populates the index and starts persisting it. If it has a log that
+     * was closed cleanly, it is restored from it. Otherwise, it is {@link
+     * #rebuild() rebuilt} by crawling the cache directory, and the log is
+     * written from scratch. Then files are {@link #evict() evicted} if the
+     * maximum size has been exceeded.</p>
+     *
+     * <p>The index can be used while this is running, but it won't be
+     * {@link #isAuthoritative() authoritative} until it returns.</p>
+     */
+    void open() throws IOException {
+        final FilesystemCacheIndexLog log;
+        synchronized (this) {
+            log = this.log;
+        }
+        if (log == null) {
+            rebuild();
+            return;
+        }
+        final FileLock lock = log.tryLock();
+        synchronized (this) {
+            if (isClosed) {
+                if (lock != null) {
+                    lock.channel().close();
+                }
+                return;
+            }
+            if (lock == null) {
+                LOGGER.warn("open(): {} is in use by another process; this " +
+                        "index will not be persisted", log.getPath());
+                abandonLog();
+            } else {
+                this.lock = lock;
+            }
+        }
+        if (lock == null) {
+            rebuild();
+            return;
+        }
+
+        boolean isClean = false;
+        if (log.exists()) {
+            isClean = load();
+        }
+        if (isClean) {
+            synchronized (this) {
+                if (this.log != log || isClosed) {
+                    return;
+                }
+                try {
+                    appender = log.newAppender();
+                    appender.write(Record.open());
+                    for (Record record : pendingRecords) {
+                        appender.write(record);
+                    }
+                    appender.commit();
+                    recordCount += 1 + pendingRecords.size();
+                } catch (IOException e) {
+                    abandonLog();
+                    throw e;
+                }
+                pendingRecords = null;
+                isAuthoritative = true;
+            }
+            evict();
+        } else {
+            LOGGER.info("open(): {} was not closed cleanly; crawling {}",
+                    log.getPath(), rootPath);
+            rebuild();
+            compact();
+            synchronized (this) {
+                isAuthoritative = (this.log == log && !isClosed);
+            }
+        }
+    }
+
+    /**
+     * Adds the given entry, replacing any existing one with the same key.
+     * Must be called while synchronized on the instance.
+     */
+    private void putEntry(String key, Entry entry) {
+        final Entry oldEntry = entries.remove(key);
+        if (oldEntry != null) {
+            byteSize -= oldEntry.size;
+        }
+        entries.put(key, entry);
+        sortedKeys.add(key);
+        byteSize += entry.size;
+    }
+
+    /**
+     * <p>Crawls the cache directory and indexes all of the files in it.
+     * Files that are already indexed keep the later of their indexed and
+     * filesystem last-accessed times, and files that have been added while
+     * crawling are retained; all other entries are discarded. Then {@link
+     * #evict() evicts} files if the maximum size has been exceeded.</p>
+     *
+     * <p>Changes are persisted in the log, if there is one, but the log
+     * isn't read.</p>
+     */
+    void rebuild() throws IOException {
+        final long startTime = System.currentTimeMillis();
+        final Path logDir;
+        synchronized (this) {
+            logDir = (log != null) ? log.getPath().getParent() : null;
+            beginLoading();
+        }
+        try {
+            final Map<String, Entry> found = new HashMap<>();
+            try {
+                Files.walkFileTree(rootPath,
+                        EnumSet.of(FileVisitOption.FOLLOW_LINKS),
+                        Integer.MAX_VALUE,
+                        new SimpleFileVisitor<Path>() {
+                            @Override
+                            public FileVisitResult preVisitDirectory(Path dir,
+                                                                     BasicFileAttributes attrs) {
+                                return dir.equals(logDir) ?
+                                        FileVisitResult.SKIP_SUBTREE :
+                                        FileVisitResult.CONTINUE;
+                            }
+
+                            @Override
+                            public FileVisitResult visitFile(Path file,
+                                                             BasicFileAttributes attrs)
+                                    throws IOException {
+                                if (attrs.isRegularFile() &&
+                                        !FilesystemCache.isTempFile(file)) {
+                                    final long lastAccessed = FilesystemCache.
+                                            getLastAccessedTime(file).toMillis();
+                                    found.put(key(file),
+                                            new Entry(attrs.size(), lastAccessed));
+                                }
+                                return FileVisitResult.CONTINUE;
+                            }
+
+                            @Override
+                            public FileVisitResult visitFileFailed(Path file,
+                                                                   IOException e) {
+                                return FileVisitResult.CONTINUE;
+                            }
+                        });
+            } catch (NoSuchFileException e) {
+                LOGGER.debug("rebuild(): {} does not exist", rootPath);
+            }
+
+            synchronized (this) {
+                applyPendingAccesses();
+                if (isClearedWhileLoading) {
+                    // Only entries added since the clear remain.
+                    found.clear();
+                }
+                final List<Map.Entry<String, Entry>> merged = new ArrayList<>();
+                for (Map.Entry<String, Entry> e : found.entrySet()) {
+                    if (removedWhileLoading.contains(e.getKey())) {
+                        continue;
+                    }
+                    final Entry existing = entries.get(e.getKey());
+                    if (existing != null && existing.lastAccessed >
+                            e.getValue().lastAccessed) {
+                        e.setValue(existing);
+                    }
+                    merged.add(e);
+                }
+                for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                    if (!found.containsKey(e.getKey()) &&
+                            e.getValue().lastAccessed >= startTime) {
+                        merged.add(new AbstractMap.SimpleImmutableEntry<>(e));
+                    }
+                }
+                merged.sort(Comparator.comparingLong(e -> e.getValue().lastAccessed));
+
+                final Map<String, Entry> previous = new HashMap<>(entries);
+                entries.clear();
+                sortedKeys.clear();
+                byteSize = 0;
+                for (Map.Entry<String, Entry> e : merged) {
+                    putEntry(e.getKey(), e.getValue());
+                }
+                // If the log isn't open yet, it will be compacted instead.
+                if (appender != null) {
+                    for (Map.Entry<String, Entry> e : merged) {
+                        if (previous.remove(e.getKey()) != e.getValue()) {
+                            append(Record.add(e.getKey(), e.getValue().size,
+                                    e.getValue().lastAccessed));
+                        }
+                    }
+                    for (String key : previous.keySet()) {
+                        append(Record.remove(key));
+                    }
+                }
+            }
+        } finally {
+            synchronized (this) {
+                endLoading();
+            }
+        }
+        writeRecords();
+        LOGGER.info("rebuild(): indexed {} files totaling {} bytes in {}",
+                size(), getByteSize(), rootPath);
+        evict();
+    }
+
+    /**
+     * Must be called while synchronized on the instance.
+     */
+    private void releaseLock() {
+        if (lock != null) {
+            try {
+                lock.channel().close();
+            } catch (IOException e) {
+                LOGGER.warn("releaseLock(): {}", e.getMessage());
+            }
+            lock = null;
+        }
+    }
+
+    /**
+     * Removes the entry for the given file, which has been deleted.
+     */
+    void remove(Path file) {
+        synchronized (this) {
+            final String key = key(file);
+            // If the index hasn't been loaded yet, the file may be in the
+            // log.
+            if (removeEntry(key) != null || removedWhileLoading != null) {
+                append(Record.remove(key));
+            }
+            if (removedWhileLoading != null) {
+                removedWhileLoading.add(key);
+            }
+        }
+        writeRecords();
+    }
+
+    /**
+     * Must be called while synchronized on the instance.
+     *
+     * @return Removed entry, or {@literal null} if there was none.
+     */
+    private Entry removeEntry(String key) {
+        final Entry entry = entries.remove(key);
+        if (entry != null) {
+            sortedKeys.remove(key);
+            byteSize -= entry.size;
+            if (removedWhileLoading != null) {
+                removedWhileLoading.add(key);
+            }
+        }
+        return entry;
+    }
+
+    void setMaxByteSize(long maxByteSize) {
+        this.maxByteSize = maxByteSize;
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+}
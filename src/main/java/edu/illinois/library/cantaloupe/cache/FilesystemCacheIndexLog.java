@@ -0,0 +1,429 @@
+package edu.illinois.library.cantaloupe.cache;
+
+import org.apache.commons.io.input.BoundedInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UTFDataFormatException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+
+/**
+ * <p>Append-only log file in which a {@link FilesystemCacheIndex} persists
+ * its contents.</p>
+ *
+ * <p>The file starts with {@link #MAGIC}, which is followed by any number of
+ * {@link Record}s, each followed by a CRC-32 of its bytes. Later records
+ * supersede earlier ones, so the index can be kept up to date by appending a
+ * record for each change, and restored by replaying all of them in order.
+ * The superseded records that accumulate are discarded by {@link
+ * #newCompactor() compacting} the log, i.e. rewriting it from scratch.</p>
+ *
+ * <p>When the index is closed, a {@link Record.Type#CLOSE} record is
+ * appended, and when it is opened again, an {@link Record.Type#OPEN} record
+ * is appended and synced. A log that does not end with a close record
+ * therefore belongs to an index that was not shut down cleanly, and may be
+ * missing changes that were buffered at the time.</p>
+ *
+ * @since 4.0
+ */
+class FilesystemCacheIndexLog {
+
+    /**
+     * Single change to the index.
+     */
+    static final class Record {
+
+        enum Type {
+
+            /**
+             * A file has been added or replaced.
+             */
+            ADD(1),
+
+            /**
+             * A file has been accessed.
+             */
+            ACCESS(2),
+
+            /**
+             * A file has been removed.
+             */
+            REMOVE(3),
+
+            /**
+             * All files have been removed.
+             */
+            CLEAR(4),
+
+            /**
+             * The index has been opened.
+             */
+            OPEN(5),
+
+            /**
+             * The index has been closed cleanly.
+             */
+            CLOSE(6);
+
+            private final byte code;
+
+            static Type forCode(byte code) {
+                for (Type type : values()) {
+                    if (type.code == code) {
+                        return type;
+                    }
+                }
+                return null;
+            }
+
+            Type(int code) {
+                this.code = (byte) code;
+            }
+
+        }
+
+        private final Type type;
+        private final String key;
+        private final long size;
+        private final long lastAccessed;
+
+        static Record access(String key, long lastAccessed) {
+            return new Record(Type.ACCESS, key, 0, lastAccessed);
+        }
+
+        static Record add(String key, long size, long lastAccessed) {
+            return new Record(Type.ADD, key, size, lastAccessed);
+        }
+
+        static Record clear() {
+            return new Record(Type.CLEAR, null, 0, 0);
+        }
+
+        static Record close() {
+            return new Record(Type.CLOSE, null, 0, 0);
+        }
+
+        static Record open() {
+            return new Record(Type.OPEN, null, 0, 0);
+        }
+
+        static Record remove(String key) {
+            return new Record(Type.REMOVE, key, 0, 0);
+        }
+
+        private Record(Type type, String key, long size, long lastAccessed) {
+            this.type = type;
+            this.key = key;
+            this.size = size;
+            this.lastAccessed = lastAccessed;
+        }
+
+        /**
+         * @return Path of the file relative to the cache root, or {@literal
+         *         null} for records that don't pertain to a file.
+         */
+        String getKey() {
+            return key;
+        }
+
+        long getLastAccessed() {
+            return lastAccessed;
+        }
+
+        long getSize() {
+            return size;
+        }
+
+        Type getType() {
+            return type;
+        }
+
+    }
+
+    /**
+     * Writes records to a log.
+     */
+    interface Writer extends Closeable {
+
+        /**
+         * Makes the written records durable. In the case of a compactor, the
+         * log is then atomically replaced with them; if a compactor is
+         * closed without being committed, the log is left alone.
+         */
+        void commit() throws IOException;
+
+        void write(Record record) throws IOException;
+
+    }
+
+    private static class LogWriter implements Writer {
+
+        private final FileChannel channel;
+        private final CRC32 checksum = new CRC32();
+        private final ByteArrayOutputStream recordBuffer =
+                new ByteArrayOutputStream(256);
+        private final DataOutputStream recordOutputStream =
+                new DataOutputStream(recordBuffer);
+        private final DataOutputStream outputStream;
+        private final Path path;
+        private final Path tempPath;
+        private boolean isCommitted;
+
+        /**
+         * @param path     Path of the log.
+         * @param tempPath Path to write to instead of the log, which will be
+         *                 moved into place upon commit. If {@literal null},
+         *                 the log will be appended to.
+         */
+        LogWriter(Path path, Path tempPath) throws IOException {
+            this.path = path;
+            this.tempPath = tempPath;
+            if (tempPath != null) {
+                channel = FileChannel.open(tempPath,
+                        StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING,
+                        StandardOpenOption.WRITE);
+            } else {
+                channel = FileChannel.open(path,
+                        StandardOpenOption.CREATE,
+                        StandardOpenOption.APPEND);
+            }
+            outputStream = new DataOutputStream(new BufferedOutputStream(
+                    Channels.newOutputStream(channel), 65536));
+            if (channel.size() == 0) {
+                outputStream.write(MAGIC);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                channel.close();
+            } finally {
+                if (tempPath != null && !isCommitted) {
+                    Files.deleteIfExists(tempPath);
+                }
+            }
+        }
+
+        @Override
+        public void commit() throws IOException {
+            outputStream.flush();
+            channel.force(false);
+            if (tempPath != null) {
+                Files.move(tempPath, path,
+                        StandardCopyOption.ATOMIC_MOVE,
+                        StandardCopyOption.REPLACE_EXISTING);
+            }
+            isCommitted = true;
+        }
+
+        @Override
+        public void write(Record record) throws IOException {
+            recordBuffer.reset();
+            recordOutputStream.writeByte(record.getType().code);
+            switch (record.getType()) {
+                case ADD:
+                    recordOutputStream.writeUTF(record.getKey());
+                    recordOutputStream.writeLong(record.getSize());
+                    recordOutputStream.writeLong(record.getLastAccessed());
+                    break;
+                case ACCESS:
+                    recordOutputStream.writeUTF(record.getKey());
+                    recordOutputStream.writeLong(record.getLastAccessed());
+                    break;
+                case REMOVE:
+                    recordOutputStream.writeUTF(record.getKey());
+                    break;
+            }
+            checksum.reset();
+            checksum.update(recordBuffer.toByteArray(), 0, recordBuffer.size());
+            recordBuffer.writeTo(outputStream);
+            outputStream.writeInt((int) checksum.getValue());
+        }
+
+    }
+
+    private static final Logger LOGGER =
+            LoggerFactory.getLogger(FilesystemCacheIndexLog.class);
+
+    /**
+     * Identifies the log format.
+     */
+    static final byte[] MAGIC = { 'C', 'F', 'C', 'I', 1 };
+
+    private final Path path;
+
+    /**
+     * @param path Path of the log, which doesn't have to exist.
+     */
+    FilesystemCacheIndexLog(Path path) {
+        this.path = path;
+    }
+
+    boolean exists() {
+        return Files.exists(path);
+    }
+
+    Path getPath() {
+        return path;
+    }
+
+    /**
+     * @return New writer that appends to the log, creating it if it does
+     *         not exist. Must be {@link Writer#commit() committed} and
+     *         closed.
+     */
+    Writer newAppender() throws IOException {
+        Files.createDirectories(path.getParent());
+        return new LogWriter(path, null);
+    }
+
+    /**
+     * @return New writer that writes a new log that will replace the current
+     *         one when it is {@link Writer#commit() committed}. Must be
+     *         closed.
+     */
+    Writer newCompactor() throws IOException {
+        Files.createDirectories(path.getParent());
+        final Path tempPath = path.resolveSibling(
+                path.getFileName() + ".compacting");
+        return new LogWriter(path, tempPath);
+    }
+
+    /**
+     * <p>Reads the records in the log, in order, and feeds each one to the
+     * given consumer, stopping at the first one that is incomplete or fails
+     * its checksum, such as one that was being written during a crash.</p>
+     *
+     * <p>Only the bytes that are present when this method is called are
+     * read.</p>
+     *
+     * @param consumer Consumer of records.
+     * @return         Whether the log is intact and ends with a {@link
+     *                 Record.Type#CLOSE} record. If not, it may be missing
+     *                 changes.
+     */
+    boolean read(Consumer<Record> consumer) throws IOException {
+        final long size = Files.size(path);
+        final CRC32 checksum = new CRC32();
+        try (InputStream is = new BufferedInputStream(new BoundedInputStream(
+                Files.newInputStream(path), size), 65536)) {
+            final byte[] magic = new byte[MAGIC.length];
+            final DataInputStream dis = new DataInputStream(is);
+            try {
+                dis.readFully(magic);
+            } catch (EOFException e) {
+                return false;
+            }
+            if (!Arrays.equals(magic, MAGIC)) {
+                LOGGER.warn("read(): {} is not an index log", path);
+                return false;
+            }
+            final DataInputStream checkedStream = new DataInputStream(
+                    new CheckedInputStream(is, checksum));
+            long count = 0;
+            Record.Type lastType = null;
+            while (true) {
+                checksum.reset();
+                final Record record;
+                try {
+                    final int code = checkedStream.read();
+                    if (code < 0) {
+                        break;
+                    }
+                    final Record.Type type = Record.Type.forCode((byte) code);
+                    if (type == null) {
+                        LOGGER.warn("read(): {} is corrupt after {} records",
+                                path, count);
+                        return false;
+                    }
+                    switch (type) {
+                        case ADD:
+                            record = Record.add(checkedStream.readUTF(),
+                                    checkedStream.readLong(),
+                                    checkedStream.readLong());
+                            break;
+                        case ACCESS:
+                            record = Record.access(checkedStream.readUTF(),
+                                    checkedStream.readLong());
+                            break;
+                        case REMOVE:
+                            record = Record.remove(checkedStream.readUTF());
+                            break;
+                        default:
+                            record = new Record(type, null, 0, 0);
+                            break;
+                    }
+                    final int expected = (int) checksum.getValue();
+                    if (dis.readInt() != expected) {
+                        LOGGER.warn("read(): {} is corrupt after {} records",
+                                path, count);
+                        return false;
+                    }
+                } catch (EOFException e) {
+                    LOGGER.warn("read(): {} is truncated after {} records",
+                            path, count);
+                    return false;
+                } catch (UTFDataFormatException e) {
+                    LOGGER.warn("read(): {} is corrupt after {} records",
+                            path, count);
+                    return false;
+                }
+                consumer.accept(record);
+                lastType = record.getType();
+                count++;
+            }
+            return Record.Type.CLOSE.equals(lastType);
+        }
+    }
+
+    long size() throws IOException {
+        return exists() ? Files.size(path) : 0;
+    }
+
+    /**
+     * Acquires an exclusive lock on a file alongside the log, which prevents
+     * other processes from using the same log concurrently. The lock is held
+     * until its channel is closed or the JVM exits.
+     *
+     * @return Lock, or {@literal null} if it is held by another process.
+     */
+    FileLock tryLock() throws IOException {
+        Files.createDirectories(path.getParent());
+        final Path lockPath = path.resolveSibling(path.getFileName() + ".lock");
+        final FileChannel channel = FileChannel.open(lockPath,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        try {
+            final FileLock lock = channel.tryLock();
+            if (lock != null) {
+                return lock;
+            }
+        } catch (OverlappingFileLockException e) {
+            // Held by another index in this JVM.
+        }
+        channel.close();
+        return null;
+    }
+
+}
@@ -1,5 +1,11 @@
 package edu.illinois.library.cantaloupe.cache;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.CacheWriter;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Policy;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
 import com.google.protobuf.ByteString;
 import edu.illinois.library.cantaloupe.async.ThreadPool;
 import edu.illinois.library.cantaloupe.config.Configuration;
@@ -7,41 +13,43 @@ import edu.illinois.library.cantaloupe.config.ConfigurationException;
 import edu.illinois.library.cantaloupe.image.Identifier;
 import edu.illinois.library.cantaloupe.image.Info;
 import edu.illinois.library.cantaloupe.operation.OperationList;
+import edu.illinois.library.cantaloupe.util.ByteBufferInputStream;
+import edu.illinois.library.cantaloupe.util.Stopwatch;
+import edu.illinois.library.cantaloupe.util.StringUtil;
 import org.apache.commons.io.output.NullOutputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.nio.file.Files;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.ArrayList;
-import java.util.Iterator;
-import java.util.List;
+import java.util.HashMap;
 import java.util.Map;
-import java.util.Objects;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.stream.Collectors;
 
 import static edu.illinois.library.cantaloupe.config.Key.*;
 
 /**
  * <p>Heap-based LRU cache.</p>
  *
- * <p>This implementation is size-limited rather than time-limited. When the
+ * <p>This implementation is size-limited rather than time-limited. Items are
+ * stored in a <a href="https://github.com/ben-manes/caffeine">Caffeine</a>
+ * cache that is bounded by the total byte size of their data. When the
  * target size
  * ({@link edu.illinois.library.cantaloupe.config.Key#HEAPCACHE_TARGET_SIZE})
- * has been exceeded, the minimum number of least-recently-accessed items are
- * purged that will reduce it back down to this size. (The configured target
- * size may be safely changed while the application is running.)</p>
+ * would be exceeded, Caffeine evicts items in amortized constant time
+ * according to its Window TinyLFU policy, which approximates LRU while also
+ * taking access frequency into account. (The configured target size may be
+ * safely changed while the application is running; it is re-read
+ * periodically.)</p>
  *
  * <p>Because this cache is not time-limited,
  * {@link edu.illinois.library.cantaloupe.config.Key#DERIVATIVE_CACHE_TTL} does not
@@ -49,10 +57,25 @@ import static edu.illinois.library.cantaloupe.config.Key.*;
  *
  * <p>The cache supports startup/shutdown persistence, using
  * {@link edu.illinois.library.cantaloupe.config.Key#HEAPCACHE_PERSIST}. When
- * enabled, its contents will be serialized to a file on application shutdown,
- * and read back in at startup. The file is coded using
+ * enabled, its contents will be serialized to a file on application shutdown
+ * and during cache worker shifts, and read back in at startup. The file is a
+ * {@link HeapCacheLog log} of records coded using
  * <a href="https://developers.google.com/protocol-buffers/">Google Protocol
- * Buffers</a>.</p>
+ * Buffers</a>. Each dump appends only the items that have been added or
+ * removed since the previous one, and the log is compacted when it has grown
+ * too large relative to the cache. At startup, the log is read in the
+ * background while the cache serves requests.</p>
+ *
+ * <p>Image data can optionally be stored outside of the Java heap, using
+ * {@link edu.illinois.library.cantaloupe.config.Key#HEAPCACHE_OFF_HEAP}.
+ * This keeps large caches from lengthening garbage collection pauses. The
+ * memory of evicted items is released when their buffers are garbage-
+ * collected, as it may still be in use by clients that are reading them.
+ * The amount of off-heap memory available to the JVM may need to be raised
+ * using the <code>-XX:MaxDirectMemorySize=</code> VM argument.</p>
+ *
+ * <p>Hit, miss, and eviction statistics are available from
+ * {@link #getStatistics()}.</p>
  *
  * @see <a href="https://github.com/google/protobuf">Protocol Buffers</a>
  * @see <a href="https://developers.google.com/protocol-buffers/docs/javatutorial">
@@ -66,17 +89,53 @@ class HeapCache implements DerivativeCache {
      *
      * <p>Storing infos as strings makes access less efficient but map size
      * computation more efficient.</p>
+     *
+     * <p>The data is held in a {@link ByteBuffer}, which is direct (off-heap)
+     * in the case of image data when
+     * {@link edu.illinois.library.cantaloupe.config.Key#HEAPCACHE_OFF_HEAP}
+     * is enabled. The buffer is never modified after construction, so it can
+     * be read concurrently through {@link #getData()}.</p>
      */
     static class Item {
 
-        private byte[] data;
+        private final ByteBuffer data;
 
         Item(byte[] data) {
+            this(ByteBuffer.wrap(data));
+        }
+
+        /**
+         * @param data Buffer whose position is zero and whose limit is the
+         *             length of the data.
+         */
+        Item(ByteBuffer data) {
             this.data = data;
         }
 
-        byte[] getData() {
-            return data;
+        /**
+         * @return New read-only view of the data with its own position, which
+         *         is zero.
+         */
+        ByteBuffer getData() {
+            return data.asReadOnlyBuffer();
+        }
+
+        /**
+         * @return Length of the data in bytes.
+         */
+        int getLength() {
+            return data.limit();
+        }
+
+        /**
+         * @return Data decoded as a UTF-8 string.
+         */
+        String getString() {
+            return StandardCharsets.UTF_8.decode(getData()).toString();
+        }
+
+        boolean isOffHeap() {
+            return data.isDirect();
         }
 
     }
@@ -89,7 +148,6 @@ class HeapCache implements DerivativeCache {
 
         private String imageId;
         private String opList;
-        private long lastAccessedTime;
 
         /**
          * Info constructor.
@@ -98,7 +156,6 @@ class HeapCache implements DerivativeCache {
          */
         Key(String imageId) {
             this.imageId = imageId;
-            touch();
         }
 
         /**
@@ -134,10 +191,6 @@ class HeapCache implements DerivativeCache {
             return imageId;
         }
 
-        private long getLastAccessedTime() {
-            return lastAccessedTime;
-        }
-
         private String getOperationList() {
             return opList;
         }
@@ -147,23 +200,12 @@ class HeapCache implements DerivativeCache {
             return toString().hashCode();
         }
 
-        synchronized void setLastAccessedTime(long time) {
-            this.lastAccessedTime = time;
-        }
-
         @Override
         public String toString() {
             return (getOperationList() != null) ?
                     getOperationList() : getIdentifier();
         }
 
-        /**
-         * Updates the last-accessed time.
-         */
-        synchronized void touch() {
-            lastAccessedTime = System.currentTimeMillis();
-        }
-
     }
 
     /**
@@ -183,7 +225,7 @@ class HeapCache implements DerivativeCache {
         public void close() throws IOException {
             LOGGER.debug("Closing stream for {}", opList);
             Key key = itemKey(opList);
-            Item item = new Item(wrappedStream.toByteArray());
+            Item item = newImageItem(wrappedStream.toByteArray());
             cache.put(key, item);
             try {
                 super.close();
@@ -215,7 +257,8 @@ class HeapCache implements DerivativeCache {
     }
 
     /**
-     * Periodically purges excess contents from the cache.
+     * Periodically applies the target size from the configuration to the
+     * cache.
      */
     private class Worker implements Runnable {
 
@@ -229,8 +272,8 @@ class HeapCache implements DerivativeCache {
                 if (workerShouldWork.get()) {
                     try {
                         purgeExcess();
-                        logger.debug("Cache size: {} items ({} bytes)",
-                                size(), getByteSize());
+                        logger.debug("Cache size: {} items ({} bytes); {}",
+                                size(), getByteSize(), cache.stats());
                         Thread.sleep(INTERVAL_SECONDS * 1000);
                     } catch (ConfigurationException e) {
                         logger.error("run(): {}", e.getMessage());
@@ -249,16 +292,181 @@ class HeapCache implements DerivativeCache {
     private static final Logger LOGGER = LoggerFactory.
             getLogger(HeapCache.class);
 
-    private final ConcurrentMap<Key, Item> cache = new ConcurrentHashMap<>();
+    /**
+     * The persistent store is compacted when its size exceeds this many
+     * times the size of the cache, plus {@link #COMPACTION_MIN_EXCESS}.
+     */
+    private static final int COMPACTION_RATIO = 2;
+
+    private static final long COMPACTION_MIN_EXCESS = 1024 * 1024 * 16;
+
+    /**
+     * Maximum size of {@link #unpersistedChanges}, beyond which it is cleared
+     * and the persistent store is compacted instead of appended to.
+     */
+    private static final int MAX_UNPERSISTED_CHANGES = 1000000;
+
+    /**
+     * Value in {@link #unpersistedChanges} indicating that an item has been
+     * removed.
+     */
+    private static final Item TOMBSTONE = new Item(new byte[0]);
+
+    private final Cache<Key, Item> cache;
     private final AtomicBoolean isDirty = new AtomicBoolean(false);
+    private final AtomicBoolean isLoading = new AtomicBoolean(false);
+
+    /**
+     * Set by {@link #purge()} to stop an in-progress load from adding the
+     * rest of the persisted items.
+     */
+    private volatile boolean isLoadCancelled = false;
+
+    /**
+     * Identifiers purged by {@link #purge(Identifier)} during an in-progress
+     * load, whose persisted items should not be loaded.
+     */
+    private final Set<String> purgedIdentifiers =
+            ConcurrentHashMap.newKeySet();
     private final AtomicBoolean workerShouldWork = new AtomicBoolean(true);
 
+    /**
+     * Items that have been added to or removed from the cache since the last
+     * dump, which is the state that the next dump will append to the
+     * persistent store. Removed items have a value of {@link #TOMBSTONE}.
+     * Changes are only tracked when persistence is enabled.
+     */
+    private final Map<Key, Item> unpersistedChanges = new ConcurrentHashMap<>();
+
+    /**
+     * Whether the next dump must rewrite the persistent store from scratch,
+     * because it may be missing changes that have not been tracked in
+     * {@link #unpersistedChanges}, or it can't be appended to.
+     */
+    private volatile boolean isCompactionNeeded = true;
+
     private final Object dumpLock = new Object();
 
+    HeapCache() {
+        long targetSize;
+        try {
+            targetSize = getTargetByteSize();
+        } catch (ConfigurationException e) {
+            // The worker will keep logging this until it gets fixed.
+            LOGGER.error("HeapCache(): {}", e.getMessage());
+            targetSize = Long.MAX_VALUE;
+        }
+        cache = Caffeine.newBuilder()
+                .maximumWeight(targetSize)
+                .weigher((Key key, Item item) -> item.getLength())
+                .writer(new CacheWriter<Key, Item>() {
+                    @Override
+                    public void write(Key key, Item item) {
+                        trackChange(key, item);
+                    }
+
+                    @Override
+                    public void delete(Key key, Item item,
+                                       RemovalCause cause) {
+                        trackChange(key, TOMBSTONE);
+                    }
+                })
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Appends all {@link #unpersistedChanges} to the persistent store.
+     */
+    private void appendToPersistentStore(HeapCacheLog log)
+            throws IOException {
+        long count = 0;
+        try (HeapCacheLog.Writer writer = log.newAppender()) {
+            for (Key key : unpersistedChanges.keySet()) {
+                final Item item = unpersistedChanges.remove(key);
+                if (item != null) {
+                    writer.write(newRecord(key, item));
+                    count++;
+                }
+            }
+            writer.commit();
+        } catch (IOException e) {
+            // Some changes may have been consumed without having been
+            // persisted.
+            isCompactionNeeded = true;
+            throw e;
+        }
+        LOGGER.info("appendToPersistentStore(): appended {} changes", count);
+    }
+
+    /**
+     * Applies a record read from the persistent store to the cache, unless
+     * the corresponding item has changed since loading began.
+     *
+     * @param record Single-item record.
+     */
+    private void applyRecord(HeapCacheProtos.Cache record) {
+        final Key key;
+        final Item item;
+        if (record.getImageCount() > 0) {
+            final HeapCacheProtos.Image image = record.getImage(0);
+            key = new Key(image.getIdentifier(), image.getOperationList());
+            item = image.getData().isEmpty() ?
+                    null : newImageItem(image.getData());
+        } else if (record.getInfoCount() > 0) {
+            final HeapCacheProtos.Info info = record.getInfo(0);
+            key = new Key(info.getIdentifier());
+            item = info.hasJson() ?
+                    new Item(info.getJsonBytes().toByteArray()) : null;
+        } else {
+            return;
+        }
+
+        if (isLoadCancelled ||
+                purgedIdentifiers.contains(key.getIdentifier()) ||
+                unpersistedChanges.containsKey(key)) {
+            // This change is newer than anything in the persistent store.
+            return;
+        }
+        // The change is already persisted, so stop tracking it.
+        if (item != null) {
+            cache.put(key, item);
+            unpersistedChanges.remove(key, item);
+        } else {
+            cache.invalidate(key);
+            unpersistedChanges.remove(key, TOMBSTONE);
+        }
+    }
+
+    /**
+     * Rewrites the persistent store with the current contents of the cache.
+     */
+    private void compactPersistentStore(HeapCacheLog log) throws IOException {
+        isCompactionNeeded = true;
+        // Any changes from here on will be appended by the next dump, if they
+        // don't make it into this one.
+        unpersistedChanges.clear();
+
+        // Write the items in least-to-most-recently-used order, so that
+        // loadFromPersistentStore() can restore that order.
+        final Map<Key, Item> snapshot =
+                getEviction().coldest(Integer.MAX_VALUE);
+        try (HeapCacheLog.Writer writer = log.newCompactor()) {
+            for (Map.Entry<Key, Item> entry : snapshot.entrySet()) {
+                writer.write(newRecord(entry.getKey(), entry.getValue()));
+            }
+            writer.commit();
+        }
+        isCompactionNeeded = false;
+        LOGGER.info("compactPersistentStore(): wrote {} items", snapshot.size());
+    }
+
     /**
      * <p>Dumps the cache contents to the file specified by
-     * {@link edu.illinois.library.cantaloupe.config.Key#HEAPCACHE_PATHNAME},
-     * first deleting the file that already exists at that path, if any.</p>
+     * {@link edu.illinois.library.cantaloupe.config.Key#HEAPCACHE_PATHNAME}.
+     * Normally, only the changes since the last dump are appended to it, but
+     * if it has not been loaded, or has grown too large, it is rewritten
+     * from scratch instead.</p>
      *
      * <p>Concurrent calls will block.</p>
      *
@@ -270,53 +478,34 @@ class HeapCache implements DerivativeCache {
         synchronized (dumpLock) {
             final Path path = getPath();
             if (path != null) {
-                // Delete any existing file that is in the way.
-                Files.deleteIfExists(path);
-                // Create any necessary directories up to the parent.
-                Files.createDirectories(path.getParent());
-                // Write out the contents.
-                LOGGER.info("dumpToPersistentStore(): dumping to {}...", path);
-
+                final HeapCacheLog log = new HeapCacheLog(path);
                 final long size = size();
                 final long byteSize = getByteSize();
 
-                final HeapCacheProtos.Cache.Builder cacheBuilder =
-                        HeapCacheProtos.Cache.newBuilder();
-
-                // Iterate over the cache keys and add cache values one-by-one to
-                // the protobuf cache, removing them from the cache along the way
-                // to save memory.
-                final Iterator<Key> it = cache.keySet().iterator();
-                while (it.hasNext()) {
-                    final Key key = it.next();
-                    final Item item = cache.get(key);
-                    if (key.getOperationList() != null) { // it's an image
-                        final HeapCacheProtos.Image image =
-                                HeapCacheProtos.Image.newBuilder()
-                                        .setLastAccessed(key.getLastAccessedTime())
-                                        .setIdentifier(key.getIdentifier())
-                                        .setOperationList(key.getOperationList())
-                                        .setData(ByteString.copyFrom(item.getData()))
-                                        .build();
-                        cacheBuilder.addImage(image);
-                    } else { // it's an info
-                        final HeapCacheProtos.Info info =
-                                HeapCacheProtos.Info.newBuilder()
-                                        .setLastAccessed(key.getLastAccessedTime())
-                                        .setIdentifier(key.getIdentifier())
-                                        .setJson(new String(item.getData(), "UTF-8"))
-                                        .build();
-                        cacheBuilder.addInfo(info);
+                if (isLoading.get()) {
+                    // Compacting now would lose the items that haven't been
+                    // loaded yet.
+                    if (log.isLegacy()) {
+                        LOGGER.info("dumpToPersistentStore(): still " +
+                                "loading {}; skipping", path);
+                    } else {
+                        appendToPersistentStore(log);
                     }
-                    it.remove();
-                }
-
-                try (OutputStream fos = Files.newOutputStream(path)) {
-                    cacheBuilder.build().writeTo(fos);
+                } else if (isCompactionNeeded ||
+                        log.size() > COMPACTION_RATIO * byteSize +
+                                COMPACTION_MIN_EXCESS) {
+                    LOGGER.info("dumpToPersistentStore(): compacting {}...",
+                            path);
+                    compactPersistentStore(log);
+                } else {
+                    LOGGER.info("dumpToPersistentStore(): appending to {}...",
+                            path);
+                    appendToPersistentStore(log);
                 }
 
-                LOGGER.info("dumpToPersistentStore(): dumped {} items ({} bytes)",
-                        size, byteSize);
+                LOGGER.info("dumpToPersistentStore(): cache contains {} " +
+                        "items ({} bytes); {} is {} bytes",
+                        size, byteSize, path, log.size());
             } else {
                 throw new IOException("dumpToPersistentStore(): " +
                         HEAPCACHE_PATHNAME + " is not set");
@@ -325,27 +514,31 @@ class HeapCache implements DerivativeCache {
     }
 
     /**
-     * <p>Returns the item corresponding to the given key, updating its last-
-     * accessed time before returning it.</p>
+     * <p>Returns the item corresponding to the given key, recording a hit or
+     * miss in the {@link #getStatistics() statistics}.</p>
      *
-     * <p><strong>All cache map retrievals should use this method.</strong></p>
+     * <p><strong>All cache retrievals on behalf of clients should use this
+     * method.</strong></p>
      *
      * @param key Key to access.
      * @return Item corresponding to the given key. May be <code>null</code>.
      */
     private Item get(Key key) {
-        Item item = cache.get(key);
-        if (item != null) {
-            touch(item);
-        }
-        return item;
+        return cache.getIfPresent(key);
     }
 
     /**
      * @return Current size of the contents in bytes.
      */
     long getByteSize() {
-        return cache.values().stream().mapToLong(t -> t.getData().length).sum();
+        // Make sure that any pending writes and evictions are accounted for.
+        cache.cleanUp();
+        return getEviction().weightedSize().orElse(0);
+    }
+
+    private Policy.Eviction<Key, Item> getEviction() {
+        // The cache is always built with a maximum weight, so this is present.
+        return cache.policy().eviction().get();
     }
 
     @Override
@@ -355,21 +548,28 @@ class HeapCache implements DerivativeCache {
         if (item != null) {
             LOGGER.info("getImageInfo(): hit for {}", identifier);
 
-            info = Info.fromJSON(new String(item.getData(), "UTF-8"));
+            info = Info.fromJSON(item.getString());
         }
         return info;
     }
 
-    private List<Key> getKeysSortedByLastAccessedTime() {
-        List<Key> sortedKeys = new ArrayList<>(cache.keySet());
-        sortedKeys.sort((Key k1, Key k2) -> {
-            if (k1.getLastAccessedTime() == k2.getLastAccessedTime()) {
-                return 0;
-            }
-            return (k1.getLastAccessedTime() < k2.getLastAccessedTime()) ?
-                    -1 : 1;
-        });
-        return sortedKeys;
+    /**
+     * @return Map containing the cumulative numbers of hits, misses, and
+     *         evictions, the number of evicted bytes, and the current and
+     *         target sizes.
+     * @since 4.0
+     */
+    Map<String, Long> getStatistics() {
+        final CacheStats stats = cache.stats();
+        final Map<String, Long> map = new HashMap<>();
+        map.put("hits", stats.hitCount());
+        map.put("misses", stats.missCount());
+        map.put("evictions", stats.evictionCount());
+        map.put("evictedBytes", stats.evictionWeight());
+        map.put("size", size());
+        map.put("byteSize", getByteSize());
+        map.put("targetByteSize", getEviction().getMaximum());
+        return map;
     }
 
     /**
@@ -395,23 +595,7 @@ class HeapCache implements DerivativeCache {
         final Configuration config = Configuration.getInstance();
         String humanSize = config.getString(HEAPCACHE_TARGET_SIZE);
         if (humanSize != null && humanSize.length() > 0) {
-            final String numberStr = humanSize.replaceAll("[^\\d.]", "");
-            final double number = Double.parseDouble(numberStr);
-            long size;
-            short exponent;
-
-            if (humanSize.endsWith("M") || humanSize.endsWith("MB")) {
-                exponent = 2;
-            } else if (humanSize.endsWith("G") || humanSize.endsWith("GB")) {
-                exponent = 3;
-            } else if (humanSize.endsWith("T") || humanSize.endsWith("TB")) {
-                exponent = 4;
-            } else if (humanSize.endsWith("P") || humanSize.endsWith("PB")) { // you never know
-                exponent = 5;
-            } else {
-                exponent = 0;
-            }
-            size = Math.round(number * Math.pow(1024, exponent));
+            final long size = StringUtil.toBytes(humanSize);
             if (size <= 0) {
                 throw new ConfigurationException(HEAPCACHE_TARGET_SIZE +
                         " must be greater than zero.");
@@ -424,7 +608,15 @@ class HeapCache implements DerivativeCache {
     @Override
     public void initialize() {
         if (isPersistenceEnabled()) {
-            loadFromPersistentStore();
+            // Serve requests while loading.
+            isLoading.set(true);
+            try {
+                ThreadPool.getInstance().submit(this::loadFromPersistentStore,
+                        ThreadPool.Priority.HIGH);
+            } catch (RejectedExecutionException e) {
+                isLoading.set(false);
+                LOGGER.error("initialize(): {}", e.getMessage());
+            }
         }
 
         // Start a worker thread to manage the size.
@@ -440,6 +632,24 @@ class HeapCache implements DerivativeCache {
         return isDirty.get();
     }
 
+    /**
+     * @return Whether {@link #loadFromPersistentStore()} is running.
+     */
+    boolean isLoading() {
+        return isLoading.get();
+    }
+
+    /**
+     * @return Value of
+     *         {@link edu.illinois.library.cantaloupe.config.Key#HEAPCACHE_OFF_HEAP}
+     *         in the application configuration, or {@literal false} if it is
+     *         not set.
+     */
+    boolean isOffHeap() {
+        final Configuration config = Configuration.getInstance();
+        return config.getBoolean(HEAPCACHE_OFF_HEAP, false);
+    }
+
     /**
      * @return Value of
      *         {@link edu.illinois.library.cantaloupe.config.Key#HEAPCACHE_PERSIST}
@@ -469,51 +679,114 @@ class HeapCache implements DerivativeCache {
         return new Key(opList.getIdentifier().toString(), opList.toString());
     }
 
+    /**
+     * <p>Reads the contents of the file specified by
+     * {@link edu.illinois.library.cantaloupe.config.Key#HEAPCACHE_PATHNAME}
+     * into the cache.</p>
+     *
+     * <p>The cache can be used while this is running. Items that are added
+     * or removed in the meantime are left alone.</p>
+     */
     synchronized void loadFromPersistentStore() {
         final Path path = getPath();
+        final HeapCacheLog log = new HeapCacheLog(path);
 
-        if (Files.exists(path)) {
-            LOGGER.info("loadFromPersistentStore(): reading {}...", path);
-
-            try (InputStream is = Files.newInputStream(path)) {
-                final HeapCacheProtos.Cache protoCache =
-                        HeapCacheProtos.Cache.parseFrom(is);
-
-                // Read in the images.
-                for (HeapCacheProtos.Image image : protoCache.getImageList()) {
-                    final Key key = new Key(image.getIdentifier(),
-                            image.getOperationList());
-                    key.setLastAccessedTime(image.getLastAccessed());
-                    final Item item = new Item(image.getData().toByteArray());
-                    cache.put(key, item);
+        isLoading.set(true);
+        isLoadCancelled = false;
+        purgedIdentifiers.clear();
+        try {
+            if (log.exists()) {
+                LOGGER.info("loadFromPersistentStore(): reading {}...", path);
+                final Stopwatch watch = new Stopwatch();
+
+                final boolean isCompactionNeeded =
+                        log.read(this::applyRecord);
+                if (!isLoadCancelled) {
+                    this.isCompactionNeeded = isCompactionNeeded;
                 }
 
-                // Read in the infos.
-                for (HeapCacheProtos.Info info : protoCache.getInfoList()) {
-                    final Key key = new Key(info.getIdentifier());
-                    key.setLastAccessedTime(info.getLastAccessed());
-                    final Item item = new Item(info.getJsonBytes().toByteArray());
-                    cache.put(key, item);
-                }
+                LOGGER.info("loadFromPersistentStore(): loaded {} items " +
+                                "({} bytes) in {} msec",
+                        size(), getByteSize(), watch.timeElapsed());
+            } else {
+                LOGGER.info("loadFromPersistentStore(): does not exist: {}",
+                        path);
+            }
+        } catch (IOException e) {
+            LOGGER.error("loadFromPersistentStore(): {}", e.getMessage());
+        } finally {
+            isLoading.set(false);
+            purgedIdentifiers.clear();
+        }
+    }
 
-                LOGGER.info("loadFromPersistentStore(): loaded {} items ({} bytes)",
-                        size(), getByteSize());
-            } catch (FileNotFoundException e) {
-                LOGGER.error("loadFromPersistentStore(): file not found: {}",
-                        e.getMessage());
-            } catch (IOException e) {
-                LOGGER.error("loadFromPersistentStore(): {}", e.getMessage());
+    /**
+     * @param key  Key of the item.
+     * @param item Item, or {@link #TOMBSTONE} if it has been removed.
+     * @return     Single-item record for the persistent store.
+     */
+    private static HeapCacheProtos.Cache newRecord(Key key, Item item) {
+        final HeapCacheProtos.Cache.Builder builder =
+                HeapCacheProtos.Cache.newBuilder();
+        if (key.getOperationList() != null) { // it's an image
+            final HeapCacheProtos.Image.Builder image =
+                    HeapCacheProtos.Image.newBuilder()
+                            .setLastAccessed(System.currentTimeMillis())
+                            .setIdentifier(key.getIdentifier())
+                            .setOperationList(key.getOperationList());
+            // An image without data is a tombstone.
+            image.setData((item != TOMBSTONE) ?
+                    ByteString.copyFrom(item.getData()) : ByteString.EMPTY);
+            builder.addImage(image);
+        } else { // it's an info
+            final HeapCacheProtos.Info.Builder info =
+                    HeapCacheProtos.Info.newBuilder()
+                            .setLastAccessed(System.currentTimeMillis())
+                            .setIdentifier(key.getIdentifier());
+            // An info without JSON is a tombstone.
+            if (item != TOMBSTONE) {
+                info.setJson(item.getString());
             }
-        } else {
-            LOGGER.info("loadFromPersistentStore(): does not exist: {}", path);
+            builder.addInfo(info);
         }
+        return builder.build();
+    }
+
+    /**
+     * @param data Image data, which will not be modified.
+     * @return     New item containing the given data, which is copied into a
+     *             direct buffer if {@link #isOffHeap()} returns {@literal
+     *             true}.
+     */
+    private Item newImageItem(byte[] data) {
+        if (isOffHeap()) {
+            final ByteBuffer buffer = ByteBuffer.allocateDirect(data.length);
+            buffer.put(data);
+            buffer.flip();
+            return new Item(buffer);
+        }
+        return new Item(data);
+    }
+
+    /**
+     * Variant of {@link #newImageItem(byte[])} that copies directly from a
+     * {@link ByteString} without an intermediate array in off-heap mode.
+     */
+    private Item newImageItem(ByteString data) {
+        if (isOffHeap()) {
+            final ByteBuffer buffer = ByteBuffer.allocateDirect(data.size());
+            data.copyTo(buffer);
+            buffer.flip();
+            return new Item(buffer);
+        }
+        return new Item(data.toByteArray());
     }
 
     @Override
     public InputStream newDerivativeImageInputStream(OperationList opList) {
         Item item = get(itemKey(opList));
         if (item != null) {
-            return new ByteArrayInputStream(item.getData());
+            return new ByteBufferInputStream(item.getData());
         }
         return null;
     }
@@ -521,10 +794,11 @@ class HeapCache implements DerivativeCache {
     @Override
     public OutputStream newDerivativeImageOutputStream(OperationList opList) {
         final Key key = itemKey(opList);
-        final Item item = cache.get(key);
+        // This is not a client retrieval, so it shouldn't be counted in the
+        // statistics.
+        final Item item = cache.asMap().get(key);
         if (item != null) {
             LOGGER.info("newDerivativeImageOutputStream(): hit for {}", opList);
-            touch(item);
             return new NullOutputStream();
         } else {
             LOGGER.info("newDerivativeImageOutputStream(): miss; caching {}",
@@ -536,56 +810,80 @@ class HeapCache implements DerivativeCache {
 
     @Override
     public void purge() {
-        LOGGER.info("purge(): purging {} items", cache.size());
-        cache.clear();
+        LOGGER.info("purge(): purging {} items", size());
+        isLoadCancelled = isLoading();
+        cache.invalidateAll();
+        // Rewriting the persistent store will be cheaper than appending a
+        // tombstone for every item.
+        unpersistedChanges.clear();
+        isCompactionNeeded = true;
+        isDirty.lazySet(true);
     }
 
     @Override
     public void purge(Identifier identifier) {
         LOGGER.info("purge(Identifier): purging {}...", identifier);
         final String imageId = itemKey(identifier).getIdentifier();
-        cache.keySet().removeIf(k -> k.getIdentifier().equals(imageId));
+        if (isLoading()) {
+            purgedIdentifiers.add(imageId);
+        }
+        cache.asMap().keySet().removeIf(k -> k.getIdentifier().equals(imageId));
     }
 
     @Override
     public void purge(OperationList opList) {
         LOGGER.info("purge(OperationList): purging {}...", opList.toString());
-        cache.remove(itemKey(opList));
+        final Key key = itemKey(opList);
+        if (isLoading()) {
+            // The item may not have been loaded yet, in which case this will
+            // keep it from being loaded.
+            trackChange(key, TOMBSTONE);
+        }
+        cache.invalidate(key);
     }
 
     /**
-     * Purges as much content as needed to reduce the current size below the
-     * target size, starting with the least-recently-used first.
+     * Applies the target size in the application configuration to the cache,
+     * evicting as much content as needed to reduce the current size below it.
+     * The cache evicts content on its own as it fills up, so this only has
+     * an effect when the target size has changed.
      */
     void purgeExcess() throws ConfigurationException {
         synchronized (Worker.class) {
-            final long size = getByteSize();
             final long targetSize = getTargetByteSize();
-            long excess = size - targetSize;
-            excess = (excess < 0) ? 0 : excess;
-            LOGGER.debug("purgeExcess(): cache size: {}; target: {}; excess: {}",
-                    size, targetSize, excess);
-            if (excess > 0) {
-                long purgedItems = 0;
-                long purgedSize = 0;
-                for (Key key : getKeysSortedByLastAccessedTime()) {
-                    Item item = cache.get(key);
-                    if (item != null) {
-                        cache.remove(key);
-                        purgedItems++;
-                        purgedSize += item.getData().length;
-                    }
-                    if (purgedSize >= excess) {
-                        break;
-                    }
-                }
+            final Policy.Eviction<Key, Item> eviction = getEviction();
+            final CacheStats statsBefore = cache.stats();
+            if (eviction.getMaximum() != targetSize) {
+                LOGGER.info("purgeExcess(): changing target size from {} to {}",
+                        eviction.getMaximum(), targetSize);
+                eviction.setMaximum(targetSize);
+            }
+            cache.cleanUp();
+
+            final CacheStats stats = cache.stats().minus(statsBefore);
+            if (stats.evictionCount() > 0) {
                 isDirty.lazySet(true);
                 LOGGER.info("purgeExcess(): purged {} items ({} bytes)",
-                        purgedItems, purgedSize);
+                        stats.evictionCount(), stats.evictionWeight());
             }
         }
     }
 
+    /**
+     * @param key  Key of the item that has changed.
+     * @param item New item, or {@link #TOMBSTONE} if it has been removed.
+     */
+    private void trackChange(Key key, Item item) {
+        if (!isPersistenceEnabled()) {
+            return;
+        }
+        if (unpersistedChanges.size() >= MAX_UNPERSISTED_CHANGES) {
+            unpersistedChanges.clear();
+            isCompactionNeeded = true;
+        }
+        unpersistedChanges.put(key, item);
+    }
+
     /**
      * Does nothing, as items in this cache never expire.
      */
@@ -603,14 +901,14 @@ class HeapCache implements DerivativeCache {
         // Rather than storing the info instance itself, we store its JSON
         // serialization, mainly in order to be able to easily get its size.
         Item item = new Item(imageInfo.toJSON().getBytes("UTF-8"));
-        cache.putIfAbsent(key, item);
+        cache.asMap().putIfAbsent(key, item);
     }
 
     /**
      * @return Number of cached items.
      */
     long size() {
-        return cache.size();
+        return cache.estimatedSize();
     }
 
     @Override
@@ -628,17 +926,4 @@ class HeapCache implements DerivativeCache {
         }
     }
 
-    /**
-     * Updates the last-accessed time of the key corresponding to the given
-     * item.
-     *
-     * @param item Item whose key should be touched.
-     */
-    private void touch(Item item) {
-        cache.entrySet().stream().
-                filter(entry -> Objects.equals(entry.getValue(), item)).
-                map(Map.Entry::getKey).
-                collect(Collectors.toSet()).forEach(Key::touch);
-    }
-
 }
@@ -0,0 +1,285 @@
+package edu.illinois.library.cantaloupe.cache;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import org.apache.commons.io.input.BoundedInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * <p>Append-only log file in which {@link HeapCache} persists its
+ * contents.</p>
+ *
+ * <p>The file starts with {@link #MAGIC}, which is followed by any number of
+ * length-delimited {@link HeapCacheProtos.Cache} records, each containing
+ * exactly one {@link HeapCacheProtos.Image} or {@link HeapCacheProtos.Info}.
+ * A record adds or replaces the corresponding item, unless the image has no
+ * data or the info has no JSON, in which case it removes it. Later records
+ * therefore supersede earlier ones, and the log can be brought up to date by
+ * {@link #newAppender() appending} only the items that have changed since
+ * the last time. The superseded records that accumulate are discarded by
+ * {@link #newCompactor() compacting} it, i.e. rewriting it from scratch.</p>
+ *
+ * <p>Files written by version 3.4, which consist of a single
+ * {@link HeapCacheProtos.Cache} message, can also be read, but not appended
+ * to.</p>
+ *
+ * @since 4.0
+ */
+class HeapCacheLog {
+
+    /**
+     * Writes records to a log.
+     */
+    interface Writer extends Closeable {
+
+        /**
+         * Makes the written records durable. In the case of a compactor, the
+         * log is then atomically replaced with them; if a compactor is
+         * closed without being committed, the log is left alone.
+         */
+        void commit() throws IOException;
+
+        void write(HeapCacheProtos.Cache record) throws IOException;
+
+    }
+
+    private static class LogWriter implements Writer {
+
+        private final FileChannel channel;
+        private final OutputStream outputStream;
+        private final Path path;
+        private final Path tempPath;
+        private boolean isCommitted;
+
+        /**
+         * @param path     Path of the log.
+         * @param tempPath Path to write to instead of the log, which will be
+         *                 moved into place upon commit. If {@literal null},
+         *                 the log will be appended to.
+         */
+        LogWriter(Path path, Path tempPath) throws IOException {
+            this.path = path;
+            this.tempPath = tempPath;
+            if (tempPath != null) {
+                channel = FileChannel.open(tempPath,
+                        StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING,
+                        StandardOpenOption.WRITE);
+            } else {
+                channel = FileChannel.open(path,
+                        StandardOpenOption.CREATE,
+                        StandardOpenOption.APPEND);
+            }
+            outputStream = new BufferedOutputStream(
+                    Channels.newOutputStream(channel));
+            if (channel.size() == 0) {
+                outputStream.write(MAGIC);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                channel.close();
+            } finally {
+                if (tempPath != null && !isCommitted) {
+                    Files.deleteIfExists(tempPath);
+                }
+            }
+        }
+
+        @Override
+        public void commit() throws IOException {
+            outputStream.flush();
+            channel.force(false);
+            if (tempPath != null) {
+                Files.move(tempPath, path,
+                        StandardCopyOption.ATOMIC_MOVE,
+                        StandardCopyOption.REPLACE_EXISTING);
+            }
+            isCommitted = true;
+        }
+
+        @Override
+        public void write(HeapCacheProtos.Cache record) throws IOException {
+            record.writeDelimitedTo(outputStream);
+        }
+
+    }
+
+    private static final Logger LOGGER =
+            LoggerFactory.getLogger(HeapCacheLog.class);
+
+    /**
+     * Identifies the log format. The first byte of a version 3.4 file is
+     * always the tag of one of the {@link HeapCacheProtos.Cache} fields,
+     * which this is not.
+     */
+    static final byte[] MAGIC = { 'C', 'H', 'C', 'L', 1 };
+
+    private final Path path;
+
+    /**
+     * @param record Single-item record.
+     * @return       Last-accessed time of the item in the record.
+     */
+    private static long getLastAccessed(HeapCacheProtos.Cache record) {
+        return (record.getImageCount() > 0) ?
+                record.getImage(0).getLastAccessed() :
+                record.getInfo(0).getLastAccessed();
+    }
+
+    /**
+     * @return Whether the given stream starts with {@link #MAGIC}, which will
+     *         have been consumed if so.
+     */
+    private static boolean readMagic(InputStream is) throws IOException {
+        is.mark(MAGIC.length);
+        final byte[] bytes = new byte[MAGIC.length];
+        int numRead = 0;
+        while (numRead < bytes.length) {
+            int count = is.read(bytes, numRead, bytes.length - numRead);
+            if (count < 0) {
+                break;
+            }
+            numRead += count;
+        }
+        if (Arrays.equals(bytes, MAGIC)) {
+            return true;
+        }
+        is.reset();
+        return false;
+    }
+
+    /**
+     * @param path Path of the log, which doesn't have to exist.
+     */
+    HeapCacheLog(Path path) {
+        this.path = path;
+    }
+
+    boolean exists() {
+        return Files.exists(path);
+    }
+
+    /**
+     * @return Whether the file exists and is in the format of version 3.4,
+     *         which can't be appended to.
+     */
+    boolean isLegacy() throws IOException {
+        if (!exists() || Files.size(path) == 0) {
+            return false;
+        }
+        try (InputStream is = new BufferedInputStream(
+                Files.newInputStream(path), MAGIC.length)) {
+            return !readMagic(is);
+        }
+    }
+
+    /**
+     * @return New writer that appends to the log, creating it if it does
+     *         not exist. Must be {@link Writer#commit() committed} and
+     *         closed.
+     */
+    Writer newAppender() throws IOException {
+        Files.createDirectories(path.getParent());
+        return new LogWriter(path, null);
+    }
+
+    /**
+     * @return New writer that writes a new log that will replace the current
+     *         one when it is {@link Writer#commit() committed}. Must be
+     *         closed.
+     */
+    Writer newCompactor() throws IOException {
+        Files.createDirectories(path.getParent());
+        final Path tempPath = path.resolveSibling(
+                path.getFileName() + ".compacting");
+        return new LogWriter(path, tempPath);
+    }
+
+    /**
+     * <p>Reads the records in the log, in order, and feeds each one to the
+     * given consumer.</p>
+     *
+     * <p>Only the bytes that are present when this method is called are
+     * read, so records can be appended while it is running.</p>
+     *
+     * <p>The records in a version 3.4 file are fed in order of last-accessed
+     * time.</p>
+     *
+     * @param consumer Consumer of single-item records.
+     * @return         Whether the log must be {@link #newCompactor()
+     *                 compacted} before it can be appended to, which is the
+     *                 case if it is in the version 3.4 format or if it ends
+     *                 with an incomplete record, such as one that was being
+     *                 written during a crash.
+     */
+    boolean read(Consumer<HeapCacheProtos.Cache> consumer) throws IOException {
+        final long size = Files.size(path);
+        try (InputStream is = new BufferedInputStream(new BoundedInputStream(
+                Files.newInputStream(path), size))) {
+            if (size == 0) {
+                return false;
+            } else if (!readMagic(is)) {
+                readLegacy(is, consumer);
+                return true;
+            }
+            long count = 0;
+            try {
+                HeapCacheProtos.Cache record;
+                while ((record = HeapCacheProtos.Cache.parseDelimitedFrom(is)) != null) {
+                    consumer.accept(record);
+                    count++;
+                }
+            } catch (InvalidProtocolBufferException e) {
+                LOGGER.warn("read(): {} is truncated after {} records: {}",
+                        path, count, e.getMessage());
+                return true;
+            }
+            return false;
+        }
+    }
+
+    private void readLegacy(InputStream is,
+                            Consumer<HeapCacheProtos.Cache> consumer)
+            throws IOException {
+        final HeapCacheProtos.Cache protoCache =
+                HeapCacheProtos.Cache.parseFrom(is);
+        final List<HeapCacheProtos.Cache> records = new ArrayList<>(
+                protoCache.getImageCount() + protoCache.getInfoCount());
+        for (HeapCacheProtos.Image image : protoCache.getImageList()) {
+            records.add(HeapCacheProtos.Cache.newBuilder()
+                    .addImage(image).build());
+        }
+        for (HeapCacheProtos.Info info : protoCache.getInfoList()) {
+            records.add(HeapCacheProtos.Cache.newBuilder()
+                    .addInfo(info).build());
+        }
+        records.sort(Comparator.comparingLong(HeapCacheLog::getLastAccessed));
+        records.forEach(consumer);
+    }
+
+    long size() throws IOException {
+        return exists() ? Files.size(path) : 0;
+    }
+
+}
@@ -12,6 +12,11 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * <p>Used to obtain {@link Info} instances in an efficient way, utilizing
@@ -28,6 +33,17 @@ public final class InfoService {
 
     private final InfoCache infoCache = new InfoCache();
 
+    /**
+     * Reads that are currently in progress in {@link
+     * #getOrReadInfo(Identifier, Processor)}, which concurrent callers for the
+     * same identifier will wait on rather than reading the info themselves.
+     */
+    private final ConcurrentMap<Identifier, CompletableFuture<Info>>
+            inProgressReads = new ConcurrentHashMap<>();
+
+    private final AtomicLong coalescedReadCount = new AtomicLong();
+    private final AtomicLong readCount = new AtomicLong();
+
     /**
      * For testing only!
      */
@@ -117,6 +133,9 @@ public final class InfoService {
      *     asynchronously.)</li>
      * </ol>
      *
+     * <p>Concurrent calls for the same identifier that have to fall back to
+     * reading from a processor share the result of a single read.</p>
+     *
      * @param identifier Identifier of the source image for which to retrieve
      *                   the info.
      * @param proc       Processor to use to read the info if necessary.
@@ -130,25 +149,91 @@ public final class InfoService {
         // Try to retrieve it from an object or derivative cache.
         Info info = getInfo(identifier);
         if (info == null) {
-            Stopwatch watch = new Stopwatch();
+            // If another thread is already reading it, wait for that thread's
+            // result instead of reading it again.
+            final CompletableFuture<Info> newRead = new CompletableFuture<>();
+            final CompletableFuture<Info> inProgressRead =
+                    inProgressReads.putIfAbsent(identifier, newRead);
+            if (inProgressRead != null) {
+                coalescedReadCount.incrementAndGet();
+                LOGGER.debug("getOrReadInfo(): waiting for another thread " +
+                        "to read the info of {}", identifier);
+                return awaitRead(inProgressRead);
+            }
+
+            try {
+                Stopwatch watch = new Stopwatch();
 
-            // Read it from the processor and then add it to both the
-            // derivative and object caches.
-            info = readInfo(identifier, proc);
+                // Read it from the processor and then add it to both the
+                // derivative and object caches.
+                info = readInfo(identifier, proc);
 
-            LOGGER.debug("getOrReadInfo(): read info of {} from {} " +
-                            "in {} msec",
-                    identifier,
-                    proc.getClass().getSimpleName(),
-                    watch.timeElapsed());
+                LOGGER.debug("getOrReadInfo(): read info of {} from {} " +
+                                "in {} msec",
+                        identifier,
+                        proc.getClass().getSimpleName(),
+                        watch.timeElapsed());
 
-            // Add it to the derivative and object caches.
-            final DerivativeCache derivCache = CacheFactory.getDerivativeCache();
-            putInCachesAsync(identifier, info, derivCache);
+                // Add it to the object cache synchronously, so that it will be
+                // available to callers arriving after the read has been
+                // removed from the in-progress map, and to the derivative
+                // cache asynchronously.
+                putInObjectCache(identifier, info);
+                final DerivativeCache derivCache =
+                        CacheFactory.getDerivativeCache();
+                if (derivCache != null) {
+                    putInDerivativeCacheAsync(identifier, info, derivCache);
+                }
+                newRead.complete(info);
+            } catch (Throwable t) {
+                // This includes Errors thrown by e.g. decoders, which must
+                // also release the callers waiting in awaitRead().
+                newRead.completeExceptionally(t);
+                throw t;
+            } finally {
+                inProgressReads.remove(identifier, newRead);
+            }
         }
         return info;
     }
 
+    /**
+     * @return Number of times that a caller of {@link
+     *         #getOrReadInfo(Identifier, Processor)} waited for another
+     *         caller's read instead of reading the info itself.
+     */
+    public long getCoalescedReadCount() {
+        return coalescedReadCount.get();
+    }
+
+    /**
+     * @return Number of infos that have been read from processors by
+     *         {@link #getOrReadInfo(Identifier, Processor)}.
+     */
+    public long getReadCount() {
+        return readCount.get();
+    }
+
+    /**
+     * Waits for a read in another thread to complete.
+     */
+    private Info awaitRead(CompletableFuture<Info> read) throws IOException {
+        try {
+            return read.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e.getMessage(), e);
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause.getMessage(), cause);
+        }
+    }
+
     boolean isObjectCacheEnabled() {
         return Configuration.getInstance().
                 getBoolean(Key.INFO_CACHE_ENABLED, false);
@@ -180,17 +265,17 @@ public final class InfoService {
     }
 
     /**
-     * Adds an info to the object and derivative caches asynchronously.
+     * Adds an info to the derivative cache asynchronously.
      */
-    private void putInCachesAsync(Identifier identifier,
-                                  Info info,
-                                  DerivativeCache derivCache) {
+    private void putInDerivativeCacheAsync(Identifier identifier,
+                                           Info info,
+                                           DerivativeCache derivCache) {
         ThreadPool.getInstance().submit(() -> {
-            putInObjectCache(identifier, info);
             try {
                 derivCache.put(identifier, info);
             } catch (IOException e) {
-                LOGGER.error("putInCachesAsync(): {}", e.getMessage());
+                LOGGER.error("putInDerivativeCacheAsync(): {}",
+                        e.getMessage());
             }
             return null;
         }, ThreadPool.Priority.LOW);
@@ -203,6 +288,7 @@ public final class InfoService {
                           final Processor proc) throws IOException {
         final Stopwatch watch = new Stopwatch();
         final Info info = proc.readImageInfo();
+        readCount.incrementAndGet();
         LOGGER.debug("readInfo(): read {} from {} in {} msec",
                 identifier,
                 proc.getClass().getSimpleName(),
@@ -8,6 +8,7 @@ import edu.illinois.library.cantaloupe.config.Key;
 import edu.illinois.library.cantaloupe.image.Identifier;
 import edu.illinois.library.cantaloupe.image.Info;
 import edu.illinois.library.cantaloupe.operation.OperationList;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -22,6 +23,12 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.util.Calendar;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * <p>Cache using a database table, storing images as BLOBs and image infos
@@ -31,6 +38,8 @@ import java.util.Calendar;
  * not do it automatically. The current schema is:</p>
  *
  * <pre>CREATE TABLE IF NOT EXISTS {JdbcCache.derivative_image_table} (
+ *     operations_digest CHAR(64) NOT NULL,
+ *     identifier VARCHAR(4096) NOT NULL,
  *     operations VARCHAR(4096) NOT NULL,
  *     image BLOB,
  *     last_accessed DATETIME
@@ -40,7 +49,35 @@ import java.util.Calendar;
  *     identifier VARCHAR(4096) NOT NULL,
  *     info VARCHAR(8192) NOT NULL,
  *     last_accessed DATETIME
- * );</pre>
+ * );
+ *
+ * CREATE INDEX operations_digest_idx
+ *     ON {JdbcCache.derivative_image_table} (operations_digest);
+ * CREATE INDEX derivative_identifier_idx
+ *     ON {JdbcCache.derivative_image_table} (identifier);
+ * CREATE INDEX identifier_idx ON {JdbcCache.info_table} (identifier);</pre>
+ *
+ * <p>Derivative images are looked up by the fixed-width SHA-256 digest of
+ * their operation list, and purged by identifier, using the indexes.
+ * Tables created before version 4.0 lack the {@literal operations_digest}
+ * and {@literal identifier} columns, in which case images are looked up by
+ * their whole operation list string instead, and purged by identifier with
+ * a {@literal LIKE} query. Such tables can be migrated by adding the columns
+ * (as nullable) and their indexes, in which case {@link #initialize()} will
+ * {@link #migrate() fill in} the digests of existing rows in the background.
+ * The identifiers of existing rows can't be recovered reliably from their
+ * operation lists, so they remain null, and are still purged by identifier
+ * with a {@literal LIKE} query, until they expire. Once there are no such
+ * rows left, which is checked lazily and again after each purge of expired
+ * rows, the {@literal LIKE} query is skipped.</p>
+ *
+ * <p>Hits don't update last-accessed times in the database directly.
+ * Instead, the times are buffered in memory, where repeated hits on the same
+ * item overwrite each other, and {@link #flushAccesses() flushed} in batches
+ * every {@link Key#JDBCCACHE_LAST_ACCESSED_FLUSH_INTERVAL} seconds. Buffered
+ * times that have not been flushed when the application exits are lost,
+ * which costs at most a little of the affected items' remaining
+ * time-to-live.</p>
  */
 class JdbcCache implements DerivativeCache {
 
@@ -69,12 +106,24 @@ class JdbcCache implements DerivativeCache {
             connection.setAutoCommit(false);
 
             final Configuration config = Configuration.getInstance();
-            final String sql = String.format(
-                    "INSERT INTO %s (%s, %s, %s) VALUES (?, ?, ?)",
-                    config.getString(Key.JDBCCACHE_DERIVATIVE_IMAGE_TABLE),
-                    DERIVATIVE_IMAGE_TABLE_OPERATIONS_COLUMN,
-                    DERIVATIVE_IMAGE_TABLE_IMAGE_COLUMN,
-                    DERIVATIVE_IMAGE_TABLE_LAST_ACCESSED_COLUMN);
+            final String table =
+                    config.getString(Key.JDBCCACHE_DERIVATIVE_IMAGE_TABLE);
+            final String sql = isDigestKeyed() ?
+                    String.format(
+                            "INSERT INTO %s (%s, %s, %s, %s, %s) " +
+                                    "VALUES (?, ?, ?, ?, ?)",
+                            table,
+                            DERIVATIVE_IMAGE_TABLE_OPERATIONS_COLUMN,
+                            DERIVATIVE_IMAGE_TABLE_IMAGE_COLUMN,
+                            DERIVATIVE_IMAGE_TABLE_LAST_ACCESSED_COLUMN,
+                            DERIVATIVE_IMAGE_TABLE_OPERATIONS_DIGEST_COLUMN,
+                            DERIVATIVE_IMAGE_TABLE_IDENTIFIER_COLUMN) :
+                    String.format(
+                            "INSERT INTO %s (%s, %s, %s) VALUES (?, ?, ?)",
+                            table,
+                            DERIVATIVE_IMAGE_TABLE_OPERATIONS_COLUMN,
+                            DERIVATIVE_IMAGE_TABLE_IMAGE_COLUMN,
+                            DERIVATIVE_IMAGE_TABLE_LAST_ACCESSED_COLUMN);
             LOGGER.debug(sql);
 
             final Blob blob = connection.createBlob();
@@ -83,6 +132,10 @@ class JdbcCache implements DerivativeCache {
             statement.setString(1, ops.toString());
             statement.setBlob(2, blob);
             statement.setTimestamp(3, now());
+            if (isDigestKeyed()) {
+                statement.setString(4, digest(ops.toString()));
+                statement.setString(5, ops.getIdentifier().toString());
+            }
         }
 
         @Override
@@ -129,13 +182,44 @@ class JdbcCache implements DerivativeCache {
 
     }
 
+    /**
+     * Periodically flushes buffered last-accessed times to the database.
+     */
+    private class AccessFlusher implements Runnable {
+
+        @Override
+        public void run() {
+            while (flusherShouldWork.get()) {
+                try {
+                    Thread.sleep(getFlushInterval() * 1000);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                flushAccesses();
+            }
+            LOGGER.info("AccessFlusher.run(): stopping");
+        }
+
+    }
+
     private static final Logger LOGGER = LoggerFactory.
             getLogger(JdbcCache.class);
 
+    /**
+     * Maximum number of statements in a JDBC batch.
+     */
+    private static final int BATCH_SIZE = 500;
+
+    private static final int DEFAULT_FLUSH_INTERVAL = 5;
+
+    static final String DERIVATIVE_IMAGE_TABLE_IDENTIFIER_COLUMN =
+            "identifier";
     static final String DERIVATIVE_IMAGE_TABLE_IMAGE_COLUMN = "image";
     static final String DERIVATIVE_IMAGE_TABLE_LAST_ACCESSED_COLUMN =
             "last_accessed";
     static final String DERIVATIVE_IMAGE_TABLE_OPERATIONS_COLUMN = "operations";
+    static final String DERIVATIVE_IMAGE_TABLE_OPERATIONS_DIGEST_COLUMN =
+            "operations_digest";
 
     static final String INFO_TABLE_IDENTIFIER_COLUMN = "identifier";
     static final String INFO_TABLE_INFO_COLUMN = "info";
@@ -143,6 +227,46 @@ class JdbcCache implements DerivativeCache {
 
     private static HikariDataSource dataSource;
 
+    private final AtomicBoolean flusherShouldWork = new AtomicBoolean(true);
+
+    /**
+     * Guards {@link #flushAccesses()}, which must not run concurrently with
+     * itself. Lookups don't acquire it.
+     */
+    private final Object flushLock = new Object();
+
+    /**
+     * Whether the derivative image table has the columns of the current
+     * schema. Lazy-set by {@link #isDigestKeyed()}, without locking, as
+     * detecting it more than once is harmless.
+     */
+    private volatile Boolean isDigestKeyed;
+
+    /**
+     * Whether the derivative image table contains rows without an identifier.
+     * Lazy-set by {@link #hasUnidentifiedRows()}, and reset when rows are
+     * purged, as such rows are never added.
+     */
+    private volatile Boolean hasUnidentifiedRows;
+
+    /**
+     * Map of operation list string representations to last-accessed times
+     * that have yet to be flushed.
+     */
+    private final Map<String, Timestamp> pendingImageAccesses =
+            new ConcurrentHashMap<>();
+
+    /**
+     * Map of identifiers to last-accessed times that have yet to be flushed.
+     */
+    private final Map<String, Timestamp> pendingInfoAccesses =
+            new ConcurrentHashMap<>();
+
+    private final LongAdder accessCount = new LongAdder();
+    private final LongAdder coalescedAccessCount = new LongAdder();
+    private final LongAdder flushCount = new LongAdder();
+    private final LongAdder flushedAccessCount = new LongAdder();
+
     /**
      * @return Connection from the connection pool. Clients must call
      *         {@link Connection#close} when they are done with it.
@@ -188,6 +312,38 @@ class JdbcCache implements DerivativeCache {
         return dataSource.getConnection();
     }
 
+    /**
+     * @param connection Will not be closed.
+     */
+    private static boolean columnExists(Connection connection,
+                                        String tableName,
+                                        String columnName)
+            throws SQLException {
+        DatabaseMetaData dbm = connection.getMetaData();
+        try (ResultSet rs = dbm.getColumns(null, null,
+                tableName.toUpperCase(), columnName.toUpperCase())) {
+            return rs.next();
+        }
+    }
+
+    /**
+     * @return Hex-encoded SHA-256 digest of the given operation list string,
+     *         which is 64 characters long.
+     */
+    static String digest(String operations) {
+        return DigestUtils.sha256Hex(operations);
+    }
+
+    /**
+     * @return Value of {@link Key#JDBCCACHE_LAST_ACCESSED_FLUSH_INTERVAL},
+     *         in seconds.
+     */
+    private static int getFlushInterval() {
+        return Math.max(1, Configuration.getInstance().getInt(
+                Key.JDBCCACHE_LAST_ACCESSED_FLUSH_INTERVAL,
+                DEFAULT_FLUSH_INTERVAL));
+    }
+
     /**
      * @return Name of the derivative image table.
      * @throws IllegalArgumentException If the image table name is not set.
@@ -228,73 +384,100 @@ class JdbcCache implements DerivativeCache {
     }
 
     /**
-     * Updates the last-accessed time of the derivative image corresponding to
-     * the given operation list.
+     * Buffers an update of the last-accessed time of the derivative image
+     * corresponding to the given operation list.
      */
-    private void accessDerivativeImage(OperationList opList,
-                                       Connection connection)
-            throws SQLException {
-        final String sql = String.format(
-                "UPDATE %s SET %s = ? WHERE %s = ?",
-                getDerivativeImageTableName(),
-                DERIVATIVE_IMAGE_TABLE_LAST_ACCESSED_COLUMN,
-                DERIVATIVE_IMAGE_TABLE_OPERATIONS_COLUMN);
-        try (PreparedStatement statement = connection.prepareStatement(sql)) {
-            statement.setTimestamp(1, now());
-            statement.setString(2, opList.toString());
-
-            LOGGER.debug(sql);
-            statement.executeUpdate();
-        }
+    private void accessDerivativeImage(OperationList opList) {
+        access(pendingImageAccesses, imageKey(opList));
     }
 
     /**
-     * Updates the last-accessed time of the derivative image corresponding to
-     * the given operation list asynchronously.
+     * Buffers an update of the last-accessed time of the info corresponding
+     * to the given identifier.
      */
-    private void accessDerivativeImageAsync(OperationList opList) {
-        ThreadPool.getInstance().submit(() -> {
-            try (Connection conn = getConnection()) {
-                accessDerivativeImage(opList, conn);
-            } catch (SQLException e) {
-                LOGGER.error("accessDerivativeImageAsync(): {}", e.getMessage());
-            }
-        });
+    private void accessInfo(Identifier identifier) {
+        access(pendingInfoAccesses, identifier.toString());
+    }
+
+    private void access(Map<String, Timestamp> pendingAccesses, String key) {
+        accessCount.increment();
+        if (pendingAccesses.put(key, now()) != null) {
+            coalescedAccessCount.increment();
+        }
     }
 
     /**
-     * Updates the last-accessed time of the info corresponding to the given
-     * identifier.
+     * Writes all buffered last-accessed times to the database in batches, in
+     * one transaction. Invoked periodically by a background thread, and also
+     * by {@link #purgeInvalid()} and {@link #shutdown()}.
      */
-    private void accessInfo(Identifier identifier, Connection connection)
-            throws SQLException {
-        final String sql = String.format(
+    void flushAccesses() {
+        synchronized (flushLock) {
+            doFlushAccesses();
+        }
+    }
+
+    private void doFlushAccesses() {
+        if (pendingImageAccesses.isEmpty() && pendingInfoAccesses.isEmpty()) {
+            return;
+        }
+        final String imageSql = String.format(
+                "UPDATE %s SET %s = ? WHERE %s = ?",
+                getDerivativeImageTableName(),
+                DERIVATIVE_IMAGE_TABLE_LAST_ACCESSED_COLUMN,
+                imageKeyColumn());
+        final String infoSql = String.format(
                 "UPDATE %s SET %s = ? WHERE %s = ?",
                 getInfoTableName(),
                 INFO_TABLE_LAST_ACCESSED_COLUMN,
                 INFO_TABLE_IDENTIFIER_COLUMN);
 
-        try (PreparedStatement statement = connection.prepareStatement(sql)) {
-            statement.setTimestamp(1, now());
-            statement.setString(2, identifier.toString());
-
-            LOGGER.debug(sql);
-            statement.executeUpdate();
+        try (Connection connection = getConnection()) {
+            connection.setAutoCommit(false);
+            final int numImages = flushAccesses(pendingImageAccesses,
+                    imageSql, connection);
+            final int numInfos = flushAccesses(pendingInfoAccesses,
+                    infoSql, connection);
+            connection.commit();
+            flushCount.increment();
+            flushedAccessCount.add(numImages + numInfos);
+            LOGGER.debug("flushAccesses(): updated {} derivative images " +
+                    "and {} infos", numImages, numInfos);
+        } catch (SQLException e) {
+            LOGGER.error("flushAccesses(): {}", e.getMessage());
         }
     }
 
     /**
-     * Updates the last-accessed time of the info corresponding to the given
-     * operation list asynchronously.
+     * @param pendingAccesses Map of keys to last-accessed times, from which
+     *                        the flushed entries will be removed.
+     * @param sql             UPDATE statement with last-accessed time and key
+     *                        parameters.
+     * @param connection      Will not be closed.
+     * @return                Number of flushed entries.
      */
-    private void accessInfoAsync(Identifier identifier) {
-        ThreadPool.getInstance().submit(() -> {
-            try (Connection conn = getConnection()) {
-                accessInfo(identifier, conn);
-            } catch (SQLException e) {
-                LOGGER.error("accessInfoAsync(): {}", e.getMessage());
+    private int flushAccesses(Map<String, Timestamp> pendingAccesses,
+                              String sql,
+                              Connection connection) throws SQLException {
+        int count = 0;
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            LOGGER.debug(sql);
+            for (Map.Entry<String, Timestamp> entry : pendingAccesses.entrySet()) {
+                // If the item has been accessed again in the meantime, leave
+                // the newer time for the next flush.
+                pendingAccesses.remove(entry.getKey(), entry.getValue());
+                statement.setTimestamp(1, entry.getValue());
+                statement.setString(2, entry.getKey());
+                statement.addBatch();
+                if (++count % BATCH_SIZE == 0) {
+                    statement.executeBatch();
+                }
             }
-        });
+            if (count % BATCH_SIZE != 0) {
+                statement.executeBatch();
+            }
+        }
+        return count;
     }
 
     Timestamp earliestValidDate() {
@@ -325,7 +508,7 @@ class JdbcCache implements DerivativeCache {
             LOGGER.debug(sql);
             try (ResultSet resultSet = statement.executeQuery()) {
                 if (resultSet.next()) {
-                    accessInfoAsync(identifier);
+                    accessInfo(identifier);
 
                     LOGGER.info("Hit for info: {}", identifier);
                     String json = resultSet.getString(1);
@@ -341,6 +524,182 @@ class JdbcCache implements DerivativeCache {
         return null;
     }
 
+    /**
+     * @return Map containing the cumulative numbers of buffered last-accessed
+     *         time updates, of those that were coalesced with an update of
+     *         the same item that was still pending, of updates that were
+     *         flushed to the database, and of flushes; and the number of
+     *         updates currently pending.
+     * @since 4.0
+     */
+    Map<String, Long> getStatistics() {
+        final Map<String, Long> map = new HashMap<>();
+        map.put("accessUpdates", accessCount.sum());
+        map.put("coalescedAccessUpdates", coalescedAccessCount.sum());
+        map.put("flushedAccessUpdates", flushedAccessCount.sum());
+        map.put("accessFlushes", flushCount.sum());
+        map.put("pendingAccessUpdates", (long) (pendingImageAccesses.size() +
+                pendingInfoAccesses.size()));
+        return map;
+    }
+
+    /**
+     * @return Key of the derivative image corresponding to the given
+     *         operation list in the {@link #imageKeyColumn() key column}.
+     */
+    private String imageKey(OperationList opList) {
+        return isDigestKeyed() ?
+                digest(opList.toString()) : opList.toString();
+    }
+
+    /**
+     * @return Name of the column by which derivative images are looked up.
+     */
+    private String imageKeyColumn() {
+        return isDigestKeyed() ?
+                DERIVATIVE_IMAGE_TABLE_OPERATIONS_DIGEST_COLUMN :
+                DERIVATIVE_IMAGE_TABLE_OPERATIONS_COLUMN;
+    }
+
+    /**
+     * Starts a thread that periodically {@link #flushAccesses() flushes}
+     * buffered last-accessed times, and, if necessary, {@link #migrate()
+     * migrates} the derivative image table in the background.
+     */
+    @Override
+    public void initialize() {
+        try {
+            ThreadPool.getInstance().submit(new AccessFlusher(),
+                    ThreadPool.Priority.LOW);
+            if (isDigestKeyed()) {
+                ThreadPool.getInstance().submit(() -> {
+                    try {
+                        migrate();
+                    } catch (SQLException e) {
+                        LOGGER.error("initialize(): migration failed: {}",
+                                e.getMessage());
+                    }
+                }, ThreadPool.Priority.LOW);
+            }
+        } catch (RejectedExecutionException e) {
+            LOGGER.error("initialize(): {}", e.getMessage());
+        }
+    }
+
+    /**
+     * @return Whether the derivative image table contains rows without an
+     *         identifier, which will be the case in rows that were written
+     *         before the {@literal identifier} column was added. If it can't
+     *         be determined, {@literal true} is assumed.
+     */
+    boolean hasUnidentifiedRows() {
+        Boolean result = hasUnidentifiedRows;
+        if (result == null) {
+            final String sql = String.format(
+                    "SELECT 1 FROM %s WHERE %s IS NULL",
+                    getDerivativeImageTableName(),
+                    DERIVATIVE_IMAGE_TABLE_IDENTIFIER_COLUMN);
+            try (Connection connection = getConnection();
+                 PreparedStatement statement = connection.prepareStatement(sql)) {
+                statement.setMaxRows(1);
+                LOGGER.debug(sql);
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    result = resultSet.next();
+                }
+                hasUnidentifiedRows = result;
+            } catch (SQLException e) {
+                LOGGER.error("hasUnidentifiedRows(): {}", e.getMessage());
+                return true;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return Whether the derivative image table has the
+     *         {@literal operations_digest} and {@literal identifier} columns
+     *         of the current schema. If it can't be determined, the pre-4.0
+     *         schema is assumed.
+     */
+    boolean isDigestKeyed() {
+        Boolean result = isDigestKeyed;
+        if (result == null) {
+            final String table = getDerivativeImageTableName();
+            try (Connection connection = getConnection()) {
+                result = columnExists(connection, table,
+                        DERIVATIVE_IMAGE_TABLE_OPERATIONS_DIGEST_COLUMN) &&
+                        columnExists(connection, table,
+                                DERIVATIVE_IMAGE_TABLE_IDENTIFIER_COLUMN);
+                isDigestKeyed = result;
+                if (!result) {
+                    LOGGER.warn("isDigestKeyed(): {} lacks the {} and {} " +
+                                    "columns; lookups and purges will be " +
+                                    "slower. See the user manual.", table,
+                            DERIVATIVE_IMAGE_TABLE_OPERATIONS_DIGEST_COLUMN,
+                            DERIVATIVE_IMAGE_TABLE_IDENTIFIER_COLUMN);
+                }
+            } catch (SQLException e) {
+                LOGGER.error("isDigestKeyed(): {}", e.getMessage());
+                return false;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Fills in the {@literal operations_digest} column of all rows of the
+     * derivative image table in which it is null, which will be the case in
+     * rows that were written before the column was added. This is done in
+     * batches of {@link #BATCH_SIZE}, each in its own transaction.
+     *
+     * @return Number of migrated rows.
+     */
+    int migrate() throws SQLException {
+        final String selectSql = String.format(
+                "SELECT DISTINCT %s FROM %s WHERE %s IS NULL",
+                DERIVATIVE_IMAGE_TABLE_OPERATIONS_COLUMN,
+                getDerivativeImageTableName(),
+                DERIVATIVE_IMAGE_TABLE_OPERATIONS_DIGEST_COLUMN);
+        final String updateSql = String.format(
+                "UPDATE %s SET %s = ? WHERE %s = ? AND %s IS NULL",
+                getDerivativeImageTableName(),
+                DERIVATIVE_IMAGE_TABLE_OPERATIONS_DIGEST_COLUMN,
+                DERIVATIVE_IMAGE_TABLE_OPERATIONS_COLUMN,
+                DERIVATIVE_IMAGE_TABLE_OPERATIONS_DIGEST_COLUMN);
+        int count = 0;
+        try (Connection connection = getConnection();
+             PreparedStatement select = connection.prepareStatement(selectSql);
+             PreparedStatement update = connection.prepareStatement(updateSql)) {
+            connection.setAutoCommit(false);
+            select.setMaxRows(BATCH_SIZE);
+            while (true) {
+                LOGGER.debug(selectSql);
+                int batchCount = 0;
+                try (ResultSet resultSet = select.executeQuery()) {
+                    while (resultSet.next()) {
+                        final String operations = resultSet.getString(1);
+                        update.setString(1, digest(operations));
+                        update.setString(2, operations);
+                        update.addBatch();
+                        batchCount++;
+                    }
+                }
+                if (batchCount == 0) {
+                    break;
+                }
+                LOGGER.debug(updateSql);
+                update.executeBatch();
+                connection.commit();
+                count += batchCount;
+            }
+        }
+        if (count > 0) {
+            LOGGER.info("migrate(): added digests to {} rows of {}", count,
+                    getDerivativeImageTableName());
+        }
+        return count;
+    }
+
     @Override
     public InputStream newDerivativeImageInputStream(OperationList opList)
             throws IOException {
@@ -350,12 +709,12 @@ class JdbcCache implements DerivativeCache {
                 "SELECT %s FROM %s WHERE %s = ? AND %s >= ?",
                 DERIVATIVE_IMAGE_TABLE_IMAGE_COLUMN,
                 getDerivativeImageTableName(),
-                DERIVATIVE_IMAGE_TABLE_OPERATIONS_COLUMN,
+                imageKeyColumn(),
                 DERIVATIVE_IMAGE_TABLE_LAST_ACCESSED_COLUMN);
 
         try (Connection conn = getConnection();
              PreparedStatement statement = conn.prepareStatement(sql)) {
-            statement.setString(1, opList.toString());
+            statement.setString(1, imageKey(opList));
             statement.setTimestamp(2, earliestValidDate());
 
             LOGGER.debug(sql);
@@ -363,7 +722,7 @@ class JdbcCache implements DerivativeCache {
                 if (resultSet.next()) {
                     LOGGER.info("Hit for image: {}", opList);
                     inputStream = resultSet.getBinaryStream(1);
-                    accessDerivativeImageAsync(opList);
+                    accessDerivativeImage(opList);
                 } else {
                     LOGGER.info("Miss for image: {}", opList);
                     purgeDerivativeImageAsync(opList);
@@ -401,6 +760,7 @@ class JdbcCache implements DerivativeCache {
                     purgeDerivativeImages(connection);
             final int numDeletedInfos = purgeInfos(connection);
             connection.commit();
+            hasUnidentifiedRows = false;
             LOGGER.info("Purged {} derivative images and {} infos",
                     numDeletedDerivativeImages, numDeletedInfos);
         } catch (SQLException e) {
@@ -422,12 +782,19 @@ class JdbcCache implements DerivativeCache {
 
     @Override
     public void purgeInvalid() throws IOException {
+        // Make sure that recently accessed items aren't judged by stale
+        // last-accessed times.
+        flushAccesses();
+
         try (Connection connection = getConnection()) {
             connection.setAutoCommit(false);
             final int numDeletedDerivativeImages =
                     purgeExpiredDerivativeImages(connection);
             final int numDeletedInfos = purgeExpiredInfos(connection);
             connection.commit();
+            if (numDeletedDerivativeImages > 0) {
+                hasUnidentifiedRows = null;
+            }
             LOGGER.info("purgeInvalid(): purged {} derivative images and {} info(s)",
                     numDeletedDerivativeImages, numDeletedInfos);
         } catch (SQLException e) {
@@ -475,9 +842,9 @@ class JdbcCache implements DerivativeCache {
             throws SQLException {
         final String sql = String.format("DELETE FROM %s WHERE %s = ?",
                 getDerivativeImageTableName(),
-                DERIVATIVE_IMAGE_TABLE_OPERATIONS_COLUMN);
+                imageKeyColumn());
         try (PreparedStatement statement = conn.prepareStatement(sql)) {
-            statement.setString(1, ops.toString());
+            statement.setString(1, imageKey(ops));
             LOGGER.debug(sql);
             return statement.executeUpdate();
         }
@@ -520,14 +887,32 @@ class JdbcCache implements DerivativeCache {
      */
     private int purgeDerivativeImages(Identifier identifier, Connection conn)
             throws SQLException {
-        final String sql = "DELETE FROM " + getDerivativeImageTableName() +
+        int count = 0;
+        String likeSql = "DELETE FROM " + getDerivativeImageTableName() +
                 " WHERE " + DERIVATIVE_IMAGE_TABLE_OPERATIONS_COLUMN +
                 " LIKE ?";
-        try (PreparedStatement statement = conn.prepareStatement(sql)) {
+        if (isDigestKeyed()) {
+            final String sql = String.format("DELETE FROM %s WHERE %s = ?",
+                    getDerivativeImageTableName(),
+                    DERIVATIVE_IMAGE_TABLE_IDENTIFIER_COLUMN);
+            try (PreparedStatement statement = conn.prepareStatement(sql)) {
+                statement.setString(1, identifier.toString());
+                LOGGER.debug(sql);
+                count += statement.executeUpdate();
+            }
+            if (!hasUnidentifiedRows()) {
+                return count;
+            }
+            // Rows written before the identifier column was added
+            likeSql += " AND " + DERIVATIVE_IMAGE_TABLE_IDENTIFIER_COLUMN +
+                    " IS NULL";
+        }
+        try (PreparedStatement statement = conn.prepareStatement(likeSql)) {
             statement.setString(1, identifier.toString() + "%");
-            LOGGER.debug(sql);
-            return statement.executeUpdate();
+            LOGGER.debug(likeSql);
+            count += statement.executeUpdate();
         }
+        return count;
     }
 
     @Override
@@ -617,4 +1002,14 @@ class JdbcCache implements DerivativeCache {
         }
     }
 
+    /**
+     * Stops the thread started by {@link #initialize()} and flushes any
+     * buffered last-accessed times.
+     */
+    @Override
+    public void shutdown() {
+        flusherShouldWork.set(false);
+        flushAccesses();
+    }
+
 }
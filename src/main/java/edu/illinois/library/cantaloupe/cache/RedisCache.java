@@ -1,10 +1,15 @@
 package edu.illinois.library.cantaloupe.cache;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.lambdaworks.redis.MapScanCursor;
+import com.lambdaworks.redis.KeyScanCursor;
+import com.lambdaworks.redis.LettuceFutures;
 import com.lambdaworks.redis.RedisClient;
+import com.lambdaworks.redis.RedisException;
+import com.lambdaworks.redis.RedisFuture;
 import com.lambdaworks.redis.RedisURI;
 import com.lambdaworks.redis.ScanArgs;
+import com.lambdaworks.redis.ScriptOutputType;
+import com.lambdaworks.redis.ValueScanCursor;
 import com.lambdaworks.redis.api.StatefulRedisConnection;
 import com.lambdaworks.redis.codec.ByteArrayCodec;
 import com.lambdaworks.redis.codec.RedisCodec;
@@ -24,6 +29,17 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
 
 /**
  * <p>Cache using Redis via the <a href="http://redis.paluch.biz">Lettuce</a>
@@ -32,13 +48,38 @@ import java.nio.ByteBuffer;
  * <p>Content is structured as follows:</p>
  *
  * <pre>{
- *     #{@link #IMAGE_HASH_KEY}: {
- *         "operation list string representation": image byte array
+ *     #{@link #IMAGE_HASH_KEY}.0: {
+ *         "operation list string representation": manifest,
+ *         "operation list string representation#token#0": image byte array chunk,
+ *         "operation list string representation#token#1": image byte array chunk,
+ *         ...
  *     },
+ *     #{@link #IMAGE_HASH_KEY}.1: {
+ *         ...
+ *     },
+ *     ...
+ *     #{@link #IMAGE_INDEX_KEY_PREFIX}identifier: [
+ *         "operation list string representation",
+ *         ...
+ *     ],
  *     #{@link #INFO_HASH_KEY}: {
  *         "identifier": "UTF-8 JSON string"
  *     }
  * }</pre>
+ *
+ * <p>Images are spread across {@link #IMAGE_HASH_SHARD_COUNT} hashes on the
+ * basis of their operation list, so that no one key becomes a hot spot (or,
+ * with Redis Cluster, ends up on one node). Each image is also listed in a
+ * set of the images derived from the same source image, which makes it
+ * possible to {@link #purge(Identifier) purge by identifier} without
+ * scanning the whole cache.</p>
+ *
+ * <p>Images are split into chunks of at most {@link #CHUNK_SIZE} bytes, so
+ * that they can be streamed in both directions without being buffered in
+ * full, and so that clients receive the first bytes without having to wait
+ * for all of them. The {@link ImageManifest manifest} of an image is written
+ * after all of its chunks, so an image is not visible until it has been
+ * written in full.</p>
  */
 class RedisCache implements DerivativeCache {
 
@@ -74,33 +115,158 @@ class RedisCache implements DerivativeCache {
     }
 
     /**
-     * Reads data into a buffer and provides stream access to it.
+     * Value of the {@link #imageKey(OperationList) field} of an image in the
+     * {@link #IMAGE_HASH_KEY image hash}, which describes the chunks in which
+     * the image data is stored. Its serialized form is
+     * <code>{token}:{chunk count}</code>.
+     */
+    static class ImageManifest {
+
+        private final int chunkCount;
+        private final String token;
+
+        /**
+         * @param value Serialized manifest.
+         * @return      Deserialized manifest, or {@literal null} if the given
+         *              value is not a valid manifest.
+         */
+        static ImageManifest fromBytes(byte[] value) {
+            if (value == null) {
+                return null;
+            }
+            final String str = new String(value, StandardCharsets.US_ASCII);
+            final String[] parts = str.split(":");
+            if (parts.length == 2) {
+                try {
+                    return new ImageManifest(parts[0],
+                            Integer.parseInt(parts[1]));
+                } catch (NumberFormatException e) {
+                    // fall through
+                }
+            }
+            return null;
+        }
+
+        /**
+         * @param token      String that is unique to one write of the image,
+         *                   which keeps chunks of different writes apart.
+         * @param chunkCount Number of chunks.
+         */
+        ImageManifest(String token, int chunkCount) {
+            this.token = token;
+            this.chunkCount = chunkCount;
+        }
+
+        /**
+         * @param imageKey Image key.
+         * @param token    Token of the manifest.
+         * @param index    Chunk index.
+         * @return         Field of the chunk with the given index in the
+         *                 {@link #IMAGE_HASH_KEY image hash}.
+         */
+        static String chunkField(String imageKey, String token, int index) {
+            return imageKey + "#" + token + "#" + index;
+        }
+
+        /**
+         * @param imageKey Image key.
+         * @return         Fields of all of the chunks in the
+         *                 {@link #IMAGE_HASH_KEY image hash}.
+         */
+        String[] chunkFields(String imageKey) {
+            final String[] fields = new String[chunkCount];
+            for (int i = 0; i < chunkCount; i++) {
+                fields[i] = chunkField(imageKey, token, i);
+            }
+            return fields;
+        }
+
+        int getChunkCount() {
+            return chunkCount;
+        }
+
+        String getToken() {
+            return token;
+        }
+
+        byte[] toBytes() {
+            return (token + ":" + chunkCount).getBytes(StandardCharsets.US_ASCII);
+        }
+
+    }
+
+    /**
+     * Reads the chunks of an image one at a time, while the next one is
+     * fetched asynchronously.
      */
     private static class RedisInputStream extends InputStream {
 
-        private ByteArrayInputStream bufferStream;
-        private StatefulRedisConnection<String, byte[]> connection;
-        private String hashKey;
-        private String valueKey;
+        private final StatefulRedisConnection<String, byte[]> connection;
+        private final String imageKey;
+        private final ImageManifest manifest;
+        private ByteArrayInputStream chunkStream;
+        private RedisFuture<byte[]> nextChunkFuture;
+        private int nextChunkIndex = 0;
 
-        RedisInputStream(String hashKey,
-                         String valueKey,
+        RedisInputStream(String imageKey,
+                         ImageManifest manifest,
                          StatefulRedisConnection<String, byte[]> connection) {
             this.connection = connection;
-            this.hashKey = hashKey;
-            this.valueKey = valueKey;
+            this.imageKey = imageKey;
+            this.manifest = manifest;
+            this.chunkStream = new ByteArrayInputStream(new byte[0]);
+            fetchNextChunk();
+        }
+
+        private void fetchNextChunk() {
+            if (nextChunkIndex < manifest.getChunkCount()) {
+                nextChunkFuture = connection.async().hget(
+                        imageHashKey(imageKey),
+                        ImageManifest.chunkField(imageKey,
+                                manifest.getToken(), nextChunkIndex));
+                nextChunkIndex++;
+            } else {
+                nextChunkFuture = null;
+            }
+        }
+
+        /**
+         * @return Whether there is more data to read.
+         */
+        private boolean advance() throws IOException {
+            while (chunkStream.available() == 0) {
+                if (nextChunkFuture == null) {
+                    return false;
+                }
+                final byte[] chunk;
+                try {
+                    chunk = LettuceFutures.awaitOrCancel(nextChunkFuture,
+                            connection.getTimeout(),
+                            connection.getTimeoutUnit());
+                } catch (RedisException e) {
+                    throw new IOException(e.getMessage(), e);
+                }
+                if (chunk == null) {
+                    throw new IOException("Chunk " + (nextChunkIndex - 1) +
+                            " of " + imageKey + " is missing (has the " +
+                            "image been purged?)");
+                }
+                chunkStream = new ByteArrayInputStream(chunk);
+                fetchNextChunk();
+            }
+            return true;
         }
 
-        private void bufferValue() {
-            byte[] value = connection.sync().hget(hashKey, valueKey);
-            bufferStream = new ByteArrayInputStream(value);
+        @Override
+        public int available() {
+            return chunkStream.available();
         }
 
         @Override
         public void close() throws IOException {
             try {
-                if (bufferStream != null) {
-                    bufferStream.close();
+                if (nextChunkFuture != null) {
+                    nextChunkFuture.cancel(false);
                 }
             } finally {
                 super.close();
@@ -108,77 +274,135 @@ class RedisCache implements DerivativeCache {
         }
 
         @Override
-        public int read() {
-            if (bufferStream == null) {
-                bufferValue();
+        public int read() throws IOException {
+            if (!advance()) {
+                return -1;
             }
-            return bufferStream.read();
+            return chunkStream.read();
         }
 
         @Override
-        public int read(byte[] b) throws IOException {
-            if (bufferStream == null) {
-                bufferValue();
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            } else if (!advance()) {
+                return -1;
             }
-            return bufferStream.read(b);
-        }
-
-        @Override
-        public int read(byte[] b, int off, int len) {
-            if (bufferStream == null) {
-                bufferValue();
-            }
-            return bufferStream.read(b, off, len);
+            return chunkStream.read(b, off, len);
         }
 
     }
 
     /**
-     * Buffers written data and then writes it asynchronously to Redis.
+     * Writes data to Redis in chunks of {@link #CHUNK_SIZE} bytes, at most
+     * two of which are in flight at a time, and then writes the
+     * {@link ImageManifest manifest} upon closure, which makes the image
+     * visible to readers.
      */
     private static class RedisOutputStream extends OutputStream {
 
-        private ByteArrayOutputStream bufferStream = new ByteArrayOutputStream();
-        private StatefulRedisConnection<String, byte[]> connection;
-        private String hashKey;
-        private String valueKey;
-
-        RedisOutputStream(String hashKey,
-                          String valueKey,
+        private final ByteArrayOutputStream bufferStream =
+                new ByteArrayOutputStream();
+        private final StatefulRedisConnection<String, byte[]> connection;
+        private final Identifier identifier;
+        private final String imageKey;
+        private final String token;
+        private int chunkCount = 0;
+        private boolean isClosed = false;
+        private RedisFuture<Boolean> pendingFuture;
+
+        RedisOutputStream(OperationList opList,
                           StatefulRedisConnection<String, byte[]> connection) {
             this.connection = connection;
-            this.hashKey = hashKey;
-            this.valueKey = valueKey;
+            this.identifier = opList.getIdentifier();
+            this.imageKey = imageKey(opList);
+            this.token = Long.toHexString(
+                    ThreadLocalRandom.current().nextLong());
+        }
+
+        private void await(RedisFuture<?> future) throws IOException {
+            try {
+                LettuceFutures.awaitOrCancel(future,
+                        connection.getTimeout(), connection.getTimeoutUnit());
+            } catch (RedisException e) {
+                throw new IOException(e.getMessage(), e);
+            }
         }
 
         @Override
         public void close() throws IOException {
+            if (isClosed) {
+                return;
+            }
+            isClosed = true;
             try {
-                connection.async().hset(hashKey, valueKey,
-                        bufferStream.toByteArray());
+                if (bufferStream.size() > 0 || chunkCount == 0) {
+                    writeChunk();
+                }
+                if (pendingFuture != null) {
+                    await(pendingFuture);
+                }
+                // Add the image to the index of its identifier, atomically
+                // replace the manifest, and then delete the chunks of the
+                // image that it replaces, if any.
+                connection.async().sadd(imageIndexKey(identifier),
+                        imageKey.getBytes(StandardCharsets.UTF_8));
+                final ImageManifest manifest =
+                        new ImageManifest(token, chunkCount);
+                final byte[] oldValue = connection.sync().eval(
+                        REPLACE_MANIFEST_SCRIPT, ScriptOutputType.VALUE,
+                        new String[] { imageHashKey(imageKey) },
+                        imageKey.getBytes(StandardCharsets.UTF_8),
+                        manifest.toBytes());
+                final ImageManifest oldManifest =
+                        ImageManifest.fromBytes(oldValue);
+                if (oldManifest != null) {
+                    purgeChunksLater(imageKey, oldManifest);
+                }
+            } catch (RedisException e) {
+                throw new IOException(e.getMessage(), e);
             } finally {
                 super.close();
             }
         }
 
-        @Override
-        public void flush() throws IOException {
-            bufferStream.flush();
-        }
-
         @Override
         public void write(int b) throws IOException {
             bufferStream.write(b);
+            if (bufferStream.size() >= CHUNK_SIZE) {
+                writeChunk();
+            }
         }
 
         @Override
-        public void write(byte[] b) throws IOException {
-            bufferStream.write(b);
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                final int count = Math.min(len,
+                        CHUNK_SIZE - bufferStream.size());
+                bufferStream.write(b, off, count);
+                off += count;
+                len -= count;
+                if (bufferStream.size() >= CHUNK_SIZE) {
+                    writeChunk();
+                }
+            }
         }
 
-        @Override
-        public void write(byte[] b, int off, int len) throws IOException {
-            bufferStream.write(b, off, len);
+        /**
+         * Writes the contents of the buffer asynchronously as the next chunk,
+         * after waiting for the previous one to be written, and clears the
+         * buffer.
+         */
+        private void writeChunk() throws IOException {
+            if (pendingFuture != null) {
+                await(pendingFuture);
+            }
+            final String field =
+                    ImageManifest.chunkField(imageKey, token, chunkCount);
+            pendingFuture = connection.async().hset(imageHashKey(imageKey),
+                    field, bufferStream.toByteArray());
+            bufferStream.reset();
+            chunkCount++;
         }
 
     }
@@ -204,18 +428,128 @@ class RedisCache implements DerivativeCache {
         }
     }
 
+    /**
+     * Thread-safely initializes a shared executor on which the chunks of
+     * replaced images are purged. One daemon thread is enough, as each purge
+     * is a single asynchronous command.
+     */
+    private static class LazyPurgeExecutorHolder {
+
+        static final ScheduledExecutorService executor =
+                Executors.newSingleThreadScheduledExecutor(runnable -> {
+                    Thread thread = new Thread(runnable);
+                    thread.setName("RedisCache-purge");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
     private static final Logger LOGGER = LoggerFactory.
             getLogger(RedisCache.class);
 
+    /**
+     * Maximum size of the chunks in which images are stored.
+     */
+    static final int CHUNK_SIZE = 1024 * 512;
+
+    /**
+     * Lua script that sets the manifest field {@literal ARGV[1]} of the hash
+     * {@literal KEYS[1]} to {@literal ARGV[2]} and returns its previous
+     * value.
+     */
+    private static final String REPLACE_MANIFEST_SCRIPT =
+            "local old = redis.call('HGET', KEYS[1], ARGV[1]) " +
+            "redis.call('HSET', KEYS[1], ARGV[1], ARGV[2]) " +
+            "return old";
+
+    /**
+     * Time for which the chunks of a replaced image are retained, so that
+     * clients that are reading it can finish.
+     */
+    private static final long REPLACED_CHUNK_RETENTION_MSEC = 60 * 1000;
+
+    /**
+     * Prefix of the keys of the image hashes, which are suffixed with
+     * {@literal .} and a shard number. Before version 4.0, all images were
+     * stored in one hash with this key.
+     */
     static final String IMAGE_HASH_KEY =
             "edu.illinois.library.cantaloupe.image";
+
+    /**
+     * Number of hashes across which images are spread. Changing it will
+     * orphan existing images.
+     */
+    static final int IMAGE_HASH_SHARD_COUNT = 64;
+
+    /**
+     * Prefix of the keys of the sets that index the image keys of each
+     * identifier.
+     */
+    static final String IMAGE_INDEX_KEY_PREFIX =
+            "edu.illinois.library.cantaloupe.image.index:";
+
     static final String INFO_HASH_KEY =
             "edu.illinois.library.cantaloupe.info";
 
+    /**
+     * Waits for all of the given commands to complete, which, as they are
+     * issued to the same connection, are pipelined.
+     */
+    private static void awaitAll(List<? extends RedisFuture<?>> futures) {
+        final StatefulRedisConnection<String, byte[]> connection =
+                getConnection();
+        if (!LettuceFutures.awaitAll(connection.getTimeout(),
+                connection.getTimeoutUnit(),
+                futures.toArray(new RedisFuture<?>[futures.size()]))) {
+            throw new RedisException("Timed out waiting for " +
+                    futures.size() + " commands");
+        }
+    }
+
     private static StatefulRedisConnection<String, byte[]> getConnection() {
         return LazyConnectionHolder.connection;
     }
 
+    /**
+     * @param imageKey Image key.
+     * @return         Key of the hash in which the image with the given key,
+     *                 and its chunks, are stored.
+     */
+    static String imageHashKey(String imageKey) {
+        // String.hashCode() distributes keys that differ only in their last
+        // few characters poorly across a small number of shards.
+        final CRC32 crc = new CRC32();
+        crc.update(imageKey.getBytes(StandardCharsets.UTF_8));
+        return imageHashKey((int) (crc.getValue() % IMAGE_HASH_SHARD_COUNT));
+    }
+
+    private static String imageHashKey(int shard) {
+        return IMAGE_HASH_KEY + "." + shard;
+    }
+
+    /**
+     * @return Key of the set containing the keys of all of the images
+     *         derived from the given identifier.
+     */
+    static String imageIndexKey(Identifier identifier) {
+        return IMAGE_INDEX_KEY_PREFIX + identifier;
+    }
+
+    /**
+     * Deletes the chunks of an image whose manifest has been replaced, after
+     * {@link #REPLACED_CHUNK_RETENTION_MSEC}.
+     */
+    private static void purgeChunksLater(String imageKey,
+                                         ImageManifest manifest) {
+        LazyPurgeExecutorHolder.executor.schedule(() -> {
+            LOGGER.debug("purgeChunksLater(): purging {} replaced chunks " +
+                    "of {}", manifest.getChunkCount(), imageKey);
+            getConnection().async().hdel(imageHashKey(imageKey),
+                    manifest.chunkFields(imageKey));
+        }, REPLACED_CHUNK_RETENTION_MSEC, TimeUnit.MILLISECONDS);
+    }
+
     private static String imageKey(OperationList opList) {
         return opList.toString();
     }
@@ -238,17 +572,17 @@ class RedisCache implements DerivativeCache {
     @Override
     public InputStream newDerivativeImageInputStream(OperationList opList) {
         final String imageKey = imageKey(opList);
-        if (getConnection().sync().hexists(IMAGE_HASH_KEY, imageKey)) {
-            return new RedisInputStream(IMAGE_HASH_KEY, imageKey,
-                    getConnection());
+        final ImageManifest manifest = ImageManifest.fromBytes(
+                getConnection().sync().hget(imageHashKey(imageKey), imageKey));
+        if (manifest != null) {
+            return new RedisInputStream(imageKey, manifest, getConnection());
         }
         return null;
     }
 
     @Override
     public OutputStream newDerivativeImageOutputStream(OperationList opList) {
-        return new RedisOutputStream(IMAGE_HASH_KEY, imageKey(opList),
-                getConnection());
+        return new RedisOutputStream(opList, getConnection());
     }
 
     @Override
@@ -257,9 +591,31 @@ class RedisCache implements DerivativeCache {
         LOGGER.info("purge(): purging {}...", INFO_HASH_KEY);
         getConnection().sync().del(INFO_HASH_KEY);
 
-        // Purge images
-        LOGGER.info("purge(): purging {}...", IMAGE_HASH_KEY);
-        getConnection().sync().del(IMAGE_HASH_KEY);
+        // Purge images, including the unsharded hash of versions < 4.0
+        LOGGER.info("purge(): purging {}.*...", IMAGE_HASH_KEY);
+        final String[] imageHashKeys = new String[IMAGE_HASH_SHARD_COUNT + 1];
+        for (int i = 0; i < IMAGE_HASH_SHARD_COUNT; i++) {
+            imageHashKeys[i] = imageHashKey(i);
+        }
+        imageHashKeys[IMAGE_HASH_SHARD_COUNT] = IMAGE_HASH_KEY;
+        getConnection().sync().del(imageHashKeys);
+
+        // Purge image indexes
+        LOGGER.info("purge(): purging {}*...", IMAGE_INDEX_KEY_PREFIX);
+        final ScanArgs indexPattern =
+                ScanArgs.Builder.matches(IMAGE_INDEX_KEY_PREFIX + "*");
+        KeyScanCursor<String> cursor = getConnection().sync().
+                scan(indexPattern);
+        while (true) {
+            if (!cursor.getKeys().isEmpty()) {
+                getConnection().sync().del(cursor.getKeys().toArray(
+                        new String[cursor.getKeys().size()]));
+            }
+            if (cursor.isFinished()) {
+                break;
+            }
+            cursor = getConnection().sync().scan(cursor, indexPattern);
+        }
     }
 
     @Override
@@ -270,14 +626,68 @@ class RedisCache implements DerivativeCache {
         getConnection().sync().hdel(INFO_HASH_KEY, infoKey);
 
         // Purge images
-        ScanArgs imagePattern = ScanArgs.Builder.matches(identifier + "*");
-        LOGGER.info("purge(Identifier): purging {}...", imagePattern);
+        final String indexKey = imageIndexKey(identifier);
+        LOGGER.info("purge(Identifier): purging images in {}...", indexKey);
+
+        ValueScanCursor<byte[]> cursor =
+                getConnection().sync().sscan(indexKey);
+        while (true) {
+            purgeImages(indexKey, cursor.getValues());
+            if (cursor.isFinished()) {
+                break;
+            }
+            cursor = getConnection().sync().sscan(indexKey, cursor);
+        }
+    }
 
-        MapScanCursor<String, byte[]> cursor = getConnection().sync().
-                hscan(IMAGE_HASH_KEY, imagePattern);
-        for (Object key : cursor.getMap().keySet()) {
-            getConnection().sync().hdel(IMAGE_HASH_KEY, (String) key);
+    /**
+     * Purges the given images and their chunks, and removes them from the
+     * given index, in two pipelined rounds of commands: one {@literal HGET}
+     * per image to fetch their manifests, and then one {@literal HDEL} per
+     * image plus one {@literal SREM}.
+     *
+     * @param indexKey  Key of the index containing the images.
+     * @param imageKeys UTF-8 image keys.
+     */
+    private void purgeImages(String indexKey, List<byte[]> imageKeys) {
+        if (imageKeys.isEmpty()) {
+            return;
+        }
+        final List<RedisFuture<byte[]>> manifestFutures =
+                new ArrayList<>(imageKeys.size());
+        for (byte[] imageKeyBytes : imageKeys) {
+            final String imageKey =
+                    new String(imageKeyBytes, StandardCharsets.UTF_8);
+            manifestFutures.add(getConnection().async().hget(
+                    imageHashKey(imageKey), imageKey));
+        }
+        awaitAll(manifestFutures);
+
+        final List<RedisFuture<?>> deleteFutures =
+                new ArrayList<>(imageKeys.size() + 1);
+        for (int i = 0; i < imageKeys.size(); i++) {
+            final String imageKey =
+                    new String(imageKeys.get(i), StandardCharsets.UTF_8);
+            final ImageManifest manifest;
+            try {
+                manifest = ImageManifest.fromBytes(manifestFutures.get(i).get());
+            } catch (InterruptedException | ExecutionException e) {
+                throw new RedisException(e.getMessage(), e);
+            }
+            final List<String> fields = new ArrayList<>();
+            fields.add(imageKey);
+            if (manifest != null) {
+                fields.addAll(Arrays.asList(manifest.chunkFields(imageKey)));
+            }
+            deleteFutures.add(getConnection().async().hdel(
+                    imageHashKey(imageKey),
+                    fields.toArray(new String[fields.size()])));
         }
+        // Remove only the images that were purged from the index, rather
+        // than deleting it, in case others have been added in the meantime.
+        deleteFutures.add(getConnection().async().srem(indexKey,
+                imageKeys.toArray(new byte[imageKeys.size()][])));
+        awaitAll(deleteFutures);
     }
 
     /**
@@ -293,7 +703,9 @@ class RedisCache implements DerivativeCache {
     public void purge(OperationList opList) {
         String imageKey = imageKey(opList);
         LOGGER.info("purge(OperationList): purging {}...", imageKey);
-        getConnection().sync().hdel(IMAGE_HASH_KEY, imageKey);
+        purgeImages(imageIndexKey(opList.getIdentifier()),
+                Collections.singletonList(
+                        imageKey.getBytes(StandardCharsets.UTF_8)));
     }
 
     @Override
@@ -1,13 +1,19 @@
 package edu.illinois.library.cantaloupe.cache;
 
+import com.amazonaws.AmazonClientException;
 import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
 import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
 import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
 import com.amazonaws.services.s3.model.ObjectListing;
 import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PartETag;
 import com.amazonaws.services.s3.model.PutObjectRequest;
 import com.amazonaws.services.s3.model.S3Object;
 import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.amazonaws.services.s3.model.UploadPartRequest;
 import edu.illinois.library.cantaloupe.async.ThreadPool;
 import edu.illinois.library.cantaloupe.config.Configuration;
 import edu.illinois.library.cantaloupe.config.Key;
@@ -29,11 +35,19 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
 
 /**
  * <p>Cache using an S3 bucket.</p>
  *
- * <p>To improve client-responsiveness, uploads are asynchronous.</p>
+ * <p>To improve client-responsiveness, uploads are asynchronous. Large
+ * images are uploaded in parts as they are written, rather than buffered in
+ * full.</p>
  *
  * <p>Object keys are named according to the following template:</p>
  *
@@ -52,7 +66,7 @@ import java.time.temporal.ChronoUnit;
 class S3Cache implements DerivativeCache {
 
     /**
-     * <p>Wraps a {@link ByteArrayOutputStream} for upload to S3.</p>
+     * <p>Uploads written data to S3.</p>
      *
      * <p>N.B.: S3 does not allow uploads without a <code>Content-Length</code>
      * header, which is impossible to provide when streaming an unknown amount
@@ -66,40 +80,77 @@ class S3Cache implements DerivativeCache {
      * content length be sent in the request headers before any of the data is
      * sent."</blockquote>
      *
-     * <p>Since it's not possible to write an {@link OutputStream} of unknown
-     * length to the S3 client as the {@link Cache} interface requires, this
-     * class buffers written data in a byte array before uploading it to S3
-     * upon closure. (The upload is submitted to the
+     * <p>So, this class buffers written data in a byte array of at most
+     * {@link #partSize} bytes. If the data fits, it is uploaded to S3 in a
+     * single request upon closure. Otherwise, a
+     * <a href="https://docs.aws.amazon.com/AmazonS3/latest/dev/uploadobjusingmpu.html">
+     * multipart upload</a> is started, and each time the buffer fills up, its
+     * contents are uploaded as a part, of which there are at most
+     * {@link #MAX_PENDING_PARTS} in flight at a time. (Writes block while
+     * that many are in flight.) This bounds the amount of memory used by
+     * each stream regardless of the size of the data.</p>
+     *
+     * <p>Uploads are submitted to the
      * {@link ThreadPool#getInstance() application thread pool} in order to
-     * endable {@link #close()} to return immediately.)</p>
+     * enable {@link #close()} to return immediately. If any part fails to
+     * upload, the multipart upload is aborted.</p>
      */
-    private static class S3OutputStream extends OutputStream {
+    static class S3OutputStream extends OutputStream {
+
+        private static final Logger STREAM_LOGGER =
+                LoggerFactory.getLogger(S3OutputStream.class);
+
+        /**
+         * Maximum number of parts that may be uploading at the same time.
+         */
+        private static final int MAX_PENDING_PARTS = 2;
 
-        private final ByteArrayOutputStream bufferStream =
-                new ByteArrayOutputStream();
+        private final ByteArrayOutputStream bufferStream;
         private final String bucketName;
         private final ObjectMetadata metadata;
         private final String objectKey;
+        private final List<Future<?>> partFutures = new ArrayList<>();
+        private final Semaphore partPermits = new Semaphore(MAX_PENDING_PARTS);
+        private final int partSize;
         private final AmazonS3 s3;
+        private boolean isClosed = false;
+
+        /**
+         * ID of the multipart upload, which is {@literal null} until more
+         * than {@link #partSize} bytes have been written.
+         */
+        private String uploadID;
 
         /**
          * @param s3         S3 client.
          * @param bucketName S3 bucket name.
          * @param objectKey  S3 object key.
          * @param metadata   S3 object metadata.
+         * @param partSize   Size of the parts of a multipart upload. Data of
+         *                   this size or less is uploaded in a single
+         *                   request. S3 requires that parts other than the
+         *                   last be at least 5 MB in size.
          */
         S3OutputStream(final AmazonS3 s3,
                        final String bucketName,
                        final String objectKey,
-                       final ObjectMetadata metadata) {
+                       final ObjectMetadata metadata,
+                       final int partSize) {
             this.bucketName = bucketName;
             this.s3 = s3;
             this.objectKey = objectKey;
             this.metadata = metadata;
+            this.partSize = partSize;
+            this.bufferStream = new ByteArrayOutputStream(
+                    Math.min(partSize, 65536));
         }
 
         @Override
         public void close() throws IOException {
+            if (isClosed) {
+                return;
+            }
+            isClosed = true;
             try {
                 bufferStream.close();
 
@@ -107,32 +158,138 @@ class S3Cache implements DerivativeCache {
                 // its progress indicator is still spinning while it waits for
                 // the connection to close. Uploading in a separate thread will
                 // enable this to happen immediately.
-                ThreadPool.getInstance().submit(new S3Upload(
-                        s3, bufferStream.toByteArray(), bucketName, objectKey,
-                        metadata));
+                if (uploadID == null) {
+                    ThreadPool.getInstance().submit(new S3Upload(
+                            s3, bufferStream.toByteArray(), bucketName,
+                            objectKey, metadata));
+                } else {
+                    if (bufferStream.size() > 0) {
+                        uploadPart();
+                    }
+                    ThreadPool.getInstance().submit(
+                            this::completeMultipartUpload);
+                }
             } finally {
                 super.close();
             }
         }
 
+        /**
+         * Waits for all parts to upload and then completes the multipart
+         * upload, or aborts it if any of them failed.
+         */
+        private void completeMultipartUpload() {
+            final Stopwatch watch = new Stopwatch();
+            try {
+                final List<PartETag> eTags = new ArrayList<>(partFutures.size());
+                for (Future<?> future : partFutures) {
+                    eTags.add((PartETag) future.get());
+                }
+                s3.completeMultipartUpload(new CompleteMultipartUploadRequest(
+                        bucketName, objectKey, uploadID, eTags));
+                STREAM_LOGGER.info("Completed multipart upload of {} parts " +
+                                "to {} in bucket {} in {} msec",
+                        eTags.size(), objectKey, bucketName,
+                        watch.timeElapsed());
+            } catch (InterruptedException | ExecutionException |
+                    AmazonClientException e) {
+                STREAM_LOGGER.error("Multipart upload to {} in bucket {} " +
+                        "failed; aborting: {}",
+                        objectKey, bucketName, e.getMessage());
+                try {
+                    s3.abortMultipartUpload(new AbortMultipartUploadRequest(
+                            bucketName, objectKey, uploadID));
+                } catch (AmazonClientException e2) {
+                    STREAM_LOGGER.error("Failed to abort multipart upload " +
+                            "to {} in bucket {}: {}",
+                            objectKey, bucketName, e2.getMessage());
+                }
+            }
+        }
+
         @Override
         public void flush() throws IOException {
             bufferStream.flush();
         }
 
+        /**
+         * @return Whether a multipart upload has been started.
+         */
+        boolean isMultipart() {
+            return uploadID != null;
+        }
+
+        /**
+         * Submits the contents of the buffer for upload as the next part of
+         * the multipart upload, starting it if necessary, and then clears the
+         * buffer.
+         */
+        private void uploadPart() throws IOException {
+            try {
+                if (uploadID == null) {
+                    uploadID = s3.initiateMultipartUpload(
+                            new InitiateMultipartUploadRequest(
+                                    bucketName, objectKey, metadata))
+                            .getUploadId();
+                    STREAM_LOGGER.debug("Started multipart upload to {} in " +
+                            "bucket {}", objectKey, bucketName);
+                }
+                partPermits.acquire();
+            } catch (AmazonClientException | InterruptedException e) {
+                throw new IOException(e.getMessage(), e);
+            }
+
+            final byte[] data = bufferStream.toByteArray();
+            bufferStream.reset();
+            final UploadPartRequest request = new UploadPartRequest()
+                    .withBucketName(bucketName)
+                    .withKey(objectKey)
+                    .withUploadId(uploadID)
+                    .withPartNumber(partFutures.size() + 1)
+                    .withInputStream(new ByteArrayInputStream(data))
+                    .withPartSize(data.length);
+            try {
+                partFutures.add(ThreadPool.getInstance().submit(() -> {
+                    try {
+                        STREAM_LOGGER.debug("Uploading part {} ({} bytes) " +
+                                        "of {} in bucket {}",
+                                request.getPartNumber(), data.length,
+                                objectKey, bucketName);
+                        return s3.uploadPart(request).getPartETag();
+                    } finally {
+                        partPermits.release();
+                    }
+                }));
+            } catch (RejectedExecutionException e) {
+                partPermits.release();
+                throw new IOException(e.getMessage(), e);
+            }
+        }
+
         @Override
-        public void write(int b) {
+        public void write(int b) throws IOException {
             bufferStream.write(b);
+            if (bufferStream.size() >= partSize) {
+                uploadPart();
+            }
         }
 
         @Override
         public void write(byte[] b) throws IOException {
-            bufferStream.write(b);
+            write(b, 0, b.length);
         }
 
         @Override
-        public void write(byte[] b, int off, int len) {
-            bufferStream.write(b, off, len);
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                final int count = Math.min(len, partSize - bufferStream.size());
+                bufferStream.write(b, off, count);
+                off += count;
+                len -= count;
+                if (bufferStream.size() >= partSize) {
+                    uploadPart();
+                }
+            }
         }
 
     }
@@ -191,6 +348,13 @@ class S3Cache implements DerivativeCache {
     private static final Logger LOGGER =
             LoggerFactory.getLogger(S3Cache.class);
 
+    /**
+     * Size of the parts of multipart uploads, which is the minimum allowed by
+     * S3, and also the maximum size of an image that is uploaded in a single
+     * request. See {@link S3OutputStream}.
+     */
+    static final int MULTIPART_PART_SIZE = 1024 * 1024 * 5;
+
     /**
      * Lazy-initialized by {@link #getClientInstance}.
      */
@@ -313,7 +477,8 @@ class S3Cache implements DerivativeCache {
         final ObjectMetadata metadata = new ObjectMetadata();
         metadata.setContentType(
                 opList.getOutputFormat().getPreferredMediaType().toString());
-        return new S3OutputStream(s3, bucketName, objectKey, metadata);
+        return new S3OutputStream(s3, bucketName, objectKey, metadata,
+                MULTIPART_PART_SIZE);
     }
 
     /**
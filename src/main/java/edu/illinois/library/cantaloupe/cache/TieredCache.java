@@ -0,0 +1,617 @@
+package edu.illinois.library.cantaloupe.cache;
+
+import edu.illinois.library.cantaloupe.async.ThreadPool;
+import edu.illinois.library.cantaloupe.config.Configuration;
+import edu.illinois.library.cantaloupe.config.ConfigurationException;
+import edu.illinois.library.cantaloupe.image.Identifier;
+import edu.illinois.library.cantaloupe.image.Info;
+import edu.illinois.library.cantaloupe.operation.OperationList;
+import edu.illinois.library.cantaloupe.util.StringUtil;
+import org.apache.commons.io.output.TeeOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+import static edu.illinois.library.cantaloupe.config.Key.*;
+
+/**
+ * <p>Two-level cache consisting of a {@link HeapCache} ("L1") in front of
+ * any other derivative cache ("L2"), which is specified by
+ * {@link edu.illinois.library.cantaloupe.config.Key#TIEREDCACHE_L2_CACHE}.
+ * This enables hot content to be served from memory while the bulk of it
+ * resides in a slower cache, such as {@link S3Cache}.</p>
+ *
+ * <p>L1 is configured using the same keys as {@link HeapCache}. Like a
+ * standalone {@link HeapCache}, it is size-limited rather than time-limited,
+ * so {@link edu.illinois.library.cantaloupe.config.Key#DERIVATIVE_CACHE_TTL}
+ * only applies to L2.</p>
+ *
+ * <ul>
+ *     <li>Reads are served from L1 if possible and otherwise from L2. Content
+ *     read from L2 is promoted into L1, once it has been read in full, unless
+ *     it is larger than the {@link #getMaxBufferSize() maximum buffer
+ *     size}.</li>
+ *     <li>Writes go to both levels. By default, they are written through to
+ *     L2 synchronously. When
+ *     {@link edu.illinois.library.cantaloupe.config.Key#TIEREDCACHE_WRITE_BEHIND}
+ *     is enabled, they are written to L1 and then to L2 in the background,
+ *     so that clients don't have to wait for L2. Images larger than the
+ *     maximum buffer size are still written through, as they would have to
+ *     be buffered in the heap in the meantime.</li>
+ *     <li>Purges are applied to both levels.</li>
+ * </ul>
+ *
+ * <p>If L2 is not set or is invalid, this cache behaves like a
+ * {@link HeapCache}.</p>
+ *
+ * @since 4.0
+ */
+class TieredCache implements DerivativeCache {
+
+    /**
+     * Reads an image from L2, and promotes it into L1 upon closure if it has
+     * been read in full and is no larger than {@link #getMaxBufferSize()}.
+     */
+    private class PromotingInputStream extends FilterInputStream {
+
+        private final long maxBufferSize = getMaxBufferSize();
+        private final OperationList opList;
+
+        /**
+         * Set to {@literal null} if the image turns out to be too large to
+         * promote.
+         */
+        private ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        private boolean isComplete = false;
+        private boolean isClosed = false;
+
+        PromotingInputStream(InputStream l2InputStream, OperationList opList) {
+            super(l2InputStream);
+            this.opList = opList;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (isClosed) {
+                return;
+            }
+            isClosed = true;
+            try {
+                super.close();
+            } finally {
+                if (isComplete && buffer != null) {
+                    promote(opList, buffer.toByteArray());
+                }
+            }
+        }
+
+        @Override
+        public void mark(int readLimit) {}
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int b = super.read();
+            if (b < 0) {
+                isComplete = true;
+            } else {
+                buffer(new byte[] { (byte) b }, 0, 1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            final int count = super.read(b, off, len);
+            if (count < 0) {
+                isComplete = true;
+            } else {
+                buffer(b, off, count);
+            }
+            return count;
+        }
+
+        private void buffer(byte[] b, int off, int len) {
+            if (buffer == null) {
+                return;
+            }
+            if (buffer.size() + len > maxBufferSize) {
+                LOGGER.debug("PromotingInputStream: {} is too large to " +
+                        "promote", opList);
+                buffer = null;
+                return;
+            }
+            buffer.write(b, off, len);
+        }
+
+        @Override
+        public void reset() throws IOException {
+            throw new IOException("mark/reset not supported");
+        }
+
+        /**
+         * Reads rather than skips, as the skipped bytes are needed for
+         * promotion.
+         */
+        @Override
+        public long skip(long n) throws IOException {
+            final byte[] bytes = new byte[(int) Math.min(n, 8192)];
+            long numSkipped = 0;
+            while (numSkipped < n) {
+                int count = read(bytes, 0,
+                        (int) Math.min(bytes.length, n - numSkipped));
+                if (count < 0) {
+                    break;
+                }
+                numSkipped += count;
+            }
+            return numSkipped;
+        }
+
+    }
+
+    /**
+     * Writes an image to L1, and upon closure, submits a task to write it to
+     * L2. If the image turns out to be larger than {@link
+     * #getMaxBufferSize()}, it is written through to L2 instead.
+     */
+    private class WriteBehindOutputStream extends OutputStream {
+
+        private final long maxBufferSize = getMaxBufferSize();
+        private final OutputStream l1OutputStream;
+        private final OperationList opList;
+
+        /**
+         * Set to {@literal null} when {@link #l2OutputStream} is opened.
+         */
+        private ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        private OutputStream l2OutputStream;
+        private boolean isClosed;
+
+        WriteBehindOutputStream(OutputStream l1OutputStream,
+                                OperationList opList) {
+            this.l1OutputStream = l1OutputStream;
+            this.opList = opList;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (isClosed) {
+                return;
+            }
+            isClosed = true;
+            try {
+                l1OutputStream.close();
+            } finally {
+                if (l2OutputStream != null) {
+                    l2OutputStream.close();
+                } else {
+                    writeBehind(opList, buffer.toByteArray());
+                }
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            l1OutputStream.flush();
+            if (l2OutputStream != null) {
+                l2OutputStream.flush();
+            }
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            l1OutputStream.write(b, off, len);
+            if (l2OutputStream == null &&
+                    buffer.size() + len > maxBufferSize) {
+                LOGGER.debug("WriteBehindOutputStream: {} is too large to " +
+                        "write behind; writing through", opList);
+                l2OutputStream = l2.newDerivativeImageOutputStream(opList);
+                buffer.writeTo(l2OutputStream);
+                buffer = null;
+            }
+            if (l2OutputStream != null) {
+                l2OutputStream.write(b, off, len);
+            } else {
+                buffer.write(b, off, len);
+            }
+        }
+
+    }
+
+    /**
+     * Write-behind to L2 that has been submitted but not yet completed.
+     */
+    private static final class PendingWrite {
+
+        private final OperationList opList;
+
+        /**
+         * Set when the image is purged while the write is pending, in which
+         * case the write must be skipped or undone.
+         */
+        private volatile boolean isPurged;
+
+        PendingWrite(OperationList opList) {
+            this.opList = opList;
+        }
+
+    }
+
+    private static final Logger LOGGER =
+            LoggerFactory.getLogger(TieredCache.class);
+
+    /**
+     * Fraction of the capacity of L1 that an image may take up in order to
+     * be buffered, when {@link
+     * edu.illinois.library.cantaloupe.config.Key#TIEREDCACHE_MAX_BUFFER_SIZE}
+     * is not set. A single image may not take up all of L1, as that would
+     * evict everything else.
+     */
+    static final double DEFAULT_MAX_BUFFER_FRACTION = 0.05;
+
+    /**
+     * Caches that can't be used as L2.
+     */
+    private static final List<String> DISALLOWED_L2_CACHES =
+            Collections.unmodifiableList(Arrays.asList(
+                    HeapCache.class.getSimpleName(),
+                    TieredCache.class.getSimpleName()));
+
+    private final HeapCache l1;
+    private final DerivativeCache l2;
+
+    private final AtomicLong l2Hits = new AtomicLong();
+    private final AtomicLong l2Misses = new AtomicLong();
+
+    /**
+     * Write-behinds that are in progress, so that purges can tell them
+     * whether their content has been purged since it was written to L1.
+     */
+    private final Set<PendingWrite> pendingWrites =
+            ConcurrentHashMap.newKeySet();
+
+    /**
+     * @return New instance of the cache specified by
+     *         {@link edu.illinois.library.cantaloupe.config.Key#TIEREDCACHE_L2_CACHE},
+     *         or {@literal null} if it is not set or is invalid.
+     */
+    private static DerivativeCache newL2Cache() {
+        final Configuration config = Configuration.getInstance();
+        final String unqualifiedName = config.getString(TIEREDCACHE_L2_CACHE);
+        if (unqualifiedName == null || unqualifiedName.isEmpty() ||
+                DISALLOWED_L2_CACHES.contains(unqualifiedName)) {
+            return null;
+        }
+        final String qualifiedName =
+                TieredCache.class.getPackage().getName() + "." +
+                        unqualifiedName;
+        try {
+            Class<?> implClass = Class.forName(qualifiedName);
+            return (DerivativeCache) implClass.newInstance();
+        } catch (ClassNotFoundException e) {
+            LOGGER.error("Class not found: {}", e.getMessage());
+        } catch (ClassCastException | IllegalAccessException |
+                InstantiationException e) {
+            LOGGER.error(e.getMessage());
+        }
+        return null;
+    }
+
+    TieredCache() {
+        this(new HeapCache(), newL2Cache());
+    }
+
+    /**
+     * For testing.
+     *
+     * @param l1 L1 cache.
+     * @param l2 L2 cache. May be {@literal null}.
+     */
+    TieredCache(HeapCache l1, DerivativeCache l2) {
+        this.l1 = l1;
+        this.l2 = l2;
+    }
+
+    @Override
+    public void cleanUp() throws IOException {
+        for (DerivativeCache tier : getTiers()) {
+            tier.cleanUp();
+        }
+    }
+
+    /**
+     * Delegates to L2, as L1 doesn't store images in files. Files are
+     * generally as fast to serve as memory, because they can be sent by the
+     * kernel.
+     */
+    @Override
+    public Path getDerivativeImageFile(OperationList opList)
+            throws IOException {
+        return (l2 != null) ? l2.getDerivativeImageFile(opList) : null;
+    }
+
+    @Override
+    public Info getImageInfo(Identifier identifier) throws IOException {
+        Info info = l1.getImageInfo(identifier);
+        if (info == null && l2 != null) {
+            info = l2.getImageInfo(identifier);
+            if (info != null) {
+                LOGGER.info("getImageInfo(): L2 hit for {}; promoting",
+                        identifier);
+                l1.put(identifier, info);
+            }
+        }
+        return info;
+    }
+
+    HeapCache getL1() {
+        return l1;
+    }
+
+    /**
+     * @return Maximum number of bytes of an image that will be buffered in
+     *         the heap for promotion or write-behind, which is {@link
+     *         edu.illinois.library.cantaloupe.config.Key#TIEREDCACHE_MAX_BUFFER_SIZE},
+     *         if set, or else {@link #DEFAULT_MAX_BUFFER_FRACTION} of the
+     *         capacity of L1, but never more than that capacity; or
+     *         {@literal 0} if either is invalid.
+     */
+    long getMaxBufferSize() {
+        final long l1Size;
+        try {
+            l1Size = l1.getTargetByteSize();
+        } catch (ConfigurationException e) {
+            return 0;
+        }
+        final String humanSize = Configuration.getInstance().
+                getString(TIEREDCACHE_MAX_BUFFER_SIZE, "");
+        if (humanSize.isEmpty()) {
+            return (long) (l1Size * DEFAULT_MAX_BUFFER_FRACTION);
+        }
+        try {
+            return Math.min(StringUtil.toBytes(humanSize), l1Size);
+        } catch (NumberFormatException e) {
+            LOGGER.error("getMaxBufferSize(): invalid value for {}: {}",
+                    TIEREDCACHE_MAX_BUFFER_SIZE, humanSize);
+            return 0;
+        }
+    }
+
+    /**
+     * @return L2 cache, or {@literal null} if it is not set or is invalid.
+     */
+    DerivativeCache getL2() {
+        return l2;
+    }
+
+    /**
+     * @return Statistics of L1 (see {@link HeapCache#getStatistics()}), plus
+     *         the cumulative numbers of L1 misses that hit and missed L2.
+     */
+    Map<String, Long> getStatistics() {
+        final Map<String, Long> map = l1.getStatistics();
+        map.put("l2Hits", l2Hits.get());
+        map.put("l2Misses", l2Misses.get());
+        return map;
+    }
+
+    /**
+     * @return L1 and L2, if it is available.
+     */
+    private List<DerivativeCache> getTiers() {
+        final List<DerivativeCache> tiers = new ArrayList<>(2);
+        tiers.add(l1);
+        if (l2 != null) {
+            tiers.add(l2);
+        }
+        return tiers;
+    }
+
+    @Override
+    public void initialize() {
+        if (l2 == null) {
+            LOGGER.error("initialize(): {} is not set to a valid cache; " +
+                            "caching in the heap only",
+                    TIEREDCACHE_L2_CACHE);
+        }
+        for (DerivativeCache tier : getTiers()) {
+            tier.initialize();
+        }
+    }
+
+    /**
+     * @return Value of
+     *         {@link edu.illinois.library.cantaloupe.config.Key#TIEREDCACHE_WRITE_BEHIND}
+     *         in the application configuration, or {@literal false} if it is
+     *         not set.
+     */
+    boolean isWriteBehind() {
+        final Configuration config = Configuration.getInstance();
+        return config.getBoolean(TIEREDCACHE_WRITE_BEHIND, false);
+    }
+
+    @Override
+    public InputStream newDerivativeImageInputStream(OperationList opList)
+            throws IOException {
+        InputStream inputStream = l1.newDerivativeImageInputStream(opList);
+        if (inputStream == null && l2 != null) {
+            inputStream = l2.newDerivativeImageInputStream(opList);
+            if (inputStream != null) {
+                LOGGER.info("newDerivativeImageInputStream(): L2 hit for {}",
+                        opList);
+                l2Hits.incrementAndGet();
+                inputStream = new PromotingInputStream(inputStream, opList);
+            } else {
+                l2Misses.incrementAndGet();
+            }
+        }
+        return inputStream;
+    }
+
+    @Override
+    public OutputStream newDerivativeImageOutputStream(OperationList opList)
+            throws IOException {
+        final OutputStream l1OutputStream =
+                l1.newDerivativeImageOutputStream(opList);
+        if (l2 == null) {
+            return l1OutputStream;
+        } else if (isWriteBehind()) {
+            return new WriteBehindOutputStream(l1OutputStream, opList);
+        }
+        return new TeeOutputStream(l1OutputStream,
+                l2.newDerivativeImageOutputStream(opList));
+    }
+
+    /**
+     * Marks the pending write-behinds of images matching the given predicate
+     * as purged. Must be called before the tiers are purged, so that a
+     * write-behind that completes after its image has been purged from L2
+     * will see the mark and purge it again.
+     */
+    private void markPendingWritesPurged(Predicate<OperationList> predicate) {
+        for (PendingWrite pendingWrite : pendingWrites) {
+            if (predicate.test(pendingWrite.opList)) {
+                pendingWrite.isPurged = true;
+            }
+        }
+    }
+
+    /**
+     * Adds the given image, which has been read from L2, to L1.
+     */
+    private void promote(OperationList opList, byte[] data) {
+        LOGGER.debug("promote(): promoting {} ({} bytes) to L1",
+                opList, data.length);
+        try (OutputStream os = l1.newDerivativeImageOutputStream(opList)) {
+            os.write(data);
+        } catch (IOException e) {
+            LOGGER.error("promote(): {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public void purge() throws IOException {
+        markPendingWritesPurged(opList -> true);
+        for (DerivativeCache tier : getTiers()) {
+            tier.purge();
+        }
+    }
+
+    @Override
+    public void purge(Identifier identifier) throws IOException {
+        markPendingWritesPurged(opList ->
+                identifier.equals(opList.getIdentifier()));
+        for (DerivativeCache tier : getTiers()) {
+            tier.purge(identifier);
+        }
+    }
+
+    @Override
+    public void purge(OperationList opList) throws IOException {
+        markPendingWritesPurged(opList::equals);
+        for (DerivativeCache tier : getTiers()) {
+            tier.purge(opList);
+        }
+    }
+
+    /**
+     * Purges invalid content from L2. (L1 content never becomes invalid.)
+     */
+    @Override
+    public void purgeInvalid() throws IOException {
+        for (DerivativeCache tier : getTiers()) {
+            tier.purgeInvalid();
+        }
+    }
+
+    /**
+     * Writes the given info to both levels. Infos are small, so they are
+     * always written through to L2.
+     */
+    @Override
+    public void put(Identifier identifier, Info imageInfo) throws IOException {
+        for (DerivativeCache tier : getTiers()) {
+            tier.put(identifier, imageInfo);
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        for (DerivativeCache tier : getTiers()) {
+            tier.shutdown();
+        }
+    }
+
+    /**
+     * Writes the given image, which has been written to L1, to L2, in the
+     * background if possible. If the image is purged in the meantime, the
+     * write is skipped, or, if it was already underway, undone.
+     */
+    private void writeBehind(OperationList opList, byte[] data) {
+        final PendingWrite pendingWrite = new PendingWrite(opList);
+        pendingWrites.add(pendingWrite);
+        final Runnable task = () -> {
+            try {
+                if (pendingWrite.isPurged) {
+                    LOGGER.debug("writeBehind(): {} has been purged; " +
+                            "skipping", opList);
+                    return;
+                }
+                try (OutputStream os =
+                             l2.newDerivativeImageOutputStream(opList)) {
+                    os.write(data);
+                } catch (IOException e) {
+                    LOGGER.error("writeBehind(): failed to write {} to L2: {}",
+                            opList, e.getMessage());
+                }
+            } finally {
+                pendingWrites.remove(pendingWrite);
+            }
+            if (pendingWrite.isPurged) {
+                // The purge may have reached L2 before the write did.
+                LOGGER.debug("writeBehind(): {} was purged while being " +
+                        "written; purging it from L2", opList);
+                try {
+                    l2.purge(opList);
+                } catch (IOException e) {
+                    LOGGER.error("writeBehind(): failed to purge {} from " +
+                            "L2: {}", opList, e.getMessage());
+                }
+            }
+        };
+        try {
+            ThreadPool.getInstance().submit(task);
+        } catch (RejectedExecutionException e) {
+            LOGGER.warn("writeBehind(): {}; writing synchronously",
+                    e.getMessage());
+            task.run();
+        }
+    }
+
+}
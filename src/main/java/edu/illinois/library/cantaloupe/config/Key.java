@@ -86,11 +86,14 @@ public enum Key {
     FFMPEGPROCESSOR_PATH_TO_BINARIES("FfmpegProcessor.path_to_binaries"),
     FILESYSTEMCACHE_DIRECTORY_DEPTH("FilesystemCache.dir.depth"),
     FILESYSTEMCACHE_DIRECTORY_NAME_LENGTH("FilesystemCache.dir.name_length"),
+    FILESYSTEMCACHE_INDEX_ENABLED("FilesystemCache.index.enabled"),
+    FILESYSTEMCACHE_MAX_SIZE("FilesystemCache.max_size"),
     FILESYSTEMCACHE_PATHNAME("FilesystemCache.pathname"),
     FILESYSTEMRESOLVER_LOOKUP_STRATEGY("FilesystemResolver.lookup_strategy"),
     FILESYSTEMRESOLVER_PATH_PREFIX("FilesystemResolver.BasicLookupStrategy.path_prefix"),
     FILESYSTEMRESOLVER_PATH_SUFFIX("FilesystemResolver.BasicLookupStrategy.path_suffix"),
     GRAPHICSMAGICKPROCESSOR_PATH_TO_BINARIES("GraphicsMagickProcessor.path_to_binaries"),
+    HEAPCACHE_OFF_HEAP("HeapCache.off_heap"),
     HEAPCACHE_PATHNAME("HeapCache.persist.filesystem.pathname"),
     HEAPCACHE_PERSIST("HeapCache.persist"),
     HEAPCACHE_TARGET_SIZE("HeapCache.target_size"),
@@ -101,7 +104,11 @@ public enum Key {
     HTTP_PORT("http.port"),
     HTTPRESOLVER_BASIC_AUTH_SECRET("HttpResolver.auth.basic.secret"),
     HTTPRESOLVER_BASIC_AUTH_USERNAME("HttpResolver.auth.basic.username"),
+    HTTPRESOLVER_HTTP2("HttpResolver.http2"),
+    HTTPRESOLVER_IDLE_TIMEOUT("HttpResolver.idle_timeout"),
     HTTPRESOLVER_LOOKUP_STRATEGY("HttpResolver.lookup_strategy"),
+    HTTPRESOLVER_MAX_CONNECTIONS_PER_ORIGIN("HttpResolver.max_connections_per_origin"),
+    HTTPRESOLVER_MAX_QUEUED_REQUESTS_PER_ORIGIN("HttpResolver.max_queued_requests_per_origin"),
     HTTPRESOLVER_REQUEST_TIMEOUT("HttpResolver.request_timeout"),
     HTTPRESOLVER_TRUST_ALL_CERTS("HttpResolver.trust_all_certs"),
     HTTPRESOLVER_URL_PREFIX("HttpResolver.BasicLookupStrategy.url_prefix"),
@@ -126,6 +133,7 @@ public enum Key {
     JDBCCACHE_DERIVATIVE_IMAGE_TABLE("JdbcCache.derivative_image_table"),
     JDBCCACHE_INFO_TABLE("JdbcCache.info_table"),
     JDBCCACHE_JDBC_URL("JdbcCache.url"),
+    JDBCCACHE_LAST_ACCESSED_FLUSH_INTERVAL("JdbcCache.last_accessed.flush_interval"),
     JDBCCACHE_PASSWORD("JdbcCache.password"),
     JDBCCACHE_USER("JdbcCache.user"),
     JDBCRESOLVER_CONNECTION_TIMEOUT("JdbcResolver.connection_timeout"),
@@ -155,6 +163,10 @@ public enum Key {
     OVERLAY_TYPE("overlays.BasicStrategy.type"),
     PRINT_STACK_TRACE_ON_ERROR_PAGES("print_stack_trace_on_error_pages"),
     PROCESSOR_BACKGROUND_COLOR("processor.background_color"),
+    PROCESSOR_DECODER_MAX_PROCESSES("processor.decoder.max_processes"),
+    PROCESSOR_DECODER_MAX_QUEUED("processor.decoder.max_queued"),
+    PROCESSOR_DECODER_PROCESS_TIMEOUT("processor.decoder.process_timeout"),
+    PROCESSOR_DECODER_QUEUE_TIMEOUT("processor.decoder.queue_timeout"),
     PROCESSOR_DOWNSCALE_FILTER("processor.downscale_filter"),
     PROCESSOR_DPI("processor.dpi"),
     PROCESSOR_FALLBACK("processor.fallback"),
@@ -174,6 +186,7 @@ public enum Key {
     REDISCACHE_PORT("RedisCache.port"),
     REDISCACHE_SSL("RedisCache.ssl"),
     RESOLVER_DELEGATE("resolver.delegate"),
+    RESOLVER_METADATA_CACHE_TTL("resolver.metadata_cache.ttl_seconds"),
     RESOLVER_STATIC("resolver.static"),
     S3CACHE_ACCESS_KEY_ID("S3Cache.access_key_id"),
     S3CACHE_BUCKET_NAME("S3Cache.bucket.name"),
@@ -186,13 +199,17 @@ public enum Key {
     S3RESOLVER_ENDPOINT("S3Resolver.endpoint"),
     S3RESOLVER_LOOKUP_STRATEGY("S3Resolver.lookup_strategy"),
     S3RESOLVER_MAX_CONNECTIONS("S3Resolver.max_connections"),
+    S3RESOLVER_METADATA_CACHE_TTL("S3Resolver.metadata_cache.ttl_seconds"),
     S3RESOLVER_SECRET_KEY("S3Resolver.secret_key"),
     SLASH_SUBSTITUTE("slash_substitute"),
     SOURCE_CACHE("cache.server.source"),
     SOURCE_CACHE_ENABLED("cache.server.source.enabled"),
     SOURCE_CACHE_TTL("cache.server.source.ttl_seconds"),
     STREAMPROCESSOR_RETRIEVAL_STRATEGY("StreamProcessor.retrieval_strategy"),
-    TEMP_PATHNAME("temp_pathname");
+    TEMP_PATHNAME("temp_pathname"),
+    TIEREDCACHE_L2_CACHE("TieredCache.l2_cache"),
+    TIEREDCACHE_MAX_BUFFER_SIZE("TieredCache.max_buffer_size"),
+    TIEREDCACHE_WRITE_BEHIND("TieredCache.write_behind");
 
     private String key;
 
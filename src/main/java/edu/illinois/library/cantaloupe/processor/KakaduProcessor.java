@@ -9,15 +9,19 @@ import edu.illinois.library.cantaloupe.image.Info;
 import edu.illinois.library.cantaloupe.operation.Normalize;
 import edu.illinois.library.cantaloupe.operation.Operation;
 import edu.illinois.library.cantaloupe.operation.OperationList;
+import edu.illinois.library.cantaloupe.operation.Orientation;
 import edu.illinois.library.cantaloupe.operation.ReductionFactor;
 import edu.illinois.library.cantaloupe.operation.Scale;
 import edu.illinois.library.cantaloupe.operation.Crop;
 import edu.illinois.library.cantaloupe.processor.imageio.ImageReader;
 import edu.illinois.library.cantaloupe.processor.imageio.ImageWriter;
+import edu.illinois.library.cantaloupe.processor.imageio.JPEG2000HeaderReader;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.imageio.stream.FileImageInputStream;
+import javax.imageio.stream.ImageInputStream;
 import java.awt.Dimension;
 import java.awt.image.BufferedImage;
 import java.io.BufferedInputStream;
@@ -62,9 +66,13 @@ import java.util.concurrent.atomic.AtomicBoolean;
  * The temporary symlink is created by {@link #initialize()} and deleted on
  * exit.</p>
  *
+ * <p>{@literal kdu_expand} processes are launched through a {@link
+ * ProcessPool}, which limits how many of them run at once.</p>
+ *
  * <p>Although {@literal kdu_expand} is used for reading images,
  * {@literal kdu_jp2info} is <strong>not</strong> used for reading metadata.
- * ImageIO is used instead, as it is more efficient.</p>
+ * Instead, the main header of the codestream is read directly by a {@link
+ * JPEG2000HeaderReader}, which is a lot more efficient.</p>
  *
  * @see <a href="http://kakadusoftware.com/wp-content/uploads/2014/06/Usage_Examples-v7_7.txt">
  *     Usage Examples for the Demonstration Applications Supplied with Kakadu
@@ -87,8 +95,20 @@ class KakaduProcessor extends AbstractJava2DProcessor implements FileProcessor {
      * Set by {@link #initialize()}.
      */
     private static InitializationException initializationException;
+
+    /**
+     * Lazy-set by {@link #getProcessPool()}.
+     */
+    private static ProcessPool processPool;
+
     private static Path stdoutSymlink;
 
+    /**
+     * Main header of the source image. Lazy-set by {@link
+     * #getHeaderReader()}, and reset by {@link #setSourceFile(Path)}.
+     */
+    private JPEG2000HeaderReader headerReader;
+
     /**
      * Creates a unique symlink to {@literal /dev/stdout} in a temporary
      * directory, and sets it to delete on exit.
@@ -121,6 +141,13 @@ class KakaduProcessor extends AbstractJava2DProcessor implements FileProcessor {
         return path;
     }
 
+    private static synchronized ProcessPool getProcessPool() {
+        if (processPool == null) {
+            processPool = ProcessPool.fromConfiguration("kdu_expand");
+        }
+        return processPool;
+    }
+
     private static synchronized void initialize() {
         initializationAttempted.set(true);
 
@@ -162,6 +189,7 @@ class KakaduProcessor extends AbstractJava2DProcessor implements FileProcessor {
     static synchronized void resetInitialization() {
         initializationAttempted.set(false);
         initializationException = null;
+        processPool = null;
     }
 
     private static String toString(ByteArrayOutputStream os) {
@@ -205,6 +233,35 @@ class KakaduProcessor extends AbstractJava2DProcessor implements FileProcessor {
         return tileSize;
     }
 
+    /**
+     * @return Reader of the main header of the source image, which has
+     *         already been read, so that {@link #readImageInfo()} and {@link
+     *         #process} don't each have to read it.
+     */
+    private JPEG2000HeaderReader getHeaderReader() throws IOException {
+        if (headerReader == null) {
+            try (ImageInputStream is =
+                         new FileImageInputStream(sourceFile.toFile())) {
+                final JPEG2000HeaderReader reader =
+                        new JPEG2000HeaderReader(is);
+                // Read the header while the stream is open.
+                reader.getSize();
+                headerReader = reader;
+            }
+        }
+        return headerReader;
+    }
+
+    /**
+     * @return Maximum number of resolution levels that {@literal kdu_expand}'s
+     *         {@literal -reduce} argument can discard, which is limited by the
+     *         number of decomposition levels in the source image.
+     */
+    private int getMaxReductionFactor() throws IOException {
+        return Math.min(MAX_REDUCTION_FACTOR,
+                getHeaderReader().getNumDecompositionLevels());
+    }
+
     @Override
     public InitializationException getInitializationException() {
         if (!initializationAttempted.get()) {
@@ -213,20 +270,32 @@ class KakaduProcessor extends AbstractJava2DProcessor implements FileProcessor {
         return initializationException;
     }
 
+    @Override
+    public List<String> getWarnings() {
+        List<String> warnings = new ArrayList<>();
+        final ProcessPool pool = getProcessPool();
+        if (!pool.isHealthy()) {
+            warnings.add("kdu_expand has been failing repeatedly " +
+                    "(most recently: " + pool.getLastFailure() + ").");
+        }
+        return warnings;
+    }
+
     /**
-     * <p>Reads image information using ImageIO.</p>
-     *
-     * <p>This override disposes the reader since it won't be used for anything
-     * else.</p>
+     * Reads image information from the main header of the codestream using
+     * a {@link JPEG2000HeaderReader}, which needs to read only the first few
+     * hundred bytes of the image.
      */
     @Override
     public Info readImageInfo() throws IOException {
-        Info info;
-        try {
-            info = super.readImageInfo();
-        } finally {
-            getReader().dispose();
-        }
+        final JPEG2000HeaderReader reader = getHeaderReader();
+        final Info.Image image = new Info.Image(
+                reader.getSize(), Orientation.ROTATE_0);
+        image.setTileSize(reader.getTileSize());
+
+        final Info info = new Info();
+        info.setSourceFormat(getSourceFormat());
+        info.getImages().add(image);
         return info;
     }
 
@@ -246,10 +315,14 @@ class KakaduProcessor extends AbstractJava2DProcessor implements FileProcessor {
             final boolean normalize = (opList.getFirst(Normalize.class) != null);
 
             final ProcessBuilder pb = getProcessBuilder(
-                    opList, imageInfo.getSize(), reductionFactor, normalize);
+                    opList, imageInfo.getSize(), getMaxReductionFactor(),
+                    reductionFactor, normalize);
             LOGGER.info("Invoking {}", String.join(" ", pb.command()));
-            final Process process = pb.start();
+            final ProcessPool.PooledProcess pooledProcess =
+                    getProcessPool().start(pb);
+            final Process process = pooledProcess.getProcess();
 
+            final BufferedImage image;
             try (final InputStream processInputStream =
                          new BufferedInputStream(process.getInputStream());
                  final InputStream processErrorStream = process.getErrorStream()) {
@@ -258,29 +331,37 @@ class KakaduProcessor extends AbstractJava2DProcessor implements FileProcessor {
 
                 final ImageReader reader = new ImageReader(
                         processInputStream, Format.TIF);
-                final BufferedImage image = reader.read();
                 try {
-                    Set<ImageReader.Hint> hints =
-                            EnumSet.noneOf(ImageReader.Hint.class);
-                    if (!normalize) {
-                        hints.add(ImageReader.Hint.ALREADY_CROPPED);
-                    }
-                    postProcess(image, hints, opList, imageInfo,
-                            reductionFactor, outputStream);
-                    final int code = process.waitFor();
-                    if (code != 0) {
-                        LOGGER.warn("kdu_expand returned with code {}", code);
-                        final String errorStr = toString(errorBucket);
-                        if (errorStr.length() > 0) {
-                            throw new ProcessorException(errorStr);
-                        }
-                    }
+                    image = reader.read();
                 } finally {
                     reader.dispose();
                 }
+                final int code = process.waitFor();
+                // Free the process's slot in the pool now that it is done,
+                // rather than after the image has been encoded and sent to
+                // the client, which may take much longer.
+                pooledProcess.close();
+                if (pooledProcess.isKilled()) {
+                    throw new ProcessorException(
+                            "kdu_expand timed out (" + opList + ")");
+                } else if (code != 0) {
+                    LOGGER.warn("kdu_expand returned with code {}", code);
+                    final String errorStr = toString(errorBucket);
+                    if (errorStr.length() > 0) {
+                        throw new ProcessorException(errorStr);
+                    }
+                }
             } finally {
-                process.destroy();
+                pooledProcess.close();
             }
+
+            Set<ImageReader.Hint> hints =
+                    EnumSet.noneOf(ImageReader.Hint.class);
+            if (!normalize) {
+                hints.add(ImageReader.Hint.ALREADY_CROPPED);
+            }
+            postProcess(image, hints, opList, imageInfo,
+                    reductionFactor, outputStream);
         } catch (EOFException e) {
             // This is usually caused by the connection closing.
             String msg = e.getMessage();
@@ -302,6 +383,8 @@ class KakaduProcessor extends AbstractJava2DProcessor implements FileProcessor {
     /**
      * @param opList
      * @param imageSize  The full size of the source image.
+     * @param maxReductionFactor Maximum reduction factor that the image
+     *                   supports.
      * @param reduction  The {@link ReductionFactor#factor} property will be
      *                   modified.
      * @param ignoreCrop Ignore any cropping directives provided in
@@ -311,6 +394,7 @@ class KakaduProcessor extends AbstractJava2DProcessor implements FileProcessor {
      */
     private ProcessBuilder getProcessBuilder(final OperationList opList,
                                              final Dimension imageSize,
+                                             final int maxReductionFactor,
                                              final ReductionFactor reduction,
                                              final boolean ignoreCrop) {
         final List<String> command = new ArrayList<>();
@@ -380,7 +464,7 @@ class KakaduProcessor extends AbstractJava2DProcessor implements FileProcessor {
                 final Dimension tileSize = getCroppedSize(opList, imageSize);
                 if (!ignoreCrop) {
                     reduction.factor = scale.getReductionFactor(
-                            tileSize, MAX_REDUCTION_FACTOR).factor;
+                            tileSize, maxReductionFactor).factor;
                     if (reduction.factor > 0) {
                         command.add("-reduce");
                         command.add(reduction.factor + "");
@@ -395,4 +479,10 @@ class KakaduProcessor extends AbstractJava2DProcessor implements FileProcessor {
         return new ProcessBuilder(command);
     }
 
+    @Override
+    public void setSourceFile(Path sourceFile) {
+        super.setSourceFile(sourceFile);
+        headerReader = null;
+    }
+
 }
@@ -10,16 +10,20 @@ import edu.illinois.library.cantaloupe.operation.Encode;
 import edu.illinois.library.cantaloupe.operation.Normalize;
 import edu.illinois.library.cantaloupe.operation.Operation;
 import edu.illinois.library.cantaloupe.operation.OperationList;
+import edu.illinois.library.cantaloupe.operation.Orientation;
 import edu.illinois.library.cantaloupe.operation.ReductionFactor;
 import edu.illinois.library.cantaloupe.operation.Scale;
 import edu.illinois.library.cantaloupe.operation.Crop;
 import edu.illinois.library.cantaloupe.processor.imageio.ImageReader;
 import edu.illinois.library.cantaloupe.processor.imageio.ImageWriter;
+import edu.illinois.library.cantaloupe.processor.imageio.JPEG2000HeaderReader;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.imageio.stream.FileImageInputStream;
+import javax.imageio.stream.ImageInputStream;
 import java.awt.Dimension;
 import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
@@ -50,19 +54,19 @@ import java.util.regex.Pattern;
  *
  * <p>{@literal opj_decompress} is used for cropping and an initial scale
  * reduction factor, and Java 2D is used for all remaining processing steps.
- * It produces BMP output which is streamed to an ImageIO reader. (BMP does not
- * copy embedded ICC profiles into output images, but {@literal opj_decompress}
- * converts the RGB source data itself. BMP also doesn't support more than 8
- * bits per sample, which means that this processor can't respect {@link
- * Encode#getMaxSampleSize()}, and all output is &le; 8 bits.)</p>
+ * It produces PNM/PAM output, i.e. raw samples behind a short header, which
+ * is streamed to a {@link PNMReader}. (PNM does not copy embedded ICC
+ * profiles into output images, but {@literal opj_decompress} converts the RGB
+ * source data itself. Samples of more than 8 bits are written as 16 bits,
+ * which means that {@link Encode#getMaxSampleSize()} is respected.)</p>
  *
  * <p>{@literal opj_decompress} reads and writes the files named in the
  * {@literal -i} and {@literal -o} arguments passed to it, respectively. The
- * file in the {@literal -o} argument must have a {@literal .bmp} extension.
+ * file in the {@literal -o} argument must have a {@literal .pnm} extension.
  * This means that it's not possible to natively write to a {@link
  * Process#getInputStream() process input stream}. Instead, we have to resort
  * to a special trick whereby we create a symlink from
- * {@literal /tmp/whatever.bmp} to {@literal /dev/stdout}, which will enable us
+ * {@literal /tmp/whatever.pnm} to {@literal /dev/stdout}, which will enable us
  * to accomplish this. The temporary symlink is created in the static
  * initializer and deleted on exit.</p>
  *
@@ -73,9 +77,13 @@ import java.util.regex.Pattern;
  * Earlier versions echo log messages to stdout, which can cause problems with
  * some images.</p>
  *
+ * <p>{@literal opj_decompress} processes are launched through a {@link
+ * ProcessPool}, which limits how many of them run at once.</p>
+ *
  * <p>Although {@literal opj_decompress} is used for reading images,
  * {@literal opj_dump} is <strong>not</strong> used for reading metadata.
- * ImageIO is used instead, as it is more efficient.</p>
+ * Instead, the main header of the codestream is read directly by a {@link
+ * JPEG2000HeaderReader}, which is a lot more efficient.</p>
  */
 class OpenJpegProcessor extends AbstractJava2DProcessor
         implements FileProcessor {
@@ -97,8 +105,17 @@ class OpenJpegProcessor extends AbstractJava2DProcessor
     /** Lazy-set by {@link #isQuietModeSupported()} */
     private static boolean isQuietModeSupported = true;
 
+    /** Lazy-set by {@link #getProcessPool()} */
+    private static ProcessPool processPool;
+
     private static Path stdoutSymlink;
 
+    /**
+     * Main header of the source image. Lazy-set by {@link
+     * #getHeaderReader()}, and reset by {@link #setSourceFile(Path)}.
+     */
+    private JPEG2000HeaderReader headerReader;
+
     /**
      * Creates a unique symlink to /dev/stdout in a temporary directory, and
      * sets it to delete on exit.
@@ -108,7 +125,7 @@ class OpenJpegProcessor extends AbstractJava2DProcessor
 
         final Path link = tempDir.resolve(Application.NAME + "-" +
                 OpenJpegProcessor.class.getSimpleName() + "-" +
-                UUID.randomUUID() + ".bmp");
+                UUID.randomUUID() + ".pnm");
         final Path devStdout = Paths.get("/dev/stdout");
 
         stdoutSymlink = Files.createSymbolicLink(link, devStdout);
@@ -131,6 +148,13 @@ class OpenJpegProcessor extends AbstractJava2DProcessor
         return path;
     }
 
+    private static synchronized ProcessPool getProcessPool() {
+        if (processPool == null) {
+            processPool = ProcessPool.fromConfiguration("opj_decompress");
+        }
+        return processPool;
+    }
+
     private static synchronized void initialize() {
         initializationAttempted.set(true);
 
@@ -143,7 +167,7 @@ class OpenJpegProcessor extends AbstractJava2DProcessor
             final Path devStdout = Paths.get("/dev/stdout");
             if (Files.exists(devStdout) && Files.isWritable(devStdout)) {
                 // Due to another quirk of opj_decompress, we need to create a
-                // symlink from {temp path}/stdout.bmp to /dev/stdout, to tell
+                // symlink from {temp path}/stdout.pnm to /dev/stdout, to tell
                 // opj_decompress what format to write.
                 createStdoutSymlink();
             } else {
@@ -223,6 +247,7 @@ class OpenJpegProcessor extends AbstractJava2DProcessor
     static synchronized void resetInitialization() {
         initializationAttempted.set(false);
         initializationException = null;
+        processPool = null;
     }
 
     /**
@@ -273,6 +298,35 @@ class OpenJpegProcessor extends AbstractJava2DProcessor
         return tileSize;
     }
 
+    /**
+     * @return Reader of the main header of the source image, which has
+     *         already been read, so that {@link #readImageInfo()} and {@link
+     *         #process} don't each have to read it.
+     */
+    private JPEG2000HeaderReader getHeaderReader() throws IOException {
+        if (headerReader == null) {
+            try (ImageInputStream is =
+                         new FileImageInputStream(sourceFile.toFile())) {
+                final JPEG2000HeaderReader reader =
+                        new JPEG2000HeaderReader(is);
+                // Read the header while the stream is open.
+                reader.getSize();
+                headerReader = reader;
+            }
+        }
+        return headerReader;
+    }
+
+    /**
+     * @return Maximum number of resolution levels that {@literal opj_decompress}'s
+     *         {@literal -r} argument can discard, which is limited by the
+     *         number of decomposition levels in the source image.
+     */
+    private int getMaxReductionFactor() throws IOException {
+        return Math.min(MAX_REDUCTION_FACTOR,
+                getHeaderReader().getNumDecompositionLevels());
+    }
+
     @Override
     public InitializationException getInitializationException() {
         if (!initializationAttempted.get()) {
@@ -282,19 +336,20 @@ class OpenJpegProcessor extends AbstractJava2DProcessor
     }
 
     /**
-     * <p>Reads image information using ImageIO.</p>
-     *
-     * <p>This override disposes the reader since it won't be used for anything
-     * else.</p>
+     * Reads image information from the main header of the codestream using
+     * a {@link JPEG2000HeaderReader}, which needs to read only the first few
+     * hundred bytes of the image.
      */
     @Override
     public Info readImageInfo() throws IOException {
-        Info info;
-        try {
-            info = super.readImageInfo();
-        } finally {
-            getReader().dispose();
-        }
+        final JPEG2000HeaderReader reader = getHeaderReader();
+        final Info.Image image = new Info.Image(
+                reader.getSize(), Orientation.ROTATE_0);
+        image.setTileSize(reader.getTileSize());
+
+        final Info info = new Info();
+        info.setSourceFormat(getSourceFormat());
+        info.getImages().add(image);
         return info;
     }
 
@@ -306,6 +361,11 @@ class OpenJpegProcessor extends AbstractJava2DProcessor
                     "quiet mode. Please upgrade OpenJPEG to version 2.2.0 "+
                     "or later.");
         }
+        final ProcessPool pool = getProcessPool();
+        if (!pool.isHealthy()) {
+            warnings.add("opj_decompress has been failing repeatedly " +
+                    "(most recently: " + pool.getLastFailure() + ").");
+        }
         return warnings;
     }
 
@@ -325,41 +385,47 @@ class OpenJpegProcessor extends AbstractJava2DProcessor
             final boolean normalize = (opList.getFirst(Normalize.class) != null);
 
             final ProcessBuilder pb = getProcessBuilder(
-                    opList, imageInfo.getSize(), reductionFactor, normalize);
+                    opList, imageInfo.getSize(), getMaxReductionFactor(),
+                    reductionFactor, normalize);
             LOGGER.info("Invoking {}", String.join(" ", pb.command()));
-            final Process process = pb.start();
+            final ProcessPool.PooledProcess pooledProcess =
+                    getProcessPool().start(pb);
+            final Process process = pooledProcess.getProcess();
 
+            final BufferedImage image;
             try (final InputStream processInputStream =
                          new BufferedInputStream(process.getInputStream());
                  final InputStream processErrorStream = process.getErrorStream()) {
                 ThreadPool.getInstance().submit(
                         new StreamCopier(processErrorStream, errorBucket));
 
-                final ImageReader reader = new ImageReader(
-                        processInputStream, Format.BMP);
-                final BufferedImage image = reader.read();
-                try {
-                    Set<ImageReader.Hint> hints =
-                            EnumSet.noneOf(ImageReader.Hint.class);
-                    if (!normalize) {
-                        hints.add(ImageReader.Hint.ALREADY_CROPPED);
+                image = new PNMReader(processInputStream).read();
+                final int code = process.waitFor();
+                // Free the process's slot in the pool now that it is done,
+                // rather than after the image has been encoded and sent to
+                // the client, which may take much longer.
+                pooledProcess.close();
+                if (pooledProcess.isKilled()) {
+                    throw new ProcessorException(
+                            "opj_decompress timed out (" + opList + ")");
+                } else if (code != 0) {
+                    LOGGER.warn("opj_decompress returned with code {}", code);
+                    final String errorStr = toString(errorBucket);
+                    if (errorStr.length() > 0) {
+                        throw new ProcessorException(errorStr);
                     }
-                    postProcess(image, hints, opList, imageInfo,
-                            reductionFactor, outputStream);
-                    final int code = process.waitFor();
-                    if (code != 0) {
-                        LOGGER.warn("opj_decompress returned with code {}", code);
-                        final String errorStr = toString(errorBucket);
-                        if (errorStr.length() > 0) {
-                            throw new ProcessorException(errorStr);
-                        }
-                    }
-                } finally {
-                    reader.dispose();
                 }
             } finally {
-                process.destroy();
+                pooledProcess.close();
+            }
+
+            Set<ImageReader.Hint> hints =
+                    EnumSet.noneOf(ImageReader.Hint.class);
+            if (!normalize) {
+                hints.add(ImageReader.Hint.ALREADY_CROPPED);
             }
+            postProcess(image, hints, opList, imageInfo,
+                    reductionFactor, outputStream);
         } catch (EOFException e) {
             // This is usually caused by the connection closing.
             String msg = e.getMessage();
@@ -383,6 +449,8 @@ class OpenJpegProcessor extends AbstractJava2DProcessor
      *
      * @param opList
      * @param imageSize  The full size of the source image.
+     * @param maxReductionFactor Maximum reduction factor that the image
+     *                   supports.
      * @param reduction  The {@link ReductionFactor#factor} property will be
      *                   modified.
      * @param ignoreCrop Ignore any cropping directives provided in
@@ -391,6 +459,7 @@ class OpenJpegProcessor extends AbstractJava2DProcessor
      */
     private ProcessBuilder getProcessBuilder(final OperationList opList,
                                              final Dimension imageSize,
+                                             final int maxReductionFactor,
                                              final ReductionFactor reduction,
                                              final boolean ignoreCrop) {
         final List<String> command = new ArrayList<>();
@@ -424,7 +493,7 @@ class OpenJpegProcessor extends AbstractJava2DProcessor
                 final Dimension tileSize = getCroppedSize(opList, imageSize);
                 if (!ignoreCrop) {
                     reduction.factor = scale.getReductionFactor(
-                            tileSize, MAX_REDUCTION_FACTOR).factor;
+                            tileSize, maxReductionFactor).factor;
                     if (reduction.factor > 0) {
                         command.add("-r");
                         command.add(reduction.factor + "");
@@ -439,4 +508,10 @@ class OpenJpegProcessor extends AbstractJava2DProcessor
         return new ProcessBuilder(command);
     }
 
+    @Override
+    public void setSourceFile(Path sourceFile) {
+        super.setSourceFile(sourceFile);
+        headerReader = null;
+    }
+
 }
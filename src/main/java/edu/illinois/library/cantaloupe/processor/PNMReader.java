@@ -0,0 +1,213 @@
+package edu.illinois.library.cantaloupe.processor;
+
+import java.awt.Point;
+import java.awt.Transparency;
+import java.awt.color.ColorSpace;
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferUShort;
+import java.awt.image.PixelInterleavedSampleModel;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * <p>Reads binary Netpbm images: PGM ({@literal P5}), PPM ({@literal P6}),
+ * and PAM ({@literal P7}) with 1&ndash;4 channels.</p>
+ *
+ * <p>These formats consist of a short text header followed by raw,
+ * interleaved samples, 8-bit or big-endian 16-bit depending on the maximum
+ * sample value, which are read straight into the raster of the returned
+ * image. Samples are rescaled to the full range of 8 or 16 bits if the
+ * maximum value is less than that.</p>
+ *
+ * <p>ImageIO does not support these formats, which is why this is not an
+ * ImageIO plugin.</p>
+ */
+final class PNMReader {
+
+    private final DataInputStream inputStream;
+
+    private int width, height, depth, maxValue;
+
+    /**
+     * @param inputStream Stream to read from, which will not be closed.
+     */
+    PNMReader(InputStream inputStream) {
+        this.inputStream = new DataInputStream(inputStream);
+    }
+
+    private BufferedImage newImage() {
+        if (maxValue < 256) {
+            switch (depth) {
+                case 1:
+                    return new BufferedImage(width, height,
+                            BufferedImage.TYPE_BYTE_GRAY);
+                case 3:
+                    return new BufferedImage(width, height,
+                            BufferedImage.TYPE_3BYTE_BGR);
+                case 4:
+                    return new BufferedImage(width, height,
+                            BufferedImage.TYPE_4BYTE_ABGR);
+            }
+        } else if (depth == 1) {
+            return new BufferedImage(width, height,
+                    BufferedImage.TYPE_USHORT_GRAY);
+        }
+        final int dataType = (maxValue < 256) ?
+                DataBuffer.TYPE_BYTE : DataBuffer.TYPE_USHORT;
+        final boolean hasAlpha = (depth == 2 || depth == 4);
+        final ColorSpace colorSpace = ColorSpace.getInstance(
+                (depth < 3) ? ColorSpace.CS_GRAY : ColorSpace.CS_sRGB);
+        final ComponentColorModel colorModel = new ComponentColorModel(
+                colorSpace, hasAlpha, false,
+                hasAlpha ? Transparency.TRANSLUCENT : Transparency.OPAQUE,
+                dataType);
+        final int[] bandOffsets = new int[depth];
+        for (int i = 0; i < depth; i++) {
+            bandOffsets[i] = i;
+        }
+        final WritableRaster raster = Raster.createWritableRaster(
+                new PixelInterleavedSampleModel(dataType, width, height,
+                        depth, width * depth, bandOffsets),
+                new Point(0, 0));
+        return new BufferedImage(colorModel, raster, false, null);
+    }
+
+    /**
+     * @return Image with a standard type wherever possible.
+     * @throws IOException if the stream is not a supported Netpbm image or
+     *                     ends early.
+     */
+    BufferedImage read() throws IOException {
+        readHeader();
+        final BufferedImage image = newImage();
+        final DataBuffer buffer = image.getRaster().getDataBuffer();
+        if (buffer instanceof DataBufferByte) {
+            final byte[] samples = ((DataBufferByte) buffer).getData();
+            inputStream.readFully(samples);
+            if (maxValue < 255) {
+                for (int i = 0; i < samples.length; i++) {
+                    samples[i] = (byte) ((samples[i] & 0xff) * 255 / maxValue);
+                }
+            }
+            reverseChannels(samples);
+        } else {
+            final short[] samples = ((DataBufferUShort) buffer).getData();
+            final byte[] row = new byte[width * depth * 2];
+            for (int y = 0, i = 0; y < height; y++) {
+                inputStream.readFully(row);
+                for (int x = 0; x < row.length; x += 2, i++) {
+                    int value = ((row[x] & 0xff) << 8) | (row[x + 1] & 0xff);
+                    if (maxValue < 65535) {
+                        value = value * 65535 / maxValue;
+                    }
+                    samples[i] = (short) value;
+                }
+            }
+        }
+        return image;
+    }
+
+    private void readHeader() throws IOException {
+        final String magic = readToken();
+        switch (magic) {
+            case "P5":
+            case "P6":
+                width = Integer.parseInt(readToken());
+                height = Integer.parseInt(readToken());
+                maxValue = Integer.parseInt(readToken());
+                depth = "P5".equals(magic) ? 1 : 3;
+                break;
+            case "P7":
+                String token;
+                while (!"ENDHDR".equals(token = readToken())) {
+                    switch (token) {
+                        case "WIDTH":
+                            width = Integer.parseInt(readToken());
+                            break;
+                        case "HEIGHT":
+                            height = Integer.parseInt(readToken());
+                            break;
+                        case "DEPTH":
+                            depth = Integer.parseInt(readToken());
+                            break;
+                        case "MAXVAL":
+                            maxValue = Integer.parseInt(readToken());
+                            break;
+                        case "TUPLTYPE":
+                            readToken();
+                            break;
+                        default:
+                            throw new IOException(
+                                    "Unsupported PAM header field: " + token);
+                    }
+                }
+                break;
+            default:
+                throw new IOException("Unsupported Netpbm format: " + magic);
+        }
+        if (width < 1 || height < 1 || depth < 1 || depth > 4 ||
+                maxValue < 1 || maxValue > 65535) {
+            throw new IOException(String.format(
+                    "Unsupported Netpbm image: %dx%dx%d, maximum value %d",
+                    width, height, depth, maxValue));
+        }
+    }
+
+    /**
+     * Reads a whitespace-delimited header token, skipping comments, and
+     * consumes the single whitespace character following it.
+     */
+    private String readToken() throws IOException {
+        final StringBuilder token = new StringBuilder();
+        boolean isComment = false;
+        while (true) {
+            final int b = inputStream.read();
+            if (b < 0) {
+                throw new EOFException("Truncated Netpbm header");
+            } else if (isComment) {
+                isComment = (b != '\n' && b != '\r');
+            } else if (b == '#' && token.length() == 0) {
+                isComment = true;
+            } else if (Character.isWhitespace(b)) {
+                if (token.length() > 0) {
+                    return token.toString();
+                }
+            } else if (token.length() < 32) {
+                token.append((char) b);
+            } else {
+                throw new IOException("Invalid Netpbm header");
+            }
+        }
+    }
+
+    /**
+     * Reorders RGB(A) samples into the (A)BGR order of the standard image
+     * types returned by {@link #newImage()}.
+     */
+    private void reverseChannels(byte[] samples) {
+        if (depth < 3) {
+            return;
+        }
+        for (int i = 0; i < samples.length; i += depth) {
+            if (depth == 3) {
+                final byte r = samples[i];
+                samples[i] = samples[i + 2];
+                samples[i + 2] = r;
+            } else {
+                final byte r = samples[i], g = samples[i + 1];
+                samples[i] = samples[i + 3];
+                samples[i + 1] = samples[i + 2];
+                samples[i + 2] = g;
+                samples[i + 3] = r;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,333 @@
+package edu.illinois.library.cantaloupe.processor;
+
+import edu.illinois.library.cantaloupe.async.ThreadPool;
+import edu.illinois.library.cantaloupe.config.Configuration;
+import edu.illinois.library.cantaloupe.config.Key;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Manages the external decoder processes (such as {@literal kdu_expand})
+ * that a processor launches, one per request.</p>
+ *
+ * <ul>
+ *     <li>At most {@link #getMaxProcesses()} processes run at once. Further
+ *     requests wait in a queue for a process to exit, for up to {@link
+ *     Key#PROCESSOR_DECODER_QUEUE_TIMEOUT} seconds.</li>
+ *     <li>At most {@link Key#PROCESSOR_DECODER_MAX_QUEUED} requests wait at
+ *     once. Further requests are refused immediately rather than piling up
+ *     behind a backlog that they would likely time out in anyway.</li>
+ *     <li>Processes that are still running after {@link
+ *     Key#PROCESSOR_DECODER_PROCESS_TIMEOUT} seconds are killed, so that a
+ *     stuck process can't hold on to its slot forever.</li>
+ *     <li>Processes that fail to launch, exit with an error, or get killed
+ *     are counted, and after {@link #UNHEALTHY_FAILURE_COUNT} failures in a
+ *     row without a success in between, the pool is considered {@link
+ *     #isHealthy() unhealthy}.</li>
+ * </ul>
+ *
+ * <p>The decoders supported by Cantaloupe decode a single image per
+ * invocation and then exit, so a process can't be kept alive and fed
+ * further requests, and a fresh one is launched for each.</p>
+ *
+ * @since 4.0
+ */
+final class ProcessPool {
+
+    /**
+     * Handle to a running process, which must be closed in order to free its
+     * slot in the pool.
+     */
+    final class PooledProcess implements AutoCloseable {
+
+        private final AtomicBoolean isClosed = new AtomicBoolean(false);
+        private final AtomicBoolean isKilled = new AtomicBoolean(false);
+        private final Process process;
+        private Future<?> watchdog;
+
+        private PooledProcess(Process process) {
+            this.process = process;
+        }
+
+        /**
+         * Destroys the process if it is still running, records its outcome,
+         * and frees its slot in the pool. Subsequent invocations have no
+         * effect.
+         */
+        @Override
+        public void close() {
+            if (!isClosed.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                if (watchdog != null) {
+                    watchdog.cancel(true);
+                }
+                if (isKilled.get()) {
+                    recordFailure("killed after " + processTimeout + " ms");
+                } else if (!awaitExit()) {
+                    // The caller stopped reading before the process was done,
+                    // which says nothing about the health of the decoder.
+                    process.destroyForcibly();
+                } else if (process.exitValue() != 0) {
+                    recordFailure("exited with code " + process.exitValue());
+                } else {
+                    recordSuccess();
+                }
+            } finally {
+                activeCount.decrementAndGet();
+                permits.release();
+            }
+        }
+
+        /**
+         * Gives a process that has just closed its output a moment to exit,
+         * so that its outcome can be recorded.
+         *
+         * @return Whether the process has exited.
+         */
+        private boolean awaitExit() {
+            try {
+                return process.waitFor(EXIT_WAIT_TIME, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return !process.isAlive();
+            }
+        }
+
+        Process getProcess() {
+            return process;
+        }
+
+        /**
+         * @return Whether the process was killed for exceeding the process
+         *         timeout.
+         */
+        boolean isKilled() {
+            return isKilled.get();
+        }
+
+        private void startWatchdog() {
+            try {
+                watchdog = ThreadPool.getInstance().submit(() -> {
+                    try {
+                        if (!process.waitFor(processTimeout,
+                                TimeUnit.MILLISECONDS)) {
+                            LOGGER.warn("{} ran for longer than {} ms; " +
+                                    "killing it", name, processTimeout);
+                            isKilled.set(true);
+                            process.destroyForcibly();
+                        }
+                    } catch (InterruptedException e) {
+                        // Cancelled by close().
+                    }
+                }, ThreadPool.Priority.LOW);
+            } catch (RejectedExecutionException e) {
+                LOGGER.debug("startWatchdog(): {}", e.getMessage());
+            }
+        }
+
+    }
+
+    private static final Logger LOGGER =
+            LoggerFactory.getLogger(ProcessPool.class);
+
+    /**
+     * Time in milliseconds that {@link PooledProcess#close()} will wait for a
+     * process to exit before destroying it.
+     */
+    private static final long EXIT_WAIT_TIME = 50;
+
+    /**
+     * Number of consecutive failures after which the pool is considered
+     * unhealthy.
+     */
+    static final int UNHEALTHY_FAILURE_COUNT = 5;
+
+    private final String name;
+    private final int maxProcesses;
+    private final int maxQueued;
+    private final long queueTimeout;
+    private final long processTimeout;
+
+    private final Semaphore permits;
+    private final AtomicInteger activeCount = new AtomicInteger();
+    private final AtomicInteger queuedCount = new AtomicInteger();
+    private final AtomicInteger consecutiveFailureCount = new AtomicInteger();
+    private final AtomicLong rejectionCount = new AtomicLong();
+    private volatile String lastFailure;
+
+    /**
+     * @param name Name of the decoder, for logging.
+     * @return New instance configured from the application configuration.
+     */
+    static ProcessPool fromConfiguration(String name) {
+        final Configuration config = Configuration.getInstance();
+        int maxProcesses = config.getInt(
+                Key.PROCESSOR_DECODER_MAX_PROCESSES, 0);
+        if (maxProcesses < 1) {
+            maxProcesses = Runtime.getRuntime().availableProcessors();
+        }
+        final int maxQueued = Math.max(0,
+                config.getInt(Key.PROCESSOR_DECODER_MAX_QUEUED, 100));
+        final long queueTimeout = 1000 * Math.max(0,
+                config.getLong(Key.PROCESSOR_DECODER_QUEUE_TIMEOUT, 30));
+        final long processTimeout = 1000 * Math.max(0,
+                config.getLong(Key.PROCESSOR_DECODER_PROCESS_TIMEOUT, 60));
+        LOGGER.info("fromConfiguration(): {}: {} processes, {} queued",
+                name, maxProcesses, maxQueued);
+        return new ProcessPool(name, maxProcesses, maxQueued,
+                queueTimeout, processTimeout);
+    }
+
+    /**
+     * @param name           Name of the decoder, for logging.
+     * @param maxProcesses   Maximum number of processes to run at once.
+     * @param maxQueued      Maximum number of callers of {@link
+     *                       #start(ProcessBuilder)} that may wait for a
+     *                       process slot at once.
+     * @param queueTimeout   Maximum time in milliseconds that a caller will
+     *                       wait for a process slot.
+     * @param processTimeout Time in milliseconds after which a running
+     *                       process will be killed, or {@literal 0} for no
+     *                       limit.
+     */
+    ProcessPool(String name,
+                int maxProcesses,
+                int maxQueued,
+                long queueTimeout,
+                long processTimeout) {
+        this.name = name;
+        this.maxProcesses = maxProcesses;
+        this.maxQueued = maxQueued;
+        this.queueTimeout = queueTimeout;
+        this.processTimeout = processTimeout;
+        this.permits = new Semaphore(maxProcesses, true);
+    }
+
+    /**
+     * Blocks until a process slot is free.
+     *
+     * @throws ProcessorException if too many other callers are waiting, or
+     *                            if no slot becomes free within the queue
+     *                            timeout.
+     */
+    private void acquire() throws InterruptedException, ProcessorException {
+        if (permits.tryAcquire()) {
+            return;
+        }
+        if (queuedCount.incrementAndGet() > maxQueued) {
+            queuedCount.decrementAndGet();
+            rejectionCount.incrementAndGet();
+            throw new ProcessorException(String.format(
+                    "All %d %s processes are busy and %d requests are " +
+                            "already waiting", maxProcesses, name, maxQueued));
+        }
+        try {
+            LOGGER.debug("acquire(): waiting for a {} process", name);
+            if (!permits.tryAcquire(queueTimeout, TimeUnit.MILLISECONDS)) {
+                rejectionCount.incrementAndGet();
+                throw new ProcessorException(String.format(
+                        "Timed out after %d ms waiting for a %s process",
+                        queueTimeout, name));
+            }
+        } finally {
+            queuedCount.decrementAndGet();
+        }
+    }
+
+    /**
+     * @return Number of processes currently running.
+     */
+    int getActiveCount() {
+        return activeCount.get();
+    }
+
+    /**
+     * @return Description of the most recent failure, or {@literal null} if
+     *         there has not been one.
+     */
+    String getLastFailure() {
+        return lastFailure;
+    }
+
+    int getMaxProcesses() {
+        return maxProcesses;
+    }
+
+    /**
+     * @return Number of callers currently waiting for a process slot.
+     */
+    int getQueuedCount() {
+        return queuedCount.get();
+    }
+
+    /**
+     * @return Number of callers of {@link #start(ProcessBuilder)} that have
+     *         been refused because the queue was full or timed out.
+     */
+    long getRejectionCount() {
+        return rejectionCount.get();
+    }
+
+    /**
+     * @return Whether fewer than {@link #UNHEALTHY_FAILURE_COUNT} processes
+     *         in a row have failed.
+     */
+    boolean isHealthy() {
+        return consecutiveFailureCount.get() < UNHEALTHY_FAILURE_COUNT;
+    }
+
+    private void recordFailure(String description) {
+        lastFailure = description;
+        final int count = consecutiveFailureCount.incrementAndGet();
+        if (count == UNHEALTHY_FAILURE_COUNT) {
+            LOGGER.error("{} has failed {} times in a row (last: {})",
+                    name, count, description);
+        }
+    }
+
+    private void recordSuccess() {
+        consecutiveFailureCount.set(0);
+    }
+
+    /**
+     * Launches a process from the given builder as soon as there is a free
+     * slot for it.
+     *
+     * @param processBuilder Builder of the decoder process.
+     * @return Handle to the process, which must be {@link
+     *         PooledProcess#close() closed}.
+     * @throws IOException          if the process fails to launch.
+     * @throws InterruptedException if interrupted while waiting for a slot.
+     * @throws ProcessorException   if there is no slot available.
+     */
+    PooledProcess start(ProcessBuilder processBuilder)
+            throws IOException, InterruptedException, ProcessorException {
+        acquire();
+        final Process process;
+        try {
+            process = processBuilder.start();
+        } catch (IOException | RuntimeException e) {
+            permits.release();
+            recordFailure(e.getMessage());
+            throw e;
+        }
+        activeCount.incrementAndGet();
+        final PooledProcess pooledProcess = new PooledProcess(process);
+        if (processTimeout > 0) {
+            pooledProcess.startWatchdog();
+        }
+        return pooledProcess;
+    }
+
+}
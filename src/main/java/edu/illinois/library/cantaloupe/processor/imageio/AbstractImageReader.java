@@ -5,6 +5,7 @@ import edu.illinois.library.cantaloupe.config.Key;
 import edu.illinois.library.cantaloupe.image.Compression;
 import edu.illinois.library.cantaloupe.operation.Crop;
 import edu.illinois.library.cantaloupe.image.Format;
+import edu.illinois.library.cantaloupe.image.Identifier;
 import edu.illinois.library.cantaloupe.operation.Operation;
 import edu.illinois.library.cantaloupe.operation.OperationList;
 import edu.illinois.library.cantaloupe.operation.Scale;
@@ -12,6 +13,7 @@ import edu.illinois.library.cantaloupe.operation.Orientation;
 import edu.illinois.library.cantaloupe.processor.ProcessorException;
 import edu.illinois.library.cantaloupe.operation.ReductionFactor;
 import edu.illinois.library.cantaloupe.processor.UnsupportedSourceFormatException;
+import edu.illinois.library.cantaloupe.resolver.PathStreamSource;
 import edu.illinois.library.cantaloupe.resolver.StreamSource;
 import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
@@ -32,9 +34,14 @@ import java.util.List;
 import java.util.Set;
 
 /**
- * Abstract reader that supplies some base functionality and tries to be
+ * <p>Abstract reader that supplies some base functionality and tries to be
  * efficient with most formats. Format-specific readers may override what they
- * need to.
+ * need to.</p>
+ *
+ * <p>The number and dimensions of subimages are obtained from an {@link
+ * ImageStructure}, which is shared via the {@link ImageStructureCache} among
+ * instances reading the same version of the same source image, when that can
+ * be determined.</p>
  */
 abstract class AbstractImageReader {
 
@@ -58,6 +65,23 @@ abstract class AbstractImageReader {
      */
     private Object source;
 
+    /**
+     * {@link StreamSource#getVersionKey() Version key} of the source. Set by
+     * {@link #setSource}. May be {@literal null}.
+     */
+    private String sourceVersionKey;
+
+    /**
+     * {@link StreamSource#getIdentifier() Identifier} of the source. Set by
+     * {@link #setSource}. May be {@literal null}.
+     */
+    private Identifier sourceIdentifier;
+
+    /**
+     * Lazily initialized by {@link #getStructure()}.
+     */
+    private ImageStructure structure;
+
     /**
      * @param inputFile Image file to read.
      */
@@ -178,13 +202,7 @@ abstract class AbstractImageReader {
      * @return Number of images contained inside the source image.
      */
     int getNumImages() throws IOException {
-        // The boolean argument tells getNumImages() whether to scan for
-        // images, which seems to be necessary for some, but is slower.
-        int numImages = iioReader.getNumImages(false);
-        if (numImages == -1) {
-            numImages = iioReader.getNumImages(true);
-        }
-        return numImages;
+        return getStructure().getNumImages();
     }
 
     /**
@@ -199,17 +217,58 @@ abstract class AbstractImageReader {
      * @return Pixel dimensions of the image at the given index.
      */
     Dimension getSize(int imageIndex) throws IOException {
+        final ImageStructure structure = getCachedStructure();
+        if (structure != null) {
+            return structure.getSize(imageIndex);
+        }
         final int width = iioReader.getWidth(imageIndex);
         final int height = iioReader.getHeight(imageIndex);
         return new Dimension(width, height);
     }
 
+    /**
+     * @return Structure of the source image, if it has already been read by
+     *         this or another instance, or else {@literal null}.
+     */
+    private ImageStructure getCachedStructure() {
+        if (structure == null && sourceVersionKey != null) {
+            structure = ImageStructureCache.getInstance().
+                    get(iioReader.getClass(), sourceIdentifier,
+                            sourceVersionKey);
+        }
+        return structure;
+    }
+
+    /**
+     * N.B.: Reading the structure entails reading all subimages' headers,
+     * which is wasteful when only one subimage is needed, so accessors that
+     * don't need the whole structure use it only when it is already
+     * available.
+     *
+     * @return Structure of the source image, from the {@link
+     *         ImageStructureCache} if possible.
+     */
+    ImageStructure getStructure() throws IOException {
+        if (getCachedStructure() == null) {
+            structure = ImageStructure.read(iioReader);
+            if (sourceVersionKey != null) {
+                ImageStructureCache.getInstance().put(iioReader.getClass(),
+                        sourceIdentifier, sourceVersionKey, structure);
+            }
+        }
+        return structure;
+    }
+
     /**
      * @param imageIndex
      * @return Tile size of the image at the given index. If the image is not
      *         tiled, the full image dimensions are returned.
      */
     Dimension getTileSize(int imageIndex) throws IOException {
+        final ImageStructure structure = getCachedStructure();
+        if (structure != null) {
+            return structure.getTileSize(imageIndex);
+        }
         final int width = iioReader.getTileWidth(imageIndex);
         final int height = iioReader.getTileHeight(imageIndex);
         return new Dimension(width, height);
@@ -290,6 +349,9 @@ abstract class AbstractImageReader {
     void setSource(Path inputFile) throws IOException {
         dispose();
         source = inputFile;
+        sourceVersionKey = new PathStreamSource(inputFile).getVersionKey();
+        sourceIdentifier = null;
+        structure = null;
         try {
             if (inputStream != null) {
                 inputStream.close();
@@ -302,12 +364,18 @@ abstract class AbstractImageReader {
     void setSource(ImageInputStream inputStream) {
         dispose();
         source = null;
+        sourceVersionKey = null;
+        sourceIdentifier = null;
+        structure = null;
         this.inputStream = inputStream;
     }
 
     void setSource(StreamSource streamSource) throws IOException {
         dispose();
         source = streamSource;
+        sourceVersionKey = streamSource.getVersionKey();
+        sourceIdentifier = streamSource.getIdentifier();
+        structure = null;
         try {
             if (inputStream != null) {
                 inputStream.close();
@@ -356,8 +424,7 @@ abstract class AbstractImageReader {
         BufferedImage image;
         Crop crop = (Crop) ops.getFirst(Crop.class);
         if (crop != null && !hints.contains(ImageReader.Hint.IGNORE_CROP)) {
-            final Dimension fullSize = new Dimension(
-                    iioReader.getWidth(0), iioReader.getHeight(0));
+            final Dimension fullSize = getSize(0);
             image = tileAwareRead(0, crop.getRectangle(fullSize), hints);
         } else {
             image = iioReader.read(0);
@@ -386,8 +453,7 @@ abstract class AbstractImageReader {
             final Scale scale,
             final ReductionFactor rf,
             final Set<ImageReader.Hint> hints) throws IOException {
-        final Dimension fullSize = new Dimension(
-                iioReader.getWidth(0), iioReader.getHeight(0));
+        final Dimension fullSize = getSize(0);
         final Rectangle regionRect = crop.getRectangle(fullSize);
         BufferedImage bestImage = null;
         if (!scale.hasEffect()) {
@@ -397,18 +463,10 @@ abstract class AbstractImageReader {
                     bestImage.getWidth(), bestImage.getHeight());
         } else {
             // Pyramidal TIFFs will have > 1 image, each with half the
-            // dimensions of the previous one. The boolean parameter tells
-            // getNumImages() whether to scan for images, which seems to be
-            // necessary for at least some files, but is slower. If it is
-            // false, and getNumImages() can't find anything, it will return -1.
-            int numImages = iioReader.getNumImages(false);
+            // dimensions of the previous one.
+            final int numImages = getNumImages();
             if (numImages > 1) {
                 getLogger().debug("Detected {} subimage(s)", numImages);
-            } else if (numImages == -1) {
-                numImages = iioReader.getNumImages(true);
-                if (numImages > 1) {
-                    getLogger().debug("Scan revealed {} subimage(s)", numImages);
-                }
             }
             // At this point, we know how many images are available.
             if (numImages == 1) {
@@ -420,8 +478,9 @@ abstract class AbstractImageReader {
                 // Loop through the reduced images from smallest to largest to
                 // find the first one that can supply the requested scale.
                 for (int i = numImages - 1; i >= 0; i--) {
-                    final int subimageWidth = iioReader.getWidth(i);
-                    final int subimageHeight = iioReader.getHeight(i);
+                    final Dimension subimageSize = getSize(i);
+                    final int subimageWidth = subimageSize.width;
+                    final int subimageHeight = subimageSize.height;
 
                     final double reducedScale = (double) subimageWidth /
                             (double) fullSize.width;
@@ -472,9 +531,7 @@ abstract class AbstractImageReader {
                                         final Rectangle region,
                                         final Set<ImageReader.Hint> hints)
             throws IOException {
-        final Dimension imageSize = new Dimension(
-                iioReader.getWidth(imageIndex),
-                iioReader.getHeight(imageIndex));
+        final Dimension imageSize = getSize(imageIndex);
         getLogger().debug("Acquiring region {},{}/{}x{} from {}x{} image",
                 region.x, region.y, region.width, region.height,
                 imageSize.width, imageSize.height);
@@ -604,8 +661,7 @@ abstract class AbstractImageReader {
                                              final Scale scale,
                                              final ReductionFactor rf)
             throws IOException {
-        final Dimension fullSize = new Dimension(
-                iioReader.getWidth(0), iioReader.getHeight(0));
+        final Dimension fullSize = getSize(0);
         final Rectangle regionRect = crop.getRectangle(fullSize);
         final ImageReadParam param = iioReader.getDefaultReadParam();
         RenderedImage bestImage = null;
@@ -615,18 +671,10 @@ abstract class AbstractImageReader {
                     bestImage.getWidth(), bestImage.getHeight());
         } else {
             // Pyramidal TIFFs will have > 1 image, each half the dimensions of
-            // the next larger. The "true" parameter tells getNumImages() to
-            // scan for images, which seems to be necessary for at least some
-            // files, but is slower.
-            int numImages = iioReader.getNumImages(false);
+            // the next larger.
+            final int numImages = getNumImages();
             if (numImages > 1) {
                 getLogger().debug("Detected {} subimage(s)", numImages - 1);
-            } else if (numImages == -1) {
-                numImages = iioReader.getNumImages(true);
-                if (numImages > 1) {
-                    getLogger().debug("Scan revealed {} subimage(s)",
-                            numImages - 1);
-                }
             }
             if (numImages == 1) {
                 bestImage = iioReader.read(0, param);
@@ -637,8 +685,9 @@ abstract class AbstractImageReader {
                 // Loop through the reduced images from smallest to largest to
                 // find the first one that can supply the requested scale.
                 for (int i = numImages - 1; i >= 0; i--) {
-                    final int subimageWidth = iioReader.getWidth(i);
-                    final int subimageHeight = iioReader.getHeight(i);
+                    final Dimension subimageSize = getSize(i);
+                    final int subimageWidth = subimageSize.width;
+                    final int subimageHeight = subimageSize.height;
 
                     final double reducedScale = (double) subimageWidth /
                             (double) fullSize.width;
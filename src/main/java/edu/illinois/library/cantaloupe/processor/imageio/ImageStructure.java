@@ -0,0 +1,71 @@
+package edu.illinois.library.cantaloupe.processor.imageio;
+
+import java.awt.Dimension;
+import java.io.IOException;
+
+/**
+ * Immutable record of the structure of a source image container: the number
+ * of subimages (e.g. pyramid levels) it contains, and the pixel and tile
+ * dimensions of each of them. Obtaining this requires parsing e.g. the whole
+ * TIFF IFD chain, so it is cached in the {@link ImageStructureCache}.
+ */
+final class ImageStructure {
+
+    private final int[] widths, heights, tileWidths, tileHeights;
+
+    /**
+     * Reads the structure of the image being read by the given reader.
+     */
+    static ImageStructure read(javax.imageio.ImageReader iioReader)
+            throws IOException {
+        // The boolean argument tells getNumImages() whether to scan for
+        // images, which seems to be necessary for some, but is slower.
+        int numImages = iioReader.getNumImages(false);
+        if (numImages == -1) {
+            numImages = iioReader.getNumImages(true);
+        }
+        final ImageStructure structure = new ImageStructure(numImages);
+        for (int i = 0; i < numImages; i++) {
+            structure.widths[i] = iioReader.getWidth(i);
+            structure.heights[i] = iioReader.getHeight(i);
+            structure.tileWidths[i] = iioReader.getTileWidth(i);
+            structure.tileHeights[i] = iioReader.getTileHeight(i);
+        }
+        return structure;
+    }
+
+    private ImageStructure(int numImages) {
+        widths = new int[numImages];
+        heights = new int[numImages];
+        tileWidths = new int[numImages];
+        tileHeights = new int[numImages];
+    }
+
+    int getNumImages() {
+        return widths.length;
+    }
+
+    /**
+     * @throws IndexOutOfBoundsException if the index is invalid.
+     */
+    Dimension getSize(int imageIndex) {
+        checkIndex(imageIndex);
+        return new Dimension(widths[imageIndex], heights[imageIndex]);
+    }
+
+    /**
+     * @throws IndexOutOfBoundsException if the index is invalid.
+     */
+    Dimension getTileSize(int imageIndex) {
+        checkIndex(imageIndex);
+        return new Dimension(tileWidths[imageIndex], tileHeights[imageIndex]);
+    }
+
+    private void checkIndex(int imageIndex) {
+        if (imageIndex < 0 || imageIndex >= widths.length) {
+            throw new IndexOutOfBoundsException("Invalid image index: " +
+                    imageIndex);
+        }
+    }
+
+}
@@ -0,0 +1,139 @@
+package edu.illinois.library.cantaloupe.processor.imageio;
+
+import edu.illinois.library.cantaloupe.image.Identifier;
+import edu.illinois.library.cantaloupe.resolver.StreamSource;
+import edu.illinois.library.cantaloupe.util.ObjectCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Objects;
+
+/**
+ * <p>Size-bounded heap cache of {@link ImageStructure}s shared by all
+ * readers, so that the many requests that a client makes for the tiles of the
+ * same image don't all have to parse its container from scratch.</p>
+ *
+ * <p>Entries are keyed by reader implementation, {@link
+ * StreamSource#getIdentifier() identifier}, and {@link
+ * StreamSource#getVersionKey() version key}. Resolvers may build version keys
+ * from metadata cached by the {@link
+ * edu.illinois.library.cantaloupe.resolver.ResolverMetadataCache} or a
+ * resolver-specific cache, in which case a changed source image keeps its old
+ * version key, and therefore its old entry, until that metadata expires. So,
+ * entries are only as fresh as the metadata caches, and are purged along with
+ * them, by identifier or all at once, by {@link
+ * edu.illinois.library.cantaloupe.cache.CacheFacade}. Entries under
+ * superseded version keys can't be hit anymore and are eventually evicted by
+ * size.</p>
+ *
+ * @since 4.0
+ */
+public final class ImageStructureCache {
+
+    private static final class Key {
+
+        private final String readerName;
+        private final Identifier identifier;
+        private final String versionKey;
+
+        /**
+         * @param identifier May be {@literal null}.
+         */
+        Key(Class<?> readerClass, Identifier identifier, String versionKey) {
+            this.readerName = readerClass.getName();
+            this.identifier = identifier;
+            this.versionKey = versionKey;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj == this) {
+                return true;
+            } else if (obj instanceof Key) {
+                final Key other = (Key) obj;
+                return readerName.equals(other.readerName) &&
+                        Objects.equals(identifier, other.identifier) &&
+                        versionKey.equals(other.versionKey);
+            }
+            return false;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(readerName, identifier, versionKey);
+        }
+
+    }
+
+    private static final Logger LOGGER = LoggerFactory.
+            getLogger(ImageStructureCache.class);
+
+    static final long MAX_SIZE = 10000;
+
+    private static ImageStructureCache instance;
+
+    private final ObjectCache<Key, ImageStructure> objectCache =
+            new ObjectCache<>(MAX_SIZE);
+
+    /**
+     * @return Shared instance.
+     */
+    public static synchronized ImageStructureCache getInstance() {
+        if (instance == null) {
+            instance = new ImageStructureCache();
+        }
+        return instance;
+    }
+
+    private ImageStructureCache() {}
+
+    /**
+     * @param identifier Identifier of the image. May be {@literal null}.
+     * @return Structure of the image with the given identifier and version
+     *         key as read by the given ImageIO reader class, or {@literal
+     *         null} if there is no such entry.
+     */
+    ImageStructure get(Class<?> readerClass,
+                       Identifier identifier,
+                       String versionKey) {
+        final ImageStructure structure = objectCache.get(
+                new Key(readerClass, identifier, versionKey));
+        if (structure != null) {
+            LOGGER.debug("get(): hit for {}", versionKey);
+        }
+        return structure;
+    }
+
+    /**
+     * Removes all entries.
+     */
+    public void purge() {
+        LOGGER.debug("purge()");
+        objectCache.purge();
+    }
+
+    /**
+     * Removes all entries for the image with the given identifier. Entries
+     * put without an identifier are not affected.
+     */
+    public void purge(Identifier identifier) {
+        LOGGER.debug("purge(): purging {}", identifier);
+        objectCache.removeIf(key -> identifier.equals(key.identifier));
+    }
+
+    /**
+     * @param identifier Identifier of the image. May be {@literal null}.
+     */
+    void put(Class<?> readerClass,
+             Identifier identifier,
+             String versionKey,
+             ImageStructure structure) {
+        objectCache.put(new Key(readerClass, identifier, versionKey),
+                structure);
+    }
+
+    long size() {
+        return objectCache.size();
+    }
+
+}
@@ -0,0 +1,210 @@
+package edu.illinois.library.cantaloupe.processor.imageio;
+
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Dimension;
+import java.io.IOException;
+
+/**
+ * <p>Reads basic properties of a JPEG2000 image from the main header of its
+ * codestream, without decoding any image data.</p>
+ *
+ * <p>Both JP2 files and raw codestreams are supported. In the case of JP2,
+ * all boxes preceding the contiguous codestream box are skipped over. Then,
+ * only the SIZ and COD marker segments are read, which typically reside
+ * within the first few hundred bytes of the codestream. This is much faster
+ * than using the ImageIO JPEG2000 reader, which reads and parses a lot more
+ * of the image than it needs to in order to report its dimensions.</p>
+ *
+ * <p>The header is read lazily, upon the first invocation of any accessor.
+ * The stream is not closed.</p>
+ *
+ * @see <a href="https://www.itu.int/rec/T-REC-T.800">ITU-T T.800</a>
+ */
+public final class JPEG2000HeaderReader {
+
+    /**
+     * JP2 signature box type ({@literal jP  }).
+     */
+    private static final int SIGNATURE_BOX_TYPE = 0x6a502020;
+
+    /**
+     * JP2 contiguous codestream box type ({@literal jp2c}).
+     */
+    private static final int CODESTREAM_BOX_TYPE = 0x6a703263;
+
+    private static final int SOC_MARKER = 0xff4f;
+    private static final int SIZ_MARKER = 0xff51;
+    private static final int COD_MARKER = 0xff52;
+    private static final int SOT_MARKER = 0xff90;
+
+    private final ImageInputStream inputStream;
+
+    private boolean isRead;
+    private int width, height, tileWidth, tileHeight;
+    private int numDecompositionLevels = -1;
+    private int[] bitDepths;
+
+    /**
+     * @param inputStream Stream to read from, positioned at the start of the
+     *                    image.
+     */
+    public JPEG2000HeaderReader(ImageInputStream inputStream) {
+        this.inputStream = inputStream;
+    }
+
+    /**
+     * @param componentIndex Zero-based component index.
+     * @return Bit depth of the given component.
+     */
+    public int getComponentBitDepth(int componentIndex) throws IOException {
+        readHeader();
+        return bitDepths[componentIndex];
+    }
+
+    public int getNumComponents() throws IOException {
+        readHeader();
+        return bitDepths.length;
+    }
+
+    /**
+     * @return Number of wavelet decomposition levels, which is one less than
+     *         the number of available resolutions. This is also the maximum
+     *         number of resolutions that can be discarded when decoding.
+     */
+    public int getNumDecompositionLevels() throws IOException {
+        readHeader();
+        return numDecompositionLevels;
+    }
+
+    public Dimension getSize() throws IOException {
+        readHeader();
+        return new Dimension(width, height);
+    }
+
+    /**
+     * @return Nominal size of the tiles, which is the same as the image size
+     *         in the case of an untiled image.
+     */
+    public Dimension getTileSize() throws IOException {
+        readHeader();
+        return new Dimension(tileWidth, tileHeight);
+    }
+
+    private void readHeader() throws IOException {
+        if (isRead) {
+            return;
+        }
+        final long start = inputStream.getStreamPosition();
+        if (inputStream.readUnsignedShort() != SOC_MARKER) {
+            inputStream.seek(start);
+            seekToCodestream();
+            if (inputStream.readUnsignedShort() != SOC_MARKER) {
+                throw new IOException("Codestream does not begin with SOC");
+            }
+        }
+        readMainHeader();
+        isRead = true;
+    }
+
+    /**
+     * Reads the marker segments of the main header up to the first tile-part.
+     */
+    private void readMainHeader() throws IOException {
+        boolean isSIZRead = false, isCODRead = false;
+        while (!isSIZRead || !isCODRead) {
+            final int marker = inputStream.readUnsignedShort();
+            if (marker == SOT_MARKER) {
+                break;
+            } else if ((marker & 0xff00) != 0xff00) {
+                throw new IOException(String.format(
+                        "Invalid marker in main header: 0x%x", marker));
+            }
+            final int segmentLength = inputStream.readUnsignedShort();
+            final long nextPos = inputStream.getStreamPosition() +
+                    segmentLength - 2;
+            switch (marker) {
+                case SIZ_MARKER:
+                    readSIZ();
+                    isSIZRead = true;
+                    break;
+                case COD_MARKER:
+                    readCOD();
+                    isCODRead = true;
+                    break;
+            }
+            inputStream.seek(nextPos);
+        }
+        if (!isSIZRead) {
+            throw new IOException("Main header lacks a SIZ marker segment");
+        } else if (!isCODRead) {
+            throw new IOException("Main header lacks a COD marker segment");
+        }
+    }
+
+    private void readCOD() throws IOException {
+        inputStream.skipBytes(5); // Scod, progression order, layers, MCT
+        numDecompositionLevels = inputStream.readUnsignedByte();
+    }
+
+    private void readSIZ() throws IOException {
+        inputStream.skipBytes(2); // Rsiz
+        final long xSiz = inputStream.readUnsignedInt();
+        final long ySiz = inputStream.readUnsignedInt();
+        final long xOSiz = inputStream.readUnsignedInt();
+        final long yOSiz = inputStream.readUnsignedInt();
+        final long xTSiz = inputStream.readUnsignedInt();
+        final long yTSiz = inputStream.readUnsignedInt();
+        inputStream.skipBytes(8); // XTOsiz, YTOsiz
+        final int numComponents = inputStream.readUnsignedShort();
+
+        if (xSiz <= xOSiz || ySiz <= yOSiz || xSiz - xOSiz > Integer.MAX_VALUE ||
+                ySiz - yOSiz > Integer.MAX_VALUE || xTSiz < 1 || yTSiz < 1 ||
+                numComponents < 1) {
+            throw new IOException("Invalid SIZ marker segment");
+        }
+        width = (int) (xSiz - xOSiz);
+        height = (int) (ySiz - yOSiz);
+        tileWidth = (int) Math.min(xTSiz, width);
+        tileHeight = (int) Math.min(yTSiz, height);
+
+        bitDepths = new int[numComponents];
+        for (int i = 0; i < numComponents; i++) {
+            bitDepths[i] = (inputStream.readUnsignedByte() & 0x7f) + 1;
+            inputStream.skipBytes(2); // XRsiz, YRsiz
+        }
+    }
+
+    /**
+     * Walks the top-level boxes of a JP2 file and leaves the stream
+     * positioned at the start of the contents of the first contiguous
+     * codestream box.
+     */
+    private void seekToCodestream() throws IOException {
+        boolean isFirstBox = true;
+        while (true) {
+            final long boxPos = inputStream.getStreamPosition();
+            long boxLength = inputStream.readUnsignedInt();
+            final int boxType = inputStream.readInt();
+            if (isFirstBox && boxType != SIGNATURE_BOX_TYPE) {
+                throw new IOException("Not a JPEG2000 image");
+            } else if (boxType == CODESTREAM_BOX_TYPE) {
+                if (boxLength == 1) {
+                    inputStream.skipBytes(8); // XLBox
+                }
+                return;
+            }
+            if (boxLength == 1) {
+                boxLength = inputStream.readLong();
+            } else if (boxLength == 0) { // last box in the file
+                break;
+            }
+            if (boxLength < 8) {
+                throw new IOException("Invalid box length: " + boxLength);
+            }
+            inputStream.seek(boxPos + boxLength);
+            isFirstBox = false;
+        }
+        throw new IOException("No codestream box found");
+    }
+
+}
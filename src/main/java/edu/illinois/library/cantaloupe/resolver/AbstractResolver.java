@@ -4,19 +4,91 @@ import edu.illinois.library.cantaloupe.image.Format;
 import edu.illinois.library.cantaloupe.image.Identifier;
 import edu.illinois.library.cantaloupe.resource.RequestContext;
 
+import java.time.Instant;
+
 abstract class AbstractResolver {
 
     protected Identifier identifier;
     protected Format sourceFormat;
     protected RequestContext context;
 
+    /**
+     * Metadata of the image corresponding to {@link #identifier}, which
+     * subclasses obtain in {@link Resolver#checkAccess()} either from {@link
+     * #getCachedMetadata()} or, failing that, by resolving the image
+     * themselves and passing the result to {@link
+     * #cacheMetadata(ResolverMetadata)}. Will be {@literal null} before then.
+     */
+    protected ResolverMetadata metadata;
+
+    /**
+     * Sets {@link #metadata} and adds it to the {@link ResolverMetadataCache}.
+     */
+    void cacheMetadata(ResolverMetadata metadata) {
+        this.metadata = metadata;
+        ResolverMetadataCache.getInstance().put(getClass(), identifier,
+                metadata);
+    }
+
+    /**
+     * Adds the given source format to {@link #metadata}, if set, and updates
+     * the {@link ResolverMetadataCache} accordingly.
+     */
+    void cacheSourceFormat(Format format) {
+        if (metadata != null && metadata.getSourceFormat() == null) {
+            cacheMetadata(metadata.withSourceFormat(format));
+        }
+    }
+
+    /**
+     * @return Metadata of the image corresponding to {@link #identifier}
+     *         from the {@link ResolverMetadataCache}, or {@literal null} if
+     *         not cached.
+     */
+    ResolverMetadata getCachedMetadata() {
+        return ResolverMetadataCache.getInstance().get(getClass(), identifier);
+    }
+
+    /**
+     * @return Source format from {@link #metadata}, or {@literal null} if
+     *         not known.
+     */
+    Format getCachedSourceFormat() {
+        return (metadata != null) ? metadata.getSourceFormat() : null;
+    }
+
     RequestContext getContext() {
         return context;
     }
 
+    /**
+     * @param location Location of the image corresponding to {@link
+     *                 #identifier}, such as a URI.
+     * @return         {@link StreamSource#getVersionKey() Version key} of the
+     *                 image, based on {@link #metadata}, or {@literal null} if
+     *                 its size or last-modified time is not known. If {@link
+     *                 #metadata} came from a cache, the key is as old as it
+     *                 is.
+     */
+    String getVersionKey(Object location) {
+        if (metadata == null || metadata.getSize() < 0 ||
+                metadata.getLastModified() == null) {
+            return null;
+        }
+        return newVersionKey(location, metadata.getSize(),
+                metadata.getLastModified());
+    }
+
+    static String newVersionKey(Object location,
+                                long size,
+                                Instant lastModified) {
+        return location + "@" + lastModified.toEpochMilli() + ":" + size;
+    }
+
     public void setIdentifier(Identifier identifier) {
         this.identifier = identifier;
         this.sourceFormat = null;
+        this.metadata = null;
     }
 
     public void setContext(RequestContext context) {
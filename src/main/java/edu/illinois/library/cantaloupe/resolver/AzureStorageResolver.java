@@ -9,6 +9,7 @@ import com.microsoft.azure.storage.blob.CloudBlockBlob;
 import edu.illinois.library.cantaloupe.config.Configuration;
 import edu.illinois.library.cantaloupe.config.Key;
 import edu.illinois.library.cantaloupe.image.Format;
+import edu.illinois.library.cantaloupe.image.Identifier;
 import edu.illinois.library.cantaloupe.image.MediaType;
 import edu.illinois.library.cantaloupe.script.DelegateScriptDisabledException;
 import edu.illinois.library.cantaloupe.script.ScriptEngine;
@@ -25,6 +26,8 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.file.NoSuchFileException;
 import java.security.InvalidKeyException;
+import java.time.Instant;
+import java.util.Date;
 
 /**
  * <p>Maps an identifier to a
@@ -38,6 +41,12 @@ import java.security.InvalidKeyException;
  * identifiers directly to blob keys. ScriptLookupStrategy invokes a delegate
  * method to retrieve blob keys dynamically.</p>
  *
+ * <h3>Random Access</h3>
+ *
+ * <p>{@link StreamSource#newImageInputStream()} returns a {@link
+ * RangedImageInputStream} that downloads only the parts of the blob that are
+ * actually read.</p>
+ *
  * @see <a href="https://github.com/azure/azure-storage-java">
  *     Microsoft Azure Storage DSK for Java</a>
  */
@@ -46,13 +55,34 @@ class AzureStorageResolver extends AbstractResolver implements StreamResolver {
     private static class AzureStorageStreamSource implements StreamSource {
 
         private final CloudBlockBlob blob;
+        private final long length;
+        private final Identifier identifier;
+        private final String versionKey;
 
-        AzureStorageStreamSource(CloudBlockBlob blob) {
+        /**
+         * @param length     Length of the blob, or {@literal -1} if unknown.
+         * @param versionKey May be {@literal null}.
+         */
+        AzureStorageStreamSource(CloudBlockBlob blob,
+                                 long length,
+                                 Identifier identifier,
+                                 String versionKey) {
             this.blob = blob;
+            this.length = length;
+            this.identifier = identifier;
+            this.versionKey = versionKey;
         }
 
+        /**
+         * @return Stream that downloads ranges of the blob on demand, if its
+         *         length is known, and otherwise a stream wrapping {@link
+         *         #newInputStream()}.
+         */
         @Override
         public ImageInputStream newImageInputStream() throws IOException {
+            if (length > 0) {
+                return new RangedImageInputStream(this::readRange, length);
+            }
             return ImageIO.createImageInputStream(newInputStream());
         }
 
@@ -65,6 +95,32 @@ class AzureStorageResolver extends AbstractResolver implements StreamResolver {
             }
         }
 
+        @Override
+        public Identifier getIdentifier() {
+            return identifier;
+        }
+
+        @Override
+        public String getVersionKey() {
+            return versionKey;
+        }
+
+        private byte[] readRange(long offset, int length) throws IOException {
+            try {
+                final byte[] buffer = new byte[length];
+                final int numRead = blob.downloadRangeToByteArray(
+                        offset, (long) length, buffer, 0);
+                if (numRead != length) {
+                    throw new IOException(String.format(
+                            "Expected %d bytes at offset %d, but got %d",
+                            length, offset, numRead));
+                }
+                return buffer;
+            } catch (StorageException e) {
+                throw new IOException(e.getMessage(), e);
+            }
+        }
+
     }
 
     private static final Logger LOGGER = LoggerFactory.
@@ -78,6 +134,7 @@ class AzureStorageResolver extends AbstractResolver implements StreamResolver {
 
     private CloudBlockBlob cachedBlob;
     private IOException cachedBlobException;
+    private String cachedObjectKey;
 
     static synchronized CloudStorageAccount getAccount() {
         if (account == null) {
@@ -111,41 +168,61 @@ class AzureStorageResolver extends AbstractResolver implements StreamResolver {
 
     @Override
     public void checkAccess() throws IOException {
-        getObject();
+        metadata = getCachedMetadata();
+        if (metadata == null) {
+            final CloudBlockBlob blob = getObject();
+            final Date lastModified = blob.getProperties().getLastModified();
+            cacheMetadata(new ResolverMetadata(cachedObjectKey,
+                    blob.getProperties().getLength(),
+                    (lastModified != null) ? lastModified.toInstant() : null));
+            // The blob properties needed to determine the format have already
+            // been fetched, so cache it too.
+            getSourceFormat();
+        }
+    }
+
+    @Override
+    public Instant getLastModified() throws IOException {
+        if (metadata != null) {
+            return metadata.getLastModified();
+        }
+        final Date lastModified = getObject().getProperties().getLastModified();
+        return (lastModified != null) ? lastModified.toInstant() : null;
+    }
+
+    @Override
+    public long getSize() throws IOException {
+        if (metadata != null) {
+            return metadata.getSize();
+        }
+        return getObject().getProperties().getLength();
     }
 
+    /**
+     * @return Blob corresponding to {@link #identifier}. If {@link #metadata}
+     *         is set, it is assumed to exist and its properties are not
+     *         fetched. Otherwise, its existence is checked and its properties
+     *         are fetched.
+     */
     private CloudBlockBlob getObject() throws IOException {
         if (cachedBlobException != null) {
             throw cachedBlobException;
+        } else if (cachedBlob == null && metadata != null) {
+            cachedObjectKey = (String) metadata.getLocator();
+            try {
+                cachedBlob = newBlobReference(cachedObjectKey);
+            } catch (URISyntaxException | StorageException e) {
+                throw new IOException(e);
+            }
         } else if (cachedBlob == null) {
             try {
-                final Configuration config = Configuration.getInstance();
-                final String containerName =
-                        config.getString(Key.AZURESTORAGERESOLVER_CONTAINER_NAME);
-                LOGGER.info("Using container: {}", containerName);
-
                 try {
-                    final CloudBlockBlob blob;
                     final String objectKey = getObjectKey();
-                    //Add support for direct URI references.  See: https://docs.microsoft.com/en-us/rest/api/storageservices/naming-and-referencing-containers--blobs--and-metadata#resource-uri-syntax
-                    //Add support for SAS Token Authentication.  See: https://docs.microsoft.com/en-us/azure/storage/common/storage-dotnet-shared-access-signature-part-1#how-a-shared-access-signature-works
-                    if(StringUtils.isEmpty(containerName)) {  //use URI with sas token + container + path directly
-                        final URI uri = URI.create(objectKey);
-                        LOGGER.info("Using full uri: {}", uri);
-                        LOGGER.info("Requesting {}", objectKey);
-                        blob = new CloudBlockBlob(uri);
-                    } else {  //use a fixed storage account with fixed container.
-                        final CloudBlobClient client = getClientInstance();
-                        final CloudBlobContainer container;
-                        LOGGER.info("Using account with fixed container: {}", containerName);
-                        container = client.getContainerReference(containerName);
-                        LOGGER.info("Requesting {}", objectKey);
-                        blob = container.getBlockBlobReference(objectKey);
-                    }
-
+                    final CloudBlockBlob blob = newBlobReference(objectKey);
                     if (!blob.exists()) {
                         throw new NoSuchFileException("Not found: " + objectKey);
                     }
+                    cachedObjectKey = objectKey;
                     cachedBlob = blob;
                 } catch (URISyntaxException | StorageException e) {
                     throw new IOException(e);
@@ -158,6 +235,35 @@ class AzureStorageResolver extends AbstractResolver implements StreamResolver {
         return cachedBlob;
     }
 
+    /**
+     * @return Reference to the blob with the given key. No request is made.
+     */
+    private static CloudBlockBlob newBlobReference(String objectKey)
+            throws URISyntaxException, StorageException {
+        final Configuration config = Configuration.getInstance();
+        final String containerName =
+                config.getString(Key.AZURESTORAGERESOLVER_CONTAINER_NAME);
+        LOGGER.info("Using container: {}", containerName);
+
+        final CloudBlockBlob blob;
+        //Add support for direct URI references.  See: https://docs.microsoft.com/en-us/rest/api/storageservices/naming-and-referencing-containers--blobs--and-metadata#resource-uri-syntax
+        //Add support for SAS Token Authentication.  See: https://docs.microsoft.com/en-us/azure/storage/common/storage-dotnet-shared-access-signature-part-1#how-a-shared-access-signature-works
+        if(StringUtils.isEmpty(containerName)) {  //use URI with sas token + container + path directly
+            final URI uri = URI.create(objectKey);
+            LOGGER.info("Using full uri: {}", uri);
+            LOGGER.info("Requesting {}", objectKey);
+            blob = new CloudBlockBlob(uri);
+        } else {  //use a fixed storage account with fixed container.
+            final CloudBlobClient client = getClientInstance();
+            final CloudBlobContainer container;
+            LOGGER.info("Using account with fixed container: {}", containerName);
+            container = client.getContainerReference(containerName);
+            LOGGER.info("Requesting {}", objectKey);
+            blob = container.getBlockBlobReference(objectKey);
+        }
+        return blob;
+    }
+
     private String getObjectKey() throws IOException {
         final LookupStrategy strategy =
                 LookupStrategy.from(Key.AZURESTORAGERESOLVER_LOOKUP_STRATEGY);
@@ -195,6 +301,9 @@ class AzureStorageResolver extends AbstractResolver implements StreamResolver {
 
     @Override
     public Format getSourceFormat() throws IOException {
+        if (sourceFormat == null) {
+            sourceFormat = getCachedSourceFormat();
+        }
         if (sourceFormat == null) {
             final CloudBlockBlob blob = getObject();
             final String contentType = blob.getProperties().getContentType();
@@ -208,15 +317,18 @@ class AzureStorageResolver extends AbstractResolver implements StreamResolver {
             }
             if (Format.UNKNOWN.equals(sourceFormat)) {
                 // Try to infer a format based on the objectKey.
-                sourceFormat = Format.inferFormat(getObjectKey());
+                sourceFormat = Format.inferFormat(cachedObjectKey);
             }
+            cacheSourceFormat(sourceFormat);
         }
         return sourceFormat;
     }
 
     @Override
     public StreamSource newStreamSource() throws IOException {
-        return new AzureStorageStreamSource(getObject());
+        final CloudBlockBlob blob = getObject();
+        return new AzureStorageStreamSource(blob, getSize(), identifier,
+                getVersionKey(blob.getUri()));
     }
 
 }
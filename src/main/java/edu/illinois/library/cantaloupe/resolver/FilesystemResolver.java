@@ -21,6 +21,8 @@ import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Instant;
 import java.util.List;
 
 /**
@@ -50,9 +52,13 @@ class FilesystemResolver extends AbstractResolver
     private static class FileStreamSource implements StreamSource {
 
         private final Path file;
+        private final Identifier identifier;
+        private final String versionKey;
 
-        FileStreamSource(Path file) {
+        FileStreamSource(Path file, Identifier identifier, String versionKey) {
             this.file = file;
+            this.identifier = identifier;
+            this.versionKey = versionKey;
         }
 
         @Override
@@ -65,6 +71,16 @@ class FilesystemResolver extends AbstractResolver
             return Files.newInputStream(file);
         }
 
+        @Override
+        public Identifier getIdentifier() {
+            return identifier;
+        }
+
+        @Override
+        public String getVersionKey() {
+            return versionKey;
+        }
+
     }
 
     private static final Logger LOGGER = LoggerFactory.
@@ -83,6 +99,12 @@ class FilesystemResolver extends AbstractResolver
 
     @Override
     public void checkAccess() throws IOException {
+        metadata = getCachedMetadata();
+        if (metadata != null) {
+            path = (Path) metadata.getLocator();
+            return;
+        }
+
         final Path path = getPath();
         if (!Files.exists(path)) {
             throw new NoSuchFileException("Failed to resolve " +
@@ -90,6 +112,18 @@ class FilesystemResolver extends AbstractResolver
         } else if (!Files.isReadable(path)) {
             throw new AccessDeniedException("File is not readable: " + path);
         }
+        final BasicFileAttributes attrs =
+                Files.readAttributes(path, BasicFileAttributes.class);
+        cacheMetadata(new ResolverMetadata(path, attrs.size(),
+                attrs.lastModifiedTime().toInstant()));
+    }
+
+    @Override
+    public Instant getLastModified() throws IOException {
+        if (metadata != null) {
+            return metadata.getLastModified();
+        }
+        return Files.getLastModifiedTime(getPath()).toInstant();
     }
 
     /**
@@ -157,13 +191,25 @@ class FilesystemResolver extends AbstractResolver
         return Paths.get((String) result);
     }
 
+    @Override
+    public long getSize() throws IOException {
+        if (metadata != null) {
+            return metadata.getSize();
+        }
+        return Files.size(getPath());
+    }
+
     @Override
     public Format getSourceFormat() throws IOException {
+        if (sourceFormat == null) {
+            sourceFormat = getCachedSourceFormat();
+        }
         if (sourceFormat == null) {
             sourceFormat = Format.inferFormat(identifier);
             if (sourceFormat.equals(Format.UNKNOWN)) {
                 sourceFormat = detectSourceFormat();
             }
+            cacheSourceFormat(sourceFormat);
         }
         return sourceFormat;
     }
@@ -186,7 +232,9 @@ class FilesystemResolver extends AbstractResolver
 
     @Override
     public StreamSource newStreamSource() throws IOException {
-        return new FileStreamSource(getPath());
+        final Path path = getPath();
+        return new FileStreamSource(path, identifier,
+                getVersionKey(path.toAbsolutePath()));
     }
 
     /**
@@ -209,8 +257,7 @@ class FilesystemResolver extends AbstractResolver
     @Override
     public void setIdentifier(Identifier identifier) {
         path = null;
-        sourceFormat = null;
-        this.identifier = identifier;
+        super.setIdentifier(identifier);
     }
 
 }
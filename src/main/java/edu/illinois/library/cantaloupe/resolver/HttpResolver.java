@@ -10,16 +10,25 @@ import edu.illinois.library.cantaloupe.image.MediaType;
 import edu.illinois.library.cantaloupe.script.DelegateScriptDisabledException;
 import edu.illinois.library.cantaloupe.script.ScriptEngine;
 import edu.illinois.library.cantaloupe.script.ScriptEngineFactory;
+import org.eclipse.jetty.client.AbstractConnectionPool;
+import org.eclipse.jetty.client.ConnectionPool;
+import org.eclipse.jetty.client.DuplexConnectionPool;
 import org.eclipse.jetty.client.HttpClient;
 import org.eclipse.jetty.client.HttpClientTransport;
+import org.eclipse.jetty.client.HttpDestination;
+import org.eclipse.jetty.client.api.Destination;
 import org.eclipse.jetty.client.api.AuthenticationStore;
+import org.eclipse.jetty.client.api.ContentResponse;
 import org.eclipse.jetty.client.api.Response;
 import org.eclipse.jetty.client.http.HttpClientTransportOverHTTP;
 import org.eclipse.jetty.client.util.BasicAuthentication;
 import org.eclipse.jetty.client.util.InputStreamResponseListener;
 import org.eclipse.jetty.http.HttpField;
+import org.eclipse.jetty.http.HttpHeader;
 import org.eclipse.jetty.http.HttpMethod;
 import org.eclipse.jetty.http.HttpStatus;
+import org.eclipse.jetty.http2.client.HTTP2Client;
+import org.eclipse.jetty.http2.client.http.HttpClientTransportOverHTTP2;
 import org.eclipse.jetty.util.ssl.SslContextFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -33,19 +42,35 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.file.AccessDeniedException;
 import java.nio.file.NoSuchFileException;
+import java.time.Instant;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * <p>Provides access to source content located on an HTTP(S) server.</p>
  *
  * <h1>Protocol Support</h1>
  *
- * <p>HTTP/1.1 and HTTPS/1.1 are supported.</p>
+ * <p>HTTP/1.1 and HTTPS/1.1 are supported, as is HTTP/2 when {@link
+ * Key#HTTPRESOLVER_HTTP2} is enabled. The HTTP/2 transport can't fall back to
+ * HTTP/1.1, so it should only be enabled when all origins support HTTP/2.</p>
  *
- * <p>HTTP/2 is not supported.</p>
+ * <h1>Connection Pooling</h1>
+ *
+ * <p>All instances share one client, which keeps a pool of persistent
+ * connections per origin. The size of each pool is limited by {@link
+ * Key#HTTPRESOLVER_MAX_CONNECTIONS_PER_ORIGIN}, and requests that have to
+ * wait for a connection are queued, up to {@link
+ * Key#HTTPRESOLVER_MAX_QUEUED_REQUESTS_PER_ORIGIN}. Requests beyond that fail
+ * immediately rather than tying up a thread waiting on a slow origin.
+ * Connections that have been idle for longer than {@link
+ * Key#HTTPRESOLVER_IDLE_TIMEOUT} are closed. See {@link
+ * #getStatistics()}.</p>
  *
  * <h1>Format Determination</h1>
  *
@@ -55,6 +80,13 @@ import java.util.concurrent.TimeoutException;
  * determine their format, which will incur an extra <code>HEAD</code> request.
  * It is therefore more efficient to serve images with extensions.</p>
  *
+ * <h1>Random Access</h1>
+ *
+ * <p>If the <code>HEAD</code> response contains an <code>Accept-Ranges:
+ * bytes</code> header, {@link StreamSource#newImageInputStream()} returns a
+ * {@link RangedImageInputStream} that fetches only the parts of the resource
+ * that are actually read, using range requests.</p>
+ *
  * <h1>Lookup Strategies</h1>
  *
  * <p>Two distinct lookup strategies are supported, defined by
@@ -84,19 +116,47 @@ class HttpResolver extends AbstractResolver implements StreamResolver {
 
         private final HttpClient client;
         private final URI uri;
-
-        HTTPStreamSource(HttpClient client, URI uri) {
+        private final long rangedLength;
+        private final Identifier identifier;
+        private final String versionKey;
+
+        /**
+         * @param rangedLength Length of the resource, or {@literal -1} if the
+         *                     server does not support range requests for it.
+         * @param versionKey   May be {@literal null}.
+         */
+        HTTPStreamSource(HttpClient client,
+                         URI uri,
+                         long rangedLength,
+                         Identifier identifier,
+                         String versionKey) {
             this.client = client;
             this.uri = uri;
+            this.rangedLength = rangedLength;
+            this.identifier = identifier;
+            this.versionKey = versionKey;
         }
 
+        /**
+         * @return Stream that reads ranges of the resource on demand, if the
+         *         server supports range requests for it, and otherwise a
+         *         stream wrapping {@link #newInputStream()}.
+         */
         @Override
         public ImageInputStream newImageInputStream() throws IOException {
+            if (rangedLength > 0) {
+                return new RangedImageInputStream(this::readRange,
+                        rangedLength);
+            }
             return ImageIO.createImageInputStream(newInputStream());
         }
 
+        /**
+         * @throws IOException if the request was rejected because too many
+         *         requests to the origin are queued.
+         */
         @Override
-        public InputStream newInputStream() {
+        public InputStream newInputStream() throws IOException {
             try {
                 InputStreamResponseListener listener =
                         new InputStreamResponseListener();
@@ -112,12 +172,48 @@ class HttpResolver extends AbstractResolver implements StreamResolver {
                 if (response.getStatus() == HttpStatus.OK_200) {
                     return listener.getInputStream();
                 }
+            } catch (ExecutionException e) {
+                checkRejected(e);
+                LOGGER.error(e.getMessage(), e);
             } catch (Exception e) {
                 LOGGER.error(e.getMessage(), e);
             }
             return null;
         }
 
+        @Override
+        public Identifier getIdentifier() {
+            return identifier;
+        }
+
+        @Override
+        public String getVersionKey() {
+            return versionKey;
+        }
+
+        private byte[] readRange(long offset, int length) throws IOException {
+            final String range = "bytes=" + offset + "-" + (offset + length - 1);
+            try {
+                LOGGER.debug("readRange(): GET {} ({})", uri, range);
+                final ContentResponse response = client.newRequest(uri).
+                        timeout(getRequestTimeout(), TimeUnit.SECONDS).
+                        method(HttpMethod.GET).
+                        header(HttpHeader.RANGE, range).
+                        send();
+                if (response.getStatus() != HttpStatus.PARTIAL_CONTENT_206) {
+                    throw new IOException(String.format(
+                            "GET %s (%s) returned HTTP %d",
+                            uri, range, response.getStatus()));
+                }
+                return response.getContent();
+            } catch (ExecutionException e) {
+                checkRejected(e);
+                throw new IOException(e.getMessage(), e);
+            } catch (InterruptedException | TimeoutException e) {
+                throw new IOException(e.getMessage(), e);
+            }
+        }
+
     }
 
     static class ResourceInfo {
@@ -155,6 +251,21 @@ class HttpResolver extends AbstractResolver implements StreamResolver {
 
     }
 
+    /**
+     * Locator stored in {@link ResolverMetadata}.
+     */
+    private static class ResolvedResource {
+
+        private final ResourceInfo resourceInfo;
+        private final boolean acceptsRanges;
+
+        ResolvedResource(ResourceInfo resourceInfo, boolean acceptsRanges) {
+            this.resourceInfo = resourceInfo;
+            this.acceptsRanges = acceptsRanges;
+        }
+
+    }
+
     private static final Logger LOGGER =
             LoggerFactory.getLogger(HttpResolver.class);
 
@@ -163,6 +274,12 @@ class HttpResolver extends AbstractResolver implements StreamResolver {
 
     private static HttpClient jettyClient;
 
+    /**
+     * Number of requests that have been rejected because too many requests
+     * to their origin were already queued.
+     */
+    private static final LongAdder rejectedRequestCount = new LongAdder();
+
     /**
      * Cached HTTP HEAD response.
      */
@@ -173,11 +290,30 @@ class HttpResolver extends AbstractResolver implements StreamResolver {
      */
     private ResourceInfo resourceInfo;
 
+    /**
+     * @throws IOException if the given exception was caused by the request
+     *         being rejected because too many requests to its origin were
+     *         queued.
+     */
+    private static void checkRejected(ExecutionException e)
+            throws IOException {
+        if (e.getCause() instanceof RejectedExecutionException) {
+            rejectedRequestCount.increment();
+            throw new IOException(e.getCause().getMessage(), e.getCause());
+        }
+    }
+
     private static synchronized HttpClient getHTTPClient(ResourceInfo info) {
         if (jettyClient == null) {
-            HttpClientTransport transport = new HttpClientTransportOverHTTP();
-
             Configuration config = Configuration.getInstance();
+
+            HttpClientTransport transport;
+            if (config.getBoolean(Key.HTTPRESOLVER_HTTP2, false)) {
+                transport = new HttpClientTransportOverHTTP2(new HTTP2Client());
+            } else {
+                transport = new HttpClientTransportOverHTTP();
+            }
+
             final boolean trustInvalidCerts = config.getBoolean(
                     Key.HTTPRESOLVER_TRUST_ALL_CERTS, false);
             SslContextFactory sslContextFactory =
@@ -186,6 +322,16 @@ class HttpResolver extends AbstractResolver implements StreamResolver {
             jettyClient = new HttpClient(transport, sslContextFactory);
             jettyClient.setFollowRedirects(true);
             jettyClient.setUserAgentField(new HttpField("User-Agent", getUserAgent()));
+            jettyClient.setConnectTimeout(1000L * getRequestTimeout());
+            jettyClient.setIdleTimeout(1000L *
+                    config.getLong(Key.HTTPRESOLVER_IDLE_TIMEOUT, 30));
+            jettyClient.setMaxConnectionsPerDestination(config.getInt(
+                    Key.HTTPRESOLVER_MAX_CONNECTIONS_PER_ORIGIN, 64));
+            jettyClient.setMaxRequestsQueuedPerDestination(config.getInt(
+                    Key.HTTPRESOLVER_MAX_QUEUED_REQUESTS_PER_ORIGIN, 256));
+            // Don't hang on to the pools of origins that are no longer being
+            // requested from.
+            jettyClient.setRemoveIdleDestinations(true);
 
             try {
                 jettyClient.start();
@@ -204,6 +350,50 @@ class HttpResolver extends AbstractResolver implements StreamResolver {
         return jettyClient;
     }
 
+    /**
+     * @return Map containing the numbers of origins with a connection pool,
+     *         of open, active, and idle connections across all of them (the
+     *         latter two only over HTTP/1.1), of queued requests, and the
+     *         cumulative number of requests that were rejected because their
+     *         origin's queue was full.
+     * @since 4.0
+     */
+    static synchronized Map<String, Long> getStatistics() {
+        long connections = 0, activeConnections = 0, idleConnections = 0,
+                queuedRequests = 0, origins = 0;
+        if (jettyClient != null) {
+            for (Destination destination : jettyClient.getDestinations()) {
+                if (!(destination instanceof HttpDestination)) {
+                    continue;
+                }
+                final HttpDestination httpDestination =
+                        (HttpDestination) destination;
+                origins++;
+                queuedRequests += httpDestination.getQueuedRequestCount();
+
+                final ConnectionPool pool = httpDestination.getConnectionPool();
+                if (pool instanceof AbstractConnectionPool) {
+                    connections += ((AbstractConnectionPool) pool).
+                            getConnectionCount();
+                }
+                if (pool instanceof DuplexConnectionPool) {
+                    activeConnections += ((DuplexConnectionPool) pool).
+                            getActiveConnectionCount();
+                    idleConnections += ((DuplexConnectionPool) pool).
+                            getIdleConnectionCount();
+                }
+            }
+        }
+        final Map<String, Long> map = new HashMap<>();
+        map.put("origins", origins);
+        map.put("connections", connections);
+        map.put("activeConnections", activeConnections);
+        map.put("idleConnections", idleConnections);
+        map.put("queuedRequests", queuedRequests);
+        map.put("rejectedRequests", rejectedRequestCount.sum());
+        return map;
+    }
+
     /**
      * @return Request timeout from the application configuration, or a
      *         reasonable default if not set.
@@ -226,6 +416,13 @@ class HttpResolver extends AbstractResolver implements StreamResolver {
 
     @Override
     public void checkAccess() throws IOException {
+        metadata = getCachedMetadata();
+        if (metadata != null) {
+            resourceInfo = ((ResolvedResource) metadata.getLocator()).
+                    resourceInfo;
+            return;
+        }
+
         Response response = retrieveHEADResponse();
         if (response.getStatus() >= HttpStatus.BAD_REQUEST_400) {
             final String statusLine = "HTTP " + headResponse.getStatus() +
@@ -241,15 +438,73 @@ class HttpResolver extends AbstractResolver implements StreamResolver {
                 throw new IOException(statusLine);
             }
         }
+        // retrieveHEADResponse() has set resourceInfo.
+        cacheMetadata(new ResolverMetadata(
+                new ResolvedResource(resourceInfo, acceptsRanges()),
+                getSize(), getLastModified()));
+        // The HEAD response needed to determine the format has already been
+        // received, so cache it too.
+        getSourceFormat();
+    }
+
+    /**
+     * @return Whether the <code>HEAD</code> response indicates that the server
+     *         supports range requests for the resource.
+     */
+    private boolean acceptsRanges() throws IOException {
+        final Response response = retrieveHEADResponse();
+        return response.getStatus() == HttpStatus.OK_200 &&
+                "bytes".equals(response.getHeaders().get(HttpHeader.ACCEPT_RANGES));
+    }
+
+    /**
+     * @return Value of the <code>Last-Modified</code> header of the
+     *         <code>HEAD</code> response, or {@literal null} if not present.
+     */
+    @Override
+    public Instant getLastModified() throws IOException {
+        if (metadata != null) {
+            return metadata.getLastModified();
+        }
+        try {
+            final long lastModified = retrieveHEADResponse().getHeaders().
+                    getDateField("Last-Modified");
+            return (lastModified >= 0) ?
+                    Instant.ofEpochMilli(lastModified) : null;
+        } catch (IllegalArgumentException e) {
+            LOGGER.warn("getLastModified(): {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * @return Value of the <code>Content-Length</code> header of the
+     *         <code>HEAD</code> response, or {@literal -1} if not present.
+     */
+    @Override
+    public long getSize() throws IOException {
+        if (metadata != null) {
+            return metadata.getSize();
+        }
+        try {
+            return retrieveHEADResponse().getHeaders().
+                    getLongField("Content-Length");
+        } catch (NumberFormatException e) {
+            return -1;
+        }
     }
 
     @Override
     public Format getSourceFormat() {
+        if (sourceFormat == null) {
+            sourceFormat = getCachedSourceFormat();
+        }
         if (sourceFormat == null) {
             sourceFormat = Format.inferFormat(identifier);
             if (Format.UNKNOWN.equals(sourceFormat)) {
                 sourceFormat = inferSourceFormatFromContentTypeHeader();
             }
+            cacheSourceFormat(sourceFormat);
         }
         return sourceFormat;
     }
@@ -303,11 +558,34 @@ class HttpResolver extends AbstractResolver implements StreamResolver {
 
         if (info != null) {
             LOGGER.info("Resolved {} to {}", identifier, info.getURI());
-            return new HTTPStreamSource(getHTTPClient(info), info.getURI());
+            return new HTTPStreamSource(getHTTPClient(info), info.getURI(),
+                    getRangedLength(), identifier,
+                    getVersionKey(info.getURI()));
         }
         return null;
     }
 
+    /**
+     * @return Length of the resource, if the <code>HEAD</code> response
+     *         indicates that the server supports range requests for it, or
+     *         {@literal -1} otherwise.
+     */
+    private long getRangedLength() {
+        if (metadata != null) {
+            return ((ResolvedResource) metadata.getLocator()).acceptsRanges ?
+                    metadata.getSize() : -1;
+        }
+        try {
+            if (acceptsRanges()) {
+                return retrieveHEADResponse().getHeaders().
+                        getLongField("Content-Length");
+            }
+        } catch (IOException | NumberFormatException e) {
+            LOGGER.debug("getRangedLength(): {}", e.getMessage());
+        }
+        return -1;
+    }
+
     private Response retrieveHEADResponse() throws IOException {
         if (headResponse == null) {
             ResourceInfo info;
@@ -334,6 +612,7 @@ class HttpResolver extends AbstractResolver implements StreamResolver {
                 headResponse = listener.get(getRequestTimeout(),
                         TimeUnit.SECONDS);
             } catch (ExecutionException e ) {
+                checkRejected(e);
                 throw new AccessDeniedException(info.getURI().toString());
             } catch (InterruptedException | TimeoutException e) {
                 throw new IOException(e.getMessage(), e);
@@ -412,8 +691,7 @@ class HttpResolver extends AbstractResolver implements StreamResolver {
     public void setIdentifier(Identifier identifier) {
         headResponse = null;
         resourceInfo = null;
-        sourceFormat = null;
-        this.identifier = identifier;
+        super.setIdentifier(identifier);
     }
 
 }
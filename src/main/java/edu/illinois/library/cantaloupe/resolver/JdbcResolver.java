@@ -35,12 +35,13 @@ import java.sql.SQLException;
 class JdbcResolver extends AbstractResolver implements StreamResolver {
 
     /**
-     * StreamSource for binary a.k.a. BLOB column values.
+     * StreamSource for binary a.k.a. BLOB column values. Instances are
+     * immutable and also serve as the locator in {@link ResolverMetadata}.
      */
     private static class JdbcStreamSource implements StreamSource {
 
-        private String sql;
-        private String databaseIdentifier;
+        private final String sql;
+        private final String databaseIdentifier;
 
         JdbcStreamSource(String sql, String databaseIdentifier) {
             this.sql = sql;
@@ -121,6 +122,11 @@ class JdbcResolver extends AbstractResolver implements StreamResolver {
 
     @Override
     public void checkAccess() throws IOException {
+        metadata = getCachedMetadata();
+        if (metadata != null) {
+            return;
+        }
+
         try (Connection connection = getConnection()) {
             final String sql = getLookupSQL();
             if (!sql.contains("?")) {
@@ -129,8 +135,9 @@ class JdbcResolver extends AbstractResolver implements StreamResolver {
             }
 
             // Check that the image exists.
+            final String databaseIdentifier = getDatabaseIdentifier();
             try (PreparedStatement statement = connection.prepareStatement(sql)) {
-                statement.setString(1, getDatabaseIdentifier());
+                statement.setString(1, databaseIdentifier);
                 LOGGER.debug(sql);
                 try (ResultSet result = statement.executeQuery()) {
                     if (!result.next()) {
@@ -138,6 +145,8 @@ class JdbcResolver extends AbstractResolver implements StreamResolver {
                     }
                 }
             }
+            cacheMetadata(new ResolverMetadata(
+                    new JdbcStreamSource(sql, databaseIdentifier), -1, null));
         } catch (ScriptException | SQLException |
                 DelegateScriptDisabledException e) {
             throw new IOException(e.getMessage(), e);
@@ -146,6 +155,9 @@ class JdbcResolver extends AbstractResolver implements StreamResolver {
 
     @Override
     public Format getSourceFormat() throws IOException {
+        if (sourceFormat == null) {
+            sourceFormat = getCachedSourceFormat();
+        }
         if (sourceFormat == null) {
             try {
                 // The JdbcResolver::get_media_type() delegate method may
@@ -179,6 +191,7 @@ class JdbcResolver extends AbstractResolver implements StreamResolver {
                 } else {
                     sourceFormat = Format.UNKNOWN;
                 }
+                cacheSourceFormat(sourceFormat);
             } catch (ScriptException | SQLException |
                     DelegateScriptDisabledException e) {
                 throw new IOException(e.getMessage(), e);
@@ -227,6 +240,9 @@ class JdbcResolver extends AbstractResolver implements StreamResolver {
 
     @Override
     public StreamSource newStreamSource() throws IOException {
+        if (metadata != null) {
+            return (JdbcStreamSource) metadata.getLocator();
+        }
         try {
             return new JdbcStreamSource(getLookupSQL(), getDatabaseIdentifier());
         } catch (ScriptException | DelegateScriptDisabledException e) {
@@ -6,6 +6,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
 
 /**
  * Convenience class that provides a {@link StreamSource} for a {@link Path}.
@@ -28,4 +29,20 @@ public class PathStreamSource implements StreamSource {
         return Files.newInputStream(path);
     }
 
+    /**
+     * @return Version key based on the path, size, and last-modified time of
+     *         the file, or {@literal null} if they can't be read.
+     */
+    @Override
+    public String getVersionKey() {
+        try {
+            final BasicFileAttributes attrs =
+                    Files.readAttributes(path, BasicFileAttributes.class);
+            return AbstractResolver.newVersionKey(path.toAbsolutePath(),
+                    attrs.size(), attrs.lastModifiedTime().toInstant());
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
 }
\ No newline at end of file
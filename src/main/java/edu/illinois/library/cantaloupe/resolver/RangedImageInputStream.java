@@ -0,0 +1,192 @@
+package edu.illinois.library.cantaloupe.resolver;
+
+import javax.imageio.stream.ImageInputStreamImpl;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <p>Seekable {@link javax.imageio.stream.ImageInputStream} over a remote
+ * resource of known length that supports ranged reads, such as an HTTP
+ * resource served with {@literal Accept-Ranges: bytes} or an object in a
+ * cloud storage service.</p>
+ *
+ * <p>The resource is divided into fixed-size blocks which are fetched on
+ * demand, so that readers that seek around, like those of tiled and
+ * multi-resolution TIFFs, fetch only the parts of the resource that they
+ * actually read. Fetched blocks are kept in a fixed-size LRU cache. When
+ * reading sequentially, the number of blocks fetched at a time doubles with
+ * each consecutive fetch, up to {@link #MAX_READ_AHEAD_BLOCKS}, to cut down
+ * on the number of requests.</p>
+ *
+ * <p>Instances are not thread-safe.</p>
+ */
+class RangedImageInputStream extends ImageInputStreamImpl {
+
+    /**
+     * Reads a range of bytes from a resource.
+     */
+    @FunctionalInterface
+    interface RangeReader {
+
+        /**
+         * @param offset Offset of the first byte to read.
+         * @param length Number of bytes to read. The range will never extend
+         *               past the end of the resource.
+         * @return Bytes in the given range.
+         */
+        byte[] read(long offset, int length) throws IOException;
+
+    }
+
+    static final int DEFAULT_BLOCK_SIZE = 1024 * 64;
+
+    static final int DEFAULT_MAX_CACHED_BLOCKS = 64;
+
+    /**
+     * Maximum number of blocks to fetch with a single read.
+     */
+    static final int MAX_READ_AHEAD_BLOCKS = 16;
+
+    private final RangeReader rangeReader;
+    private final long length;
+    private final int blockSize;
+    private final Map<Long,byte[]> blocks;
+
+    /**
+     * Index of the block following the last block that was fetched, used to
+     * detect sequential reading.
+     */
+    private long nextBlockIndex = -1;
+
+    private int readAheadBlocks = 1;
+
+    /**
+     * @param rangeReader Reader of the resource.
+     * @param length      Length of the resource.
+     */
+    RangedImageInputStream(RangeReader rangeReader, long length) {
+        this(rangeReader, length, DEFAULT_BLOCK_SIZE, DEFAULT_MAX_CACHED_BLOCKS);
+    }
+
+    /**
+     * @param rangeReader     Reader of the resource.
+     * @param length          Length of the resource.
+     * @param blockSize       Size of the blocks to read.
+     * @param maxCachedBlocks Maximum number of blocks to cache, which must be
+     *                        at least {@link #MAX_READ_AHEAD_BLOCKS}.
+     */
+    RangedImageInputStream(RangeReader rangeReader,
+                           long length,
+                           int blockSize,
+                           int maxCachedBlocks) {
+        this.rangeReader = rangeReader;
+        this.length = length;
+        this.blockSize = blockSize;
+        this.blocks = new LinkedHashMap<Long,byte[]>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long,byte[]> eldest) {
+                return size() > maxCachedBlocks;
+            }
+        };
+    }
+
+    @Override
+    public void close() throws IOException {
+        super.close();
+        blocks.clear();
+    }
+
+    /**
+     * Fetches the block at the given index, along with as many following
+     * uncached blocks as the current read-ahead allows, with a single read.
+     */
+    private void fetch(long firstIndex) throws IOException {
+        if (firstIndex == nextBlockIndex) {
+            readAheadBlocks = Math.min(readAheadBlocks * 2,
+                    MAX_READ_AHEAD_BLOCKS);
+        } else {
+            readAheadBlocks = 1;
+        }
+        final long lastIndex = (length - 1) / blockSize;
+        int count = 1;
+        while (count < readAheadBlocks && firstIndex + count <= lastIndex &&
+                !blocks.containsKey(firstIndex + count)) {
+            count++;
+        }
+
+        final long offset = firstIndex * blockSize;
+        final int readLength = (int) Math.min(
+                (long) count * blockSize, length - offset);
+        final byte[] data = rangeReader.read(offset, readLength);
+        if (data.length != readLength) {
+            throw new IOException(String.format(
+                    "Expected %d bytes at offset %d, but got %d",
+                    readLength, offset, data.length));
+        }
+
+        // Add the blocks in reverse order so that the first one is the most
+        // recently used.
+        for (int i = count - 1; i >= 0; i--) {
+            final int from = i * blockSize;
+            final int to = Math.min(from + blockSize, data.length);
+            final byte[] block = new byte[to - from];
+            System.arraycopy(data, from, block, 0, block.length);
+            blocks.put(firstIndex + i, block);
+        }
+        nextBlockIndex = firstIndex + count;
+    }
+
+    private byte[] getBlock(long index) throws IOException {
+        byte[] block = blocks.get(index);
+        if (block == null) {
+            fetch(index);
+            block = blocks.get(index);
+        }
+        return block;
+    }
+
+    @Override
+    public long length() {
+        return length;
+    }
+
+    @Override
+    public int read() throws IOException {
+        checkClosed();
+        bitOffset = 0;
+        if (streamPos >= length) {
+            return -1;
+        }
+        final byte[] block = getBlock(streamPos / blockSize);
+        final int b = block[(int) (streamPos % blockSize)] & 0xff;
+        streamPos++;
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        checkClosed();
+        if (off < 0 || len < 0 || off + len > b.length) {
+            throw new IndexOutOfBoundsException();
+        }
+        bitOffset = 0;
+        if (len == 0) {
+            return 0;
+        } else if (streamPos >= length) {
+            return -1;
+        }
+        len = (int) Math.min(len, length - streamPos);
+        int numRead = 0;
+        while (numRead < len) {
+            final byte[] block = getBlock(streamPos / blockSize);
+            final int blockOffset = (int) (streamPos % blockSize);
+            final int n = Math.min(len - numRead, block.length - blockOffset);
+            System.arraycopy(block, blockOffset, b, off + numRead, n);
+            numRead += n;
+            streamPos += n;
+        }
+        return numRead;
+    }
+
+}
@@ -7,6 +7,7 @@ import edu.illinois.library.cantaloupe.resource.RequestContext;
 import java.io.IOException;
 import java.nio.file.AccessDeniedException;
 import java.nio.file.NoSuchFileException;
+import java.time.Instant;
 
 /**
  * <p>Locates and provides access to a source image. This is an abstract
@@ -36,6 +37,34 @@ public interface Resolver {
      */
     void checkAccess() throws IOException;
 
+    /**
+     * <p>Returns the last-modified time of the source image, which is used,
+     * along with {@link #getSize()}, to validate conditional requests without
+     * having to read the image.</p>
+     *
+     * <p>This default implementation returns {@literal null}.</p>
+     *
+     * @return Last-modified time of the source image, or {@literal null} if
+     *         unknown.
+     * @throws IOException If anything goes wrong.
+     * @since 4.0
+     */
+    default Instant getLastModified() throws IOException {
+        return null;
+    }
+
+    /**
+     * <p>This default implementation returns {@literal -1}.</p>
+     *
+     * @return Size of the source image in bytes, or {@literal -1} if unknown.
+     * @throws IOException If anything goes wrong.
+     * @see #getLastModified()
+     * @since 4.0
+     */
+    default long getSize() throws IOException {
+        return -1;
+    }
+
     /**
      * @return The expected source format of the image corresponding to the
      *         identifier set by {@link #setIdentifier}, or
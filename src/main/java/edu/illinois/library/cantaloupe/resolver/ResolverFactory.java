@@ -15,6 +15,7 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -48,6 +49,15 @@ public class ResolverFactory {
                 new S3Resolver()));
     }
 
+    /**
+     * @return Connection pool statistics of {@link HttpResolver}. See {@link
+     *         HttpResolver#getStatistics()}.
+     * @since 4.0
+     */
+    public static Map<String, Long> getHttpResolverStatistics() {
+        return HttpResolver.getStatistics();
+    }
+
     /**
      * If {@link Key#RESOLVER_STATIC} is null or undefined, uses a delegate
      * script method to return an instance of the appropriate resolver for the
@@ -0,0 +1,79 @@
+package edu.illinois.library.cantaloupe.resolver;
+
+import edu.illinois.library.cantaloupe.image.Format;
+
+import java.time.Instant;
+
+/**
+ * Immutable record of what a resolver found out about a source image when
+ * resolving it in {@link Resolver#checkAccess()}, which is stored in the
+ * {@link ResolverMetadataCache} so that other instances can skip doing it
+ * again.
+ */
+final class ResolverMetadata {
+
+    private final Object locator;
+    private final long size;
+    private final Instant lastModified;
+    private final Format sourceFormat;
+    private final Instant creationTime;
+
+    /**
+     * @param locator      Resolver-specific object that locates the image,
+     *                     such as a URI or an object key. It must be
+     *                     immutable or otherwise thread-safe.
+     * @param size         Size of the image in bytes, or {@literal -1} if
+     *                     unknown.
+     * @param lastModified Last-modified time of the image, or {@literal
+     *                     null} if unknown.
+     */
+    ResolverMetadata(Object locator, long size, Instant lastModified) {
+        this(locator, size, lastModified, null, Instant.now());
+    }
+
+    private ResolverMetadata(Object locator,
+                             long size,
+                             Instant lastModified,
+                             Format sourceFormat,
+                             Instant creationTime) {
+        this.locator = locator;
+        this.size = size;
+        this.lastModified = lastModified;
+        this.sourceFormat = sourceFormat;
+        this.creationTime = creationTime;
+    }
+
+    Instant getCreationTime() {
+        return creationTime;
+    }
+
+    Instant getLastModified() {
+        return lastModified;
+    }
+
+    Object getLocator() {
+        return locator;
+    }
+
+    long getSize() {
+        return size;
+    }
+
+    /**
+     * @return Source format, or {@literal null} if it has not been determined
+     *         yet.
+     */
+    Format getSourceFormat() {
+        return sourceFormat;
+    }
+
+    /**
+     * @return Copy of the instance with the given source format and the same
+     *         creation time.
+     */
+    ResolverMetadata withSourceFormat(Format sourceFormat) {
+        return new ResolverMetadata(locator, size, lastModified, sourceFormat,
+                creationTime);
+    }
+
+}
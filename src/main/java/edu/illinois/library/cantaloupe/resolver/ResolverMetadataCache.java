@@ -0,0 +1,136 @@
+package edu.illinois.library.cantaloupe.resolver;
+
+import edu.illinois.library.cantaloupe.config.Configuration;
+import edu.illinois.library.cantaloupe.config.Key;
+import edu.illinois.library.cantaloupe.image.Identifier;
+import edu.illinois.library.cantaloupe.util.ObjectCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * <p>Size-bounded heap cache of {@link ResolverMetadata} shared by all
+ * resolvers, so that the many requests that a client makes for the same image
+ * (e.g. for its tiles) don't all have to resolve it from scratch, which can
+ * involve network round trips and delegate method invocations.</p>
+ *
+ * <p>Entries are keyed by identifier and expire after {@link
+ * Key#RESOLVER_METADATA_CACHE_TTL} seconds. When that is not positive, which
+ * is the default, the cache is disabled. As entries are not keyed by request
+ * context, it must stay disabled when lookup delegate methods depend on the
+ * context. Failed resolutions are never cached.</p>
+ *
+ * @since 4.0
+ */
+public final class ResolverMetadataCache {
+
+    private static final class Entry {
+
+        private final String resolverName;
+        private final ResolverMetadata metadata;
+
+        Entry(String resolverName, ResolverMetadata metadata) {
+            this.resolverName = resolverName;
+            this.metadata = metadata;
+        }
+
+    }
+
+    private static final Logger LOGGER = LoggerFactory.
+            getLogger(ResolverMetadataCache.class);
+
+    static final long MAX_SIZE = 10000;
+
+    private static ResolverMetadataCache instance;
+
+    private final ObjectCache<Identifier, Entry> objectCache =
+            new ObjectCache<>(MAX_SIZE);
+
+    /**
+     * @return Shared instance.
+     */
+    public static synchronized ResolverMetadataCache getInstance() {
+        if (instance == null) {
+            instance = new ResolverMetadataCache();
+        }
+        return instance;
+    }
+
+    private ResolverMetadataCache() {}
+
+    /**
+     * @return Metadata of the image with the given identifier as resolved by
+     *         the given resolver class, or {@literal null} if there is no such
+     *         unexpired entry or the cache is disabled.
+     */
+    ResolverMetadata get(Class<?> resolverClass, Identifier identifier) {
+        final long ttl = getTTL();
+        if (ttl <= 0) {
+            return null;
+        }
+        final Entry entry = objectCache.get(identifier);
+        if (entry == null ||
+                !entry.resolverName.equals(resolverClass.getName())) {
+            return null;
+        }
+        final Instant expiry = entry.metadata.getCreationTime().
+                plus(Duration.ofSeconds(ttl));
+        if (Instant.now().isAfter(expiry)) {
+            objectCache.remove(identifier);
+            return null;
+        }
+        LOGGER.debug("get(): hit for {}", identifier);
+        return entry.metadata;
+    }
+
+    /**
+     * @return Time-to-live of entries in seconds.
+     */
+    private long getTTL() {
+        return Configuration.getInstance().
+                getLong(Key.RESOLVER_METADATA_CACHE_TTL, 0);
+    }
+
+    boolean isEnabled() {
+        return getTTL() > 0;
+    }
+
+    /**
+     * Removes all entries, as well as all entries from resolver-specific
+     * metadata caches.
+     */
+    public void purge() {
+        LOGGER.debug("purge()");
+        objectCache.purge();
+        S3Resolver.purgeMetadataCache();
+    }
+
+    /**
+     * Removes the entry for the given identifier, if any, as well as any
+     * corresponding entries from resolver-specific metadata caches.
+     */
+    public void purge(Identifier identifier) {
+        LOGGER.debug("purge(): purging {}", identifier);
+        objectCache.remove(identifier);
+        S3Resolver.purgeMetadataCache(identifier);
+    }
+
+    /**
+     * Adds an entry, if the cache is enabled.
+     */
+    void put(Class<?> resolverClass,
+             Identifier identifier,
+             ResolverMetadata metadata) {
+        if (isEnabled()) {
+            objectCache.put(identifier,
+                    new Entry(resolverClass.getName(), metadata));
+        }
+    }
+
+    long size() {
+        return objectCache.size();
+    }
+
+}
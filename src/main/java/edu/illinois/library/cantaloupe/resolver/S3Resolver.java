@@ -3,16 +3,20 @@ package edu.illinois.library.cantaloupe.resolver;
 import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.model.AmazonS3Exception;
 import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
 import com.amazonaws.services.s3.model.S3Object;
 import edu.illinois.library.cantaloupe.config.Configuration;
 import edu.illinois.library.cantaloupe.config.Key;
 import edu.illinois.library.cantaloupe.image.Format;
+import edu.illinois.library.cantaloupe.image.Identifier;
 import edu.illinois.library.cantaloupe.image.MediaType;
 import edu.illinois.library.cantaloupe.script.DelegateScriptDisabledException;
 import edu.illinois.library.cantaloupe.script.ScriptEngine;
 import edu.illinois.library.cantaloupe.script.ScriptEngineFactory;
 import edu.illinois.library.cantaloupe.util.AWSClientBuilder;
+import edu.illinois.library.cantaloupe.util.ObjectCache;
 
+import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -25,6 +29,8 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.file.AccessDeniedException;
 import java.nio.file.NoSuchFileException;
+import java.time.Instant;
+import java.util.Date;
 import java.util.Map;
 
 /**
@@ -38,6 +44,28 @@ import java.util.Map;
  * identifiers directly to S3 object keys. ScriptLookupStrategy invokes a
  * delegate method to retrieve object keys dynamically.</p>
  *
+ * <h1>Metadata</h1>
+ *
+ * <p>{@link #checkAccess()}, {@link #getSourceFormat()}, and {@link
+ * #newStreamSource()} all work from the object's metadata, which is obtained
+ * with a single HEAD request per instance. To spare repeat requests for the
+ * same object (e.g. for the tiles of an image) from having to go back to S3,
+ * metadata can also be kept in a size-bounded heap cache shared by all
+ * instances for {@link Key#S3RESOLVER_METADATA_CACHE_TTL} seconds, which is
+ * disabled by default. Objects that can't be accessed are not cached. Unlike the {@link ResolverMetadataCache}, which is
+ * keyed by identifier, this cache is keyed by bucket and object key, so it
+ * still works when the object key depends on the request context. It is
+ * purged along with the {@link ResolverMetadataCache}.</p>
+ *
+ * <h1>Random Access</h1>
+ *
+ * <p>{@link StreamSource#newImageInputStream()} returns a {@link
+ * RangedImageInputStream} that fetches only the parts of the object that are
+ * actually read, using ranged GET requests. Each response is checked against
+ * the length and ETag of the object, so that reads of an object that has
+ * changed since its metadata was cached fail rather than returning the wrong
+ * data.</p>
+ *
  * @see <a href="http://docs.aws.amazon.com/AWSSdkDocsJava/latest/DeveloperGuide/welcome.html">
  *     AWS SDK for Java</a>
  */
@@ -45,8 +73,8 @@ class S3Resolver extends AbstractResolver implements StreamResolver {
 
     private static class ObjectInfo {
 
-        private String bucketName;
-        private String key;
+        private final String bucketName;
+        private final String key;
 
         ObjectInfo(String key, String bucketName) {
             this.key = key;
@@ -68,16 +96,125 @@ class S3Resolver extends AbstractResolver implements StreamResolver {
 
     }
 
-    private static class S3ObjectStreamSource implements StreamSource {
+    /**
+     * Reads ranges of an object with ranged GET requests, checking each
+     * response against the object length and ETag that the reader was
+     * created with, so that a stream built on stale metadata, or over an
+     * object that has been replaced mid-read, fails instead of returning
+     * truncated or mismatched data.
+     */
+    private static class ObjectRangeReader
+            implements RangedImageInputStream.RangeReader {
+
+        private final ObjectInfo objectInfo;
+        private final long length;
+
+        /**
+         * ETag of the object, which may be {@literal null} until the first
+         * response has been received.
+         */
+        private String eTag;
+
+        /**
+         * @param length Expected length of the object.
+         * @param eTag   Expected ETag of the object. May be {@literal null}.
+         */
+        ObjectRangeReader(ObjectInfo objectInfo, long length, String eTag) {
+            this.objectInfo = objectInfo;
+            this.length = length;
+            this.eTag = eTag;
+        }
 
-        private ObjectInfo objectInfo;
+        @Override
+        public byte[] read(long offset, int length) throws IOException {
+            final GetObjectRequest request = new GetObjectRequest(
+                    objectInfo.getBucketName(), objectInfo.getKey()).
+                    withRange(offset, offset + length - 1);
+            if (eTag != null) {
+                request.withMatchingETagConstraint(eTag);
+            }
+            try (S3Object object = fetchObject(request)) {
+                // The client returns null when the ETag constraint fails.
+                if (object == null) {
+                    throw newChangedException("ETag no longer matches");
+                }
+                final ObjectMetadata objectMetadata =
+                        object.getObjectMetadata();
+                final long instanceLength = objectMetadata.getInstanceLength();
+                if (instanceLength != this.length) {
+                    throw newChangedException("expected a length of " +
+                            this.length + " but got " + instanceLength);
+                }
+                if (eTag == null) {
+                    eTag = objectMetadata.getETag();
+                }
+                final byte[] bytes;
+                try (InputStream is = object.getObjectContent()) {
+                    bytes = IOUtils.toByteArray(is);
+                }
+                if (bytes.length != length) {
+                    throw newChangedException("expected " + length +
+                            " bytes at offset " + offset + " but got " +
+                            bytes.length);
+                }
+                return bytes;
+            }
+        }
+
+        /**
+         * Removes the object's entry from the {@link #getMetadataCache()
+         * metadata cache}, which is presumably stale, and returns an
+         * exception to throw.
+         */
+        private IOException newChangedException(String reason) {
+            final ObjectCache<String,ObjectMetadata> cache =
+                    getMetadataCache();
+            if (cache != null) {
+                cache.remove(objectInfo.toString());
+            }
+            return new IOException(objectInfo + " has changed since its " +
+                    "metadata was read: " + reason);
+        }
+
+    }
+
+    private static class S3ObjectStreamSource implements StreamSource {
 
-        S3ObjectStreamSource(ObjectInfo objectInfo) {
+        private final ObjectInfo objectInfo;
+        private final long length;
+        private final String eTag;
+        private final Identifier identifier;
+        private final String versionKey;
+
+        /**
+         * @param length     Length of the object, or {@literal -1} if unknown.
+         * @param eTag       ETag of the object. May be {@literal null}.
+         * @param versionKey May be {@literal null}.
+         */
+        S3ObjectStreamSource(ObjectInfo objectInfo,
+                             long length,
+                             String eTag,
+                             Identifier identifier,
+                             String versionKey) {
             this.objectInfo = objectInfo;
+            this.length = length;
+            this.eTag = eTag;
+            this.identifier = identifier;
+            this.versionKey = versionKey;
         }
 
+        /**
+         * @return Stream that reads ranges of the object on demand, if its
+         *         length is known, and otherwise a stream wrapping {@link
+         *         #newInputStream()}.
+         */
         @Override
         public ImageInputStream newImageInputStream() throws IOException {
+            if (length > 0) {
+                return new RangedImageInputStream(
+                        new ObjectRangeReader(objectInfo, length, eTag),
+                        length);
+            }
             return ImageIO.createImageInputStream(newInputStream());
         }
 
@@ -87,6 +224,16 @@ class S3Resolver extends AbstractResolver implements StreamResolver {
             return object.getObjectContent();
         }
 
+        @Override
+        public Identifier getIdentifier() {
+            return identifier;
+        }
+
+        @Override
+        public String getVersionKey() {
+            return versionKey;
+        }
+
     }
 
     private static final Logger LOGGER = LoggerFactory.
@@ -95,10 +242,38 @@ class S3Resolver extends AbstractResolver implements StreamResolver {
     private static final String GET_KEY_DELEGATE_METHOD =
             "S3Resolver::get_object_key";
 
+    /**
+     * Maximum number of objects whose metadata is cached in {@link
+     * #metadataCache}.
+     */
+    private static final long MAX_CACHED_METADATA = 10000;
+
     private static AmazonS3 client;
 
+    /**
+     * Cache of object metadata keyed by {@link ObjectInfo#toString()}, or
+     * {@literal null} if {@link Key#S3RESOLVER_METADATA_CACHE_TTL} is not
+     * positive.
+     */
+    private static ObjectCache<String,ObjectMetadata> metadataCache;
+
+    /**
+     * TTL with which {@link #metadataCache} was created.
+     */
+    private static long metadataCacheTTL;
+
     private IOException cachedAccessException;
 
+    /**
+     * Metadata of the object, fetched by {@link #getObjectMetadata()}.
+     */
+    private ObjectMetadata cachedObjectMetadata;
+
+    /**
+     * Lazy-loaded by {@link #getObjectInfo()}.
+     */
+    private ObjectInfo objectInfo;
+
     private static synchronized AmazonS3 getClientInstance() {
         if (client == null) {
             final Configuration config = Configuration.getInstance();
@@ -121,17 +296,124 @@ class S3Resolver extends AbstractResolver implements StreamResolver {
         return client;
     }
 
+    /**
+     * @return Metadata cache, or {@literal null} if {@link
+     *         Key#S3RESOLVER_METADATA_CACHE_TTL} is not positive. The cache
+     *         is replaced when the TTL changes.
+     */
+    private static synchronized ObjectCache<String,ObjectMetadata>
+    getMetadataCache() {
+        final long ttl = Configuration.getInstance().
+                getLong(Key.S3RESOLVER_METADATA_CACHE_TTL, 0);
+        if (ttl != metadataCacheTTL) {
+            metadataCache = (ttl > 0) ?
+                    new ObjectCache<>(MAX_CACHED_METADATA, ttl) : null;
+            metadataCacheTTL = ttl;
+        }
+        return metadataCache;
+    }
+
+    /**
+     * Removes all entries from the {@link #getMetadataCache() metadata
+     * cache}. Called by {@link ResolverMetadataCache#purge()}.
+     */
+    static synchronized void purgeMetadataCache() {
+        if (metadataCache != null) {
+            metadataCache.purge();
+        }
+    }
+
+    /**
+     * Removes the entry for the object corresponding to the given identifier
+     * from the {@link #getMetadataCache() metadata cache}. When using
+     * ScriptLookupStrategy, the object key may depend on the request context,
+     * so the whole cache is purged. Called by {@link
+     * ResolverMetadataCache#purge(Identifier)}.
+     */
+    static synchronized void purgeMetadataCache(Identifier identifier) {
+        if (metadataCache != null) {
+            switch (LookupStrategy.from(Key.S3RESOLVER_LOOKUP_STRATEGY)) {
+                case DELEGATE_SCRIPT:
+                    metadataCache.purge();
+                    break;
+                default:
+                    final ObjectInfo info = new ObjectInfo(
+                            identifier.toString(),
+                            Configuration.getInstance().getString(
+                                    Key.S3RESOLVER_BUCKET_NAME));
+                    metadataCache.remove(info.toString());
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Requests the metadata of an object with a HEAD request.
+     *
+     * @throws NoSuchFileException if the object does not exist.
+     * @throws AccessDeniedException if the object is not readable.
+     * @throws IOException if there is some other issue accessing the object.
+     */
+    private static ObjectMetadata fetchObjectMetadata(ObjectInfo info)
+            throws IOException {
+        LOGGER.debug("fetchObjectMetadata(): requesting {}", info);
+        final AmazonS3 s3 = getClientInstance();
+        try {
+            return s3.getObjectMetadata(info.getBucketName(), info.getKey());
+        } catch (AmazonS3Exception e) {
+            // HEAD responses have no body, so there is no error code to go
+            // on; only the status.
+            switch (e.getStatusCode()) {
+                case 403:
+                    throw new AccessDeniedException(info.toString());
+                case 404:
+                    throw new NoSuchFileException(info.toString());
+                default:
+                    throw new IOException(e);
+            }
+        }
+    }
+
+    @Override
+    public Instant getLastModified() {
+        if (metadata != null) {
+            return metadata.getLastModified();
+        } else if (cachedObjectMetadata != null &&
+                cachedObjectMetadata.getLastModified() != null) {
+            return cachedObjectMetadata.getLastModified().toInstant();
+        }
+        return null;
+    }
+
+    @Override
+    public long getSize() {
+        if (metadata != null) {
+            return metadata.getSize();
+        }
+        return (cachedObjectMetadata != null) ?
+                cachedObjectMetadata.getContentLength() : -1;
+    }
+
     /**
      * N.B.: Either the returned instance, or the return value of
      * {@link S3Object#getObjectContent()}, must be closed.
      */
     private static S3Object fetchObject(ObjectInfo info) throws IOException {
+        LOGGER.debug("Requesting {}", info);
+        return fetchObject(new GetObjectRequest(
+                info.getBucketName(),
+                info.getKey()));
+    }
+
+    /**
+     * N.B.: Either the returned instance, or the return value of
+     * {@link S3Object#getObjectContent()}, must be closed.
+     */
+    private static S3Object fetchObject(GetObjectRequest request)
+            throws IOException {
         final AmazonS3 s3 = getClientInstance();
         try {
-            LOGGER.debug("Requesting {}", info);
-            return s3.getObject(new GetObjectRequest(
-                    info.getBucketName(),
-                    info.getKey()));
+            return s3.getObject(request);
         } catch (AmazonS3Exception e) {
             if (e.getErrorCode().equals("NoSuchKey")) {
                 throw new NoSuchFileException(e.getMessage());
@@ -143,41 +425,73 @@ class S3Resolver extends AbstractResolver implements StreamResolver {
 
     @Override
     public void checkAccess() throws IOException {
-        S3Object object = null;
-        try {
-            object = getObject();
-        } finally {
-            if (object != null) {
-                object.close();
-            }
+        metadata = getCachedMetadata();
+        if (metadata == null) {
+            final ObjectMetadata objectMetadata = getObjectMetadata();
+            final Date lastModified = objectMetadata.getLastModified();
+            cacheMetadata(new ResolverMetadata(getObjectInfo(),
+                    objectMetadata.getContentLength(),
+                    (lastModified != null) ? lastModified.toInstant() : null));
+            // The object metadata needed to determine the format has already
+            // been fetched, so cache it too.
+            getSourceFormat();
         }
     }
 
     /**
-     * N.B.: Either the returned instance, or the return value of
-     * {@link S3Object#getObjectContent()}, must be closed.
-     *
+     * @return Metadata of the object corresponding to the set identifier,
+     *         from the instance, the {@link #getMetadataCache() metadata
+     *         cache}, or a HEAD request, in that order.
      * @throws NoSuchFileException if an object corresponding to the set
      *         identifier does not exist.
      * @throws AccessDeniedException if an object corresponding to the set
      *         identifier is not readable.
      * @throws IOException if there is some other issue accessing the object.
      */
-    private S3Object getObject() throws IOException {
+    private ObjectMetadata getObjectMetadata() throws IOException {
         if (cachedAccessException != null) {
             throw cachedAccessException;
-        } else {
+        } else if (cachedObjectMetadata == null) {
             try {
                 final ObjectInfo info = getObjectInfo();
-                return fetchObject(info);
+                final ObjectCache<String,ObjectMetadata> cache =
+                        getMetadataCache();
+                ObjectMetadata metadata = null;
+                if (cache != null) {
+                    metadata = cache.get(info.toString());
+                }
+                if (metadata != null) {
+                    LOGGER.debug("getObjectMetadata(): hit for {}", info);
+                } else {
+                    metadata = fetchObjectMetadata(info);
+                    if (cache != null) {
+                        cache.put(info.toString(), metadata);
+                    }
+                }
+                cachedObjectMetadata = metadata;
             } catch (IOException e) {
                 cachedAccessException = e;
                 throw e;
             }
         }
+        return cachedObjectMetadata;
     }
 
+    /**
+     * @return Info corresponding to {@link #identifier}. The result is cached.
+     */
     private ObjectInfo getObjectInfo() throws IOException {
+        if (objectInfo == null) {
+            if (metadata != null) {
+                objectInfo = (ObjectInfo) metadata.getLocator();
+            } else {
+                objectInfo = lookUpObjectInfo();
+            }
+        }
+        return objectInfo;
+    }
+
+    private ObjectInfo lookUpObjectInfo() throws IOException {
         final Configuration config = Configuration.getInstance();
         ObjectInfo objectInfo;
 
@@ -234,28 +548,47 @@ class S3Resolver extends AbstractResolver implements StreamResolver {
     @Override
     public Format getSourceFormat() throws IOException {
         if (sourceFormat == null) {
-            try (S3Object object = getObject()) {
-                String contentType = object.getObjectMetadata().getContentType();
-                // See if we can determine the format from the Content-Type header.
-                if (contentType != null && !contentType.isEmpty()) {
-                    sourceFormat = new MediaType(contentType).toFormat();
-                }
-                if (sourceFormat == null || Format.UNKNOWN.equals(sourceFormat)) {
-                    // Try to infer a format based on the identifier.
-                    sourceFormat = Format.inferFormat(identifier);
-                }
-                if (Format.UNKNOWN.equals(sourceFormat)) {
-                    // Try to infer a format based on the objectKey.
-                    sourceFormat = Format.inferFormat(object.getKey());
-                }
+            sourceFormat = getCachedSourceFormat();
+        }
+        if (sourceFormat == null) {
+            String contentType = getObjectMetadata().getContentType();
+            // See if we can determine the format from the Content-Type header.
+            if (contentType != null && !contentType.isEmpty()) {
+                sourceFormat = new MediaType(contentType).toFormat();
+            }
+            if (sourceFormat == null || Format.UNKNOWN.equals(sourceFormat)) {
+                // Try to infer a format based on the identifier.
+                sourceFormat = Format.inferFormat(identifier);
+            }
+            if (Format.UNKNOWN.equals(sourceFormat)) {
+                // Try to infer a format based on the objectKey.
+                sourceFormat = Format.inferFormat(getObjectInfo().getKey());
             }
+            cacheSourceFormat(sourceFormat);
         }
         return sourceFormat;
     }
 
     @Override
     public StreamSource newStreamSource() throws IOException {
-        return new S3ObjectStreamSource(getObjectInfo());
+        final long length = (metadata != null) ?
+                metadata.getSize() : getObjectMetadata().getContentLength();
+        final ObjectInfo info = getObjectInfo();
+        // If the instance was resolved from the ResolverMetadataCache, the
+        // ETag is unknown, and the stream will take it from its first
+        // response instead.
+        final String eTag = (cachedObjectMetadata != null) ?
+                cachedObjectMetadata.getETag() : null;
+        return new S3ObjectStreamSource(info, length, eTag, identifier,
+                getVersionKey("s3://" + info));
+    }
+
+    @Override
+    public void setIdentifier(Identifier identifier) {
+        cachedAccessException = null;
+        cachedObjectMetadata = null;
+        objectInfo = null;
+        super.setIdentifier(identifier);
     }
 
 }
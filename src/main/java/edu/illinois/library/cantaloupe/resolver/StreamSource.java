@@ -1,5 +1,7 @@
 package edu.illinois.library.cantaloupe.resolver;
 
+import edu.illinois.library.cantaloupe.image.Identifier;
+
 import javax.imageio.ImageIO;
 import javax.imageio.stream.ImageInputStream;
 import java.io.IOException;
@@ -33,4 +35,29 @@ public interface StreamSource {
      */
     InputStream newInputStream() throws IOException;
 
+    /**
+     * @return Identifier of the source image, or {@literal null} if the
+     *         source is not an image resolved by identifier. Readers
+     *         associate what they cache under the {@link #getVersionKey()
+     *         version key} with it, so that it can be purged by identifier.
+     * @since 4.0
+     */
+    default Identifier getIdentifier() {
+        return null;
+    }
+
+    /**
+     * @return String that changes whenever the source image changes, such as
+     *         a combination of its location, size, and last-modified time, or
+     *         {@literal null} if there is no such string. Readers use it to
+     *         cache information about the structure of the image across
+     *         requests. When it is based on cached resolver metadata, it may
+     *         lag behind changes to the image until that metadata expires or
+     *         is purged.
+     * @since 4.0
+     */
+    default String getVersionKey() {
+        return null;
+    }
+
 }
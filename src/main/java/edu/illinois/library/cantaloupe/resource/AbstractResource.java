@@ -10,18 +10,23 @@ import edu.illinois.library.cantaloupe.image.Info;
 import edu.illinois.library.cantaloupe.image.Format;
 import edu.illinois.library.cantaloupe.image.Identifier;
 import edu.illinois.library.cantaloupe.operation.OperationList;
+import edu.illinois.library.cantaloupe.processor.FileProcessor;
 import edu.illinois.library.cantaloupe.processor.Processor;
+import edu.illinois.library.cantaloupe.resolver.Resolver;
 import edu.illinois.library.cantaloupe.util.StringUtil;
 import org.apache.commons.lang3.StringUtils;
 import org.restlet.Request;
 import org.restlet.data.CacheDirective;
+import org.restlet.data.Conditions;
 import org.restlet.data.Dimension;
 import org.restlet.data.Disposition;
 import org.restlet.data.Header;
 import org.restlet.data.Parameter;
 import org.restlet.data.Protocol;
+import org.restlet.data.Range;
 import org.restlet.data.Reference;
 import org.restlet.data.Status;
+import org.restlet.data.Tag;
 import org.restlet.representation.EmptyRepresentation;
 import org.restlet.representation.Representation;
 import org.restlet.representation.StringRepresentation;
@@ -35,8 +40,14 @@ import org.slf4j.LoggerFactory;
 import javax.script.ScriptException;
 import java.io.IOException;
 import java.net.URL;
+import java.nio.channels.FileChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -195,7 +206,8 @@ public abstract class AbstractResource extends ServerResource {
     protected void doInit() throws ResourceException {
         super.doInit();
 
-        // We don't honor the Range header as most responses will be streamed.
+        // We don't honor the Range header by default, as most responses will
+        // be streamed. See newRangeRepresentation().
         getResponse().getServerInfo().setAcceptingRanges(false);
 
         // "Dimensions" are added to the Vary header. Restlet doesn't supply
@@ -357,6 +369,67 @@ public abstract class AbstractResource extends ServerResource {
         return addr;
     }
 
+    /**
+     * <p>Returns a strong entity tag for a representation of the source image
+     * provided by the given resolver, which is computed from the resolver's
+     * {@link Resolver#getLastModified() last-modified time} and
+     * {@link Resolver#getSize() size} without reading the image.</p>
+     *
+     * @param key      String that uniquely identifies the representation
+     *                 among all of the representations of the source image,
+     *                 such as a serialized operation list.
+     * @param resolver Resolver whose access has already been checked.
+     * @return         Entity tag, or {@literal null} if the resolver can't
+     *                 tell when the source image was last modified nor how
+     *                 big it is.
+     */
+    protected final Tag getEntityTag(String key,
+                                     Resolver resolver) throws IOException {
+        final Instant lastModified = resolver.getLastModified();
+        final long size = resolver.getSize();
+        if (lastModified == null && size < 0) {
+            return null;
+        }
+        // Include the application version, as a new version may render the
+        // same representation differently.
+        final String str = String.join("|",
+                Application.getVersion(),
+                key,
+                (lastModified != null) ?
+                        Long.toString(lastModified.toEpochMilli()) : "",
+                Long.toString(size));
+        // filesystemSafe() returns an MD5 digest, which is safe to use in a
+        // header as well.
+        return new Tag(StringUtil.filesystemSafe(str), false);
+    }
+
+    /**
+     * <p>Returns a file containing the image described by the given operation
+     * list, from which byte ranges can be served. This is either a valid
+     * cached derivative image, or, if the operations would have no effect,
+     * the source image of a {@link FileProcessor}.</p>
+     *
+     * @param opList    Frozen operation list.
+     * @param processor Processor that would otherwise produce the image.
+     * @return          File, or {@literal null} if the image is only
+     *                  available as a stream.
+     * @see #newRangeRepresentation
+     */
+    protected final Path getImageFile(OperationList opList,
+                                      Processor processor) throws IOException {
+        if (!isBypassingCache()) {
+            final Path file = new CacheFacade().getDerivativeImageFile(opList);
+            if (file != null) {
+                return file;
+            }
+        }
+        if (!opList.hasEffect(processor.getSourceFormat()) &&
+                processor instanceof FileProcessor) {
+            return ((FileProcessor) processor).getSourceFile();
+        }
+        return null;
+    }
+
     /**
      * @return Decoded identifier component of the URI. N.B.: This may not be
      *         the identifier the user supplies or sees; for that, use
@@ -526,6 +599,63 @@ public abstract class AbstractResource extends ServerResource {
                 "." + outputFormat.getPreferredExtension();
     }
 
+    /**
+     * @return Last-modified time of the source image provided by the given
+     *         resolver, or {@literal null} if unknown.
+     */
+    protected static Date getSourceLastModified(Resolver resolver)
+            throws IOException {
+        final Instant lastModified = resolver.getLastModified();
+        return (lastModified != null) ? Date.from(lastModified) : null;
+    }
+
+    /**
+     * @return Whether the request contains an <code>If-None-Match</code> or
+     *         <code>If-Modified-Since</code> header.
+     */
+    protected boolean isConditionalRequest() {
+        final Conditions conditions = getRequest().getConditions();
+        return !conditions.getNoneMatch().isEmpty() ||
+                conditions.getModifiedSince() != null;
+    }
+
+    /**
+     * <p>Checks the request's <code>If-None-Match</code> and
+     * <code>If-Modified-Since</code> headers against the given validators.
+     * Per RFC 7232, <code>If-Modified-Since</code> is ignored when
+     * <code>If-None-Match</code> is present.</p>
+     *
+     * @param tag          Entity tag of the representation that would be
+     *                     sent. May be {@literal null}.
+     * @param lastModified Last-modified time of the representation that would
+     *                     be sent. May be {@literal null}.
+     * @return             Whether a <code>304 Not Modified</code> response
+     *                     can be sent instead of the representation.
+     */
+    protected boolean isNotModified(Tag tag, Date lastModified) {
+        final Conditions conditions = getRequest().getConditions();
+        final List<Tag> noneMatch = conditions.getNoneMatch();
+        if (!noneMatch.isEmpty()) {
+            if (tag != null) {
+                for (Tag candidate : noneMatch) {
+                    // If-None-Match uses the weak comparison function.
+                    if (Tag.ALL.equals(candidate) ||
+                            tag.getName().equals(candidate.getName())) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+        final Date modifiedSince = conditions.getModifiedSince();
+        if (modifiedSince != null && lastModified != null) {
+            // HTTP dates have a resolution of one second.
+            return lastModified.getTime() / 1000 <=
+                    modifiedSince.getTime() / 1000;
+        }
+        return false;
+    }
+
     /**
      * @return Whether there is a <var>cache</var> query parameter set to
      *         <code>false</code> in the URI.
@@ -539,6 +669,151 @@ public abstract class AbstractResource extends ServerResource {
         return bypassingCache;
     }
 
+    /**
+     * @param file         File to serve.
+     * @param format       Format of the file.
+     * @param disposition  HTTP {@literal Content-Disposition}.
+     * @return             Representation of the whole file, or {@literal
+     *                     null} if the file has disappeared (e.g. been purged
+     *                     from a cache) in the meantime.
+     * @see #newRangeRepresentation
+     */
+    protected final Representation newFileRepresentation(
+            Path file, Format format, Disposition disposition)
+            throws IOException {
+        final FileChannel channel = openFile(file);
+        if (channel == null) {
+            return null;
+        }
+        try {
+            return new FileImageRepresentation(channel,
+                    format.getPreferredMediaType(), disposition);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return Channel for reading the given file, or {@literal null} if it
+     *         does not exist.
+     */
+    private static FileChannel openFile(Path file) throws IOException {
+        try {
+            return FileChannel.open(file, StandardOpenOption.READ);
+        } catch (NoSuchFileException e) {
+            LOGGER.debug("openFile(): {} has disappeared", file);
+            return null;
+        }
+    }
+
+    /**
+     * <p>Returns a representation of the byte range of the given file
+     * requested in the <code>Range</code> header, and sets the response status
+     * to <code>206 Partial Content</code>. Also advertises support for ranges
+     * in an <code>Accept-Ranges</code> response header.</p>
+     *
+     * <p>Only single ranges are supported. Requests for multiple ranges, and
+     * requests whose <code>If-Range</code> header doesn't match the given
+     * validators, receive the whole representation, as permitted by RFC
+     * 7233.</p>
+     *
+     * @param file         File to serve a range of.
+     * @param format       Format of the file.
+     * @param disposition  HTTP {@literal Content-Disposition}.
+     * @param tag          Entity tag of the whole representation. May be
+     *                     {@literal null}.
+     * @param lastModified Last-modified time of the whole representation.
+     *                     May be {@literal null}.
+     * @return             Representation, or {@literal null} if the whole
+     *                     representation should be sent instead (which is
+     *                     also the case if the file has disappeared in the
+     *                     meantime).
+     * @throws RangeNotSatisfiableException if the requested range lies
+     *         outside of the file.
+     */
+    protected final Representation newRangeRepresentation(
+            Path file, Format format, Disposition disposition, Tag tag,
+            Date lastModified) throws IOException {
+        getResponse().getServerInfo().setAcceptingRanges(true);
+
+        final List<Range> ranges = getRequest().getRanges();
+        if (ranges.size() != 1 || !isRangeConditionMet(tag, lastModified)) {
+            return null;
+        }
+
+        final FileChannel channel = openFile(file);
+        if (channel == null) {
+            return null;
+        }
+        try {
+            final long size = channel.size();
+            final Range range = ranges.get(0);
+            long start, length;
+            if (range.getIndex() == Range.INDEX_LAST) { // e.g. bytes=-500
+                length = Math.min(range.getSize(), size);
+                start = size - length;
+            } else {
+                start = range.getIndex();
+                length = (range.getSize() == Range.SIZE_MAX) ?
+                        size - start : Math.min(range.getSize(), size - start);
+            }
+            if (start >= size || length <= 0) {
+                throw new RangeNotSatisfiableException(size);
+            }
+            LOGGER.debug("newRangeRepresentation(): serving bytes {}-{} of {}",
+                    start, start + length - 1, file);
+            getResponse().setStatus(Status.SUCCESS_PARTIAL_CONTENT);
+            final Representation rep = new FileImageRepresentation(channel,
+                    format.getPreferredMediaType(), disposition, start, length);
+            rep.setTag(tag);
+            rep.setModificationDate(lastModified);
+            return rep;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return Whether the request either has no <code>If-Range</code> header,
+     *         or one that matches the given validators.
+     */
+    private boolean isRangeConditionMet(Tag tag, Date lastModified) {
+        final Conditions conditions = getRequest().getConditions();
+        if (conditions.getRangeTag() != null) {
+            // If-Range uses the strong comparison function.
+            return tag != null && !tag.isWeak() &&
+                    tag.equals(conditions.getRangeTag());
+        } else if (conditions.getRangeDate() != null) {
+            return lastModified != null &&
+                    lastModified.getTime() / 1000 ==
+                            conditions.getRangeDate().getTime() / 1000;
+        }
+        return true;
+    }
+
+    /**
+     * Sets the response status to <code>304 Not Modified</code> and commits
+     * the custom response headers.
+     *
+     * @param tag          Entity tag to send. May be {@literal null}.
+     * @param lastModified Last-modified time to send. May be {@literal null}.
+     * @return             Empty representation to return from the request
+     *                     handler.
+     */
+    protected final Representation newNotModifiedRepresentation(
+            Tag tag, Date lastModified) {
+        LOGGER.debug("newNotModifiedRepresentation(): {} has not been " +
+                "modified; sending 304", getReference());
+        getResponse().setStatus(Status.REDIRECTION_NOT_MODIFIED);
+        commitCustomResponseHeaders();
+        final Representation rep = new EmptyRepresentation();
+        rep.setTag(tag);
+        rep.setModificationDate(lastModified);
+        return rep;
+    }
+
     /**
      * @param name Template pathname, with leading slash.
      * @return     Representation using the given template and the common
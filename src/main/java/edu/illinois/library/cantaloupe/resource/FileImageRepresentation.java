@@ -0,0 +1,184 @@
+package edu.illinois.library.cantaloupe.resource;
+
+import edu.illinois.library.cantaloupe.image.MediaType;
+import edu.illinois.library.cantaloupe.util.Stopwatch;
+import org.eclipse.jetty.server.HttpOutput;
+import org.restlet.data.Disposition;
+import org.restlet.data.Range;
+import org.restlet.representation.OutputRepresentation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * <p>Representation for images that are available in files, such as cached
+ * derivative images and unprocessed source images. Either the whole file or
+ * a byte range of it (for responding to requests containing a
+ * <code>Range</code> header with HTTP 206 Partial Content) can be
+ * represented.</p>
+ *
+ * <p>The file is read using positional reads from a {@link FileChannel}, so
+ * no bytes outside of the range have to be read, and it is written to the
+ * response in a way that avoids copying it through the heap whenever
+ * possible. See {@link #transfer}.</p>
+ *
+ * @since 4.0
+ */
+public class FileImageRepresentation extends OutputRepresentation {
+
+    private static final Logger LOGGER =
+            LoggerFactory.getLogger(FileImageRepresentation.class);
+
+    private static final int BUFFER_SIZE = 65536;
+
+    /**
+     * Direct buffers are expensive to allocate, so each thread reuses its
+     * own.
+     */
+    private static final ThreadLocal<ByteBuffer> DIRECT_BUFFER =
+            ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(BUFFER_SIZE));
+
+    private final FileChannel channel;
+    private final long length;
+    private final long start;
+
+    /**
+     * Writes a region of a file to an output stream.
+     *
+     * <ul>
+     *     <li>If the stream is also a {@link WritableByteChannel}, the bytes
+     *     are transferred using {@link FileChannel#transferTo}, which the OS
+     *     may be able to perform without copying them into user space.</li>
+     *     <li>If the stream is a Jetty response stream, the bytes are read
+     *     into a direct buffer, which Jetty writes to the socket without
+     *     copying it into the heap.</li>
+     *     <li>Otherwise, the bytes are copied through a heap buffer.</li>
+     * </ul>
+     *
+     * @param channel      Channel to read from. Will not be closed.
+     * @param position     Offset of the first byte to write.
+     * @param count        Number of bytes to write.
+     * @param outputStream Stream to write to. Will not be closed.
+     */
+    static void transfer(FileChannel channel,
+                         long position,
+                         long count,
+                         OutputStream outputStream) throws IOException {
+        final long end = position + count;
+
+        if (outputStream instanceof WritableByteChannel) {
+            final WritableByteChannel target =
+                    (WritableByteChannel) outputStream;
+            while (position < end) {
+                final long transferred =
+                        channel.transferTo(position, end - position, target);
+                if (transferred == 0 && position >= channel.size()) {
+                    throw new EOFException("Unexpected end of file at " +
+                            "position " + position);
+                }
+                position += transferred;
+            }
+            return;
+        }
+
+        final boolean isJetty = outputStream instanceof HttpOutput;
+        final ByteBuffer buffer = isJetty ?
+                DIRECT_BUFFER.get() : ByteBuffer.allocate(BUFFER_SIZE);
+        while (position < end) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), end - position));
+            final int numRead = channel.read(buffer, position);
+            if (numRead < 0) {
+                throw new EOFException("Unexpected end of file at " +
+                        "position " + position);
+            }
+            buffer.flip();
+            if (isJetty) {
+                // This blocks until the buffer has been consumed.
+                ((HttpOutput) outputStream).write(buffer);
+            } else {
+                outputStream.write(buffer.array(), 0, numRead);
+            }
+            position += numRead;
+        }
+    }
+
+    /**
+     * Constructor for representing a whole file.
+     *
+     * @param channel     Channel from which to read the file, which will be
+     *                    closed when the representation is released.
+     * @param mediaType   Media type of the file.
+     * @param disposition HTTP {@literal Content-Disposition}.
+     */
+    FileImageRepresentation(FileChannel channel,
+                            MediaType mediaType,
+                            Disposition disposition) throws IOException {
+        super(new org.restlet.data.MediaType(mediaType.toString()),
+                channel.size());
+        this.channel = channel;
+        this.start = 0;
+        this.length = channel.size();
+        setDisposition(disposition);
+    }
+
+    /**
+     * Constructor for representing a byte range of a file.
+     *
+     * @param channel     Channel from which to read the file, which will be
+     *                    closed when the representation is released.
+     * @param mediaType   Media type of the file.
+     * @param disposition HTTP {@literal Content-Disposition}.
+     * @param start       Offset of the first byte of the range.
+     * @param length      Length of the range, which must fit within the
+     *                    file.
+     */
+    FileImageRepresentation(FileChannel channel,
+                            MediaType mediaType,
+                            Disposition disposition,
+                            long start,
+                            long length) throws IOException {
+        super(new org.restlet.data.MediaType(mediaType.toString()),
+                channel.size());
+        this.channel = channel;
+        this.start = start;
+        this.length = length;
+        setRange(new Range(start, length));
+        setDisposition(disposition);
+    }
+
+    @Override
+    public void release() {
+        super.release();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            LOGGER.warn("release(): {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Writes the file or range to the given output stream.
+     *
+     * @param outputStream Response body stream supplied by Restlet.
+     */
+    @Override
+    public void write(OutputStream outputStream) throws IOException {
+        try {
+            final Stopwatch watch = new Stopwatch();
+            transfer(channel, start, length, outputStream);
+            LOGGER.debug("Streamed bytes {}-{} from a file in {} msec",
+                    start, start + length - 1, watch.timeElapsed());
+        } finally {
+            // N.B.: Restlet will close the output stream.
+            channel.close();
+        }
+    }
+
+}
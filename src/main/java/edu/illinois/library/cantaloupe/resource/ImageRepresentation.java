@@ -1,6 +1,7 @@
 package edu.illinois.library.cantaloupe.resource;
 
 import edu.illinois.library.cantaloupe.cache.CacheFacade;
+import edu.illinois.library.cantaloupe.cache.DerivativeCoalescer;
 import edu.illinois.library.cantaloupe.image.Info;
 import edu.illinois.library.cantaloupe.operation.OperationList;
 import edu.illinois.library.cantaloupe.processor.FileProcessor;
@@ -10,6 +11,7 @@ import edu.illinois.library.cantaloupe.processor.StreamProcessor;
 import edu.illinois.library.cantaloupe.resolver.StreamSource;
 import edu.illinois.library.cantaloupe.util.Stopwatch;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.CountingOutputStream;
 import org.apache.commons.io.output.TeeOutputStream;
 import org.restlet.data.Disposition;
 import org.restlet.representation.OutputRepresentation;
@@ -19,8 +21,10 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.nio.file.Files;
+import java.nio.channels.FileChannel;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 
 /**
  * Restlet representation for images.
@@ -62,6 +66,8 @@ public class ImageRepresentation extends OutputRepresentation {
      * Writes the image requested in the constructor to the given output
      * stream, either retrieving it from the derivative cache, or getting it
      * from a processor (and caching it if so configured) as appropriate.
+     * Concurrent requests for the same image are coalesced into one render
+     * unless the cache is being bypassed.
      *
      * @param responseOutputStream Response body output stream.
      */
@@ -72,62 +78,29 @@ public class ImageRepresentation extends OutputRepresentation {
         if (!bypassCache) {
             final CacheFacade cacheFacade = new CacheFacade();
             if (cacheFacade.isDerivativeCacheAvailable()) {
-                // Try to get the image from the cache.
-                try (InputStream cacheInputStream =
-                             cacheFacade.newDerivativeImageInputStream(opList)) {
-                    if (cacheInputStream != null) {
-                        // The image is available in the cache; write it to the
-                        // response output stream.
-                        final Stopwatch watch = new Stopwatch();
-                        IOUtils.copy(cacheInputStream, responseOutputStream);
-
-                        LOGGER.debug("Streamed from {} in {} msec: {}",
-                                cacheFacade.getDerivativeCache().getClass().getSimpleName(),
-                                watch.timeElapsed(),
-                                opList);
-                    } else {
-                        // Create a TeeOutputStream to write to the response
-                        // output stream and the cache pseudo-simultaneously.
-                        //
-                        // N.B.: The contract for this method says we can't
-                        // close responseOutputStream, which means we also
-                        // can't close teeOutputStream (because that would
-                        // close its wrapped streams). So, we have to leave it
-                        // up to the finalizer. But, when the finalizer closes
-                        // teeOutputStream, the end result will be close()
-                        // having been called twice on both of its wrapped
-                        // streams. So, it's important that these two output
-                        // streams' close() methods can deal with being called
-                        // twice.
-                        try (OutputStream cacheOutputStream =
-                                     cacheFacade.newDerivativeImageOutputStream(opList)) {
-                            OutputStream teeStream = new TeeOutputStream(
-                                    responseOutputStream, cacheOutputStream);
-                            LOGGER.debug("Writing to the response & " +
-                                    "derivative cache simultaneously");
-                            doWrite(teeStream);
-                        } catch (Throwable e) {
-                            // The cached image has been incompletely written
-                            // and is corrupt, so it must be purged. This may
-                            // happen in response to a VM error like
-                            // OutOfMemoryError, or when the connection has
-                            // been closed prematurely, as in the case of e.g.
-                            // the client hitting the stop button.
-                            LOGGER.info("write(): {}", e.getMessage());
-                            cacheFacade.purge(opList);
-
-                            doWrite(responseOutputStream);
-                        }
+                // If the cache can provide the image in a file, transfer it
+                // from there.
+                if (writeCachedFile(responseOutputStream, cacheFacade)) {
+                    return;
+                }
+                // Otherwise, try to get the image from the cache as a stream.
+                try {
+                    if (!writeCachedStream(responseOutputStream, cacheFacade)) {
+                        writeCoalesced(responseOutputStream, cacheFacade);
                     }
                 } catch (IOException e) {
                     LOGGER.error("Failed to read from the derivative cache: {}",
                             e.getMessage(), e);
                     doWrite(responseOutputStream);
                 }
+            } else if (getSourceFile() != null) {
+                // There is nothing to gain by coalescing requests for an
+                // unprocessed file.
+                doWrite(responseOutputStream);
             } else {
                 LOGGER.debug("Derivative cache not available; writing " +
                         "directly to the response");
-                doWrite(responseOutputStream);
+                writeCoalesced(responseOutputStream, null);
             }
         } else {
             LOGGER.debug("Writing directly to the response, bypassing the cache");
@@ -135,6 +108,180 @@ public class ImageRepresentation extends OutputRepresentation {
         }
     }
 
+    /**
+     * @return Source file that can be sent without any processing, or
+     *         {@literal null} if the image has to be processed or the source
+     *         is not a file.
+     */
+    private Path getSourceFile() {
+        if (!opList.hasEffect(processor.getSourceFormat()) &&
+                processor instanceof FileProcessor) {
+            return ((FileProcessor) processor).getSourceFile();
+        }
+        return null;
+    }
+
+    /**
+     * Transfers the image from a file in the derivative cache, if the cache
+     * can provide one.
+     *
+     * @return Whether the image was written.
+     * @see FileImageRepresentation#transfer
+     */
+    private boolean writeCachedFile(OutputStream responseOutputStream,
+                                    CacheFacade cacheFacade) throws IOException {
+        final Path cacheFile = cacheFacade.getDerivativeImageFile(opList);
+        if (cacheFile == null) {
+            return false;
+        }
+        final FileChannel channel;
+        try {
+            channel = FileChannel.open(cacheFile, StandardOpenOption.READ);
+        } catch (NoSuchFileException e) {
+            // It has been purged in the meantime.
+            return false;
+        }
+        try {
+            final Stopwatch watch = new Stopwatch();
+            FileImageRepresentation.transfer(channel, 0, channel.size(),
+                    responseOutputStream);
+            LOGGER.debug("Transferred from {} in {} msec: {}",
+                    cacheFacade.getDerivativeCache().getClass().getSimpleName(),
+                    watch.timeElapsed(),
+                    opList);
+        } finally {
+            channel.close();
+        }
+        return true;
+    }
+
+    /**
+     * Streams the image from the derivative cache, if it is cached.
+     *
+     * @return Whether the image was written.
+     */
+    private boolean writeCachedStream(OutputStream responseOutputStream,
+                                      CacheFacade cacheFacade)
+            throws IOException {
+        try (InputStream cacheInputStream =
+                     cacheFacade.newDerivativeImageInputStream(opList)) {
+            if (cacheInputStream == null) {
+                return false;
+            }
+            // The image is available in the cache; write it to the
+            // response output stream.
+            final Stopwatch watch = new Stopwatch();
+            IOUtils.copy(cacheInputStream, responseOutputStream);
+
+            LOGGER.debug("Streamed from {} in {} msec: {}",
+                    cacheFacade.getDerivativeCache().getClass().getSimpleName(),
+                    watch.timeElapsed(),
+                    opList);
+        }
+        return true;
+    }
+
+    /**
+     * <p>Renders the image into the given output stream, or, if an identical
+     * image is already being rendered in another thread, streams the bytes
+     * of that render instead, or waits for it to finish and then reads the
+     * image from the derivative cache.</p>
+     *
+     * @param responseOutputStream Response body output stream.
+     * @param cacheFacade          Facade to use to write the rendered image
+     *                             to the derivative cache. May be {@literal
+     *                             null} if the derivative cache is not
+     *                             available.
+     * @see DerivativeCoalescer
+     */
+    private void writeCoalesced(OutputStream responseOutputStream,
+                                CacheFacade cacheFacade) throws IOException {
+        final DerivativeCoalescer.Flight flight = DerivativeCoalescer.
+                getInstance().acquire(opList, cacheFacade != null);
+        if (flight.isWaiter()) {
+            if (flight.awaitCompletion() &&
+                    (writeCachedFile(responseOutputStream, cacheFacade) ||
+                            writeCachedStream(responseOutputStream, cacheFacade))) {
+                return;
+            }
+            LOGGER.info("writeCoalesced(): awaited render is not available " +
+                    "from the cache; rendering independently");
+            doWrite(responseOutputStream);
+            return;
+        } else if (!flight.isOriginator()) {
+            // N.B.: Not closed, as that would close responseOutputStream.
+            final CountingOutputStream countingOutputStream =
+                    new CountingOutputStream(responseOutputStream);
+            try (InputStream flightInputStream = flight.newInputStream()) {
+                final Stopwatch watch = new Stopwatch();
+                IOUtils.copy(flightInputStream, countingOutputStream);
+                LOGGER.debug("Streamed from a coalesced render in {} msec: {}",
+                        watch.timeElapsed(), opList);
+            } catch (DerivativeCoalescer.AbortedFlightException e) {
+                if (countingOutputStream.getByteCount() > 0) {
+                    // Part of the image has already been sent, and appending
+                    // another one would corrupt the response, so the
+                    // connection will have to be dropped.
+                    throw e;
+                }
+                LOGGER.info("writeCoalesced(): {}; rendering independently",
+                        e.getMessage());
+                doWrite(responseOutputStream);
+            }
+            return;
+        }
+
+        if (cacheFacade == null) {
+            try {
+                doWrite(new TeeOutputStream(responseOutputStream,
+                        flight.newOutputStream()));
+                flight.complete();
+            } finally {
+                // This does nothing if the flight has been completed.
+                flight.abort();
+            }
+            return;
+        }
+
+        // Create a TeeOutputStream to write to the response output stream,
+        // the cache, and any followers of the flight pseudo-simultaneously.
+        //
+        // N.B.: The contract for write() says we can't close
+        // responseOutputStream, which means we also can't close teeOutputStream
+        // (because that would close its wrapped streams). So, we have to leave
+        // it up to the finalizer. But, when the finalizer closes
+        // teeOutputStream, the end result will be close() having been called
+        // twice on both of its wrapped streams. So, it's important that these
+        // output streams' close() methods can deal with being called twice.
+        try {
+            try (OutputStream cacheOutputStream =
+                         cacheFacade.newDerivativeImageOutputStream(opList)) {
+                OutputStream teeStream = new TeeOutputStream(
+                        responseOutputStream,
+                        new TeeOutputStream(cacheOutputStream,
+                                flight.newOutputStream()));
+                LOGGER.debug("Writing to the response & derivative cache " +
+                        "simultaneously");
+                doWrite(teeStream);
+            }
+            // Don't complete the flight until the cache output stream has been
+            // closed, so that requests arriving in between will find the
+            // image in the cache.
+            flight.complete();
+        } catch (Throwable e) {
+            // The cached image has been incompletely written and is corrupt,
+            // so it must be purged. This may happen in response to a VM error
+            // like OutOfMemoryError, or when the connection has been closed
+            // prematurely, as in the case of e.g. the client hitting the stop
+            // button.
+            LOGGER.info("writeCoalesced(): {}", e.getMessage());
+            flight.abort();
+            cacheFacade.purge(opList);
+
+            doWrite(responseOutputStream);
+        }
+    }
+
     /**
      * @param outputStream Either the response output stream, or a tee stream
      *                     for writing to the response and the cache
@@ -146,10 +293,13 @@ public class ImageRepresentation extends OutputRepresentation {
         // If the operations are effectively a no-op, the source image can be
         // streamed through with no processing.
         if (!opList.hasEffect(processor.getSourceFormat())) {
-            if (processor instanceof FileProcessor &&
-                    ((FileProcessor) processor).getSourceFile() != null) {
-                Path sourceFile = ((FileProcessor) processor).getSourceFile();
-                Files.copy(sourceFile, outputStream);
+            final Path sourceFile = getSourceFile();
+            if (sourceFile != null) {
+                try (FileChannel channel =
+                             FileChannel.open(sourceFile, StandardOpenOption.READ)) {
+                    FileImageRepresentation.transfer(channel, 0,
+                            channel.size(), outputStream);
+                }
             } else {
                 StreamSource streamSource =
                         ((StreamProcessor) processor).getStreamSource();
@@ -0,0 +1,14 @@
+package edu.illinois.library.cantaloupe.resource;
+
+import org.restlet.data.Status;
+import org.restlet.resource.ResourceException;
+
+class RangeNotSatisfiableException extends ResourceException {
+
+    RangeNotSatisfiableException(long size) {
+        super(Status.CLIENT_ERROR_REQUESTED_RANGE_NOT_SATISFIABLE,
+                "The requested range is outside of the " + size +
+                        "-byte representation.");
+    }
+
+}
@@ -1,6 +1,9 @@
 package edu.illinois.library.cantaloupe.resource.admin;
 
+import edu.illinois.library.cantaloupe.cache.CacheFacade;
+import edu.illinois.library.cantaloupe.cache.DerivativeCoalescer;
 import edu.illinois.library.cantaloupe.cache.InfoService;
+import edu.illinois.library.cantaloupe.resolver.ResolverFactory;
 import edu.illinois.library.cantaloupe.resource.JSONRepresentation;
 import edu.illinois.library.cantaloupe.script.InvocationCache;
 import edu.illinois.library.cantaloupe.script.ScriptEngine;
@@ -24,7 +27,11 @@ public class StatusResource extends AbstractAdminResource {
         private static final long MEGABYTE = 1024 * 1024;
 
         public final Map<String,Object> delegateMethodInvocationCache = new HashMap<>();
+        public final Map<String,Object> derivativeCache = new HashMap<>();
+        public final Map<String,Object> derivativeCoalescer = new HashMap<>();
+        public final Map<String,Object> httpResolver = new HashMap<>();
         public final Map<String,Object> infoCache = new HashMap<>();
+        public final Map<String,Object> infoService = new HashMap<>();
         public final Map<String,Object> vm = new HashMap<>();
 
         public Status() {
@@ -43,6 +50,25 @@ public class StatusResource extends AbstractAdminResource {
             this.infoCache.put("maxSize",
                     InfoService.getInstance().getInfoCache().maxSize());
 
+            this.infoService.put("reads",
+                    InfoService.getInstance().getReadCount());
+            this.infoService.put("coalescedReads",
+                    InfoService.getInstance().getCoalescedReadCount());
+
+            this.derivativeCache.putAll(
+                    new CacheFacade().getDerivativeCacheStatistics());
+
+            final DerivativeCoalescer coalescer =
+                    DerivativeCoalescer.getInstance();
+            this.derivativeCoalescer.put("inFlight", coalescer.size());
+            this.derivativeCoalescer.put("originated",
+                    coalescer.getOriginatedCount());
+            this.derivativeCoalescer.put("coalesced",
+                    coalescer.getCoalescedCount());
+
+            this.httpResolver.putAll(
+                    ResolverFactory.getHttpResolverStatistics());
+
             Runtime runtime = Runtime.getRuntime();
             RuntimeMXBean runtimeMxBean = ManagementFactory.getRuntimeMXBean();
             this.vm.put("usedHeap", (runtime.totalMemory() - runtime.freeMemory()) / MEGABYTE);
@@ -18,6 +18,7 @@ import edu.illinois.library.cantaloupe.processor.ProcessorConnector;
 import edu.illinois.library.cantaloupe.resource.ImageRepresentation;
 import org.apache.commons.lang3.StringUtils;
 import org.restlet.data.Disposition;
+import org.restlet.data.Tag;
 import org.restlet.representation.Representation;
 import org.restlet.representation.StringRepresentation;
 import org.restlet.representation.Variant;
@@ -26,7 +27,10 @@ import org.restlet.resource.Get;
 import java.awt.Dimension;
 import java.io.IOException;
 import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -90,6 +94,30 @@ public class ImageResource extends IIIF1Resource {
             throw e;
         }
 
+        // Validate conditional requests before doing anything expensive. The
+        // request still has to be authorized, which requires the full image
+        // size and the output format, so this is only possible when the info
+        // is cached and the format is present in the URI. (Otherwise, the
+        // format is negotiated from the Accept header, which is therefore
+        // part of the entity tag.)
+        final Tag tag = getEntityTag(getReference() + " " +
+                getRequest().getHeaders().getFirstValue("Accept", true),
+                resolver);
+        final Date lastModified = getSourceLastModified(resolver);
+        if (isNotModified(tag, lastModified) && isFormatInURI()) {
+            final Info info = cacheFacade.getInfo(identifier);
+            if (info != null) {
+                final OperationList ops =
+                        getOperationList(Collections.emptySet());
+                StringRepresentation redirectingRep =
+                        checkAuthorization(ops, info.getSize());
+                if (redirectingRep != null) {
+                    return redirectingRep;
+                }
+                return newNotModifiedRepresentation(tag, lastModified);
+            }
+        }
+
         // If we don't have the format yet, get it from the resolver.
         if (Format.UNKNOWN.equals(sourceFormat)) {
             sourceFormat = resolver.getSourceFormat();
@@ -147,9 +175,24 @@ public class ImageResource extends IIIF1Resource {
             throw new UnsupportedSourceFormatException(sourceFormat);
         }
 
+        // If the image is available in a file, a byte range of it can be
+        // served.
+        final Path imageFile = getImageFile(ops, processor);
+        if (imageFile != null) {
+            final Representation rangeRep = newRangeRepresentation(imageFile,
+                    ops.getOutputFormat(), disposition, tag, lastModified);
+            if (rangeRep != null) {
+                commitCustomResponseHeaders();
+                return rangeRep;
+            }
+        }
+
         commitCustomResponseHeaders();
-        return new ImageRepresentation(info, processor, ops, disposition,
-                isBypassingCache());
+        final Representation rep = new ImageRepresentation(info, processor,
+                ops, disposition, isBypassingCache());
+        rep.setTag(tag);
+        rep.setModificationDate(lastModified);
+        return rep;
     }
 
     private void addLinkHeader(Processor processor) {
@@ -191,6 +234,15 @@ public class ImageResource extends IIIF1Resource {
         return ops;
     }
 
+    /**
+     * @return Whether the URI contains an output format extension.
+     */
+    private boolean isFormatInURI() {
+        final String qualityAndFormat =
+                (String) getRequest().getAttributes().get("quality_format");
+        return StringUtils.split(qualityAndFormat, ".").length > 1;
+    }
+
     /**
      * @param limitToFormats Set of OutputFormats to limit the result to.
      * @return The best output format based on the URI extension, Accept
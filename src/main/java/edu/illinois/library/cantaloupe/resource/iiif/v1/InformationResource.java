@@ -2,6 +2,7 @@ package edu.illinois.library.cantaloupe.resource.iiif.v1;
 
 import java.io.IOException;
 import java.nio.file.NoSuchFileException;
+import java.util.Date;
 import java.util.List;
 
 import edu.illinois.library.cantaloupe.RestletApplication;
@@ -20,6 +21,7 @@ import edu.illinois.library.cantaloupe.processor.ProcessorConnector;
 import org.restlet.data.MediaType;
 import org.restlet.data.Preference;
 import org.restlet.data.Reference;
+import org.restlet.data.Tag;
 import org.restlet.representation.EmptyRepresentation;
 import org.restlet.representation.Representation;
 import org.restlet.resource.Get;
@@ -63,8 +65,10 @@ public class InformationResource extends IIIF1Resource {
 
         // If we don't need to resolve first, and are using a cache, and the
         // cache contains an info matching the request, skip all the setup and
-        // just return the cached info.
-        if (!config.getBoolean(Key.CACHE_SERVER_RESOLVE_FIRST, false)) {
+        // just return the cached info. (Conditional requests can't be
+        // validated without a resolver, so they don't get to do this.)
+        if (!config.getBoolean(Key.CACHE_SERVER_RESOLVE_FIRST, false) &&
+                !isConditionalRequest()) {
             try {
                 Info info = cacheFacade.getInfo(identifier);
                 if (info != null) {
@@ -99,6 +103,14 @@ public class InformationResource extends IIIF1Resource {
             throw e;
         }
 
+        // Validate conditional requests before doing anything expensive.
+        final Tag tag = getEntityTag(
+                getImageURI() + " " + getNegotiatedMediaType(), resolver);
+        final Date lastModified = getSourceLastModified(resolver);
+        if (isNotModified(tag, lastModified)) {
+            return newNotModifiedRepresentation(tag, lastModified);
+        }
+
         // Determine the format of the source image.
         Format format = resolver.getSourceFormat();
 
@@ -114,7 +126,10 @@ public class InformationResource extends IIIF1Resource {
 
         addLinkHeader(imageInfo);
         commitCustomResponseHeaders();
-        return newRepresentation(imageInfo);
+        final Representation rep = newRepresentation(imageInfo);
+        rep.setTag(tag);
+        rep.setModificationDate(lastModified);
+        return rep;
     }
 
     private void addLinkHeader(ImageInfo info) {
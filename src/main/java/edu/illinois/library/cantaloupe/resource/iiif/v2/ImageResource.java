@@ -19,6 +19,7 @@ import edu.illinois.library.cantaloupe.resource.CachedImageRepresentation;
 import edu.illinois.library.cantaloupe.resource.ImageRepresentation;
 import edu.illinois.library.cantaloupe.resource.iiif.SizeRestrictedException;
 import org.restlet.data.Disposition;
+import org.restlet.data.Tag;
 import org.restlet.representation.Representation;
 import org.restlet.representation.StringRepresentation;
 import org.restlet.resource.Get;
@@ -27,6 +28,8 @@ import java.awt.Dimension;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Date;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -61,6 +64,11 @@ public class ImageResource extends IIIF2Resource {
         ops.getOptions().putAll(
                 getReference().getQueryAsForm(true).getValuesMap());
 
+        // Entity tags are computed from the operation list as requested,
+        // before any of the mutations below are applied to it, so that they
+        // are the same no matter which path the request takes.
+        final String tagKey = ops.toString();
+
         final Disposition disposition = getRepresentationDisposition(
                 getReference().getQueryAsForm()
                         .getFirstValue(RESPONSE_CONTENT_DISPOSITION_QUERY_ARG),
@@ -70,10 +78,14 @@ public class ImageResource extends IIIF2Resource {
 
         // If we don't need to resolve first, and are using a cache:
         // 1. If the cache contains an image matching the request, skip all the
-        //    setup and just return the cached image.
+        //    setup and just return the cached image. (The source image is
+        //    still resolved, but only to obtain its validators.)
         // 2. Otherwise, if the cache contains a relevant info, get it to avoid
         //    having to get it from a resolver later.
-        if (!config.getBoolean(Key.CACHE_SERVER_RESOLVE_FIRST, true)) {
+        // (Conditional requests can't be validated without a resolver, so
+        // they don't get to do this.)
+        if (!config.getBoolean(Key.CACHE_SERVER_RESOLVE_FIRST, true) &&
+                !isConditionalRequest()) {
             final Info info = cacheFacade.getInfo(identifier);
             if (info != null) {
                 ops.applyNonEndpointMutations(info.getSize(),
@@ -83,6 +95,33 @@ public class ImageResource extends IIIF2Resource {
                         getRequest().getHeaders().getValuesMap(),
                         getCookies().getValuesMap());
 
+                // If the cache can provide the image in a file, serve it (or
+                // the requested byte range of it) from there.
+                final Path cacheFile = cacheFacade.getDerivativeImageFile(ops);
+                if (cacheFile != null) {
+                    final Resolver resolver = newCheckedResolver(identifier);
+                    final Tag tag = (resolver != null) ?
+                            getEntityTag(tagKey, resolver) : null;
+                    final Date lastModified = (resolver != null) ?
+                            getSourceLastModified(resolver) : null;
+                    Representation fileRep = newRangeRepresentation(cacheFile,
+                            ops.getOutputFormat(), disposition, tag,
+                            lastModified);
+                    if (fileRep == null) {
+                        fileRep = newFileRepresentation(cacheFile,
+                                ops.getOutputFormat(), disposition);
+                        if (fileRep != null) {
+                            fileRep.setTag(tag);
+                            fileRep.setModificationDate(lastModified);
+                        }
+                    }
+                    if (fileRep != null) {
+                        addLinkHeader(params);
+                        commitCustomResponseHeaders();
+                        return fileRep;
+                    }
+                }
+
                 InputStream cacheStream = null;
                 try {
                     cacheStream = cacheFacade.newDerivativeImageInputStream(ops);
@@ -93,12 +132,19 @@ public class ImageResource extends IIIF2Resource {
                 }
 
                 if (cacheStream != null) {
+                    final Resolver resolver = newCheckedResolver(identifier);
                     addLinkHeader(params);
                     commitCustomResponseHeaders();
-                    return new CachedImageRepresentation(
+                    final Representation rep = new CachedImageRepresentation(
                             cacheStream,
                             params.getOutputFormat().getPreferredMediaType(),
                             disposition);
+                    if (resolver != null) {
+                        rep.setTag(getEntityTag(tagKey, resolver));
+                        rep.setModificationDate(
+                                getSourceLastModified(resolver));
+                    }
+                    return rep;
                 } else {
                     Format infoFormat = info.getSourceFormat();
                     if (infoFormat != null) {
@@ -121,6 +167,24 @@ public class ImageResource extends IIIF2Resource {
             throw e;
         }
 
+        // Validate conditional requests before doing anything expensive. The
+        // request still has to be authorized, which requires the full image
+        // size, so this is only possible when the info is cached.
+        final Tag tag = getEntityTag(tagKey, resolver);
+        final Date lastModified = getSourceLastModified(resolver);
+        if (isNotModified(tag, lastModified)) {
+            final Info info = cacheFacade.getInfo(identifier);
+            if (info != null) {
+                StringRepresentation redirectingRep =
+                        checkAuthorization(ops, info.getSize());
+                if (redirectingRep != null) {
+                    return redirectingRep;
+                }
+                addLinkHeader(params);
+                return newNotModifiedRepresentation(tag, lastModified);
+            }
+        }
+
         // If we don't have the format yet, get it from the resolver.
         if (Format.UNKNOWN.equals(sourceFormat)) {
             sourceFormat = resolver.getSourceFormat();
@@ -194,9 +258,46 @@ public class ImageResource extends IIIF2Resource {
         }
 
         addLinkHeader(params);
+
+        // If the image is available in a file, a byte range of it can be
+        // served.
+        final Path imageFile = getImageFile(ops, processor);
+        if (imageFile != null) {
+            final Representation rangeRep = newRangeRepresentation(imageFile,
+                    ops.getOutputFormat(), disposition, tag, lastModified);
+            if (rangeRep != null) {
+                commitCustomResponseHeaders();
+                return rangeRep;
+            }
+        }
+
         commitCustomResponseHeaders();
-        return new ImageRepresentation(info, processor, ops, disposition,
-                isBypassingCache());
+        final Representation rep = new ImageRepresentation(info, processor,
+                ops, disposition, isBypassingCache());
+        rep.setTag(tag);
+        rep.setModificationDate(lastModified);
+        return rep;
+    }
+
+    /**
+     * Resolves the source image of a representation that is being served
+     * from the derivative cache without otherwise needing to be resolved, in
+     * order to obtain its validators.
+     *
+     * @return Resolver whose access has been checked, or {@literal null} if
+     *         the source image can't be accessed, in which case the
+     *         representation can still be served, but without validators.
+     */
+    private Resolver newCheckedResolver(Identifier identifier) {
+        try {
+            final Resolver resolver = new ResolverFactory().
+                    newResolver(identifier, getRequestContext());
+            resolver.checkAccess();
+            return resolver;
+        } catch (Exception e) {
+            getLogger().fine("newCheckedResolver(): " + e.getMessage());
+            return null;
+        }
     }
 
     private void addLinkHeader(Parameters params) {
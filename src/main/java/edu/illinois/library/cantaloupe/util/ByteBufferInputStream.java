@@ -0,0 +1,77 @@
+package edu.illinois.library.cantaloupe.util;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * <p>Input stream that reads the remaining bytes of a {@link ByteBuffer},
+ * which may be direct.</p>
+ *
+ * <p>Reading advances the position of the buffer, so clients that want to
+ * leave a shared buffer untouched should supply a
+ * {@link ByteBuffer#duplicate() duplicate} of it.</p>
+ *
+ * <p>Instances are not thread-safe.</p>
+ */
+public class ByteBufferInputStream extends InputStream {
+
+    private final ByteBuffer buffer;
+
+    /**
+     * @param buffer Buffer to read from, starting at its position.
+     */
+    public ByteBufferInputStream(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    @Override
+    public int available() {
+        return buffer.remaining();
+    }
+
+    @Override
+    public synchronized void mark(int readLimit) {
+        buffer.mark();
+    }
+
+    @Override
+    public boolean markSupported() {
+        return true;
+    }
+
+    @Override
+    public int read() {
+        if (!buffer.hasRemaining()) {
+            return -1;
+        }
+        return buffer.get() & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+        if (len == 0) {
+            return 0;
+        } else if (!buffer.hasRemaining()) {
+            return -1;
+        }
+        len = Math.min(len, buffer.remaining());
+        buffer.get(b, off, len);
+        return len;
+    }
+
+    @Override
+    public synchronized void reset() {
+        buffer.reset();
+    }
+
+    @Override
+    public long skip(long n) {
+        if (n <= 0) {
+            return 0;
+        }
+        final int count = (int) Math.min(n, buffer.remaining());
+        buffer.position(buffer.position() + count);
+        return count;
+    }
+
+}
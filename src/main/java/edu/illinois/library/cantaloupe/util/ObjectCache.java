@@ -3,8 +3,11 @@ package edu.illinois.library.cantaloupe.util;
 import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
 
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
 /**
- * Size-bounded heap cache.
+ * Size-bounded heap cache, optionally with a time-to-live.
  */
 public final class ObjectCache<K, V> {
 
@@ -21,6 +24,18 @@ public final class ObjectCache<K, V> {
         store = Caffeine.newBuilder().maximumSize(maxSize).build();
     }
 
+    /**
+     * Creates an instance with the given max size, whose entries expire the
+     * given number of seconds after they have been added.
+     */
+    public ObjectCache(long maxSize, long ttlSeconds) {
+        this.maxSize = maxSize;
+        store = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+                .build();
+    }
+
     public void cleanUp() {
         store.cleanUp();
     }
@@ -49,6 +64,14 @@ public final class ObjectCache<K, V> {
         store.invalidateAll();
     }
 
+    /**
+     * Removes all entries whose keys satisfy the given predicate, by
+     * iterating over all keys.
+     */
+    public void removeIf(Predicate<K> predicate) {
+        store.asMap().keySet().removeIf(predicate);
+    }
+
     public long size() {
         return store.estimatedSize();
     }
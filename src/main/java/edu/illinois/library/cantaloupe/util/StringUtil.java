@@ -45,6 +45,34 @@ public final class StringUtil {
                 replaceAll("\\.$", "");
     }
 
+    /**
+     * @param humanSize Number of bytes, optionally followed by {@literal M},
+     *                  {@literal MB}, {@literal G}, {@literal GB},
+     *                  {@literal T}, {@literal TB}, {@literal P}, or
+     *                  {@literal PB} (powers of 1024).
+     * @return Number of bytes.
+     * @throws NumberFormatException If the argument does not contain a
+     *                               number.
+     */
+    public static long toBytes(String humanSize) {
+        final String numberStr = humanSize.replaceAll("[^\\d.]", "");
+        final double number = Double.parseDouble(numberStr);
+        short exponent;
+
+        if (humanSize.endsWith("M") || humanSize.endsWith("MB")) {
+            exponent = 2;
+        } else if (humanSize.endsWith("G") || humanSize.endsWith("GB")) {
+            exponent = 3;
+        } else if (humanSize.endsWith("T") || humanSize.endsWith("TB")) {
+            exponent = 4;
+        } else if (humanSize.endsWith("P") || humanSize.endsWith("PB")) { // you never know
+            exponent = 5;
+        } else {
+            exponent = 0;
+        }
+        return Math.round(number * Math.pow(1024, exponent));
+    }
+
     /**
      * Recursively filters out <code>removeables</code> from the given dirty
      * string.
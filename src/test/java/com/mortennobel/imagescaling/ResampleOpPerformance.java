@@ -0,0 +1,92 @@
+package com.mortennobel.imagescaling;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static edu.illinois.library.cantaloupe.test.PerformanceTestConstants.*;
+
+/**
+ * Executes benchmarks to measure the speed of {@link ResampleOp} when
+ * downscaling a tile-sized image and a large image to half size, both
+ * single-threaded and with the default number of threads, from several
+ * threads at once. The same benchmarks are run on {@link LegacyResampleOp}
+ * for comparison.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = WARMUP_ITERATIONS,
+        time = WARMUP_TIME,
+        timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = MEASUREMENT_ITERATIONS,
+        time = MEASUREMENT_TIME,
+        timeUnit = TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Threads(4)
+@Fork(value = 1, jvmArgs = { "-server", "-Xms512M", "-Xmx512M" })
+public class ResampleOpPerformance {
+
+    /**
+     * Size of the source image on a side.
+     */
+    @Param({ "256", "2048" })
+    public int size;
+
+    /**
+     * Number of threads per {@link ResampleOp}, with {@literal 0} meaning the
+     * default.
+     */
+    @Param({ "1", "0" })
+    public int numberOfThreads;
+
+    /**
+     * Whether to use {@link LegacyResampleOp}, which starts new threads for
+     * every pass and doesn't cache weights, instead of {@link ResampleOp}.
+     */
+    @Param({ "false", "true" })
+    public boolean legacy;
+
+    private BufferedImage image;
+
+    @Setup
+    public void setUp() {
+        image = new BufferedImage(size, size, BufferedImage.TYPE_3BYTE_BGR);
+        final Random random = new Random(0);
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                image.setRGB(x, y, random.nextInt());
+            }
+        }
+    }
+
+    @Benchmark
+    public BufferedImage filter() {
+        if (legacy) {
+            final LegacyResampleOp op =
+                    new LegacyResampleOp(size / 2, size / 2);
+            if (numberOfThreads > 0) {
+                op.setNumberOfThreads(numberOfThreads);
+            }
+            return op.filter(image, null);
+        }
+        final ResampleOp op = new ResampleOp(size / 2, size / 2);
+        if (numberOfThreads > 0) {
+            op.setNumberOfThreads(numberOfThreads);
+        }
+        return op.filter(image, null);
+    }
+
+}
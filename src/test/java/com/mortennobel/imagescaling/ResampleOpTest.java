@@ -0,0 +1,89 @@
+package com.mortennobel.imagescaling;
+
+import edu.illinois.library.cantaloupe.test.BaseTest;
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ResampleOpTest extends BaseTest {
+
+    private static BufferedImage newImage(int width, int height, int type) {
+        final BufferedImage image = new BufferedImage(width, height, type);
+        final Random random = new Random(0);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image.setRGB(x, y, random.nextInt());
+            }
+        }
+        return image;
+    }
+
+    private static BufferedImage filter(BufferedImage image,
+                                        int width,
+                                        int height,
+                                        int numberOfThreads) {
+        final ResampleOp op = new ResampleOp(width, height);
+        op.setNumberOfThreads(numberOfThreads);
+        return op.filter(image, null);
+    }
+
+    private static void assertSamePixels(BufferedImage expected,
+                                         BufferedImage actual) {
+        assertEquals(expected.getWidth(), actual.getWidth());
+        assertEquals(expected.getHeight(), actual.getHeight());
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < expected.getWidth(); x++) {
+                assertEquals(expected.getRGB(x, y), actual.getRGB(x, y));
+            }
+        }
+    }
+
+    /* filter() */
+
+    @Test
+    public void testFilterWithMultipleThreads() {
+        // Large enough to be split up across threads.
+        final BufferedImage image = newImage(1024, 768,
+                BufferedImage.TYPE_3BYTE_BGR);
+        assertSamePixels(filter(image, 500, 300, 1),
+                filter(image, 500, 300, 4));
+    }
+
+    @Test
+    public void testFilterWithMultipleThreadsAndGrayImage() {
+        final BufferedImage image = newImage(1024, 768,
+                BufferedImage.TYPE_BYTE_GRAY);
+        assertSamePixels(filter(image, 500, 300, 1),
+                filter(image, 500, 300, 4));
+    }
+
+    @Test
+    public void testFilterReusesBuffersWithoutLeakingPixels() {
+        final BufferedImage large = newImage(400, 400,
+                BufferedImage.TYPE_4BYTE_ABGR);
+        final BufferedImage small = newImage(100, 60,
+                BufferedImage.TYPE_4BYTE_ABGR);
+        final BufferedImage expected = filter(small, 50, 30, 1);
+
+        filter(large, 300, 300, 1);
+        assertSamePixels(expected, filter(small, 50, 30, 1));
+    }
+
+    /* getSubSampling() */
+
+    @Test
+    public void testGetSubSamplingReturnsCachedInstance() {
+        final ResampleFilter filter = ResampleFilters.getLanczos3Filter();
+        assertSame(ResampleOp.getSubSampling(filter, 1000, 500),
+                ResampleOp.getSubSampling(filter, 1000, 500));
+        assertNotSame(ResampleOp.getSubSampling(filter, 1000, 500),
+                ResampleOp.getSubSampling(filter, 1000, 501));
+        assertNotSame(ResampleOp.getSubSampling(filter, 1000, 500),
+                ResampleOp.getSubSampling(
+                        ResampleFilters.getBoxFilter(), 1000, 500));
+    }
+
+}
@@ -17,6 +17,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.file.Files;
+import java.util.Map;
 
 import static org.junit.Assert.*;
 
@@ -81,6 +82,53 @@ public class CacheFacadeTest extends BaseTest {
         assertNull(instance.getDerivativeCache());
     }
 
+    /* getDerivativeCacheStatistics() */
+
+    @Test
+    public void testGetDerivativeCacheStatisticsWithHeapCache() {
+        Configuration config = Configuration.getInstance();
+        config.setProperty(Key.DERIVATIVE_CACHE_ENABLED, true);
+        config.setProperty(Key.DERIVATIVE_CACHE, "HeapCache");
+        config.setProperty(Key.HEAPCACHE_TARGET_SIZE, "1M");
+
+        Map<String, Long> stats = instance.getDerivativeCacheStatistics();
+        assertTrue(stats.containsKey("hits"));
+        assertTrue(stats.containsKey("misses"));
+        assertTrue(stats.containsKey("evictions"));
+    }
+
+    @Test
+    public void testGetDerivativeCacheStatisticsWithJdbcCache() {
+        enableDerivativeCache();
+        Configuration config = Configuration.getInstance();
+        config.setProperty(Key.DERIVATIVE_CACHE, "JdbcCache");
+        config.setProperty(Key.JDBCCACHE_JDBC_URL, "jdbc:h2:mem:test");
+
+        Map<String, Long> stats = instance.getDerivativeCacheStatistics();
+        assertTrue(stats.containsKey("accessUpdates"));
+        assertTrue(stats.containsKey("coalescedAccessUpdates"));
+    }
+
+    @Test
+    public void testGetDerivativeCacheStatisticsWithTieredCache() {
+        enableDerivativeCache();
+        Configuration config = Configuration.getInstance();
+        config.setProperty(Key.DERIVATIVE_CACHE, "TieredCache");
+        config.setProperty(Key.TIEREDCACHE_L2_CACHE, "FilesystemCache");
+        config.setProperty(Key.HEAPCACHE_TARGET_SIZE, "1M");
+
+        Map<String, Long> stats = instance.getDerivativeCacheStatistics();
+        assertTrue(stats.containsKey("hits"));
+        assertTrue(stats.containsKey("l2Hits"));
+        assertTrue(stats.containsKey("l2Misses"));
+    }
+
+    @Test
+    public void testGetDerivativeCacheStatisticsWithOtherCache() {
+        enableDerivativeCache();
+        assertTrue(instance.getDerivativeCacheStatistics().isEmpty());
+    }
+
     /* getInfo() */
 
     @Test
@@ -297,6 +345,35 @@ public class CacheFacadeTest extends BaseTest {
         }
     }
 
+    @Test
+    public void testPurgeWithIdentifierPurgesBothTiersOfTieredCache()
+            throws Exception {
+        enableDerivativeCache();
+        Configuration config = Configuration.getInstance();
+        config.setProperty(Key.DERIVATIVE_CACHE, "TieredCache");
+        config.setProperty(Key.TIEREDCACHE_L2_CACHE, "FilesystemCache");
+        config.setProperty(Key.HEAPCACHE_TARGET_SIZE, "1M");
+        TieredCache derivCache = (TieredCache) CacheFactory.getDerivativeCache();
+
+        Identifier identifier = new Identifier("jpg");
+        OperationList opList = new OperationList(identifier, Format.JPG);
+
+        try (OutputStream os = instance.newDerivativeImageOutputStream(opList)) {
+            Files.copy(TestUtil.getImage("jpg"), os);
+        }
+        derivCache.put(identifier, new Info());
+
+        instance.purge(identifier);
+
+        for (DerivativeCache tier : new DerivativeCache[] {
+                derivCache.getL1(), derivCache.getL2() }) {
+            assertNull(tier.getImageInfo(identifier));
+            try (InputStream is = tier.newDerivativeImageInputStream(opList)) {
+                assertNull(is);
+            }
+        }
+    }
+
     /* purgeAsync(Identifier) */
 
     @Test
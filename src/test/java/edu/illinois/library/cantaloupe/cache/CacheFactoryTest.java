@@ -13,7 +13,13 @@ public class CacheFactoryTest extends BaseTest {
 
     @Test
     public void testGetAllDerivativeCaches() {
-        assertEquals(6, CacheFactory.getAllDerivativeCaches().size());
+        assertEquals(7, CacheFactory.getAllDerivativeCaches().size());
+    }
+
+    @Test
+    public void testGetAllDerivativeCachesReturnsSharedInstances() {
+        assertSame(CacheFactory.getAllDerivativeCaches(),
+                CacheFactory.getAllDerivativeCaches());
     }
 
     /* getAllSourceCaches() */
@@ -0,0 +1,265 @@
+package edu.illinois.library.cantaloupe.cache;
+
+import edu.illinois.library.cantaloupe.image.Format;
+import edu.illinois.library.cantaloupe.image.Identifier;
+import edu.illinois.library.cantaloupe.operation.OperationList;
+import edu.illinois.library.cantaloupe.test.BaseTest;
+import org.apache.commons.io.IOUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class DerivativeCoalescerTest extends BaseTest {
+
+    private DerivativeCoalescer instance;
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        DerivativeCoalescer.clearInstance();
+        instance = DerivativeCoalescer.getInstance();
+    }
+
+    private static OperationList newOperationList(String identifier) {
+        OperationList opList = new OperationList(
+                new Identifier(identifier), Format.JPG);
+        opList.freeze();
+        return opList;
+    }
+
+    /* acquire() */
+
+    @Test
+    public void testAcquireWithNoFlightInProgress() {
+        DerivativeCoalescer.Flight flight =
+                instance.acquire(newOperationList("cats"));
+        assertTrue(flight.isOriginator());
+        assertEquals(1, instance.size());
+        assertEquals(1, instance.getOriginatedCount());
+        assertEquals(0, instance.getCoalescedCount());
+    }
+
+    @Test
+    public void testAcquireWithEqualFlightInProgress() {
+        instance.acquire(newOperationList("cats"));
+        DerivativeCoalescer.Flight flight =
+                instance.acquire(newOperationList("cats"));
+        assertFalse(flight.isOriginator());
+        assertEquals(1, instance.size());
+        assertEquals(1, instance.getOriginatedCount());
+        assertEquals(1, instance.getCoalescedCount());
+    }
+
+    @Test
+    public void testAcquireWithUnequalFlightInProgress() {
+        instance.acquire(newOperationList("cats"));
+        DerivativeCoalescer.Flight flight =
+                instance.acquire(newOperationList("dogs"));
+        assertTrue(flight.isOriginator());
+        assertEquals(2, instance.size());
+    }
+
+    @Test
+    public void testAcquireAfterFlightCompleted() {
+        instance.acquire(newOperationList("cats")).complete();
+        assertEquals(0, instance.size());
+
+        DerivativeCoalescer.Flight flight =
+                instance.acquire(newOperationList("cats"));
+        assertTrue(flight.isOriginator());
+    }
+
+    @Test
+    public void testAcquireWithOverflowedFlightInProgress() throws Exception {
+        DerivativeCoalescer.Flight originator =
+                instance.acquire(newOperationList("cats"));
+        try (OutputStream os = originator.newOutputStream()) {
+            os.write(new byte[DerivativeCoalescer.MAX_BUFFER_SIZE + 1]);
+        }
+        DerivativeCoalescer.Flight flight =
+                instance.acquire(newOperationList("cats"));
+        assertTrue(flight.isOriginator());
+        assertEquals(2, instance.getOriginatedCount());
+    }
+
+    @Test
+    public void testAcquireWithUnfollowedFlightBeyondJoinWindow()
+            throws Exception {
+        DerivativeCoalescer.Flight originator =
+                instance.acquire(newOperationList("cats"));
+        originator.newOutputStream().
+                write(new byte[DerivativeCoalescer.JOIN_WINDOW_SIZE + 1]);
+
+        DerivativeCoalescer.Flight flight =
+                instance.acquire(newOperationList("cats"));
+        assertTrue(flight.isOriginator());
+        assertEquals(2, instance.getOriginatedCount());
+    }
+
+    @Test
+    public void testAcquireWithOverflowedCachedFlightInProgress()
+            throws Exception {
+        DerivativeCoalescer.Flight originator =
+                instance.acquire(newOperationList("cats"), true);
+        originator.newOutputStream().
+                write(new byte[DerivativeCoalescer.JOIN_WINDOW_SIZE + 1]);
+
+        DerivativeCoalescer.Flight flight =
+                instance.acquire(newOperationList("cats"), true);
+        assertFalse(flight.isOriginator());
+        assertTrue(flight.isWaiter());
+        assertEquals(1, instance.getOriginatedCount());
+        assertEquals(1, instance.getCoalescedCount());
+    }
+
+    /* Flight */
+
+    @Test
+    public void testWaiterAwaitsCompletion() throws Exception {
+        final OperationList opList = newOperationList("cats");
+        DerivativeCoalescer.Flight originator = instance.acquire(opList, true);
+        originator.newOutputStream().
+                write(new byte[DerivativeCoalescer.JOIN_WINDOW_SIZE + 1]);
+        DerivativeCoalescer.Flight waiter = instance.acquire(opList, true);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Boolean> future = executor.submit(waiter::awaitCompletion);
+            Thread.sleep(50);
+            assertFalse(future.isDone());
+            originator.complete();
+            assertTrue(future.get(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testWaiterOfAbortedFlight() throws Exception {
+        final OperationList opList = newOperationList("cats");
+        DerivativeCoalescer.Flight originator = instance.acquire(opList, true);
+        originator.newOutputStream().
+                write(new byte[DerivativeCoalescer.JOIN_WINDOW_SIZE + 1]);
+        DerivativeCoalescer.Flight waiter = instance.acquire(opList, true);
+
+        originator.abort();
+        assertFalse(waiter.awaitCompletion());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testWaiterCannotRead() throws Exception {
+        final OperationList opList = newOperationList("cats");
+        DerivativeCoalescer.Flight originator = instance.acquire(opList, true);
+        originator.newOutputStream().
+                write(new byte[DerivativeCoalescer.JOIN_WINDOW_SIZE + 1]);
+        instance.acquire(opList, true).newInputStream();
+    }
+
+    @Test
+    public void testOriginatorWithoutFollowersDoesNotBufferBeyondJoinWindow()
+            throws Exception {
+        DerivativeCoalescer.Flight originator =
+                instance.acquire(newOperationList("cats"));
+        try (OutputStream os = originator.newOutputStream()) {
+            os.write(new byte[1000]);
+            assertEquals(1000, originator.getBufferedLength());
+
+            os.write(new byte[DerivativeCoalescer.JOIN_WINDOW_SIZE]);
+            assertEquals(0, originator.getBufferedLength());
+
+            os.write(new byte[1000]);
+            assertEquals(0, originator.getBufferedLength());
+        }
+        originator.complete();
+    }
+
+    @Test
+    public void testFollowerReadsBytesBeyondJoinWindow() throws Exception {
+        final OperationList opList = newOperationList("cats");
+        DerivativeCoalescer.Flight originator = instance.acquire(opList);
+        DerivativeCoalescer.Flight follower = instance.acquire(opList);
+
+        final byte[] bytes = new byte[DerivativeCoalescer.JOIN_WINDOW_SIZE * 2];
+        bytes[bytes.length - 1] = 1;
+        originator.newOutputStream().write(bytes);
+        originator.complete();
+
+        try (InputStream is = follower.newInputStream()) {
+            assertArrayEquals(bytes, IOUtils.toByteArray(is));
+        }
+    }
+
+    @Test
+    public void testFollowerReadsBytesOfCompletedFlight() throws Exception {
+        final OperationList opList = newOperationList("cats");
+        DerivativeCoalescer.Flight originator = instance.acquire(opList);
+        DerivativeCoalescer.Flight follower = instance.acquire(opList);
+
+        originator.newOutputStream().write(new byte[] { 1, 2, 3 });
+        originator.complete();
+
+        try (InputStream is = follower.newInputStream()) {
+            assertArrayEquals(new byte[] { 1, 2, 3 }, IOUtils.toByteArray(is));
+        }
+    }
+
+    @Test
+    public void testFollowerReadsBytesAsTheyAreProduced() throws Exception {
+        final OperationList opList = newOperationList("cats");
+        DerivativeCoalescer.Flight originator = instance.acquire(opList);
+        DerivativeCoalescer.Flight follower = instance.acquire(opList);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<byte[]> future = executor.submit(() -> {
+                try (InputStream is = follower.newInputStream()) {
+                    return IOUtils.toByteArray(is);
+                }
+            });
+            OutputStream os = originator.newOutputStream();
+            for (int i = 0; i < 100; i++) {
+                os.write(i);
+                Thread.sleep(1);
+            }
+            assertFalse(future.isDone());
+            originator.complete();
+
+            byte[] bytes = future.get(5, TimeUnit.SECONDS);
+            assertEquals(100, bytes.length);
+            assertEquals(99, bytes[99]);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test(expected = DerivativeCoalescer.AbortedFlightException.class)
+    public void testFollowerOfAbortedFlight() throws Exception {
+        final OperationList opList = newOperationList("cats");
+        DerivativeCoalescer.Flight originator = instance.acquire(opList);
+        DerivativeCoalescer.Flight follower = instance.acquire(opList);
+
+        originator.newOutputStream().write(new byte[] { 1, 2, 3 });
+        originator.abort();
+        assertEquals(0, instance.size());
+
+        try (InputStream is = follower.newInputStream()) {
+            IOUtils.toByteArray(is);
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testFollowerCannotComplete() {
+        final OperationList opList = newOperationList("cats");
+        instance.acquire(opList);
+        instance.acquire(opList).complete();
+    }
+
+}
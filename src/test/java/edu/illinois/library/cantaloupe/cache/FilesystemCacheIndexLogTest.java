@@ -0,0 +1,196 @@
+package edu.illinois.library.cantaloupe.cache;
+
+import edu.illinois.library.cantaloupe.cache.FilesystemCacheIndexLog.Record;
+import edu.illinois.library.cantaloupe.test.BaseTest;
+import edu.illinois.library.cantaloupe.util.DeletingFileVisitor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class FilesystemCacheIndexLogTest extends BaseTest {
+
+    private Path path;
+    private FilesystemCacheIndexLog instance;
+
+    private List<Record> readAll() throws Exception {
+        List<Record> records = new ArrayList<>();
+        instance.read(records::add);
+        return records;
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        path = Files.createTempDirectory("test").resolve("index.log");
+        instance = new FilesystemCacheIndexLog(path);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Files.walkFileTree(path.getParent(), new DeletingFileVisitor());
+    }
+
+    /* newAppender() */
+
+    @Test
+    public void testNewAppenderAppends() throws Exception {
+        try (FilesystemCacheIndexLog.Writer writer = instance.newAppender()) {
+            writer.write(Record.add("cats", 5, 1));
+            writer.commit();
+        }
+        try (FilesystemCacheIndexLog.Writer writer = instance.newAppender()) {
+            writer.write(Record.access("cats", 2));
+            writer.write(Record.remove("dogs"));
+            writer.write(Record.clear());
+            writer.commit();
+        }
+
+        List<Record> records = readAll();
+        assertEquals(4, records.size());
+        assertEquals(Record.Type.ADD, records.get(0).getType());
+        assertEquals("cats", records.get(0).getKey());
+        assertEquals(5, records.get(0).getSize());
+        assertEquals(1, records.get(0).getLastAccessed());
+        assertEquals(Record.Type.ACCESS, records.get(1).getType());
+        assertEquals(2, records.get(1).getLastAccessed());
+        assertEquals(Record.Type.REMOVE, records.get(2).getType());
+        assertEquals("dogs", records.get(2).getKey());
+        assertEquals(Record.Type.CLEAR, records.get(3).getType());
+    }
+
+    /* newCompactor() */
+
+    @Test
+    public void testNewCompactorReplacesLogUponCommit() throws Exception {
+        try (FilesystemCacheIndexLog.Writer writer = instance.newAppender()) {
+            writer.write(Record.add("cats", 5, 1));
+            writer.commit();
+        }
+        try (FilesystemCacheIndexLog.Writer writer = instance.newCompactor()) {
+            writer.write(Record.add("dogs", 5, 2));
+            writer.commit();
+        }
+
+        List<Record> records = readAll();
+        assertEquals(1, records.size());
+        assertEquals("dogs", records.get(0).getKey());
+    }
+
+    @Test
+    public void testNewCompactorLeavesLogAloneWithoutCommit() throws Exception {
+        try (FilesystemCacheIndexLog.Writer writer = instance.newAppender()) {
+            writer.write(Record.add("cats", 5, 1));
+            writer.commit();
+        }
+        try (FilesystemCacheIndexLog.Writer writer = instance.newCompactor()) {
+            writer.write(Record.add("dogs", 5, 2));
+        }
+
+        List<Record> records = readAll();
+        assertEquals(1, records.size());
+        assertEquals("cats", records.get(0).getKey());
+        try (Stream<Path> files = Files.list(path.getParent())) {
+            assertEquals(1, files.count());
+        }
+    }
+
+    /* read() */
+
+    @Test
+    public void testReadWithClosedLog() throws Exception {
+        try (FilesystemCacheIndexLog.Writer writer = instance.newAppender()) {
+            writer.write(Record.add("cats", 5, 1));
+            writer.write(Record.close());
+            writer.commit();
+        }
+        assertTrue(instance.read(record -> {}));
+    }
+
+    @Test
+    public void testReadWithReopenedLog() throws Exception {
+        try (FilesystemCacheIndexLog.Writer writer = instance.newAppender()) {
+            writer.write(Record.close());
+            writer.write(Record.open());
+            writer.write(Record.add("cats", 5, 1));
+            writer.commit();
+        }
+        assertFalse(instance.read(record -> {}));
+    }
+
+    @Test
+    public void testReadWithCorruptLog() throws Exception {
+        try (FilesystemCacheIndexLog.Writer writer = instance.newAppender()) {
+            writer.write(Record.add("cats", 5, 1));
+            writer.write(Record.add("dogs", 5, 2));
+            writer.write(Record.close());
+            writer.commit();
+        }
+        // Change the last byte of the size of the second record.
+        try (FileChannel channel =
+                     FileChannel.open(path, StandardOpenOption.WRITE)) {
+            final long position = FilesystemCacheIndexLog.MAGIC.length +
+                    (1 + 2 + 4 + 8 + 8 + 4) + (1 + 2 + 4 + 7);
+            channel.write(ByteBuffer.wrap(new byte[] { 9 }), position);
+        }
+
+        List<Record> records = new ArrayList<>();
+        assertFalse(instance.read(records::add));
+        assertEquals(1, records.size());
+        assertEquals("cats", records.get(0).getKey());
+    }
+
+    @Test
+    public void testReadWithTruncatedLog() throws Exception {
+        try (FilesystemCacheIndexLog.Writer writer = instance.newAppender()) {
+            writer.write(Record.add("cats", 5, 1));
+            writer.write(Record.add("dogs", 5, 2));
+            writer.commit();
+        }
+        try (FileChannel channel =
+                     FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 2);
+        }
+
+        List<Record> records = new ArrayList<>();
+        assertFalse(instance.read(records::add));
+        assertEquals(1, records.size());
+        assertEquals("cats", records.get(0).getKey());
+    }
+
+    @Test
+    public void testReadWithOtherFile() throws Exception {
+        Files.write(path, new byte[] { 1, 2, 3, 4, 5, 6, 7, 8 });
+        List<Record> records = new ArrayList<>();
+        assertFalse(instance.read(records::add));
+        assertTrue(records.isEmpty());
+    }
+
+    /* tryLock() */
+
+    @Test
+    public void testTryLock() throws Exception {
+        FileLock lock = instance.tryLock();
+        try {
+            assertNotNull(lock);
+            assertNull(new FilesystemCacheIndexLog(path).tryLock());
+        } finally {
+            lock.channel().close();
+        }
+        lock = instance.tryLock();
+        assertNotNull(lock);
+        lock.channel().close();
+    }
+
+}
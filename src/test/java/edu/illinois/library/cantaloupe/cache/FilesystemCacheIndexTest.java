@@ -0,0 +1,416 @@
+package edu.illinois.library.cantaloupe.cache;
+
+import edu.illinois.library.cantaloupe.test.BaseTest;
+import edu.illinois.library.cantaloupe.util.DeletingFileVisitor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class FilesystemCacheIndexTest extends BaseTest {
+
+    private Path rootPath;
+    private FilesystemCacheIndexLog log;
+    private FilesystemCacheIndex instance;
+
+    private Path createFile(String name, int size) throws Exception {
+        Path file = rootPath.resolve(name);
+        Files.createDirectories(file.getParent());
+        Files.write(file, new byte[size]);
+        return file;
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        rootPath = Files.createTempDirectory("test").resolve("cache");
+        Files.createDirectories(rootPath);
+        log = new FilesystemCacheIndexLog(
+                rootPath.resolve("index").resolve("index.log"));
+        instance = new FilesystemCacheIndex(rootPath, 2500);
+    }
+
+    private FilesystemCacheIndex newPersistentInstance() {
+        return new FilesystemCacheIndex(rootPath, 2500, log);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        instance.close();
+        Files.walkFileTree(rootPath.getParent(), new DeletingFileVisitor());
+    }
+
+    /* access() */
+
+    @Test
+    public void testAccessMovesEntryToTheEnd() throws Exception {
+        Path file1 = createFile("1", 1000);
+        Path file2 = createFile("2", 1000);
+        instance.add(file1, 1000);
+        instance.add(file2, 1000);
+
+        instance.access(file1);
+        instance.setMaxByteSize(1000);
+        instance.evict();
+
+        assertTrue(Files.exists(file1));
+        assertFalse(Files.exists(file2));
+    }
+
+    @Test
+    public void testAccessDoesNotLockTheIndex() throws Exception {
+        Path file = createFile("1", 1000);
+        instance.add(file, 1000);
+
+        final Thread thread = new Thread(() -> instance.access(file));
+        synchronized (instance) {
+            thread.start();
+            thread.join(5000);
+            assertFalse(thread.isAlive());
+        }
+    }
+
+    @Test
+    public void testAccessIsPersistedWhenClosed() throws Exception {
+        instance = newPersistentInstance();
+        instance.open();
+        Path file1 = createFile("1", 1000);
+        Path file2 = createFile("2", 1000);
+        instance.add(file1, 1000);
+        instance.add(file2, 1000);
+        Thread.sleep(10);
+        instance.access(file1);
+        instance.close();
+
+        instance = newPersistentInstance();
+        instance.open();
+        assertTrue(instance.getLastAccessed(file1) >
+                instance.getLastAccessed(file2));
+    }
+
+    @Test
+    public void testAccessWithUnindexedFile() {
+        instance.access(rootPath.resolve("bogus"));
+        assertEquals(0, instance.size());
+    }
+
+    /* add() */
+
+    @Test
+    public void testAdd() {
+        instance.add(rootPath.resolve("1"), 1000);
+        assertEquals(1, instance.size());
+        assertEquals(1000, instance.getByteSize());
+        assertTrue(instance.getLastAccessed(rootPath.resolve("1")) > 0);
+    }
+
+    @Test
+    public void testAddReplacesExistingEntry() {
+        instance.add(rootPath.resolve("1"), 1000);
+        instance.add(rootPath.resolve("1"), 500);
+        assertEquals(1, instance.size());
+        assertEquals(500, instance.getByteSize());
+    }
+
+    /* clear() */
+
+    @Test
+    public void testClear() {
+        instance.add(rootPath.resolve("1"), 1000);
+        instance.clear();
+        assertEquals(0, instance.size());
+        assertEquals(0, instance.getByteSize());
+    }
+
+    /* close() */
+
+    @Test
+    public void testCloseAndOpenRestoresFromLog() throws Exception {
+        instance = newPersistentInstance();
+        instance.open();
+        Path file1 = createFile("1", 1000);
+        Path file2 = createFile("2", 500);
+        instance.add(file1, 1000);
+        instance.add(file2, 500);
+        instance.access(file1);
+        instance.remove(file2);
+        final long lastAccessed = instance.getLastAccessed(file1);
+        instance.close();
+
+        // This won't be found, as the directory is not crawled.
+        createFile("3", 1000);
+
+        instance = newPersistentInstance();
+        instance.open();
+        assertTrue(instance.isAuthoritative());
+        assertEquals(1, instance.size());
+        assertEquals(1000, instance.getByteSize());
+        assertEquals(lastAccessed, instance.getLastAccessed(file1));
+    }
+
+    /* compact() */
+
+    @Test
+    public void testCompact() throws Exception {
+        instance = newPersistentInstance();
+        instance.open();
+        Path file = createFile("1", 1000);
+        for (int i = 0; i < 100; i++) {
+            instance.add(file, 1000);
+        }
+
+        instance.compact();
+        List<FilesystemCacheIndexLog.Record> records = new ArrayList<>();
+        log.read(records::add);
+        assertEquals(2, records.size()); // an add and an open
+
+        instance.access(file);
+        instance.close();
+        instance = newPersistentInstance();
+        instance.open();
+        assertEquals(1, instance.size());
+        assertEquals(1000, instance.getByteSize());
+    }
+
+    /* discard() */
+
+    @Test
+    public void testDiscardCausesDirectoryToBeCrawledWhenReopened()
+            throws Exception {
+        instance = newPersistentInstance();
+        instance.open();
+        instance.discard();
+        assertFalse(instance.isAuthoritative());
+
+        createFile("1", 1000);
+        instance = newPersistentInstance();
+        instance.open();
+        assertEquals(1, instance.size());
+    }
+
+    /* evict() */
+
+    @Test
+    public void testEvict() throws Exception {
+        Path file1 = createFile("1", 1000);
+        Path file2 = createFile("2", 1000);
+        Path file3 = createFile("3", 1000);
+        instance.setMaxByteSize(Long.MAX_VALUE);
+        instance.add(file1, 1000);
+        instance.add(file2, 1000);
+        instance.add(file3, 1000);
+        instance.setMaxByteSize(2500);
+
+        assertEquals(1, instance.evict());
+        assertFalse(Files.exists(file1));
+        assertTrue(Files.exists(file2));
+        assertTrue(Files.exists(file3));
+        assertEquals(2, instance.size());
+        assertEquals(2000, instance.getByteSize());
+    }
+
+    @Test
+    public void testEvictWhenNotFull() throws Exception {
+        Path file = createFile("1", 1000);
+        instance.add(file, 1000);
+        assertEquals(0, instance.evict());
+        assertTrue(Files.exists(file));
+    }
+
+    /* getFiles() */
+
+    @Test
+    public void testGetFiles() {
+        Path dir = rootPath.resolve("image").resolve("ab");
+        instance.add(dir.resolve("cats_1"), 1);
+        instance.add(dir.resolve("cats_2"), 1);
+        instance.add(dir.resolve("dogs_1"), 1);
+        instance.add(rootPath.resolve("image").resolve("cd").resolve("cats_3"), 1);
+
+        assertEquals(2, instance.getFiles(dir, "cats").size());
+        assertTrue(instance.getFiles(dir, "cats").contains(dir.resolve("cats_1")));
+        assertTrue(instance.getFiles(dir, "birds").isEmpty());
+    }
+
+    /* getLastAccessed() */
+
+    @Test
+    public void testGetLastAccessedWithUnindexedFile() {
+        assertEquals(0, instance.getLastAccessed(rootPath.resolve("bogus")));
+    }
+
+    /* getLeastRecentlyAccessed() */
+
+    @Test
+    public void testGetLeastRecentlyAccessed() throws Exception {
+        instance.add(rootPath.resolve("1"), 100);
+        instance.add(rootPath.resolve("2"), 200);
+        Thread.sleep(10);
+        final long time = System.currentTimeMillis();
+        Thread.sleep(10);
+        instance.add(rootPath.resolve("3"), 300);
+        instance.access(rootPath.resolve("1"));
+
+        Map<Path, Long> files = instance.getLeastRecentlyAccessed(time);
+        assertEquals(1, files.size());
+        assertEquals(200, (long) files.get(rootPath.resolve("2")));
+    }
+
+    /* open() */
+
+    @Test
+    public void testOpenWithoutLogCrawls() throws Exception {
+        createFile("1", 1000);
+        instance = newPersistentInstance();
+        instance.open();
+        assertTrue(instance.isAuthoritative());
+        assertEquals(1, instance.size());
+        assertTrue(log.exists());
+    }
+
+    @Test
+    public void testOpenWithUncleanLogCrawls() throws Exception {
+        instance = newPersistentInstance();
+        instance.open();
+        Path file1 = createFile("1", 1000);
+        instance.add(file1, 1000);
+        // Simulate a crash by not closing it.
+        instance.discard();
+
+        Files.delete(file1);
+        createFile("2", 500);
+
+        instance = newPersistentInstance();
+        instance.open();
+        assertTrue(instance.isAuthoritative());
+        assertEquals(1, instance.size());
+        assertEquals(500, instance.getByteSize());
+        instance.close();
+
+        // The crawled contents have been persisted.
+        instance = newPersistentInstance();
+        instance.open();
+        assertEquals(1, instance.size());
+        assertEquals(500, instance.getByteSize());
+    }
+
+    @Test
+    public void testOpenWithLogInUse() throws Exception {
+        instance = newPersistentInstance();
+        instance.open();
+        FilesystemCacheIndex otherInstance = newPersistentInstance();
+        try {
+            otherInstance.open();
+            assertTrue(instance.isAuthoritative());
+            assertFalse(otherInstance.isAuthoritative());
+        } finally {
+            otherInstance.close();
+        }
+    }
+
+    @Test
+    public void testOpenRetainsChangesMadeWhileLoading() throws Exception {
+        instance = newPersistentInstance();
+        instance.open();
+        Path file1 = createFile("1", 1000);
+        Path file2 = createFile("2", 1000);
+        instance.add(file1, 1000);
+        instance.add(file2, 1000);
+        instance.close();
+
+        instance = newPersistentInstance();
+        instance.remove(file1);
+        Path file3 = createFile("3", 500);
+        instance.add(file3, 500);
+        assertFalse(instance.isAuthoritative());
+        instance.open();
+
+        assertEquals(2, instance.size());
+        assertEquals(0, instance.getLastAccessed(file1));
+        assertEquals(1500, instance.getByteSize());
+        instance.close();
+
+        instance = newPersistentInstance();
+        instance.open();
+        assertEquals(2, instance.size());
+        assertEquals(1500, instance.getByteSize());
+    }
+
+    /* rebuild() */
+
+    @Test
+    public void testRebuild() throws Exception {
+        Path file1 = createFile("a/1", 1000);
+        Path file2 = createFile("b/2", 1000);
+        createFile("b/3" + FilesystemCache.tempFileSuffix(), 1000);
+        Files.setLastModifiedTime(file1, FileTime.fromMillis(2000000));
+        Files.setLastModifiedTime(file2, FileTime.fromMillis(1000000));
+
+        instance.rebuild();
+
+        assertEquals(2, instance.size());
+        assertEquals(2000, instance.getByteSize());
+    }
+
+    @Test
+    public void testRebuildDiscardsEntriesOfMissingFiles() throws Exception {
+        instance.add(rootPath.resolve("1"), 1000);
+        Thread.sleep(10);
+        instance.rebuild();
+        assertEquals(0, instance.size());
+    }
+
+    @Test
+    public void testRebuildEvicts() throws Exception {
+        createFile("1", 1000);
+        createFile("2", 1000);
+        createFile("3", 1000);
+        instance.rebuild();
+        assertEquals(2, instance.size());
+        assertEquals(2000, instance.getByteSize());
+        try (Stream<Path> files = Files.list(rootPath)) {
+            assertEquals(2, files.count());
+        }
+    }
+
+    @Test
+    public void testRebuildRetainsLiveEntries() throws Exception {
+        Path file = createFile("1", 1000);
+        instance.add(file, 1000);
+        final long lastAccessed = instance.getLastAccessed(file);
+        Files.setLastModifiedTime(file, FileTime.fromMillis(1000000));
+
+        instance.rebuild();
+
+        assertEquals(1, instance.size());
+        assertEquals(lastAccessed, instance.getLastAccessed(file));
+    }
+
+    @Test
+    public void testRebuildWithNonexistentDirectory() throws Exception {
+        instance = new FilesystemCacheIndex(rootPath.resolve("bogus"), 2500);
+        instance.rebuild();
+        assertEquals(0, instance.size());
+    }
+
+    /* remove() */
+
+    @Test
+    public void testRemove() {
+        instance.add(rootPath.resolve("1"), 1000);
+        instance.add(rootPath.resolve("2"), 1000);
+        instance.remove(rootPath.resolve("1"));
+        assertEquals(1, instance.size());
+        assertEquals(1000, instance.getByteSize());
+    }
+
+}
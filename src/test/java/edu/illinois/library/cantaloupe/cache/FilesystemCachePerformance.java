@@ -0,0 +1,136 @@
+package edu.illinois.library.cantaloupe.cache;
+
+import edu.illinois.library.cantaloupe.config.Configuration;
+import edu.illinois.library.cantaloupe.config.Key;
+import edu.illinois.library.cantaloupe.image.Format;
+import edu.illinois.library.cantaloupe.image.Identifier;
+import edu.illinois.library.cantaloupe.operation.OperationList;
+import edu.illinois.library.cantaloupe.util.DeletingFileVisitor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static edu.illinois.library.cantaloupe.test.PerformanceTestConstants.*;
+
+/**
+ * Executes benchmarks to measure how {@link FilesystemCache} readers and
+ * purgers are slowed down by concurrent work on other images. Readers and
+ * purgers of one image should not have to contend with writers of, or
+ * purgers of, other images.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = WARMUP_ITERATIONS,
+        time = WARMUP_TIME,
+        timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = MEASUREMENT_ITERATIONS,
+        time = MEASUREMENT_TIME,
+        timeUnit = TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgs = { "-server", "-Xms128M", "-Xmx128M", "-Dcantaloupe.config=memory" })
+public class FilesystemCachePerformance {
+
+    /**
+     * Holds an image that is private to each benchmark thread.
+     */
+    @State(Scope.Thread)
+    public static class ThreadState {
+
+        private static final AtomicInteger counter = new AtomicInteger();
+
+        Identifier identifier;
+        OperationList opList;
+
+        @Setup
+        public void setUp() {
+            identifier = new Identifier("thread" + counter.incrementAndGet());
+            opList = new OperationList(identifier, Format.JPG);
+        }
+
+    }
+
+    private static final byte[] DATA = new byte[4096];
+
+    private final Identifier readIdentifier = new Identifier("cats");
+    private Path rootPath;
+    private FilesystemCache instance;
+
+    @Setup
+    public void setUp() throws Exception {
+        rootPath = Files.createTempDirectory("cantaloupe");
+
+        Configuration config = Configuration.getInstance();
+        config.setProperty(Key.FILESYSTEMCACHE_DIRECTORY_DEPTH, 3);
+        config.setProperty(Key.FILESYSTEMCACHE_DIRECTORY_NAME_LENGTH, 2);
+        config.setProperty(Key.FILESYSTEMCACHE_PATHNAME, rootPath.toString());
+        config.setProperty(Key.SOURCE_CACHE_TTL, 0);
+        config.setProperty(Key.DERIVATIVE_CACHE_TTL, 0);
+
+        instance = new FilesystemCache();
+        try (OutputStream os =
+                     instance.newSourceImageOutputStream(readIdentifier)) {
+            os.write(DATA);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        instance.shutdown();
+        Files.walkFileTree(rootPath, new DeletingFileVisitor());
+    }
+
+    /* getSourceImageFile() while writing other source images */
+
+    @Benchmark
+    @Group("getSourceImageFile")
+    @GroupThreads(4)
+    public Path getSourceImageFile() throws Exception {
+        return instance.getSourceImageFile(readIdentifier);
+    }
+
+    @Benchmark
+    @Group("getSourceImageFile")
+    @GroupThreads(4)
+    public void getSourceImageFileWriter(ThreadState state) throws Exception {
+        try (OutputStream os =
+                     instance.newSourceImageOutputStream(state.identifier)) {
+            os.write(DATA);
+        }
+    }
+
+    /* purge(OperationList) while purging and writing other derivative images */
+
+    @Benchmark
+    @Group("purgeOperationList")
+    @GroupThreads(4)
+    public void purgeOperationList(ThreadState state) {
+        instance.purge(state.opList);
+    }
+
+    @Benchmark
+    @Group("purgeOperationList")
+    @GroupThreads(4)
+    public void purgeOperationListWriter(ThreadState state) throws Exception {
+        try (OutputStream os =
+                     instance.newDerivativeImageOutputStream(state.opList)) {
+            os.write(DATA);
+        }
+    }
+
+}
@@ -23,6 +23,11 @@ import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static edu.illinois.library.cantaloupe.cache.FilesystemCache.*;
 import static edu.illinois.library.cantaloupe.test.Assert.PathAssert.assertRecursiveFileCount;
@@ -50,6 +55,7 @@ public class FilesystemCacheTest extends AbstractCacheTest {
 
     @After
     public void tearDown() throws IOException {
+        instance.shutdown();
         Files.walkFileTree(fixturePath, new DeletingFileVisitor());
     }
 
@@ -64,6 +70,27 @@ public class FilesystemCacheTest extends AbstractCacheTest {
         return new FilesystemCache();
     }
 
+    /**
+     * Enables the index and waits for it to be opened.
+     */
+    private FilesystemCacheIndex enableIndex() throws Exception {
+        Configuration.getInstance().setProperty(
+                Key.FILESYSTEMCACHE_INDEX_ENABLED, true);
+        final long timeout = System.currentTimeMillis() + 5000;
+        while (!index().isAuthoritative() &&
+                System.currentTimeMillis() < timeout) {
+            Thread.sleep(20);
+        }
+        assertTrue(index().isAuthoritative());
+        return index();
+    }
+
+    private void write(OperationList opList, int size) throws IOException {
+        try (OutputStream os = instance.newDerivativeImageOutputStream(opList)) {
+            os.write(new byte[size]);
+        }
+    }
+
     private void createEmptyFile(Path path) throws IOException {
         Files.createDirectories(path.getParent());
         Files.createFile(path);
@@ -307,6 +334,62 @@ public class FilesystemCacheTest extends AbstractCacheTest {
         assertRecursiveFileCount(fixturePath, 3);
     }
 
+    @Test
+    public void testCleanUpWithIndexOnlyCrawlsOnce() throws Exception {
+        enableIndex();
+        instance.setMinCleanableAge(0);
+        instance.cleanUp();
+
+        OperationList ops = new OperationList(new Identifier("cats"),
+                Format.JPG);
+        Path untrackedTempFile = derivativeImageTempFile(
+                new OperationList(new Identifier("dogs"), Format.JPG));
+        createEmptyFile(untrackedTempFile);
+        try (OutputStream os = instance.newDerivativeImageOutputStream(ops)) {
+            os.write(new byte[10]);
+            Thread.sleep(10);
+
+            instance.cleanUp();
+
+            assertFalse(Files.exists(derivativeImageTempFile(ops)));
+            assertTrue(Files.exists(untrackedTempFile));
+        }
+    }
+
+    /* getDerivativeImageFile(OperationList) */
+
+    @Test
+    public void testGetDerivativeImageFileWithZeroTTL() throws Exception {
+        Configuration.getInstance().setProperty(Key.DERIVATIVE_CACHE_TTL, 0);
+
+        OperationList ops = TestUtil.newOperationList();
+        assertNull(instance.getDerivativeImageFile(ops));
+
+        Path imageFile = derivativeImageFile(ops);
+        createEmptyFile(imageFile);
+        assertEquals(imageFile, instance.getDerivativeImageFile(ops));
+    }
+
+    @Test
+    public void testGetDerivativeImageFileWithNonzeroTTL() throws Exception {
+        Configuration.getInstance().setProperty(Key.DERIVATIVE_CACHE_TTL, 1);
+
+        OperationList ops = TestUtil.newOperationList();
+        Path imageFile = derivativeImageFile(ops);
+        createEmptyFile(imageFile);
+        assertNotNull(instance.getDerivativeImageFile(ops));
+
+        Thread.sleep(1100);
+
+        assertNull(instance.getDerivativeImageFile(ops));
+
+        Thread.sleep(1000);
+
+        assertFalse(Files.exists(imageFile));
+    }
+
+    /* getDerivativeImageFiles(Identifier) */
+
     @Test
     public void testGetDerivativeImageFiles() throws Exception {
         Identifier identifier = new Identifier("dogs");
@@ -327,6 +410,45 @@ public class FilesystemCacheTest extends AbstractCacheTest {
         assertEquals(3, instance.getDerivativeImageFiles(identifier).size());
     }
 
+    @Test
+    public void testGetDerivativeImageFilesWithIndex() throws Exception {
+        enableIndex();
+        Identifier identifier = new Identifier("dogs");
+        OperationList ops = new OperationList(identifier, Format.JPG);
+        write(ops, 10);
+        ops.add(new Rotate(15));
+        write(ops, 10);
+        write(new OperationList(new Identifier("cats"), Format.JPG), 10);
+
+        // This one is not indexed, so won't be found.
+        ops.add(ColorTransform.GRAY);
+        createEmptyFile(derivativeImageFile(ops));
+
+        assertEquals(2, instance.getDerivativeImageFiles(identifier).size());
+    }
+
+    /* getStatistics() */
+
+    @Test
+    public void testGetStatisticsWithIndex() throws Exception {
+        Configuration.getInstance().setProperty(Key.FILESYSTEMCACHE_MAX_SIZE,
+                "1M");
+        enableIndex();
+        write(new OperationList(new Identifier("cats"), Format.JPG), 100);
+        write(new OperationList(new Identifier("dogs"), Format.JPG), 50);
+
+        Map<String, Long> stats = instance.getStatistics();
+        assertEquals(2, (long) stats.get("size"));
+        assertEquals(150, (long) stats.get("byteSize"));
+        assertEquals(1024 * 1024, (long) stats.get("maxByteSize"));
+        assertEquals(0, (long) stats.get("evictions"));
+    }
+
+    @Test
+    public void testGetStatisticsWithoutIndex() {
+        assertTrue(instance.getStatistics().isEmpty());
+    }
+
     /* getSourceImageFile(Identifier) */
 
     @Test
@@ -377,6 +499,97 @@ public class FilesystemCacheTest extends AbstractCacheTest {
         }).run();
     }
 
+    @Test
+    public void testGetSourceImageFileDoesNotWaitForWritesOfOtherImages()
+            throws Exception {
+        final Identifier identifier = new Identifier("cats");
+        final Identifier otherIdentifier = new Identifier("dogs");
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try (OutputStream os =
+                     instance.newSourceImageOutputStream(otherIdentifier)) {
+            os.write(new byte[1000]);
+            Future<Path> future = executor.submit(
+                    () -> instance.getSourceImageFile(identifier));
+            assertNull(future.get(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testGetSourceImageFileWaitsForWriteOfSameImage()
+            throws Exception {
+        final Identifier identifier = new Identifier("cats");
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Path> future;
+            try (OutputStream os =
+                         instance.newSourceImageOutputStream(identifier)) {
+                os.write(new byte[1000]);
+                future = executor.submit(
+                        () -> instance.getSourceImageFile(identifier));
+                Thread.sleep(100);
+                assertFalse(future.isDone());
+            }
+            assertEquals(sourceImageFile(identifier),
+                    future.get(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /* newDerivativeImageOutputStream(OperationList) */
+
+    @Test
+    public void testNewDerivativeImageOutputStreamWithMaxSizeEvictsLeastRecentlyUsedImages()
+            throws Exception {
+        Configuration.getInstance().setProperty(Key.FILESYSTEMCACHE_MAX_SIZE,
+                "2500");
+        final byte[] data = new byte[1000];
+        final OperationList[] opLists = new OperationList[3];
+        for (int i = 0; i < opLists.length; i++) {
+            opLists[i] = new OperationList(new Identifier("cats" + i),
+                    Format.JPG);
+        }
+        for (int i = 0; i < 2; i++) {
+            try (OutputStream os =
+                         instance.newDerivativeImageOutputStream(opLists[i])) {
+                os.write(data);
+            }
+        }
+        // Access the first one, making the second one the LRU.
+        instance.newDerivativeImageInputStream(opLists[0]).close();
+
+        try (OutputStream os =
+                     instance.newDerivativeImageOutputStream(opLists[2])) {
+            os.write(data);
+        }
+
+        // Eviction happens asynchronously.
+        final long timeout = System.currentTimeMillis() + 5000;
+        while (Files.exists(derivativeImageFile(opLists[1])) &&
+                System.currentTimeMillis() < timeout) {
+            Thread.sleep(50);
+        }
+        assertTrue(Files.exists(derivativeImageFile(opLists[0])));
+        assertFalse(Files.exists(derivativeImageFile(opLists[1])));
+        assertTrue(Files.exists(derivativeImageFile(opLists[2])));
+        assertEquals(2000, index().getByteSize());
+    }
+
+    @Test
+    public void testNewDerivativeImageOutputStreamWithoutMaxSizeDoesNotIndex()
+            throws Exception {
+        Configuration.getInstance().setProperty(Key.FILESYSTEMCACHE_MAX_SIZE,
+                "");
+        OperationList opList = new OperationList(new Identifier("cats"),
+                Format.JPG);
+        try (OutputStream os = instance.newDerivativeImageOutputStream(opList)) {
+            os.write(new byte[1000]);
+        }
+        assertNull(index());
+    }
+
     /* newSourceImageOutputStream(Identifier) */
 
     @Test
@@ -484,6 +697,25 @@ public class FilesystemCacheTest extends AbstractCacheTest {
         assertRecursiveFileCount(infoPath, 0);
     }
 
+    @Test
+    public void testPurgeInvalidWithIndex() throws Exception {
+        Configuration.getInstance().setProperty(Key.DERIVATIVE_CACHE_TTL, 1);
+        enableIndex();
+        OperationList ops1 = new OperationList(new Identifier("cats"),
+                Format.JPG);
+        write(ops1, 10);
+        Thread.sleep(1500);
+        OperationList ops2 = new OperationList(new Identifier("dogs"),
+                Format.JPG);
+        write(ops2, 10);
+
+        instance.purgeInvalid();
+
+        assertFalse(Files.exists(derivativeImageFile(ops1)));
+        assertTrue(Files.exists(derivativeImageFile(ops2)));
+        assertEquals(1, index().size());
+    }
+
     /**
      * Override that also tests the source cache.
      */
@@ -525,4 +757,20 @@ public class FilesystemCacheTest extends AbstractCacheTest {
         assertRecursiveFileCount(infoPath, 0);
     }
 
+    /* shutdown() */
+
+    @Test
+    public void testShutdownClosesIndex() throws Exception {
+        enableIndex();
+        write(new OperationList(new Identifier("cats"), Format.JPG), 10);
+
+        instance.shutdown();
+
+        FilesystemCacheIndexLog log = new FilesystemCacheIndexLog(
+                fixturePath.resolve("index").resolve("index.log"));
+        assertTrue(log.read(record -> {}));
+        // Reopening restores it.
+        assertEquals(1, enableIndex().size());
+    }
+
 }
@@ -0,0 +1,193 @@
+package edu.illinois.library.cantaloupe.cache;
+
+import com.google.protobuf.ByteString;
+import edu.illinois.library.cantaloupe.test.BaseTest;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class HeapCacheLogTest extends BaseTest {
+
+    private Path path;
+    private HeapCacheLog instance;
+
+    private static HeapCacheProtos.Cache newImageRecord(String identifier,
+                                                        long lastAccessed) {
+        return HeapCacheProtos.Cache.newBuilder()
+                .addImage(newImage(identifier, lastAccessed))
+                .build();
+    }
+
+    private static HeapCacheProtos.Image newImage(String identifier,
+                                                  long lastAccessed) {
+        return HeapCacheProtos.Image.newBuilder()
+                .setIdentifier(identifier)
+                .setOperationList(identifier + "_ops")
+                .setLastAccessed(lastAccessed)
+                .setData(ByteString.copyFrom(new byte[] { 1, 2, 3 }))
+                .build();
+    }
+
+    private List<HeapCacheProtos.Cache> readAll() throws Exception {
+        List<HeapCacheProtos.Cache> records = new ArrayList<>();
+        instance.read(records::add);
+        return records;
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        path = Files.createTempDirectory("test").resolve("heap.cache");
+        instance = new HeapCacheLog(path);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(path);
+        Files.deleteIfExists(path.getParent());
+    }
+
+    /* isLegacy() */
+
+    @Test
+    public void testIsLegacyWithLegacyFile() throws Exception {
+        try (OutputStream os = Files.newOutputStream(path)) {
+            HeapCacheProtos.Cache.newBuilder()
+                    .addImage(newImage("cats", 1))
+                    .build().writeTo(os);
+        }
+        assertTrue(instance.isLegacy());
+    }
+
+    @Test
+    public void testIsLegacyWithLog() throws Exception {
+        try (HeapCacheLog.Writer writer = instance.newAppender()) {
+            writer.write(newImageRecord("cats", 1));
+            writer.commit();
+        }
+        assertFalse(instance.isLegacy());
+    }
+
+    @Test
+    public void testIsLegacyWithNonexistentFile() throws Exception {
+        assertFalse(instance.isLegacy());
+    }
+
+    /* newAppender() */
+
+    @Test
+    public void testNewAppenderAppends() throws Exception {
+        try (HeapCacheLog.Writer writer = instance.newAppender()) {
+            writer.write(newImageRecord("cats", 1));
+            writer.commit();
+        }
+        try (HeapCacheLog.Writer writer = instance.newAppender()) {
+            writer.write(newImageRecord("dogs", 2));
+            writer.commit();
+        }
+
+        List<HeapCacheProtos.Cache> records = readAll();
+        assertEquals(2, records.size());
+        assertEquals("cats", records.get(0).getImage(0).getIdentifier());
+        assertEquals("dogs", records.get(1).getImage(0).getIdentifier());
+    }
+
+    /* newCompactor() */
+
+    @Test
+    public void testNewCompactorReplacesLogUponCommit() throws Exception {
+        try (HeapCacheLog.Writer writer = instance.newAppender()) {
+            writer.write(newImageRecord("cats", 1));
+            writer.commit();
+        }
+        try (HeapCacheLog.Writer writer = instance.newCompactor()) {
+            writer.write(newImageRecord("dogs", 2));
+            writer.commit();
+        }
+
+        List<HeapCacheProtos.Cache> records = readAll();
+        assertEquals(1, records.size());
+        assertEquals("dogs", records.get(0).getImage(0).getIdentifier());
+    }
+
+    @Test
+    public void testNewCompactorLeavesLogAloneWithoutCommit() throws Exception {
+        try (HeapCacheLog.Writer writer = instance.newAppender()) {
+            writer.write(newImageRecord("cats", 1));
+            writer.commit();
+        }
+        try (HeapCacheLog.Writer writer = instance.newCompactor()) {
+            writer.write(newImageRecord("dogs", 2));
+        }
+
+        List<HeapCacheProtos.Cache> records = readAll();
+        assertEquals(1, records.size());
+        assertEquals("cats", records.get(0).getImage(0).getIdentifier());
+        try (Stream<Path> files = Files.list(path.getParent())) {
+            assertEquals(1, files.count());
+        }
+    }
+
+    /* read() */
+
+    @Test
+    public void testReadWithLegacyFile() throws Exception {
+        try (OutputStream os = Files.newOutputStream(path)) {
+            HeapCacheProtos.Cache.newBuilder()
+                    .addImage(newImage("cats", 2))
+                    .addImage(newImage("dogs", 1))
+                    .addInfo(HeapCacheProtos.Info.newBuilder()
+                            .setIdentifier("birds")
+                            .setLastAccessed(3)
+                            .setJson("{}"))
+                    .build().writeTo(os);
+        }
+
+        List<HeapCacheProtos.Cache> records = new ArrayList<>();
+        assertTrue(instance.read(records::add));
+        assertEquals(3, records.size());
+        // in order of last-accessed time
+        assertEquals("dogs", records.get(0).getImage(0).getIdentifier());
+        assertEquals("cats", records.get(1).getImage(0).getIdentifier());
+        assertEquals("birds", records.get(2).getInfo(0).getIdentifier());
+    }
+
+    @Test
+    public void testReadWithTruncatedLog() throws Exception {
+        try (HeapCacheLog.Writer writer = instance.newAppender()) {
+            writer.write(newImageRecord("cats", 1));
+            writer.write(newImageRecord("dogs", 2));
+            writer.commit();
+        }
+        try (FileChannel channel =
+                     FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 2);
+        }
+
+        List<HeapCacheProtos.Cache> records = new ArrayList<>();
+        assertTrue(instance.read(records::add));
+        assertEquals(1, records.size());
+        assertEquals("cats", records.get(0).getImage(0).getIdentifier());
+    }
+
+    @Test
+    public void testReadWithCompleteLog() throws Exception {
+        try (HeapCacheLog.Writer writer = instance.newAppender()) {
+            writer.write(newImageRecord("cats", 1));
+            writer.commit();
+        }
+        assertFalse(instance.read(record -> {}));
+    }
+
+}
@@ -1,5 +1,6 @@
 package edu.illinois.library.cantaloupe.cache;
 
+import com.google.protobuf.ByteString;
 import edu.illinois.library.cantaloupe.config.ConfigurationException;
 import edu.illinois.library.cantaloupe.config.Key;
 import edu.illinois.library.cantaloupe.image.Format;
@@ -9,17 +10,56 @@ import edu.illinois.library.cantaloupe.config.Configuration;
 import edu.illinois.library.cantaloupe.image.Identifier;
 import edu.illinois.library.cantaloupe.operation.OperationList;
 import edu.illinois.library.cantaloupe.test.TestUtil;
+import org.apache.commons.io.IOUtils;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Map;
 
 import static org.junit.Assert.*;
 
 public class HeapCacheTest extends AbstractCacheTest {
 
+    public static class ItemTest extends BaseTest {
+
+        @Test
+        public void testGetData() {
+            HeapCache.Item item = new HeapCache.Item(new byte[] { 1, 2, 3 });
+            ByteBuffer data = item.getData();
+            assertTrue(data.isReadOnly());
+            assertEquals(3, data.remaining());
+            data.get();
+            // Each view has its own position.
+            assertEquals(3, item.getData().remaining());
+        }
+
+        @Test
+        public void testGetLength() {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(3);
+            buffer.put(new byte[] { 1, 2, 3 });
+            buffer.flip();
+            assertEquals(3, new HeapCache.Item(buffer).getLength());
+        }
+
+        @Test
+        public void testGetString() throws Exception {
+            HeapCache.Item item = new HeapCache.Item("cäts".getBytes("UTF-8"));
+            assertEquals("cäts", item.getString());
+        }
+
+        @Test
+        public void testIsOffHeap() {
+            assertFalse(new HeapCache.Item(new byte[] { 1 }).isOffHeap());
+            assertTrue(new HeapCache.Item(ByteBuffer.allocateDirect(1)).isOffHeap());
+        }
+
+    }
+
     public static class KeyTest extends BaseTest {
 
         @Test
@@ -110,6 +150,127 @@ public class HeapCacheTest extends AbstractCacheTest {
         }
     }
 
+    @Test
+    public void testDumpToPersistentStoreDoesNotEmptyCache() throws Exception {
+        Configuration config = Configuration.getInstance();
+        config.setProperty(Key.HEAPCACHE_PERSIST, true);
+
+        Path cacheFile = Files.createTempFile("heapcache", "tmp");
+        try {
+            config.setProperty(Key.HEAPCACHE_PATHNAME, cacheFile.toString());
+
+            Identifier id1 = new Identifier("cats");
+            OperationList ops1 = new OperationList(id1, Format.JPG);
+            try (OutputStream os = instance.newDerivativeImageOutputStream(ops1)) {
+                Files.copy(TestUtil.getImage(IMAGE), os);
+            }
+
+            instance.dumpToPersistentStore();
+
+            assertEquals(1, instance.size());
+        } finally {
+            Files.deleteIfExists(cacheFile);
+        }
+    }
+
+    @Test
+    public void testDumpToPersistentStoreAppendsOnlyChanges() throws Exception {
+        Configuration config = Configuration.getInstance();
+        config.setProperty(Key.HEAPCACHE_PERSIST, true);
+
+        Path cacheFile = Files.createTempFile("heapcache", "tmp");
+        try {
+            config.setProperty(Key.HEAPCACHE_PATHNAME, cacheFile.toString());
+
+            // Seed an image and dump
+            Identifier id1 = new Identifier("cats");
+            OperationList ops1 = new OperationList(id1, Format.JPG);
+            try (OutputStream os = instance.newDerivativeImageOutputStream(ops1)) {
+                Files.copy(TestUtil.getImage(IMAGE), os);
+            }
+            instance.dumpToPersistentStore();
+            final long size1 = Files.size(cacheFile);
+
+            // Seed another image and dump again
+            OperationList ops2 = new OperationList(id1, Format.PNG);
+            try (OutputStream os = instance.newDerivativeImageOutputStream(ops2)) {
+                Files.copy(TestUtil.getImage(IMAGE), os);
+            }
+            instance.dumpToPersistentStore();
+            final long size2 = Files.size(cacheFile);
+
+            // Only the second image should have been appended.
+            assertTrue(size2 - size1 > 5439);
+            assertTrue(size2 - size1 < 5439 * 2);
+
+            // Dumping without changes should append nothing.
+            instance.dumpToPersistentStore();
+            assertEquals(size2, Files.size(cacheFile));
+
+            instance = new HeapCache();
+            instance.loadFromPersistentStore();
+            assertEquals(2, instance.size());
+        } finally {
+            Files.deleteIfExists(cacheFile);
+        }
+    }
+
+    @Test
+    public void testDumpToPersistentStorePersistsRemovals() throws Exception {
+        Configuration config = Configuration.getInstance();
+        config.setProperty(Key.HEAPCACHE_PERSIST, true);
+
+        Path cacheFile = Files.createTempFile("heapcache", "tmp");
+        try {
+            config.setProperty(Key.HEAPCACHE_PATHNAME, cacheFile.toString());
+
+            // Seed an image and an info and dump
+            Identifier id1 = new Identifier("cats");
+            OperationList ops1 = new OperationList(id1, Format.JPG);
+            try (OutputStream os = instance.newDerivativeImageOutputStream(ops1)) {
+                Files.copy(TestUtil.getImage(IMAGE), os);
+            }
+            instance.put(id1, new Info(52, 52));
+            instance.dumpToPersistentStore();
+
+            // Purge the image and dump again
+            instance.purge(ops1);
+            instance.dumpToPersistentStore();
+
+            instance = new HeapCache();
+            instance.loadFromPersistentStore();
+            assertEquals(1, instance.size());
+            assertNull(instance.newDerivativeImageInputStream(ops1));
+            assertNotNull(instance.getImageInfo(id1));
+        } finally {
+            Files.deleteIfExists(cacheFile);
+        }
+    }
+
+    @Test
+    public void testDumpToPersistentStoreAfterPurge() throws Exception {
+        Configuration config = Configuration.getInstance();
+        config.setProperty(Key.HEAPCACHE_PERSIST, true);
+
+        Path cacheFile = Files.createTempFile("heapcache", "tmp");
+        try {
+            config.setProperty(Key.HEAPCACHE_PATHNAME, cacheFile.toString());
+
+            Identifier id1 = new Identifier("cats");
+            OperationList ops1 = new OperationList(id1, Format.JPG);
+            try (OutputStream os = instance.newDerivativeImageOutputStream(ops1)) {
+                Files.copy(TestUtil.getImage(IMAGE), os);
+            }
+            instance.dumpToPersistentStore();
+
+            instance.purge();
+            instance.dumpToPersistentStore();
+            assertEquals(HeapCacheLog.MAGIC.length, Files.size(cacheFile));
+        } finally {
+            Files.deleteIfExists(cacheFile);
+        }
+    }
+
     /* getByteSize() */
 
     @Test
@@ -146,6 +307,60 @@ public class HeapCacheTest extends AbstractCacheTest {
     @Override
     public void testGetImageInfoWithExistingInvalidImage() {}
 
+    /* getStatistics() */
+
+    @Test
+    public void testGetStatistics() throws Exception {
+        Map<String, Long> stats = instance.getStatistics();
+        assertEquals(0, (long) stats.get("hits"));
+        assertEquals(0, (long) stats.get("misses"));
+        assertEquals(0, (long) stats.get("evictions"));
+        assertEquals(0, (long) stats.get("evictedBytes"));
+        assertEquals(0, (long) stats.get("size"));
+        assertEquals(0, (long) stats.get("byteSize"));
+        assertEquals((long) Math.pow(1024, 2),
+                (long) stats.get("targetByteSize"));
+
+        // Miss
+        Identifier id1 = new Identifier("cats");
+        OperationList ops1 = new OperationList(id1, Format.JPG);
+        assertNull(instance.newDerivativeImageInputStream(ops1));
+
+        // Seed an image
+        try (OutputStream os = instance.newDerivativeImageOutputStream(ops1)) {
+            Files.copy(TestUtil.getImage(IMAGE), os);
+        }
+
+        // Hit
+        try (InputStream is = instance.newDerivativeImageInputStream(ops1)) {
+            assertNotNull(is);
+        }
+
+        stats = instance.getStatistics();
+        assertEquals(1, (long) stats.get("hits"));
+        assertEquals(1, (long) stats.get("misses"));
+        assertEquals(1, (long) stats.get("size"));
+        assertEquals(5439, (long) stats.get("byteSize"));
+    }
+
+    @Test
+    public void testGetStatisticsCountsEvictions() throws Exception {
+        Configuration config = Configuration.getInstance();
+        config.setProperty(Key.HEAPCACHE_TARGET_SIZE, 5000);
+
+        Identifier id1 = new Identifier("cats");
+        OperationList ops1 = new OperationList(id1, Format.JPG);
+        try (OutputStream os = instance.newDerivativeImageOutputStream(ops1)) {
+            Files.copy(TestUtil.getImage(IMAGE), os);
+        }
+        instance.purgeExcess();
+
+        Map<String, Long> stats = instance.getStatistics();
+        assertEquals(1, (long) stats.get("evictions"));
+        assertEquals(5439, (long) stats.get("evictedBytes"));
+        assertEquals(5000, (long) stats.get("targetByteSize"));
+    }
+
     /* getTargetByteSize() */
 
     @Test
@@ -211,6 +426,54 @@ public class HeapCacheTest extends AbstractCacheTest {
         assertFalse(instance.isPersistenceEnabled());
     }
 
+    /* initialize() */
+
+    @Test
+    public void testInitializeLoadsPersistentStoreInBackground()
+            throws Exception {
+        Configuration config = Configuration.getInstance();
+        config.setProperty(Key.HEAPCACHE_PERSIST, true);
+
+        Path cacheFile = Files.createTempFile("heapcache", "tmp");
+        try {
+            config.setProperty(Key.HEAPCACHE_PATHNAME, cacheFile.toString());
+
+            Identifier id1 = new Identifier("cats");
+            OperationList ops1 = new OperationList(id1, Format.JPG);
+            try (OutputStream os = instance.newDerivativeImageOutputStream(ops1)) {
+                Files.copy(TestUtil.getImage(IMAGE), os);
+            }
+            instance.dumpToPersistentStore();
+
+            instance = new HeapCache();
+            try {
+                instance.initialize();
+                for (int i = 0; i < 50 && instance.isLoading(); i++) {
+                    Thread.sleep(100);
+                }
+                assertFalse(instance.isLoading());
+                assertEquals(1, instance.size());
+            } finally {
+                instance.shutdown();
+            }
+        } finally {
+            Files.deleteIfExists(cacheFile);
+        }
+    }
+
+    /* isOffHeap() */
+
+    @Test
+    public void testIsOffHeap() {
+        Configuration config = Configuration.getInstance();
+
+        config.setProperty(Key.HEAPCACHE_OFF_HEAP, true);
+        assertTrue(instance.isOffHeap());
+
+        config.setProperty(Key.HEAPCACHE_OFF_HEAP, false);
+        assertFalse(instance.isOffHeap());
+    }
+
     /* loadFromPersistentStore() */
 
     @Test
@@ -242,8 +505,104 @@ public class HeapCacheTest extends AbstractCacheTest {
         }
     }
 
+    @Test
+    public void testLoadFromPersistentStoreWithOffHeap() throws Exception {
+        Configuration config = Configuration.getInstance();
+        config.setProperty(Key.HEAPCACHE_PERSIST, true);
+        config.setProperty(Key.HEAPCACHE_OFF_HEAP, true);
+
+        Path cacheFile = Files.createTempFile("heapcache", "tmp");
+        try {
+            Files.delete(cacheFile);
+            config.setProperty(Key.HEAPCACHE_PATHNAME, cacheFile.toString());
+
+            // Seed an image
+            Identifier id1 = new Identifier("cats");
+            OperationList ops1 = new OperationList(id1, Format.JPG);
+            try (OutputStream os = instance.newDerivativeImageOutputStream(ops1)) {
+                Files.copy(TestUtil.getImage(IMAGE), os);
+            }
+            // Seed an info
+            Info info = new Info(52, 52);
+            instance.put(id1, info);
+
+            instance.dumpToPersistentStore();
+
+            instance = new HeapCache();
+            instance.loadFromPersistentStore();
+            assertEquals(2, instance.size());
+
+            try (InputStream is = instance.newDerivativeImageInputStream(ops1)) {
+                assertArrayEquals(Files.readAllBytes(TestUtil.getImage(IMAGE)),
+                        IOUtils.toByteArray(is));
+            }
+            assertEquals(info, instance.getImageInfo(id1));
+        } finally {
+            Files.deleteIfExists(cacheFile);
+        }
+    }
+
+    @Test
+    public void testLoadFromPersistentStoreWithLegacyFile() throws Exception {
+        Configuration config = Configuration.getInstance();
+        config.setProperty(Key.HEAPCACHE_PERSIST, true);
+
+        Path cacheFile = Files.createTempFile("heapcache", "tmp");
+        try {
+            config.setProperty(Key.HEAPCACHE_PATHNAME, cacheFile.toString());
+
+            // Write a file in the format of version 3.4
+            try (OutputStream os = Files.newOutputStream(cacheFile)) {
+                HeapCacheProtos.Cache.newBuilder()
+                        .addImage(HeapCacheProtos.Image.newBuilder()
+                                .setIdentifier("cats")
+                                .setOperationList("cats_ops")
+                                .setLastAccessed(1)
+                                .setData(ByteString.copyFrom(
+                                        Files.readAllBytes(TestUtil.getImage(IMAGE)))))
+                        .addInfo(HeapCacheProtos.Info.newBuilder()
+                                .setIdentifier("cats")
+                                .setLastAccessed(2)
+                                .setJson(new Info(52, 52).toJSON()))
+                        .build().writeTo(os);
+            }
+
+            instance.loadFromPersistentStore();
+            assertEquals(2, instance.size());
+            assertEquals(new Info(52, 52),
+                    instance.getImageInfo(new Identifier("cats")));
+
+            // The next dump should convert it.
+            instance.dumpToPersistentStore();
+            assertFalse(new HeapCacheLog(cacheFile).isLegacy());
+        } finally {
+            Files.deleteIfExists(cacheFile);
+        }
+    }
+
     /* newDerivativeImageInputStream(OperationList) */
 
+    @Test
+    public void testNewDerivativeImageInputStreamWithOffHeap() throws Exception {
+        Configuration config = Configuration.getInstance();
+        config.setProperty(Key.HEAPCACHE_OFF_HEAP, true);
+
+        Identifier id1 = new Identifier("cats");
+        OperationList ops1 = new OperationList(id1, Format.JPG);
+        try (OutputStream os = instance.newDerivativeImageOutputStream(ops1)) {
+            Files.copy(TestUtil.getImage(IMAGE), os);
+        }
+
+        // Read it twice to make sure that reading doesn't consume it.
+        for (int i = 0; i < 2; i++) {
+            try (InputStream is = instance.newDerivativeImageInputStream(ops1)) {
+                assertArrayEquals(Files.readAllBytes(TestUtil.getImage(IMAGE)),
+                        IOUtils.toByteArray(is));
+            }
+        }
+        assertEquals(5439, instance.getByteSize());
+    }
+
     /**
      * Override that does nothing as this cache does not invalidate on the
      * basis of age.
@@ -254,6 +613,26 @@ public class HeapCacheTest extends AbstractCacheTest {
 
     /* newDerivativeImageOutputStream(OperationList) */
 
+    @Test
+    public void testNewDerivativeImageOutputStreamEvictsExcess()
+            throws Exception {
+        Configuration config = Configuration.getInstance();
+        config.setProperty(Key.HEAPCACHE_TARGET_SIZE, 10000);
+        instance = new HeapCache();
+
+        // Seed two images that together exceed the target size
+        for (String id : new String[] { "cats", "dogs" }) {
+            OperationList ops = new OperationList(new Identifier(id),
+                    Format.JPG);
+            try (OutputStream os = instance.newDerivativeImageOutputStream(ops)) {
+                Files.copy(TestUtil.getImage(IMAGE), os);
+            }
+        }
+
+        assertEquals(5439, instance.getByteSize());
+        assertEquals(1, instance.size());
+    }
+
     @Test
     public void testNewDerivativeImageOutputStreamSetsDirtyFlag() {
         OperationList ops = TestUtil.newOperationList();
@@ -16,6 +16,14 @@ import org.junit.Test;
 
 import java.io.IOException;
 import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.Assert.*;
 
@@ -144,6 +152,82 @@ public class InfoServiceTest extends BaseTest {
         assertTrue(info.getImages().isEmpty());
     }
 
+    @Test
+    public void testGetOrReadInfoCoalescesConcurrentReads() throws Exception {
+        final Identifier identifier = new Identifier("jpg");
+        final AtomicInteger numReads = new AtomicInteger();
+        final int numThreads = 8;
+
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        try {
+            List<Future<Info>> futures = new ArrayList<>();
+            for (int i = 0; i < numThreads; i++) {
+                futures.add(executor.submit(() -> {
+                    FileProcessor proc = new MockFileProcessor() {
+                        @Override
+                        public Info readImageInfo() {
+                            numReads.incrementAndGet();
+                            try {
+                                Thread.sleep(500);
+                            } catch (InterruptedException ignore) {
+                            }
+                            return new Info(500, 300);
+                        }
+                    };
+                    return instance.getOrReadInfo(identifier, proc);
+                }));
+            }
+            for (Future<Info> future : futures) {
+                assertEquals(new Info(500, 300),
+                        future.get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(1, numReads.get());
+        assertEquals(1, instance.getReadCount());
+        assertEquals(numThreads - 1, instance.getCoalescedReadCount());
+    }
+
+    @Test
+    public void testGetOrReadInfoReleasesWaitingCallersWhenReadThrowsError()
+            throws Exception {
+        final Identifier identifier = new Identifier("jpg");
+        final int numThreads = 4;
+
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        try {
+            List<Future<Info>> futures = new ArrayList<>();
+            for (int i = 0; i < numThreads; i++) {
+                futures.add(executor.submit(() -> {
+                    FileProcessor proc = new MockFileProcessor() {
+                        @Override
+                        public Info readImageInfo() {
+                            try {
+                                Thread.sleep(500);
+                            } catch (InterruptedException ignore) {
+                            }
+                            throw new StackOverflowError();
+                        }
+                    };
+                    return instance.getOrReadInfo(identifier, proc);
+                }));
+            }
+            for (Future<Info> future : futures) {
+                try {
+                    future.get(5, TimeUnit.SECONDS);
+                    fail("Expected exception");
+                } catch (ExecutionException e) {
+                    assertTrue(e.getCause() instanceof StackOverflowError ||
+                            e.getCause() instanceof IOException);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
     /* isObjectCacheEnabled() */
 
     @Test
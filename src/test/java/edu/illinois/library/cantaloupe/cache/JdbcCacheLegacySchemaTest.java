@@ -0,0 +1,106 @@
+package edu.illinois.library.cantaloupe.cache;
+
+import edu.illinois.library.cantaloupe.image.Identifier;
+import edu.illinois.library.cantaloupe.operation.OperationList;
+import edu.illinois.library.cantaloupe.test.TestUtil;
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs all of the tests in {@link JdbcCacheTest} against the derivative image
+ * table schema of versions before 4.0, which lacks the digest and identifier
+ * columns.
+ */
+public class JdbcCacheLegacySchemaTest extends JdbcCacheTest {
+
+    @Override
+    void createTables(Connection connection) throws SQLException {
+        String sql = String.format("CREATE TABLE IF NOT EXISTS %s (" +
+                        "%s VARCHAR(4096) NOT NULL, " +
+                        "%s BLOB, " +
+                        "%s DATETIME);",
+                JdbcCache.getDerivativeImageTableName(),
+                JdbcCache.DERIVATIVE_IMAGE_TABLE_OPERATIONS_COLUMN,
+                JdbcCache.DERIVATIVE_IMAGE_TABLE_IMAGE_COLUMN,
+                JdbcCache.DERIVATIVE_IMAGE_TABLE_LAST_ACCESSED_COLUMN);
+        PreparedStatement statement = connection.prepareStatement(sql);
+        statement.execute();
+
+        createInfoTable(connection);
+    }
+
+    /**
+     * Adds the columns of the current schema to the derivative image table,
+     * as described in the user manual.
+     */
+    private void addColumns() throws SQLException {
+        try (Connection connection = JdbcCache.getConnection()) {
+            for (String sql : new String[] {
+                    String.format("ALTER TABLE %s ADD COLUMN %s CHAR(64)",
+                            JdbcCache.getDerivativeImageTableName(),
+                            JdbcCache.DERIVATIVE_IMAGE_TABLE_OPERATIONS_DIGEST_COLUMN),
+                    String.format("ALTER TABLE %s ADD COLUMN %s VARCHAR(4096)",
+                            JdbcCache.getDerivativeImageTableName(),
+                            JdbcCache.DERIVATIVE_IMAGE_TABLE_IDENTIFIER_COLUMN) }) {
+                connection.prepareStatement(sql).execute();
+            }
+        }
+    }
+
+    /* isDigestKeyed() */
+
+    @Override
+    @Test
+    public void testIsDigestKeyed() {
+        assertFalse(instance.isDigestKeyed());
+    }
+
+    /* migrate() */
+
+    @Test
+    public void testMigrate() throws Exception {
+        final OperationList opList = TestUtil.newOperationList();
+        opList.setIdentifier(new Identifier("cats"));
+
+        addColumns();
+        final JdbcCache migratedInstance = newInstance();
+        assertTrue(migratedInstance.isDigestKeyed());
+
+        assertEquals(3, migratedInstance.migrate());
+        assertEquals(0, migratedInstance.migrate());
+        try (InputStream is =
+                     migratedInstance.newDerivativeImageInputStream(opList)) {
+            assertNotNull(is);
+        }
+    }
+
+    @Test
+    public void testPurgeWithIdentifierPurgesMigratedRows() throws Exception {
+        final OperationList opList = TestUtil.newOperationList();
+        opList.setIdentifier(new Identifier("cats"));
+
+        addColumns();
+        final JdbcCache migratedInstance = newInstance();
+        migratedInstance.migrate();
+
+        migratedInstance.purge(new Identifier("cats"));
+
+        try (InputStream is =
+                     migratedInstance.newDerivativeImageInputStream(opList)) {
+            assertNull(is);
+        }
+    }
+
+    /* newDerivativeImageOutputStream(OperationList) */
+
+    @Override
+    @Test
+    public void testNewDerivativeImageOutputStreamWritesDigestAndIdentifier() {}
+
+}
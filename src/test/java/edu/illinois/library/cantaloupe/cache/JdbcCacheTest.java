@@ -25,6 +25,7 @@ import java.sql.Timestamp;
 import java.time.Duration;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
+import java.util.Map;
 
 import static org.junit.Assert.*;
 
@@ -32,7 +33,7 @@ public class JdbcCacheTest extends AbstractCacheTest {
 
     private static final String IMAGE = "jpg-rgb-64x56x8-baseline.jpg";
 
-    private JdbcCache instance;
+    JdbcCache instance;
 
     @Before
     public void setUp() throws Exception {
@@ -41,6 +42,7 @@ public class JdbcCacheTest extends AbstractCacheTest {
         configure();
 
         try (Connection connection = JdbcCache.getConnection()) {
+            dropTables(connection);
             createTables(connection);
             instance = newInstance();
             seed(connection);
@@ -67,21 +69,42 @@ public class JdbcCacheTest extends AbstractCacheTest {
         config.setProperty(Key.JDBCCACHE_INFO_TABLE, "info");
     }
 
-    private void createTables(Connection connection) throws SQLException {
+    void createTables(Connection connection) throws SQLException {
         // derivative image table
         String sql = String.format("CREATE TABLE IF NOT EXISTS %s (" +
+                "%s CHAR(64) NOT NULL, " +
+                "%s VARCHAR(4096) NOT NULL, " +
                 "%s VARCHAR(4096) NOT NULL, " +
                 "%s BLOB, " +
                 "%s DATETIME);",
                 JdbcCache.getDerivativeImageTableName(),
+                JdbcCache.DERIVATIVE_IMAGE_TABLE_OPERATIONS_DIGEST_COLUMN,
+                JdbcCache.DERIVATIVE_IMAGE_TABLE_IDENTIFIER_COLUMN,
                 JdbcCache.DERIVATIVE_IMAGE_TABLE_OPERATIONS_COLUMN,
                 JdbcCache.DERIVATIVE_IMAGE_TABLE_IMAGE_COLUMN,
                 JdbcCache.DERIVATIVE_IMAGE_TABLE_LAST_ACCESSED_COLUMN);
         PreparedStatement statement = connection.prepareStatement(sql);
         statement.execute();
 
-        // info table
-        sql = String.format(
+        sql = String.format("CREATE INDEX IF NOT EXISTS deriv_digest_idx " +
+                        "ON %s (%s)",
+                JdbcCache.getDerivativeImageTableName(),
+                JdbcCache.DERIVATIVE_IMAGE_TABLE_OPERATIONS_DIGEST_COLUMN);
+        statement = connection.prepareStatement(sql);
+        statement.execute();
+
+        sql = String.format("CREATE INDEX IF NOT EXISTS deriv_identifier_idx " +
+                        "ON %s (%s)",
+                JdbcCache.getDerivativeImageTableName(),
+                JdbcCache.DERIVATIVE_IMAGE_TABLE_IDENTIFIER_COLUMN);
+        statement = connection.prepareStatement(sql);
+        statement.execute();
+
+        createInfoTable(connection);
+    }
+
+    void createInfoTable(Connection connection) throws SQLException {
+        String sql = String.format(
                 "CREATE TABLE IF NOT EXISTS %s (" +
                         "%s VARCHAR(4096) NOT NULL, " +
                         "%s VARCHAR(8192) NOT NULL, " +
@@ -90,10 +113,19 @@ public class JdbcCacheTest extends AbstractCacheTest {
                 JdbcCache.INFO_TABLE_IDENTIFIER_COLUMN,
                 JdbcCache.INFO_TABLE_INFO_COLUMN,
                 JdbcCache.INFO_TABLE_LAST_ACCESSED_COLUMN);
-        statement = connection.prepareStatement(sql);
+        PreparedStatement statement = connection.prepareStatement(sql);
         statement.execute();
     }
 
+    private void dropTables(Connection connection) throws SQLException {
+        for (String table : new String[] {
+                JdbcCache.getDerivativeImageTableName(),
+                JdbcCache.getInfoTableName() }) {
+            connection.prepareStatement("DROP TABLE IF EXISTS " + table).
+                    execute();
+        }
+    }
+
     private void seed(Connection connection) throws Exception {
         final Configuration config = Configuration.getInstance();
 
@@ -183,6 +215,36 @@ public class JdbcCacheTest extends AbstractCacheTest {
         assertEquals(expected, actual);
     }
 
+    /* flushAccesses() */
+
+    @Test
+    public void testFlushAccessesCoalescesAccessesOfTheSameItem()
+            throws Exception {
+        final OperationList opList = TestUtil.newOperationList();
+        opList.setIdentifier(new Identifier("cats"));
+
+        for (int i = 0; i < 3; i++) {
+            instance.newDerivativeImageInputStream(opList).close();
+        }
+        instance.getImageInfo(new Identifier("cats"));
+        assertEquals(2, (long) instance.getStatistics().get("pendingAccessUpdates"));
+
+        instance.flushAccesses();
+
+        Map<String, Long> stats = instance.getStatistics();
+        assertEquals(4, (long) stats.get("accessUpdates"));
+        assertEquals(2, (long) stats.get("coalescedAccessUpdates"));
+        assertEquals(2, (long) stats.get("flushedAccessUpdates"));
+        assertEquals(1, (long) stats.get("accessFlushes"));
+        assertEquals(0, (long) stats.get("pendingAccessUpdates"));
+    }
+
+    @Test
+    public void testFlushAccessesWithNothingPending() {
+        instance.flushAccesses();
+        assertEquals(0, (long) instance.getStatistics().get("accessFlushes"));
+    }
+
     /* getImageInfo(Identifier) */
 
     @Test
@@ -206,10 +268,11 @@ public class JdbcCacheTest extends AbstractCacheTest {
             // run the clock
             Thread.sleep(10);
 
-            // this should cause the last-accessed time to update asynchronously
+            // this should cause the last-accessed time to be buffered...
             instance.getImageInfo(identifier);
 
-            Thread.sleep(100);
+            // ...and this to be written
+            instance.flushAccesses();
 
             // get the new last-accessed time
             resultSet = statement.executeQuery();
@@ -221,6 +284,20 @@ public class JdbcCacheTest extends AbstractCacheTest {
         }
     }
 
+    /* hasUnidentifiedRows() */
+
+    @Test
+    public void testHasUnidentifiedRows() {
+        assertFalse(instance.hasUnidentifiedRows());
+    }
+
+    /* isDigestKeyed() */
+
+    @Test
+    public void testIsDigestKeyed() {
+        assertTrue(instance.isDigestKeyed());
+    }
+
     /* newDerivativeImageInputStream(OperationList) */
 
     @Ignore // TODO: why does this fail?
@@ -257,11 +334,11 @@ public class JdbcCacheTest extends AbstractCacheTest {
             Thread.sleep(10);
 
             // Access the image to update the last-accessed time (this will
-            // happen asynchronously)
+            // be buffered)
             instance.newDerivativeImageInputStream(opList).close();
 
-            // wait for it to happen
-            Thread.sleep(100);
+            // write it
+            instance.flushAccesses();
 
             // get the new last-accessed time
             resultSet = statement.executeQuery();
@@ -280,6 +357,42 @@ public class JdbcCacheTest extends AbstractCacheTest {
     @Test
     public void testNewDerivativeImageOutputStream() {}
 
+    /* purgeInvalid() */
+
+    @Test
+    public void testPurgeInvalidFlushesAccesses() throws Exception {
+        instance.getImageInfo(new Identifier("cats"));
+        instance.purgeInvalid();
+        assertEquals(0, (long) instance.getStatistics().get("pendingAccessUpdates"));
+    }
+
+    /* newDerivativeImageOutputStream(OperationList) */
+
+    @Test
+    public void testNewDerivativeImageOutputStreamWritesDigestAndIdentifier()
+            throws Exception {
+        final OperationList opList = TestUtil.newOperationList();
+        opList.setIdentifier(new Identifier("birds"));
+        try (OutputStream os = instance.newDerivativeImageOutputStream(opList)) {
+            Files.copy(TestUtil.getImage(IMAGE), os);
+        }
+
+        try (Connection connection = JdbcCache.getConnection()) {
+            String sql = String.format("SELECT %s, %s FROM %s WHERE %s = ?;",
+                    JdbcCache.DERIVATIVE_IMAGE_TABLE_OPERATIONS_DIGEST_COLUMN,
+                    JdbcCache.DERIVATIVE_IMAGE_TABLE_IDENTIFIER_COLUMN,
+                    JdbcCache.getDerivativeImageTableName(),
+                    JdbcCache.DERIVATIVE_IMAGE_TABLE_OPERATIONS_COLUMN);
+            PreparedStatement statement = connection.prepareStatement(sql);
+            statement.setString(1, opList.toString());
+            ResultSet resultSet = statement.executeQuery();
+            assertTrue(resultSet.next());
+            assertEquals(JdbcCache.digest(opList.toString()),
+                    resultSet.getString(1));
+            assertEquals("birds", resultSet.getString(2));
+        }
+    }
+
     /* put(Identifier, Info) */
 
     @Test
@@ -2,12 +2,58 @@ package edu.illinois.library.cantaloupe.cache;
 
 import edu.illinois.library.cantaloupe.config.Configuration;
 import edu.illinois.library.cantaloupe.config.Key;
+import edu.illinois.library.cantaloupe.image.Format;
+import edu.illinois.library.cantaloupe.image.Identifier;
+import edu.illinois.library.cantaloupe.operation.OperationList;
+import edu.illinois.library.cantaloupe.operation.Rotate;
+import edu.illinois.library.cantaloupe.test.BaseTest;
 import edu.illinois.library.cantaloupe.test.ConfigurationConstants;
 import edu.illinois.library.cantaloupe.test.TestUtil;
+import org.apache.commons.io.IOUtils;
 import org.junit.Test;
 
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
 public class RedisCacheTest extends AbstractCacheTest {
 
+    public static class ImageManifestTest extends BaseTest {
+
+        @Test
+        public void testChunkFields() {
+            RedisCache.ImageManifest manifest =
+                    new RedisCache.ImageManifest("abc", 2);
+            assertArrayEquals(new String[] { "cats#abc#0", "cats#abc#1" },
+                    manifest.chunkFields("cats"));
+        }
+
+        @Test
+        public void testFromBytes() {
+            RedisCache.ImageManifest manifest =
+                    RedisCache.ImageManifest.fromBytes(
+                            new RedisCache.ImageManifest("abc", 5).toBytes());
+            assertEquals("abc", manifest.getToken());
+            assertEquals(5, manifest.getChunkCount());
+        }
+
+        @Test
+        public void testFromBytesWithInvalidValue() {
+            assertNull(RedisCache.ImageManifest.fromBytes(null));
+            assertNull(RedisCache.ImageManifest.fromBytes(new byte[] { 1, 2 }));
+            assertNull(RedisCache.ImageManifest.fromBytes(
+                    "abc:def".getBytes(StandardCharsets.US_ASCII)));
+        }
+
+    }
+
     @Override
     RedisCache newInstance() {
         Configuration config = Configuration.getInstance();
@@ -28,6 +74,21 @@ public class RedisCacheTest extends AbstractCacheTest {
     }
 
 
+    /* imageHashKey(String) */
+
+    @Test
+    public void testImageHashKey() {
+        final String key = RedisCache.imageHashKey("cats");
+        assertEquals(key, RedisCache.imageHashKey("cats"));
+        assertTrue(key.startsWith(RedisCache.IMAGE_HASH_KEY + "."));
+
+        final Set<String> keys = new HashSet<>();
+        for (int i = 0; i < 1000; i++) {
+            keys.add(RedisCache.imageHashKey("cats" + i));
+        }
+        assertEquals(RedisCache.IMAGE_HASH_SHARD_COUNT, keys.size());
+    }
+
     /* getImageInfo(Identifier) */
 
     /**
@@ -39,6 +100,43 @@ public class RedisCacheTest extends AbstractCacheTest {
 
     /* newDerivativeImageInputStream(OperationList) */
 
+    @Test
+    public void testNewDerivativeImageInputStreamWithMultipleChunks()
+            throws Exception {
+        final RedisCache instance = newInstance();
+        final OperationList opList = new OperationList(
+                new Identifier("cats"), Format.JPG);
+        final byte[] data = new byte[RedisCache.CHUNK_SIZE * 2 + 1000];
+        new Random().nextBytes(data);
+
+        try (OutputStream os = instance.newDerivativeImageOutputStream(opList)) {
+            os.write(data);
+        }
+        try (InputStream is = instance.newDerivativeImageInputStream(opList)) {
+            assertArrayEquals(data, IOUtils.toByteArray(is));
+        }
+    }
+
+    @Test
+    public void testNewDerivativeImageInputStreamWithReplacedImage()
+            throws Exception {
+        final RedisCache instance = newInstance();
+        final OperationList opList = new OperationList(
+                new Identifier("cats"), Format.JPG);
+        final byte[] data = new byte[RedisCache.CHUNK_SIZE + 1000];
+        new Random().nextBytes(data);
+
+        try (OutputStream os = instance.newDerivativeImageOutputStream(opList)) {
+            os.write(data);
+        }
+        try (OutputStream os = instance.newDerivativeImageOutputStream(opList)) {
+            os.write(new byte[] { 1, 2, 3 });
+        }
+        try (InputStream is = instance.newDerivativeImageInputStream(opList)) {
+            assertArrayEquals(new byte[] { 1, 2, 3 }, IOUtils.toByteArray(is));
+        }
+    }
+
     /**
      * Override that does nothing, as validity is determined by Redis.
      */
@@ -46,6 +144,42 @@ public class RedisCacheTest extends AbstractCacheTest {
     @Test
     public void testNewDerivativeImageInputStreamWithNonzeroTTL() {}
 
+    /* purge(Identifier) */
+
+    @Test
+    public void testPurgeWithIdentifierWithManyImages() throws Exception {
+        final RedisCache instance = newInstance();
+        final Identifier identifier = new Identifier("cats");
+        final OperationList otherOpList = new OperationList(
+                new Identifier("dogs"), Format.JPG);
+        final List<OperationList> opLists = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            OperationList opList = new OperationList(identifier, Format.JPG);
+            opList.add(new Rotate(i));
+            opLists.add(opList);
+        }
+        opLists.add(otherOpList);
+        for (OperationList opList : opLists) {
+            try (OutputStream os =
+                         instance.newDerivativeImageOutputStream(opList)) {
+                os.write(new byte[] { 1, 2, 3 });
+            }
+        }
+
+        instance.purge(identifier);
+
+        for (OperationList opList : opLists) {
+            try (InputStream is =
+                         instance.newDerivativeImageInputStream(opList)) {
+                if (opList == otherOpList) {
+                    assertNotNull(is);
+                } else {
+                    assertNull(is);
+                }
+            }
+        }
+    }
+
     /* purgeInvalid() */
 
     /**
@@ -3,6 +3,7 @@ package edu.illinois.library.cantaloupe.cache;
 import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.model.AmazonS3Exception;
 import com.amazonaws.services.s3.model.CreateBucketRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
 import edu.illinois.library.cantaloupe.config.Key;
 import edu.illinois.library.cantaloupe.config.Configuration;
 import edu.illinois.library.cantaloupe.image.Format;
@@ -13,14 +14,18 @@ import edu.illinois.library.cantaloupe.test.TestUtil;
 import edu.illinois.library.cantaloupe.util.AWSClientBuilder;
 import edu.illinois.library.cantaloupe.util.SocketUtils;
 import io.findify.s3mock.S3Mock;
+import org.apache.commons.io.IOUtils;
 import org.junit.After;
 import org.junit.AfterClass;
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.Random;
 
 import static org.junit.Assert.*;
 
@@ -191,4 +196,51 @@ public class S3CacheTest extends AbstractCacheTest {
         assertEquals("cats/", instance.getObjectKeyPrefix());
     }
 
+    /* newDerivativeImageOutputStream(OperationList) */
+
+    @Test
+    public void testNewDerivativeImageOutputStreamWithMultipartUpload()
+            throws Exception {
+        // The mock service doesn't set the last-modified time of objects
+        // uploaded in parts, so they would appear to be expired.
+        Configuration.getInstance().setProperty(Key.DERIVATIVE_CACHE_TTL, 0);
+
+        // Enough for two full parts and a partial one.
+        final byte[] data = new byte[S3Cache.MULTIPART_PART_SIZE * 2 + 1000];
+        new Random().nextBytes(data);
+
+        try (OutputStream os = instance.newDerivativeImageOutputStream(opList)) {
+            os.write(data);
+        }
+
+        // Wait for it to upload.
+        InputStream is = null;
+        for (int i = 0; i < 20 && is == null; i++) {
+            Thread.sleep(500);
+            is = instance.newDerivativeImageInputStream(opList);
+        }
+        assertNotNull(is);
+        try {
+            assertArrayEquals(data, IOUtils.toByteArray(is));
+        } finally {
+            is.close();
+        }
+    }
+
+    @Test
+    public void testS3OutputStreamStartsMultipartUploadOnlyWhenPartIsFull()
+            throws Exception {
+        final S3Cache.S3OutputStream os = new S3Cache.S3OutputStream(
+                client(), getBucket(), instance.getObjectKey(opList),
+                new ObjectMetadata(), 1024);
+        try {
+            os.write(new byte[1024 - 1]);
+            assertFalse(os.isMultipart());
+            os.write(1);
+            assertTrue(os.isMultipart());
+        } finally {
+            os.close();
+        }
+    }
+
 }
@@ -0,0 +1,413 @@
+package edu.illinois.library.cantaloupe.cache;
+
+import edu.illinois.library.cantaloupe.config.Configuration;
+import edu.illinois.library.cantaloupe.config.Key;
+import edu.illinois.library.cantaloupe.image.Format;
+import edu.illinois.library.cantaloupe.image.Identifier;
+import edu.illinois.library.cantaloupe.image.Info;
+import edu.illinois.library.cantaloupe.operation.OperationList;
+import edu.illinois.library.cantaloupe.test.TestUtil;
+import edu.illinois.library.cantaloupe.util.DeletingFileVisitor;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class TieredCacheTest extends AbstractCacheTest {
+
+    private static final String IMAGE = "jpg-rgb-64x56x8-baseline.jpg";
+
+    private Path fixturePath;
+    private TieredCache instance;
+
+    private static void assertExists(DerivativeCache cache,
+                                     OperationList opList) throws IOException {
+        try (InputStream is = cache.newDerivativeImageInputStream(opList)) {
+            assertNotNull(is);
+        }
+    }
+
+    private static void assertNotExists(DerivativeCache cache,
+                                        OperationList opList) throws IOException {
+        try (InputStream is = cache.newDerivativeImageInputStream(opList)) {
+            assertNull(is);
+        }
+    }
+
+    private static void write(DerivativeCache cache,
+                              OperationList opList) throws IOException {
+        try (OutputStream os = cache.newDerivativeImageOutputStream(opList)) {
+            Files.copy(TestUtil.getImage(IMAGE), os);
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        fixturePath = Files.createTempDirectory("test").resolve("cache");
+
+        super.setUp();
+
+        instance = newInstance();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (Files.exists(fixturePath)) {
+            Files.walkFileTree(fixturePath, new DeletingFileVisitor());
+        }
+    }
+
+    @Override
+    TieredCache newInstance() {
+        Configuration config = Configuration.getInstance();
+        config.setProperty(Key.HEAPCACHE_TARGET_SIZE, Math.pow(1024, 2));
+        config.setProperty(Key.FILESYSTEMCACHE_DIRECTORY_DEPTH, 3);
+        config.setProperty(Key.FILESYSTEMCACHE_DIRECTORY_NAME_LENGTH, 2);
+        config.setProperty(Key.FILESYSTEMCACHE_PATHNAME,
+                fixturePath.toString());
+        config.setProperty(Key.TIEREDCACHE_L2_CACHE, "FilesystemCache");
+
+        return new TieredCache();
+    }
+
+    /* getDerivativeImageFile(OperationList) */
+
+    @Test
+    public void testGetDerivativeImageFileDelegatesToL2() throws Exception {
+        OperationList opList = new OperationList(new Identifier("cats"),
+                Format.JPG);
+        write(instance, opList);
+
+        assertEquals(instance.getL2().getDerivativeImageFile(opList),
+                instance.getDerivativeImageFile(opList));
+    }
+
+    /* getImageInfo(Identifier) */
+
+    @Test
+    public void testNewDerivativeImageInputStreamDoesNotPromoteImagesLargerThanMaxBufferSize()
+            throws Exception {
+        Configuration.getInstance().setProperty(Key.TIEREDCACHE_MAX_BUFFER_SIZE,
+                Files.size(TestUtil.getImage(IMAGE)) - 1);
+        OperationList opList = new OperationList(new Identifier("cats"),
+                Format.JPG);
+        write(instance.getL2(), opList);
+
+        try (InputStream is = instance.newDerivativeImageInputStream(opList)) {
+            assertEquals(Files.size(TestUtil.getImage(IMAGE)),
+                    IOUtils.toByteArray(is).length);
+        }
+
+        assertNotExists(instance.getL1(), opList);
+    }
+
+    /**
+     * Override that does nothing as L1 does not invalidate on the basis of
+     * age.
+     */
+    @Test
+    @Override
+    public void testGetImageInfoWithExistingInvalidImage() {}
+
+    @Test
+    public void testGetImageInfoPromotesL2Hits() throws Exception {
+        Identifier identifier = new Identifier("cats");
+        Info info = new Info(50, 40);
+        instance.getL2().put(identifier, info);
+
+        assertEquals(info, instance.getImageInfo(identifier));
+        assertEquals(info, instance.getL1().getImageInfo(identifier));
+    }
+
+    /* getL2() */
+
+    @Test
+    public void testGetL2() {
+        assertTrue(instance.getL2() instanceof FilesystemCache);
+    }
+
+    @Test
+    public void testGetL2WithDisallowedCache() {
+        Configuration config = Configuration.getInstance();
+        config.setProperty(Key.TIEREDCACHE_L2_CACHE, "TieredCache");
+        assertNull(new TieredCache().getL2());
+
+        config.setProperty(Key.TIEREDCACHE_L2_CACHE, "HeapCache");
+        assertNull(new TieredCache().getL2());
+    }
+
+    @Test
+    public void testGetL2WithInvalidCache() {
+        Configuration config = Configuration.getInstance();
+        config.setProperty(Key.TIEREDCACHE_L2_CACHE, "BogusCache");
+        assertNull(new TieredCache().getL2());
+    }
+
+    @Test
+    public void testGetL2WithNoCache() {
+        Configuration config = Configuration.getInstance();
+        config.setProperty(Key.TIEREDCACHE_L2_CACHE, "");
+        assertNull(new TieredCache().getL2());
+    }
+
+    /* getStatistics() */
+
+    /* getMaxBufferSize() */
+
+    @Test
+    public void testGetMaxBufferSize() {
+        assertEquals((long) (Math.pow(1024, 2) *
+                        TieredCache.DEFAULT_MAX_BUFFER_FRACTION),
+                instance.getMaxBufferSize());
+    }
+
+    @Test
+    public void testGetMaxBufferSizeWithConfiguredSize() {
+        Configuration.getInstance().setProperty(
+                Key.TIEREDCACHE_MAX_BUFFER_SIZE, "102400");
+        assertEquals(102400, instance.getMaxBufferSize());
+    }
+
+    @Test
+    public void testGetMaxBufferSizeIsCappedAtL1Size() {
+        Configuration.getInstance().setProperty(
+                Key.TIEREDCACHE_MAX_BUFFER_SIZE, "2M");
+        assertEquals((long) Math.pow(1024, 2), instance.getMaxBufferSize());
+    }
+
+    @Test
+    public void testGetStatistics() throws Exception {
+        OperationList opList = new OperationList(new Identifier("cats"),
+                Format.JPG);
+        assertNotExists(instance, opList);
+
+        write(instance.getL2(), opList);
+        assertExists(instance, opList);
+
+        Map<String, Long> stats = instance.getStatistics();
+        assertEquals(1, (long) stats.get("l2Hits"));
+        assertEquals(1, (long) stats.get("l2Misses"));
+        assertEquals(2, (long) stats.get("misses"));
+    }
+
+    /* newDerivativeImageInputStream(OperationList) */
+
+    @Test
+    public void testNewDerivativeImageInputStreamPromotesL2Hits()
+            throws Exception {
+        OperationList opList = new OperationList(new Identifier("cats"),
+                Format.JPG);
+        write(instance.getL2(), opList);
+        assertNotExists(instance.getL1(), opList);
+
+        try (InputStream is = instance.newDerivativeImageInputStream(opList)) {
+            assertEquals(Files.size(TestUtil.getImage(IMAGE)),
+                    IOUtils.toByteArray(is).length);
+        }
+
+        try (InputStream is = instance.getL1().newDerivativeImageInputStream(opList)) {
+            assertArrayEquals(Files.readAllBytes(TestUtil.getImage(IMAGE)),
+                    IOUtils.toByteArray(is));
+        }
+    }
+
+    @Test
+    public void testNewDerivativeImageInputStreamDoesNotPromotePartialReads()
+            throws Exception {
+        OperationList opList = new OperationList(new Identifier("cats"),
+                Format.JPG);
+        write(instance.getL2(), opList);
+
+        try (InputStream is = instance.newDerivativeImageInputStream(opList)) {
+            is.read(new byte[100]);
+        }
+
+        assertNotExists(instance.getL1(), opList);
+    }
+
+    @Test
+    public void testNewDerivativeImageInputStreamDoesNotPromoteImagesLargerThanL1()
+            throws Exception {
+        Configuration.getInstance().setProperty(Key.HEAPCACHE_TARGET_SIZE,
+                Files.size(TestUtil.getImage(IMAGE)) - 1);
+        OperationList opList = new OperationList(new Identifier("cats"),
+                Format.JPG);
+        write(instance.getL2(), opList);
+
+        try (InputStream is = instance.newDerivativeImageInputStream(opList)) {
+            assertEquals(Files.size(TestUtil.getImage(IMAGE)),
+                    IOUtils.toByteArray(is).length);
+        }
+
+        assertNotExists(instance.getL1(), opList);
+    }
+
+    /**
+     * Override that does nothing as L1 does not invalidate on the basis of
+     * age.
+     */
+    @Override
+    @Test
+    public void testNewDerivativeImageInputStreamWithNonzeroTTL() {}
+
+    /* newDerivativeImageOutputStream(OperationList) */
+
+    @Test
+    public void testNewDerivativeImageOutputStreamWritesThrough()
+            throws Exception {
+        OperationList opList = new OperationList(new Identifier("cats"),
+                Format.JPG);
+        write(instance, opList);
+
+        assertExists(instance.getL1(), opList);
+        assertExists(instance.getL2(), opList);
+    }
+
+    @Test
+    public void testNewDerivativeImageOutputStreamWithWriteBehind()
+            throws Exception {
+        Configuration.getInstance().setProperty(
+                Key.TIEREDCACHE_WRITE_BEHIND, true);
+        OperationList opList = new OperationList(new Identifier("cats"),
+                Format.JPG);
+        write(instance, opList);
+
+        assertExists(instance.getL1(), opList);
+
+        Thread.sleep(1000);
+        assertExists(instance.getL2(), opList);
+    }
+
+    @Test
+    public void testNewDerivativeImageOutputStreamWithWriteBehindWritesLargeImagesThrough()
+            throws Exception {
+        Configuration config = Configuration.getInstance();
+        config.setProperty(Key.TIEREDCACHE_WRITE_BEHIND, true);
+        config.setProperty(Key.HEAPCACHE_TARGET_SIZE, 1000);
+        OperationList opList = new OperationList(new Identifier("cats"),
+                Format.JPG);
+        write(instance, opList);
+
+        // No need to wait for it.
+        try (InputStream is =
+                     instance.getL2().newDerivativeImageInputStream(opList)) {
+            assertArrayEquals(Files.readAllBytes(TestUtil.getImage(IMAGE)),
+                    IOUtils.toByteArray(is));
+        }
+    }
+
+    /* purge() */
+
+    @Test
+    public void testPurgePurgesBothTiers() throws Exception {
+        Identifier identifier = new Identifier("cats");
+        OperationList opList = new OperationList(identifier, Format.JPG);
+        write(instance, opList);
+        instance.put(identifier, new Info(50, 40));
+
+        instance.purge();
+
+        for (DerivativeCache tier : new DerivativeCache[] {
+                instance.getL1(), instance.getL2() }) {
+            assertNotExists(tier, opList);
+            assertNull(tier.getImageInfo(identifier));
+        }
+    }
+
+    /* purge(Identifier) */
+
+    @Test
+    public void testPurgeWithIdentifierPurgesBothTiers() throws Exception {
+        Identifier identifier = new Identifier("cats");
+        OperationList opList = new OperationList(identifier, Format.JPG);
+        OperationList otherOpList = new OperationList(new Identifier("dogs"),
+                Format.JPG);
+        write(instance, opList);
+        write(instance, otherOpList);
+        instance.put(identifier, new Info(50, 40));
+
+        instance.purge(identifier);
+
+        for (DerivativeCache tier : new DerivativeCache[] {
+                instance.getL1(), instance.getL2() }) {
+            assertNotExists(tier, opList);
+            assertNull(tier.getImageInfo(identifier));
+            assertExists(tier, otherOpList);
+        }
+    }
+
+    @Test
+    public void testPurgeWithIdentifierDoesNotSkipOtherWriteBehinds()
+            throws Exception {
+        Configuration.getInstance().setProperty(
+                Key.TIEREDCACHE_WRITE_BEHIND, true);
+        OperationList opList = new OperationList(new Identifier("cats"),
+                Format.JPG);
+        write(instance, opList);
+        instance.purge(new Identifier("dogs"));
+
+        Thread.sleep(1000);
+        assertExists(instance.getL2(), opList);
+    }
+
+    /* purge(OperationList) */
+
+    @Test
+    public void testPurgeWithOperationListPurgesBothTiers() throws Exception {
+        OperationList opList = new OperationList(new Identifier("cats"),
+                Format.JPG);
+        write(instance, opList);
+
+        instance.purge(opList);
+
+        assertNotExists(instance.getL1(), opList);
+        assertNotExists(instance.getL2(), opList);
+    }
+
+    @Test
+    public void testPurgeWithOperationListPurgesPendingWriteBehind()
+            throws Exception {
+        Configuration.getInstance().setProperty(
+                Key.TIEREDCACHE_WRITE_BEHIND, true);
+        OperationList opList = new OperationList(new Identifier("cats"),
+                Format.JPG);
+        write(instance, opList);
+        instance.purge(opList);
+
+        Thread.sleep(1000);
+        assertNotExists(instance.getL1(), opList);
+        assertNotExists(instance.getL2(), opList);
+    }
+
+    /* purgeInvalid() */
+
+    /**
+     * Override that does nothing as L1 does not invalidate on the basis of
+     * age.
+     */
+    @Override
+    @Test
+    public void testPurgeInvalid() {}
+
+    /* put(Identifier, Info) */
+
+    @Test
+    public void testPutWritesToBothTiers() throws Exception {
+        Identifier identifier = new Identifier("cats");
+        Info info = new Info(50, 40);
+        instance.put(identifier, info);
+
+        assertEquals(info, instance.getL1().getImageInfo(identifier));
+        assertEquals(info, instance.getL2().getImageInfo(identifier));
+    }
+
+}
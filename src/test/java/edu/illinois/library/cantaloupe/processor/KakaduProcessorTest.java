@@ -3,14 +3,22 @@ package edu.illinois.library.cantaloupe.processor;
 import edu.illinois.library.cantaloupe.config.Configuration;
 import edu.illinois.library.cantaloupe.config.Key;
 import edu.illinois.library.cantaloupe.image.Format;
+import edu.illinois.library.cantaloupe.image.Identifier;
 import edu.illinois.library.cantaloupe.image.Info;
+import edu.illinois.library.cantaloupe.operation.OperationList;
 import edu.illinois.library.cantaloupe.resource.iiif.ProcessorFeature;
 import edu.illinois.library.cantaloupe.test.TestUtil;
 import org.junit.Before;
 import org.junit.Test;
 
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.EnumSet;
 import java.util.Set;
 
@@ -31,6 +39,30 @@ public class KakaduProcessorTest extends ProcessorTest {
         instance = newInstance();
     }
 
+    /**
+     * @return Copy of a JP2 fixture with a name that tells the stand-in
+     *         decoder to fail.
+     */
+    private static Path newFailingImage() throws IOException {
+        Path file = Files.createTempFile("fail", ".jp2");
+        file.toFile().deleteOnExit();
+        Files.copy(TestUtil.getImage("jp2"), file,
+                StandardCopyOption.REPLACE_EXISTING);
+        return file;
+    }
+
+    /**
+     * Configures the instance to use the stand-in decoder in the {@literal
+     * bin} fixture folder.
+     */
+    private void useFakeDecoder() throws IOException {
+        Configuration.getInstance().setProperty(
+                Key.KAKADUPROCESSOR_PATH_TO_BINARIES,
+                TestUtil.getFixture("bin").toString());
+        KakaduProcessor.resetInitialization();
+        instance = newInstance();
+    }
+
     @Override
     protected Format getSupported16BitSourceFormat() {
         return Format.JP2;
@@ -107,4 +139,51 @@ public class KakaduProcessorTest extends ProcessorTest {
         assertEquals(expectedFeatures, instance.getSupportedFeatures());
     }
 
+    /* process() */
+
+    @Test
+    public void testProcessWithFakeDecoder() throws Exception {
+        useFakeDecoder();
+        instance.setSourceFile(TestUtil.getImage("jp2"));
+        OperationList ops = new OperationList(new Identifier("cats"),
+                Format.PNG);
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+
+        instance.process(ops, new Info(64, 56, Format.JP2), os);
+
+        BufferedImage image = ImageIO.read(
+                new ByteArrayInputStream(os.toByteArray()));
+        assertEquals(64, image.getWidth());
+        assertEquals(56, image.getHeight());
+    }
+
+    @Test(expected = ProcessorException.class)
+    public void testProcessWithFailingDecoder() throws Exception {
+        useFakeDecoder();
+        instance.setSourceFile(newFailingImage());
+        OperationList ops = new OperationList(new Identifier("cats"),
+                Format.PNG);
+
+        instance.process(ops, new Info(64, 56, Format.JP2),
+                new ByteArrayOutputStream());
+    }
+
+    @Test
+    public void testGetWarningsWithRepeatedlyFailingDecoder()
+            throws Exception {
+        useFakeDecoder();
+        instance.setSourceFile(newFailingImage());
+        OperationList ops = new OperationList(new Identifier("cats"),
+                Format.PNG);
+        for (int i = 0; i < ProcessPool.UNHEALTHY_FAILURE_COUNT; i++) {
+            try {
+                instance.process(ops, new Info(64, 56, Format.JP2),
+                        new ByteArrayOutputStream());
+            } catch (ProcessorException e) {
+                // expected
+            }
+        }
+        assertFalse(instance.getWarnings().isEmpty());
+    }
+
 }
@@ -3,15 +3,23 @@ package edu.illinois.library.cantaloupe.processor;
 import edu.illinois.library.cantaloupe.config.Configuration;
 import edu.illinois.library.cantaloupe.config.Key;
 import edu.illinois.library.cantaloupe.image.Format;
+import edu.illinois.library.cantaloupe.image.Identifier;
 import edu.illinois.library.cantaloupe.image.Info;
+import edu.illinois.library.cantaloupe.operation.OperationList;
 import edu.illinois.library.cantaloupe.resource.iiif.ProcessorFeature;
 import edu.illinois.library.cantaloupe.test.TestUtil;
 import org.junit.Before;
 import org.junit.Test;
 
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.EnumSet;
 import java.util.Set;
 
@@ -32,6 +40,30 @@ public class OpenJpegProcessorTest extends ProcessorTest {
         instance = newInstance();
     }
 
+    /**
+     * @return Copy of a JP2 fixture with a name that tells the stand-in
+     *         decoder to fail.
+     */
+    private static Path newFailingImage() throws IOException {
+        Path file = Files.createTempFile("fail", ".jp2");
+        file.toFile().deleteOnExit();
+        Files.copy(TestUtil.getImage("jp2"), file,
+                StandardCopyOption.REPLACE_EXISTING);
+        return file;
+    }
+
+    /**
+     * Configures the instance to use the stand-in decoder in the {@literal
+     * bin} fixture folder.
+     */
+    private void useFakeDecoder() throws IOException {
+        Configuration.getInstance().setProperty(
+                Key.OPENJPEGPROCESSOR_PATH_TO_BINARIES,
+                TestUtil.getFixture("bin").toString());
+        OpenJpegProcessor.resetInitialization();
+        instance = newInstance();
+    }
+
     @Override
     protected Format getSupported16BitSourceFormat() {
         return Format.JP2;
@@ -86,20 +118,6 @@ public class OpenJpegProcessorTest extends ProcessorTest {
         assertEquals(expectedFeatures, instance.getSupportedFeatures());
     }
 
-    @Override
-    @Test
-    public void testProcessOf16BitImageWithEncodeOperationLimitingTo8Bits() {
-        // Skipped. See OpenJpegProcessor's class doc for an explanation of why
-        // it doesn't support 16-bit output.
-    }
-
-    @Override
-    @Test
-    public void testProcessOf16BitImageWithEncodeOperationWithNoLimit() {
-        // Skipped. See OpenJpegProcessor's class doc for an explanation of why
-        // it doesn't support 16-bit output.
-    }
-
     @Test
     public void testGetWarningsWithNoWarnings() {
         boolean initialValue = OpenJpegProcessor.isQuietModeSupported();
@@ -142,4 +160,51 @@ public class OpenJpegProcessorTest extends ProcessorTest {
         assertEquals(expectedInfo, instance.readImageInfo());
     }
 
+    /* process() */
+
+    @Test
+    public void testProcessWithFakeDecoder() throws Exception {
+        useFakeDecoder();
+        instance.setSourceFile(TestUtil.getImage("jp2"));
+        OperationList ops = new OperationList(new Identifier("cats"),
+                Format.PNG);
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+
+        instance.process(ops, new Info(64, 56, Format.JP2), os);
+
+        BufferedImage image = ImageIO.read(
+                new ByteArrayInputStream(os.toByteArray()));
+        assertEquals(64, image.getWidth());
+        assertEquals(56, image.getHeight());
+    }
+
+    @Test(expected = ProcessorException.class)
+    public void testProcessWithFailingDecoder() throws Exception {
+        useFakeDecoder();
+        instance.setSourceFile(newFailingImage());
+        OperationList ops = new OperationList(new Identifier("cats"),
+                Format.PNG);
+
+        instance.process(ops, new Info(64, 56, Format.JP2),
+                new ByteArrayOutputStream());
+    }
+
+    @Test
+    public void testGetWarningsWithRepeatedlyFailingDecoder()
+            throws Exception {
+        useFakeDecoder();
+        instance.setSourceFile(newFailingImage());
+        OperationList ops = new OperationList(new Identifier("cats"),
+                Format.PNG);
+        for (int i = 0; i < ProcessPool.UNHEALTHY_FAILURE_COUNT; i++) {
+            try {
+                instance.process(ops, new Info(64, 56, Format.JP2),
+                        new ByteArrayOutputStream());
+            } catch (ProcessorException e) {
+                // expected
+            }
+        }
+        assertFalse(instance.getWarnings().isEmpty());
+    }
+
 }
@@ -0,0 +1,113 @@
+package edu.illinois.library.cantaloupe.processor;
+
+import edu.illinois.library.cantaloupe.test.BaseTest;
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class PNMReaderTest extends BaseTest {
+
+    private static BufferedImage read(String header, int... samples)
+            throws IOException {
+        return read(header, false, samples);
+    }
+
+    private static BufferedImage read(String header,
+                                      boolean is16Bit,
+                                      int... samples) throws IOException {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        os.write(header.getBytes(StandardCharsets.US_ASCII));
+        for (int sample : samples) {
+            if (is16Bit) {
+                os.write(sample >> 8);
+            }
+            os.write(sample);
+        }
+        return new PNMReader(new ByteArrayInputStream(os.toByteArray()))
+                .read();
+    }
+
+    /* read() */
+
+    @Test
+    public void testReadWithPGM() throws Exception {
+        BufferedImage image = read("P5\n2 1\n255\n", 10, 20);
+        assertEquals(BufferedImage.TYPE_BYTE_GRAY, image.getType());
+        assertEquals(2, image.getWidth());
+        assertEquals(1, image.getHeight());
+        assertEquals(10, image.getRaster().getSample(0, 0, 0));
+        assertEquals(20, image.getRaster().getSample(1, 0, 0));
+    }
+
+    @Test
+    public void testReadWithPPM() throws Exception {
+        BufferedImage image = read("P6\n# OpenJPEG-2.3.0\n1 2\n255\n",
+                1, 2, 3, 4, 5, 6);
+        assertEquals(BufferedImage.TYPE_3BYTE_BGR, image.getType());
+        assertEquals(0x010203, image.getRGB(0, 0) & 0xffffff);
+        assertEquals(0x040506, image.getRGB(0, 1) & 0xffffff);
+    }
+
+    @Test
+    public void testReadWithPAM() throws Exception {
+        BufferedImage image = read("P7\n# OpenJPEG-2.3.0\nWIDTH 1\n" +
+                        "HEIGHT 1\nDEPTH 4\nMAXVAL 255\nTUPLTYPE RGB_ALPHA\n" +
+                        "ENDHDR\n",
+                1, 2, 3, 4);
+        assertEquals(BufferedImage.TYPE_4BYTE_ABGR, image.getType());
+        assertEquals(0x04010203, image.getRGB(0, 0));
+    }
+
+    @Test
+    public void testReadWithGrayAlphaPAM() throws Exception {
+        BufferedImage image = read("P7\nWIDTH 1\nHEIGHT 1\nDEPTH 2\n" +
+                "MAXVAL 255\nTUPLTYPE GRAYSCALE_ALPHA\nENDHDR\n", 50, 60);
+        assertTrue(image.getColorModel().hasAlpha());
+        assertEquals(50, image.getRaster().getSample(0, 0, 0));
+        assertEquals(60, image.getRaster().getSample(0, 0, 1));
+    }
+
+    @Test
+    public void testReadWith16BitSamples() throws Exception {
+        BufferedImage image = read("P6\n1 1\n65535\n", true,
+                1000, 2000, 3000);
+        assertEquals(16, image.getColorModel().getComponentSize(0));
+        assertEquals(1000, image.getRaster().getSample(0, 0, 0));
+        assertEquals(2000, image.getRaster().getSample(0, 0, 1));
+        assertEquals(3000, image.getRaster().getSample(0, 0, 2));
+    }
+
+    @Test
+    public void testReadRescalesSamplesToFullRange() throws Exception {
+        BufferedImage image = read("P5\n2 1\n4095\n", true, 4095, 0);
+        assertEquals(BufferedImage.TYPE_USHORT_GRAY, image.getType());
+        assertEquals(65535, image.getRaster().getSample(0, 0, 0));
+        assertEquals(0, image.getRaster().getSample(1, 0, 0));
+
+        image = read("P5\n1 1\n15\n", 15);
+        assertEquals(255, image.getRaster().getSample(0, 0, 0));
+    }
+
+    @Test(expected = IOException.class)
+    public void testReadWithUnsupportedFormat() throws Exception {
+        read("P3\n1 1\n255\n0 0 0\n");
+    }
+
+    @Test(expected = IOException.class)
+    public void testReadWithInvalidDimensions() throws Exception {
+        read("P6\n0 1\n255\n");
+    }
+
+    @Test(expected = EOFException.class)
+    public void testReadWithTruncatedData() throws Exception {
+        read("P6\n2 2\n255\n", 1, 2, 3);
+    }
+
+}
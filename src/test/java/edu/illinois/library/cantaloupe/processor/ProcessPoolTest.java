@@ -0,0 +1,153 @@
+package edu.illinois.library.cantaloupe.processor;
+
+import edu.illinois.library.cantaloupe.test.BaseTest;
+import edu.illinois.library.cantaloupe.test.TestUtil;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ProcessPoolTest extends BaseTest {
+
+    private ProcessPool instance;
+
+    /**
+     * @param input Name of the input file, which determines the behavior of
+     *              the stand-in decoder.
+     */
+    private static ProcessBuilder newDecoder(String input) throws IOException {
+        return new ProcessBuilder(
+                TestUtil.getFixture("bin/kdu_expand").toString(),
+                "-i", input, "-o", "/dev/null.tif");
+    }
+
+    /* close() */
+
+    @Test
+    public void testCloseDestroysRunningProcess() throws Exception {
+        instance = new ProcessPool("test", 1, 0, 0, 0);
+        ProcessPool.PooledProcess process = instance.start(newDecoder("hang"));
+        process.close();
+
+        assertTrue(process.getProcess().waitFor(5, TimeUnit.SECONDS));
+        assertEquals(0, instance.getActiveCount());
+        assertTrue(instance.isHealthy());
+        assertNull(instance.getLastFailure());
+    }
+
+    @Test
+    public void testCloseFreesSlot() throws Exception {
+        instance = new ProcessPool("test", 1, 0, 0, 0);
+        instance.start(newDecoder("hang")).close();
+        instance.start(newDecoder("hang")).close();
+        assertEquals(0, instance.getActiveCount());
+    }
+
+    /* isHealthy() */
+
+    @Test
+    public void testIsHealthy() throws Exception {
+        instance = new ProcessPool("test", 1, 0, 0, 0);
+        for (int i = 0; i < ProcessPool.UNHEALTHY_FAILURE_COUNT; i++) {
+            assertTrue(instance.isHealthy());
+            try (ProcessPool.PooledProcess process =
+                         instance.start(newDecoder("fail"))) {
+                process.getProcess().waitFor();
+            }
+        }
+        assertFalse(instance.isHealthy());
+        assertEquals("exited with code 1", instance.getLastFailure());
+
+        try (ProcessPool.PooledProcess process =
+                     instance.start(new ProcessBuilder("true"))) {
+            process.getProcess().waitFor();
+        }
+        assertTrue(instance.isHealthy());
+    }
+
+    /* start() */
+
+    @Test
+    public void testStartKillsProcessesExceedingTimeout() throws Exception {
+        instance = new ProcessPool("test", 1, 0, 0, 100);
+        try (ProcessPool.PooledProcess process =
+                     instance.start(newDecoder("hang"))) {
+            assertTrue(process.getProcess().waitFor(5, TimeUnit.SECONDS));
+            assertTrue(process.isKilled());
+        }
+        assertEquals("killed after 100 ms", instance.getLastFailure());
+    }
+
+    @Test
+    public void testStartWithMissingBinary() throws Exception {
+        instance = new ProcessPool("test", 1, 0, 0, 0);
+        try {
+            instance.start(new ProcessBuilder("/bogus/bogus/bogus"));
+            fail("Expected exception");
+        } catch (IOException e) {
+            assertEquals(0, instance.getActiveCount());
+            assertNotNull(instance.getLastFailure());
+        }
+        // The slot has been freed.
+        instance.start(newDecoder("hang")).close();
+    }
+
+    @Test
+    public void testStartWithFullQueue() throws Exception {
+        instance = new ProcessPool("test", 1, 0, 5000, 0);
+        try (ProcessPool.PooledProcess process =
+                     instance.start(newDecoder("hang"))) {
+            final long start = System.currentTimeMillis();
+            try {
+                instance.start(newDecoder("hang"));
+                fail("Expected exception");
+            } catch (ProcessorException e) {
+                assertTrue(System.currentTimeMillis() - start < 1000);
+                assertEquals(1, instance.getRejectionCount());
+            }
+        }
+    }
+
+    @Test
+    public void testStartWaitsForSlot() throws Exception {
+        instance = new ProcessPool("test", 1, 1, 5000, 0);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<ProcessPool.PooledProcess> future;
+            try (ProcessPool.PooledProcess process =
+                         instance.start(newDecoder("hang"))) {
+                future = executor.submit(
+                        () -> instance.start(newDecoder("hang")));
+                Thread.sleep(100);
+                assertFalse(future.isDone());
+                assertEquals(1, instance.getQueuedCount());
+            }
+            future.get(5, TimeUnit.SECONDS).close();
+            assertEquals(0, instance.getQueuedCount());
+            assertEquals(0, instance.getRejectionCount());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testStartTimesOutWaitingForSlot() throws Exception {
+        instance = new ProcessPool("test", 1, 1, 100, 0);
+        try (ProcessPool.PooledProcess process =
+                     instance.start(newDecoder("hang"))) {
+            try {
+                instance.start(newDecoder("hang"));
+                fail("Expected exception");
+            } catch (ProcessorException e) {
+                assertEquals(0, instance.getQueuedCount());
+                assertEquals(1, instance.getRejectionCount());
+            }
+        }
+    }
+
+}
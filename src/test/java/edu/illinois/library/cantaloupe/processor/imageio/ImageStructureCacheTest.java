@@ -0,0 +1,112 @@
+package edu.illinois.library.cantaloupe.processor.imageio;
+
+import edu.illinois.library.cantaloupe.image.Identifier;
+import edu.illinois.library.cantaloupe.test.BaseTest;
+import edu.illinois.library.cantaloupe.test.TestUtil;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Dimension;
+
+import static org.junit.Assert.*;
+
+public class ImageStructureCacheTest extends BaseTest {
+
+    private static final Identifier IDENTIFIER = new Identifier("cats.jpg");
+
+    private static final String VERSION_KEY = "/images/cats.jpg@1000:500";
+
+    private ImageStructureCache instance;
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        instance = ImageStructureCache.getInstance();
+        instance.purge();
+    }
+
+    private static ImageStructure newStructure() throws Exception {
+        final javax.imageio.ImageReader reader =
+                ImageIO.getImageReadersByFormatName("jpeg").next();
+        try (ImageInputStream is = ImageIO.createImageInputStream(
+                TestUtil.getImage("jpg-rgb-64x56x8-baseline.jpg").toFile())) {
+            reader.setInput(is);
+            return ImageStructure.read(reader);
+        } finally {
+            reader.dispose();
+        }
+    }
+
+    /* get() */
+
+    @Test
+    public void testGet() throws Exception {
+        final ImageStructure structure = newStructure();
+        instance.put(String.class, IDENTIFIER, VERSION_KEY, structure);
+        assertSame(structure,
+                instance.get(String.class, IDENTIFIER, VERSION_KEY));
+        assertNull(instance.get(String.class, IDENTIFIER, VERSION_KEY + "0"));
+    }
+
+    @Test
+    public void testGetWithDifferentReaderClass() throws Exception {
+        instance.put(String.class, IDENTIFIER, VERSION_KEY, newStructure());
+        assertNull(instance.get(Integer.class, IDENTIFIER, VERSION_KEY));
+    }
+
+    @Test
+    public void testGetWithDifferentIdentifier() throws Exception {
+        instance.put(String.class, IDENTIFIER, VERSION_KEY, newStructure());
+        assertNull(instance.get(String.class, new Identifier("dogs.jpg"),
+                VERSION_KEY));
+    }
+
+    @Test
+    public void testGetWithNullIdentifier() throws Exception {
+        final ImageStructure structure = newStructure();
+        instance.put(String.class, null, VERSION_KEY, structure);
+        assertSame(structure, instance.get(String.class, null, VERSION_KEY));
+    }
+
+    /* purge() */
+
+    @Test
+    public void testPurge() throws Exception {
+        instance.put(String.class, IDENTIFIER, VERSION_KEY, newStructure());
+        instance.purge();
+        assertEquals(0, instance.size());
+    }
+
+    /* purge(Identifier) */
+
+    @Test
+    public void testPurgeWithIdentifier() throws Exception {
+        final Identifier otherIdentifier = new Identifier("dogs.jpg");
+        instance.put(String.class, IDENTIFIER, VERSION_KEY, newStructure());
+        instance.put(Integer.class, IDENTIFIER, VERSION_KEY, newStructure());
+        instance.put(String.class, otherIdentifier, VERSION_KEY,
+                newStructure());
+        instance.put(String.class, null, VERSION_KEY, newStructure());
+
+        instance.purge(IDENTIFIER);
+
+        assertNull(instance.get(String.class, IDENTIFIER, VERSION_KEY));
+        assertNull(instance.get(Integer.class, IDENTIFIER, VERSION_KEY));
+        assertNotNull(instance.get(String.class, otherIdentifier,
+                VERSION_KEY));
+        assertNotNull(instance.get(String.class, null, VERSION_KEY));
+    }
+
+    /* ImageStructure.read() */
+
+    @Test
+    public void testReadStructure() throws Exception {
+        final ImageStructure structure = newStructure();
+        assertEquals(1, structure.getNumImages());
+        assertEquals(new Dimension(64, 56), structure.getSize(0));
+        assertEquals(new Dimension(64, 56), structure.getTileSize(0));
+    }
+
+}
@@ -0,0 +1,119 @@
+package edu.illinois.library.cantaloupe.processor.imageio;
+
+import edu.illinois.library.cantaloupe.test.BaseTest;
+import edu.illinois.library.cantaloupe.test.TestUtil;
+import org.junit.After;
+import org.junit.Test;
+
+import javax.imageio.stream.FileImageInputStream;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import java.awt.Dimension;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class JPEG2000HeaderReaderTest extends BaseTest {
+
+    private ImageInputStream inputStream;
+    private JPEG2000HeaderReader instance;
+
+    @After
+    public void tearDown() throws Exception {
+        super.tearDown();
+        if (inputStream != null) {
+            inputStream.close();
+        }
+    }
+
+    private void newInstance(String fixtureName) throws IOException {
+        inputStream = new FileImageInputStream(
+                TestUtil.getImage(fixtureName).toFile());
+        instance = new JPEG2000HeaderReader(inputStream);
+    }
+
+    /* getComponentBitDepth() */
+
+    @Test
+    public void testGetComponentBitDepth() throws Exception {
+        newInstance("jp2-rgba-64x56x16-monotiled-lossy.jp2");
+        for (int i = 0; i < 4; i++) {
+            assertEquals(16, instance.getComponentBitDepth(i));
+        }
+
+        newInstance("jp2-rgb-64x56x8-monotiled-lossy.jp2");
+        assertEquals(8, instance.getComponentBitDepth(0));
+    }
+
+    /* getNumComponents() */
+
+    @Test
+    public void testGetNumComponents() throws Exception {
+        newInstance("jp2-rgb-64x56x8-multitiled-lossy.jp2");
+        assertEquals(3, instance.getNumComponents());
+
+        newInstance("jp2-rgba-64x56x8-multitiled-lossy.jp2");
+        assertEquals(4, instance.getNumComponents());
+    }
+
+    /* getNumDecompositionLevels() */
+
+    @Test
+    public void testGetNumDecompositionLevels() throws Exception {
+        newInstance("jp2-rgb-64x56x8-monotiled-lossy.jp2");
+        assertEquals(4, instance.getNumDecompositionLevels());
+
+        newInstance("jp2-rgb-64x56x8-monotiled-reversible.jp2");
+        assertEquals(5, instance.getNumDecompositionLevels());
+    }
+
+    /* getSize() */
+
+    @Test
+    public void testGetSize() throws Exception {
+        newInstance("jp2");
+        assertEquals(new Dimension(100, 88), instance.getSize());
+    }
+
+    @Test
+    public void testGetSizeWithCodestream() throws Exception {
+        // Strip off the JP2 boxes preceding the codestream.
+        final byte[] jp2 = Files.readAllBytes(
+                TestUtil.getImage("jp2-rgb-64x56x8-multitiled-lossy.jp2"));
+        int start = 0;
+        while (jp2[start] != (byte) 0xff || jp2[start + 1] != 0x4f) {
+            start++;
+        }
+        final byte[] codestream = Arrays.copyOfRange(jp2, start, jp2.length);
+        inputStream = new MemoryCacheImageInputStream(
+                new ByteArrayInputStream(codestream));
+        instance = new JPEG2000HeaderReader(inputStream);
+
+        assertEquals(new Dimension(64, 56), instance.getSize());
+        assertEquals(new Dimension(28, 32), instance.getTileSize());
+    }
+
+    @Test(expected = IOException.class)
+    public void testGetSizeWithNonJPEG2000Image() throws Exception {
+        newInstance("jpg");
+        instance.getSize();
+    }
+
+    /* getTileSize() */
+
+    @Test
+    public void testGetTileSizeWithUntiledImage() throws Exception {
+        newInstance("jp2-rgb-64x56x8-monotiled-lossy.jp2");
+        assertEquals(new Dimension(64, 56), instance.getTileSize());
+    }
+
+    @Test
+    public void testGetTileSizeWithTiledImage() throws Exception {
+        newInstance("jp2-rgb-64x56x8-multitiled-lossy.jp2");
+        assertEquals(new Dimension(28, 32), instance.getTileSize());
+    }
+
+}
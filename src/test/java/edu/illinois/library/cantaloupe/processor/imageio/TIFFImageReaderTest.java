@@ -15,6 +15,7 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import javax.imageio.ImageIO;
 import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.awt.image.RenderedImage;
@@ -30,6 +31,7 @@ public class TIFFImageReaderTest extends BaseTest {
     @Before
     public void setUp() throws Exception {
         super.setUp();
+        ImageStructureCache.getInstance().purge();
         instance = new TIFFImageReader(
                 TestUtil.getImage("tif-rgb-multires-64x56x16-tiled-uncompressed.tif"));
     }
@@ -111,6 +113,40 @@ public class TIFFImageReaderTest extends BaseTest {
         assertEquals(new Dimension(16, 16), instance.getTileSize(0));
     }
 
+    /* getStructure() */
+
+    @Test
+    public void testGetStructure() throws Exception {
+        ImageStructure structure = instance.getStructure();
+        assertEquals(3, structure.getNumImages());
+        assertEquals(new Dimension(64, 56), structure.getSize(0));
+        assertEquals(new Dimension(16, 16), structure.getTileSize(0));
+    }
+
+    @Test
+    public void testGetStructureIsSharedAmongInstancesReadingTheSameFile()
+            throws Exception {
+        ImageStructure structure = instance.getStructure();
+
+        TIFFImageReader otherInstance = new TIFFImageReader(
+                TestUtil.getImage("tif-rgb-multires-64x56x16-tiled-uncompressed.tif"));
+        try {
+            assertSame(structure, otherInstance.getStructure());
+        } finally {
+            otherInstance.dispose();
+        }
+    }
+
+    @Test
+    public void testGetStructureIsNotSharedAmongInstancesReadingStreams()
+            throws Exception {
+        instance.dispose();
+        instance = new TIFFImageReader(ImageIO.createImageInputStream(
+                TestUtil.getImage("tif-rgb-multires-64x56x16-tiled-uncompressed.tif").toFile()));
+        instance.getStructure();
+        assertEquals(0, ImageStructureCache.getInstance().size());
+    }
+
     @Test
     public void testPreferredIIOImplementations() {
         String[] expected = new String[2];
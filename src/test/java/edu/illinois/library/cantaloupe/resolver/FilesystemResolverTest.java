@@ -2,6 +2,7 @@ package edu.illinois.library.cantaloupe.resolver;
 
 import static org.junit.Assert.*;
 
+import edu.illinois.library.cantaloupe.cache.CacheFacade;
 import edu.illinois.library.cantaloupe.config.Configuration;
 import edu.illinois.library.cantaloupe.config.Key;
 import edu.illinois.library.cantaloupe.image.Format;
@@ -17,6 +18,8 @@ import java.nio.file.AccessDeniedException;
 import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
 import java.nio.file.attribute.PosixFilePermission;
 import java.util.Collections;
 import java.util.Set;
@@ -133,6 +136,64 @@ public class FilesystemResolverTest extends AbstractResolverTest {
         instance.checkAccess();
     }
 
+    @Test
+    public void testCheckAccessUsesMetadataCache() throws Exception {
+        Configuration config = Configuration.getInstance();
+        config.setProperty(Key.RESOLVER_METADATA_CACHE_TTL, 10);
+
+        Path dir = Files.createTempDirectory("test");
+        Path file = dir.resolve(IDENTIFIER.toString());
+        Files.copy(TestUtil.getImage(IDENTIFIER.toString()), file);
+        config.setProperty(Key.FILESYSTEMRESOLVER_PATH_PREFIX,
+                dir.toString() + File.separator);
+        final long size = Files.size(file);
+        try {
+            instance.checkAccess();
+            assertEquals(Format.JPG, instance.getSourceFormat());
+        } finally {
+            Files.delete(file);
+            Files.delete(dir);
+        }
+
+        // The deleted file's metadata should still be cached.
+        instance = newInstance();
+        instance.checkAccess();
+        assertEquals(file, instance.getPath());
+        assertEquals(size, instance.getSize());
+        assertEquals(Format.JPG, instance.getSourceFormat());
+    }
+
+    @Test(expected = NoSuchFileException.class)
+    public void testCheckAccessAfterPurgingMetadataCache() throws Exception {
+        Configuration config = Configuration.getInstance();
+        config.setProperty(Key.RESOLVER_METADATA_CACHE_TTL, 10);
+
+        Path dir = Files.createTempDirectory("test");
+        Path file = dir.resolve(IDENTIFIER.toString());
+        Files.copy(TestUtil.getImage(IDENTIFIER.toString()), file);
+        config.setProperty(Key.FILESYSTEMRESOLVER_PATH_PREFIX,
+                dir.toString() + File.separator);
+        try {
+            instance.checkAccess();
+        } finally {
+            Files.delete(file);
+            Files.delete(dir);
+        }
+
+        new CacheFacade().purge(IDENTIFIER);
+
+        instance = newInstance();
+        instance.checkAccess();
+    }
+
+    /* getLastModified() */
+
+    @Test
+    public void testGetLastModified() throws Exception {
+        assertEquals(Files.getLastModifiedTime(instance.getPath()).toInstant(),
+                instance.getLastModified());
+    }
+
     /* getPath() */
 
     @Test
@@ -203,6 +264,13 @@ public class FilesystemResolverTest extends AbstractResolverTest {
         assertEquals("/bla/" + IDENTIFIER, instance.getPath().toString());
     }
 
+    /* getSize() */
+
+    @Test
+    public void testGetSize() throws Exception {
+        assertEquals(Files.size(instance.getPath()), instance.getSize());
+    }
+
     /* getSourceFormat() */
 
     @Test
@@ -268,4 +336,36 @@ public class FilesystemResolverTest extends AbstractResolverTest {
         assertNotNull(instance.newStreamSource());
     }
 
+    @Test
+    public void testNewStreamSourceGetIdentifier() throws Exception {
+        assertEquals(IDENTIFIER, instance.newStreamSource().getIdentifier());
+    }
+
+    @Test
+    public void testNewStreamSourceGetVersionKey() throws Exception {
+        instance.checkAccess();
+        final String key = instance.newStreamSource().getVersionKey();
+        assertNotNull(key);
+        assertEquals(key, new PathStreamSource(instance.getPath()).
+                getVersionKey());
+    }
+
+    @Test
+    public void testNewStreamSourceGetVersionKeyChangesWithFile()
+            throws Exception {
+        Path file = Files.createTempFile("test", ".jpg");
+        try {
+            Files.copy(instance.getPath(), file,
+                    StandardCopyOption.REPLACE_EXISTING);
+            final String key1 = new PathStreamSource(file).getVersionKey();
+
+            Files.setLastModifiedTime(file, FileTime.from(
+                    Files.getLastModifiedTime(file).toInstant().
+                            minusSeconds(60)));
+            assertNotEquals(key1, new PathStreamSource(file).getVersionKey());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
 }
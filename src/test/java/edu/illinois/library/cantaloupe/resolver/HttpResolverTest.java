@@ -14,6 +14,7 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import javax.imageio.stream.ImageInputStream;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
@@ -468,6 +469,22 @@ abstract class HttpResolverTest extends AbstractResolverTest {
         instance.getResourceInfo();
     }
 
+    /* getStatistics() */
+
+    @Test
+    public void testGetStatistics() throws Exception {
+        server.start();
+        instance.checkAccess();
+
+        Map<String, Long> stats = HttpResolver.getStatistics();
+        assertTrue(stats.get("origins") >= 1);
+        assertTrue(stats.get("connections") >= 1);
+        assertTrue(stats.get("idleConnections") >= 1);
+        assertEquals(0, (long) stats.get("queuedRequests"));
+        assertTrue(stats.containsKey("activeConnections"));
+        assertTrue(stats.containsKey("rejectedRequests"));
+    }
+
     /* newStreamSource() */
 
     @Test
@@ -524,6 +541,56 @@ abstract class HttpResolverTest extends AbstractResolverTest {
         assertNotNull(instance.newStreamSource());
     }
 
+    @Test
+    public void testNewStreamSourceNewImageInputStreamWithRangeSupport()
+            throws Exception {
+        server.start();
+
+        instance.checkAccess();
+        StreamSource source = instance.newStreamSource();
+        try (ImageInputStream is = source.newImageInputStream()) {
+            assertTrue(is instanceof RangedImageInputStream);
+
+            byte[] expected = Files.readAllBytes(
+                    TestUtil.getImage(PRESENT_READABLE_IDENTIFIER.toString()));
+            assertEquals(expected.length, is.length());
+
+            byte[] actual = new byte[expected.length];
+            is.seek(expected.length / 2);
+            is.readFully(actual, expected.length / 2,
+                    expected.length - expected.length / 2);
+            is.seek(0);
+            is.readFully(actual, 0, expected.length / 2);
+            assertArrayEquals(expected, actual);
+        }
+    }
+
+    @Test
+    public void testNewStreamSourceNewImageInputStreamWithoutRangeSupport()
+            throws Exception {
+        server.setHandler(new DefaultHandler() {
+            @Override
+            public void handle(String target,
+                               Request baseRequest,
+                               HttpServletRequest request,
+                               HttpServletResponse response)
+                    throws IOException {
+                response.setContentLength(5);
+                if ("GET".equals(request.getMethod())) {
+                    response.getOutputStream().write(new byte[5]);
+                }
+                baseRequest.setHandled(true);
+            }
+        });
+        server.start();
+
+        instance.checkAccess();
+        StreamSource source = instance.newStreamSource();
+        try (ImageInputStream is = source.newImageInputStream()) {
+            assertFalse(is instanceof RangedImageInputStream);
+        }
+    }
+
     @Test
     public void testNoUnnecessaryRequests() throws Exception {
         final AtomicInteger numHEADRequests = new AtomicInteger(0);
@@ -0,0 +1,159 @@
+package edu.illinois.library.cantaloupe.resolver;
+
+import edu.illinois.library.cantaloupe.test.BaseTest;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class RangedImageInputStreamTest extends BaseTest {
+
+    private static final int BLOCK_SIZE = 16;
+    private static final int MAX_CACHED_BLOCKS = 20;
+
+    private final byte[] data = new byte[1000];
+    private final List<long[]> reads = new ArrayList<>();
+    private RangedImageInputStream instance;
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        instance = new RangedImageInputStream(this::readRange, data.length,
+                BLOCK_SIZE, MAX_CACHED_BLOCKS);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        super.tearDown();
+        instance.close();
+    }
+
+    private byte[] readRange(long offset, int length) {
+        reads.add(new long[] { offset, length });
+        assertTrue(offset + length <= data.length);
+        return Arrays.copyOfRange(data, (int) offset, (int) offset + length);
+    }
+
+    /* length() */
+
+    @Test
+    public void testLength() {
+        assertEquals(data.length, instance.length());
+    }
+
+    /* read() */
+
+    @Test
+    public void testRead() throws Exception {
+        instance.seek(500);
+        assertEquals(500 & 0xff, instance.read());
+        assertEquals(501 & 0xff, instance.read());
+        assertEquals(502, instance.getStreamPosition());
+        assertEquals(1, reads.size());
+    }
+
+    @Test
+    public void testReadAtEnd() throws Exception {
+        instance.seek(data.length);
+        assertEquals(-1, instance.read());
+    }
+
+    /* read(byte[], int, int) */
+
+    @Test
+    public void testReadIntoArrayAcrossBlocks() throws Exception {
+        instance.seek(10);
+        byte[] buffer = new byte[100];
+        instance.readFully(buffer);
+        assertArrayEquals(Arrays.copyOfRange(data, 10, 110), buffer);
+    }
+
+    @Test
+    public void testReadIntoArrayAtEnd() throws Exception {
+        instance.seek(data.length - 5);
+        byte[] buffer = new byte[10];
+        assertEquals(5, instance.read(buffer, 0, 10));
+        assertEquals(-1, instance.read(buffer, 0, 10));
+    }
+
+    @Test
+    public void testReadFetchesOnlyBlocksThatAreRead() throws Exception {
+        instance.seek(0);
+        instance.read();
+        instance.seek(800);
+        instance.read();
+        instance.seek(400);
+        instance.read();
+
+        assertEquals(3, reads.size());
+        assertArrayEquals(new long[] { 0, BLOCK_SIZE }, reads.get(0));
+        assertArrayEquals(new long[] { 800, BLOCK_SIZE }, reads.get(1));
+        assertArrayEquals(new long[] { 400, BLOCK_SIZE }, reads.get(2));
+    }
+
+    @Test
+    public void testReadCachesBlocks() throws Exception {
+        instance.seek(0);
+        instance.read();
+        instance.seek(800);
+        instance.read();
+        instance.seek(5);
+        instance.read();
+        assertEquals(2, reads.size());
+    }
+
+    @Test
+    public void testReadEvictsLeastRecentlyUsedBlocks() throws Exception {
+        for (int i = 0; i <= MAX_CACHED_BLOCKS; i++) {
+            // Skip a block each time to defeat read-ahead.
+            instance.seek(i * BLOCK_SIZE * 2);
+            instance.read();
+        }
+        assertEquals(MAX_CACHED_BLOCKS + 1, reads.size());
+
+        instance.seek(0);
+        instance.read();
+        assertEquals(MAX_CACHED_BLOCKS + 2, reads.size());
+    }
+
+    @Test
+    public void testReadReadsAheadWhenReadingSequentially() throws Exception {
+        byte[] buffer = new byte[data.length];
+        instance.readFully(buffer);
+        assertArrayEquals(data, buffer);
+
+        // 1 + 2 + 4 + 8 + 16 + 16... blocks
+        assertEquals(BLOCK_SIZE, reads.get(0)[1]);
+        assertEquals(BLOCK_SIZE * 2, reads.get(1)[1]);
+        assertEquals(BLOCK_SIZE * 4, reads.get(2)[1]);
+        assertEquals(BLOCK_SIZE * 8, reads.get(3)[1]);
+        assertEquals(BLOCK_SIZE * RangedImageInputStream.MAX_READ_AHEAD_BLOCKS,
+                reads.get(4)[1]);
+        assertTrue(reads.size() < data.length / BLOCK_SIZE / 4);
+    }
+
+    @Test(expected = IOException.class)
+    public void testReadWithShortRange() throws Exception {
+        instance = new RangedImageInputStream((offset, length) -> new byte[1],
+                data.length, BLOCK_SIZE, MAX_CACHED_BLOCKS);
+        instance.read();
+    }
+
+    @Test(expected = IOException.class)
+    public void testReadAfterClose() throws Exception {
+        RangedImageInputStream stream = new RangedImageInputStream(
+                this::readRange, data.length);
+        stream.close();
+        stream.read();
+    }
+
+}
@@ -0,0 +1,117 @@
+package edu.illinois.library.cantaloupe.resolver;
+
+import edu.illinois.library.cantaloupe.config.Configuration;
+import edu.illinois.library.cantaloupe.config.Key;
+import edu.illinois.library.cantaloupe.image.Format;
+import edu.illinois.library.cantaloupe.image.Identifier;
+import edu.illinois.library.cantaloupe.test.BaseTest;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.Instant;
+
+import static org.junit.Assert.*;
+
+public class ResolverMetadataCacheTest extends BaseTest {
+
+    private static final Identifier IDENTIFIER = new Identifier("cats");
+
+    private ResolverMetadataCache instance;
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        Configuration.getInstance().
+                setProperty(Key.RESOLVER_METADATA_CACHE_TTL, 10);
+        instance = ResolverMetadataCache.getInstance();
+    }
+
+    private static ResolverMetadata newMetadata() {
+        return new ResolverMetadata("locator", 500, Instant.now());
+    }
+
+    /* get() */
+
+    @Test
+    public void testGet() {
+        final ResolverMetadata metadata = newMetadata();
+        instance.put(HttpResolver.class, IDENTIFIER, metadata);
+        assertSame(metadata, instance.get(HttpResolver.class, IDENTIFIER));
+        assertNull(instance.get(HttpResolver.class, new Identifier("dogs")));
+    }
+
+    @Test
+    public void testGetWithDifferentResolver() {
+        instance.put(HttpResolver.class, IDENTIFIER, newMetadata());
+        assertNull(instance.get(S3Resolver.class, IDENTIFIER));
+    }
+
+    @Test
+    public void testGetWithExpiredEntry() throws Exception {
+        Configuration.getInstance().
+                setProperty(Key.RESOLVER_METADATA_CACHE_TTL, 1);
+        instance.put(HttpResolver.class, IDENTIFIER, newMetadata());
+        assertNotNull(instance.get(HttpResolver.class, IDENTIFIER));
+
+        Thread.sleep(1100);
+        assertNull(instance.get(HttpResolver.class, IDENTIFIER));
+    }
+
+    @Test
+    public void testGetWithUpdatedEntryKeepsCreationTime() throws Exception {
+        Configuration.getInstance().
+                setProperty(Key.RESOLVER_METADATA_CACHE_TTL, 1);
+        final ResolverMetadata metadata = newMetadata();
+        instance.put(HttpResolver.class, IDENTIFIER, metadata);
+
+        Thread.sleep(600);
+        instance.put(HttpResolver.class, IDENTIFIER,
+                metadata.withSourceFormat(Format.JPG));
+        assertEquals(Format.JPG, instance.get(HttpResolver.class, IDENTIFIER).
+                getSourceFormat());
+
+        Thread.sleep(600);
+        assertNull(instance.get(HttpResolver.class, IDENTIFIER));
+    }
+
+    @Test
+    public void testGetWhenDisabled() {
+        instance.put(HttpResolver.class, IDENTIFIER, newMetadata());
+        Configuration.getInstance().
+                setProperty(Key.RESOLVER_METADATA_CACHE_TTL, 0);
+        assertNull(instance.get(HttpResolver.class, IDENTIFIER));
+    }
+
+    /* purge() */
+
+    @Test
+    public void testPurge() {
+        instance.put(HttpResolver.class, IDENTIFIER, newMetadata());
+        instance.put(HttpResolver.class, new Identifier("dogs"), newMetadata());
+        instance.purge();
+        assertEquals(0, instance.size());
+    }
+
+    /* purge(Identifier) */
+
+    @Test
+    public void testPurgeWithIdentifier() {
+        final Identifier otherIdentifier = new Identifier("dogs");
+        instance.put(HttpResolver.class, IDENTIFIER, newMetadata());
+        instance.put(HttpResolver.class, otherIdentifier, newMetadata());
+        instance.purge(IDENTIFIER);
+        assertNull(instance.get(HttpResolver.class, IDENTIFIER));
+        assertNotNull(instance.get(HttpResolver.class, otherIdentifier));
+    }
+
+    /* put() */
+
+    @Test
+    public void testPutWhenDisabled() {
+        Configuration.getInstance().
+                setProperty(Key.RESOLVER_METADATA_CACHE_TTL, 0);
+        instance.put(HttpResolver.class, IDENTIFIER, newMetadata());
+        assertEquals(0, instance.size());
+    }
+
+}
@@ -20,6 +20,7 @@ import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import javax.imageio.stream.ImageInputStream;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
@@ -71,8 +72,17 @@ public class S3ResolverTest extends AbstractResolverTest {
     }
 
     private static void seedFixtures() throws IOException {
+        putObject(OBJECT_KEY);
+    }
+
+    private static void putObject(String key) throws IOException {
+        putObject(key, "jpg-rgb-64x56x8-line.jpg");
+    }
+
+    private static void putObject(String key, String fixtureName)
+            throws IOException {
         final AmazonS3 s3 = client();
-        Path fixture = TestUtil.getImage("jpg-rgb-64x56x8-line.jpg");
+        Path fixture = TestUtil.getImage(fixtureName);
 
         try (ByteArrayOutputStream os = new ByteArrayOutputStream()) {
             Files.copy(fixture, os);
@@ -84,7 +94,7 @@ public class S3ResolverTest extends AbstractResolverTest {
 
             try (ByteArrayInputStream s3Stream = new ByteArrayInputStream(imageBytes)) {
                 final PutObjectRequest request = new PutObjectRequest(
-                        getBucket(), OBJECT_KEY, s3Stream, metadata);
+                        getBucket(), key, s3Stream, metadata);
                 s3.putObject(request);
             }
         }
@@ -244,6 +254,95 @@ public class S3ResolverTest extends AbstractResolverTest {
         instance.checkAccess();
     }
 
+    @Test
+    public void testCheckAccessUsesMetadataCache() throws Exception {
+        Configuration.getInstance().
+                setProperty(Key.S3RESOLVER_METADATA_CACHE_TTL, 30);
+        final String key = "cached.jpg";
+        putObject(key);
+        try {
+            instance.setIdentifier(new Identifier(key));
+            instance.checkAccess();
+        } finally {
+            client().deleteObject(getBucket(), key);
+        }
+
+        // The deleted object's metadata should still be cached.
+        instance = newInstance();
+        instance.setIdentifier(new Identifier(key));
+        instance.checkAccess();
+        assertEquals(Format.JPG, instance.getSourceFormat());
+    }
+
+    @Test
+    public void testCheckAccessWithMetadataCacheDisabled() throws Exception {
+        Configuration.getInstance().
+                setProperty(Key.S3RESOLVER_METADATA_CACHE_TTL, 0);
+        final String key = "disabled.jpg";
+        putObject(key);
+        try {
+            instance.setIdentifier(new Identifier(key));
+            instance.checkAccess();
+        } finally {
+            client().deleteObject(getBucket(), key);
+        }
+
+        instance = newInstance();
+        instance.setIdentifier(new Identifier(key));
+        try {
+            instance.checkAccess();
+            fail("Expected exception");
+        } catch (NoSuchFileException e) {
+            // pass
+        }
+    }
+
+    @Test
+    public void testCheckAccessAfterPurgingMetadataCache() throws Exception {
+        Configuration.getInstance().
+                setProperty(Key.S3RESOLVER_METADATA_CACHE_TTL, 30);
+        final String key = "purged.jpg";
+        putObject(key);
+        try {
+            instance.setIdentifier(new Identifier(key));
+            instance.checkAccess();
+        } finally {
+            client().deleteObject(getBucket(), key);
+        }
+
+        ResolverMetadataCache.getInstance().purge(new Identifier(key));
+
+        instance = newInstance();
+        instance.setIdentifier(new Identifier(key));
+        try {
+            instance.checkAccess();
+            fail("Expected exception");
+        } catch (NoSuchFileException e) {
+            // pass
+        }
+    }
+
+    @Test
+    public void testCheckAccessDoesNotCacheMissingObjects() throws Exception {
+        final String key = "uncached.jpg";
+        instance.setIdentifier(new Identifier(key));
+        try {
+            instance.checkAccess();
+            fail("Expected exception");
+        } catch (NoSuchFileException e) {
+            // pass
+        }
+
+        putObject(key);
+        try {
+            instance = newInstance();
+            instance.setIdentifier(new Identifier(key));
+            instance.checkAccess();
+        } finally {
+            client().deleteObject(getBucket(), key);
+        }
+    }
+
     @Test
     public void testGetSourceFormatUsingBasicLookupStrategy()
             throws IOException {
@@ -285,4 +384,45 @@ public class S3ResolverTest extends AbstractResolverTest {
         assertNotNull(instance.newStreamSource());
     }
 
+    @Test
+    public void testNewStreamSourceNewImageInputStream() throws Exception {
+        StreamSource source = instance.newStreamSource();
+        try (ImageInputStream is = source.newImageInputStream()) {
+            assertTrue(is instanceof RangedImageInputStream);
+
+            byte[] expected = Files.readAllBytes(
+                    TestUtil.getImage("jpg-rgb-64x56x8-line.jpg"));
+            byte[] actual = new byte[expected.length];
+            is.seek(expected.length / 2);
+            is.readFully(actual, expected.length / 2,
+                    expected.length - expected.length / 2);
+            is.seek(0);
+            is.readFully(actual, 0, expected.length / 2);
+            assertArrayEquals(expected, actual);
+        }
+    }
+
+    @Test
+    public void testNewStreamSourceNewImageInputStreamWithChangedObject()
+            throws Exception {
+        final String key = "changed.jpg";
+        putObject(key);
+        try {
+            instance.setIdentifier(new Identifier(key));
+            instance.checkAccess();
+            StreamSource source = instance.newStreamSource();
+
+            putObject(key, "png-rgb-64x56x8.png");
+
+            try (ImageInputStream is = source.newImageInputStream()) {
+                is.read();
+                fail("Expected exception");
+            } catch (IOException e) {
+                // pass
+            }
+        } finally {
+            client().deleteObject(getBucket(), key);
+        }
+    }
+
 }
@@ -0,0 +1,99 @@
+package edu.illinois.library.cantaloupe.resource;
+
+import edu.illinois.library.cantaloupe.test.BaseTest;
+import edu.illinois.library.cantaloupe.test.TestUtil;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class FileImageRepresentationTest extends BaseTest {
+
+    /**
+     * Output stream that is also a channel, like some servlet containers'
+     * response streams.
+     */
+    private static class ChannelOutputStream extends ByteArrayOutputStream
+            implements WritableByteChannel {
+
+        private int numChannelWrites;
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public int write(ByteBuffer src) {
+            numChannelWrites++;
+            final int length = src.remaining();
+            byte[] bytes = new byte[length];
+            src.get(bytes);
+            write(bytes, 0, length);
+            return length;
+        }
+
+    }
+
+    private static final String IMAGE = "jpg-rgb-64x56x8-baseline.jpg";
+
+    /* transfer() */
+
+    @Test
+    public void testTransferWholeFile() throws Exception {
+        final Path file = TestUtil.getImage(IMAGE);
+        final ByteArrayOutputStream os = new ByteArrayOutputStream();
+        try (FileChannel channel =
+                     FileChannel.open(file, StandardOpenOption.READ)) {
+            FileImageRepresentation.transfer(channel, 0, channel.size(), os);
+        }
+        assertArrayEquals(Files.readAllBytes(file), os.toByteArray());
+    }
+
+    @Test
+    public void testTransferRange() throws Exception {
+        final Path file = TestUtil.getImage(IMAGE);
+        final ByteArrayOutputStream os = new ByteArrayOutputStream();
+        try (FileChannel channel =
+                     FileChannel.open(file, StandardOpenOption.READ)) {
+            FileImageRepresentation.transfer(channel, 10, 100, os);
+        }
+        assertArrayEquals(
+                Arrays.copyOfRange(Files.readAllBytes(file), 10, 110),
+                os.toByteArray());
+    }
+
+    @Test
+    public void testTransferToChannel() throws Exception {
+        final Path file = TestUtil.getImage(IMAGE);
+        final ChannelOutputStream os = new ChannelOutputStream();
+        try (FileChannel channel =
+                     FileChannel.open(file, StandardOpenOption.READ)) {
+            FileImageRepresentation.transfer(channel, 10, 100, os);
+        }
+        assertTrue(os.numChannelWrites > 0);
+        assertArrayEquals(
+                Arrays.copyOfRange(Files.readAllBytes(file), 10, 110),
+                os.toByteArray());
+    }
+
+    @Test(expected = EOFException.class)
+    public void testTransferBeyondEndOfFile() throws Exception {
+        final Path file = TestUtil.getImage(IMAGE);
+        try (FileChannel channel =
+                     FileChannel.open(file, StandardOpenOption.READ)) {
+            FileImageRepresentation.transfer(channel, 0, channel.size() + 1,
+                    new ByteArrayOutputStream());
+        }
+    }
+
+}
@@ -47,6 +47,9 @@ public class StatusResourceTest extends AbstractAdminResourceTest {
     public void testGETResponseBody() throws Exception {
         Response response = client.send();
         assertTrue(response.getBodyAsString().contains("\"infoCache\":"));
+        assertTrue(response.getBodyAsString().contains("\"derivativeCoalescer\":"));
+        assertTrue(response.getBodyAsString().contains("\"derivativeCache\":"));
+        assertTrue(response.getBodyAsString().contains("\"httpResolver\":"));
     }
 
     @Test
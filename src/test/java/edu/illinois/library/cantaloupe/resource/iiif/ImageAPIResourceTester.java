@@ -177,6 +177,52 @@ public class ImageAPIResourceTester {
         }
     }
 
+    public void testConditionalGETWithMatchingIfNoneMatch(URI uri)
+            throws Exception {
+        Client client = newClient(uri);
+        try {
+            Response response = client.send();
+            String etag = response.getHeaders().getFirstValue("ETag");
+            assertNotNull(etag);
+
+            client.getHeaders().set("If-None-Match", etag);
+            response = client.send();
+            assertEquals(304, response.getStatus());
+            assertEquals(etag, response.getHeaders().getFirstValue("ETag"));
+        } finally {
+            client.stop();
+        }
+    }
+
+    public void testConditionalGETWithNonMatchingIfNoneMatch(URI uri)
+            throws Exception {
+        Client client = newClient(uri);
+        try {
+            client.getHeaders().set("If-None-Match", "\"bogus\"");
+            Response response = client.send();
+            assertEquals(200, response.getStatus());
+        } finally {
+            client.stop();
+        }
+    }
+
+    public void testConditionalGETWithIfModifiedSince(URI uri)
+            throws Exception {
+        Client client = newClient(uri);
+        try {
+            Response response = client.send();
+            String lastModified =
+                    response.getHeaders().getFirstValue("Last-Modified");
+            assertNotNull(lastModified);
+
+            client.getHeaders().set("If-Modified-Since", lastModified);
+            response = client.send();
+            assertEquals(304, response.getStatus());
+        } finally {
+            client.stop();
+        }
+    }
+
     public void testHTTP2(URI uri) throws Exception {
         Client client = newClient(uri);
         try {
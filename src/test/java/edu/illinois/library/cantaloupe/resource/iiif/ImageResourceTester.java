@@ -15,6 +15,7 @@ import java.io.File;
 import java.net.URI;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.HashMap;
 
 import static edu.illinois.library.cantaloupe.test.Assert.HTTPAssert.*;
@@ -330,6 +331,35 @@ public class ImageResourceTester extends ImageAPIResourceTester {
         }
     }
 
+    public void testConditionalGETWithCachedDerivativeAndResolveFirstDisabled(
+            URI uri) throws Exception {
+        initializeFilesystemCache();
+        Configuration config = Configuration.getInstance();
+        config.setProperty(Key.INFO_CACHE_ENABLED, true);
+        config.setProperty(Key.CACHE_SERVER_RESOLVE_FIRST, false);
+
+        Client client = newClient(uri);
+        try {
+            // request an image to cache it
+            Response response = client.send();
+            final String etag = response.getHeaders().getFirstValue("ETag");
+            assertNotNull(etag);
+
+            Thread.sleep(1000); // the info may write asynchronously
+
+            // request it again from the cache and assert the same ETag
+            response = client.send();
+            assertEquals(etag, response.getHeaders().getFirstValue("ETag"));
+
+            // revalidate it
+            client.getHeaders().set("If-None-Match", etag);
+            response = client.send();
+            assertEquals(304, response.getStatus());
+        } finally {
+            client.stop();
+        }
+    }
+
     public void testContentDispositionHeaderWithNoHeader(URI uri)
             throws Exception {
         Client client = newClient(uri);
@@ -489,6 +519,80 @@ public class ImageResourceTester extends ImageAPIResourceTester {
         }
     }
 
+    /**
+     * @param uri URI of an image that is served without processing.
+     */
+    public void testRangeRequest(URI uri) throws Exception {
+        Client client = newClient(uri);
+        try {
+            client.getHeaders().set("Range", "bytes=0-9");
+            Response response = client.send();
+            assertEquals(206, response.getStatus());
+            assertEquals(10, response.getBody().length);
+            assertTrue(response.getHeaders().getFirstValue("Content-Range").
+                    startsWith("bytes 0-9/"));
+        } finally {
+            client.stop();
+        }
+    }
+
+    /**
+     * @param uri URI of an image that is processed.
+     */
+    public void testRangeRequestWithCachedDerivative(URI uri)
+            throws Exception {
+        initializeFilesystemCache();
+
+        Client client = newClient(uri);
+        try {
+            // request an image to cache it
+            byte[] image = client.send().getBody();
+
+            // request the last 10 bytes of it
+            client.getHeaders().set("Range", "bytes=-10");
+            Response response = client.send();
+            assertEquals(206, response.getStatus());
+            assertArrayEquals(
+                    Arrays.copyOfRange(image, image.length - 10, image.length),
+                    response.getBody());
+        } finally {
+            client.stop();
+        }
+    }
+
+    /**
+     * @param uri URI of an image that is processed.
+     */
+    public void testRangeRequestWithUncachedDerivative(URI uri)
+            throws Exception {
+        Client client = newClient(uri);
+        try {
+            client.getHeaders().set("Range", "bytes=0-9");
+            Response response = client.send();
+            assertEquals(200, response.getStatus());
+            assertNull(response.getHeaders().getFirstValue("Content-Range"));
+        } finally {
+            client.stop();
+        }
+    }
+
+    /**
+     * @param uri URI of an image that is served without processing.
+     */
+    public void testRangeRequestWithUnsatisfiableRange(URI uri)
+            throws Exception {
+        Client client = newClient(uri);
+        try {
+            client.getHeaders().set("Range", "bytes=99999999-");
+            client.send();
+            fail("Expected exception");
+        } catch (ResourceException e) {
+            assertEquals(416, e.getStatusCode());
+        } finally {
+            client.stop();
+        }
+    }
+
     public void testInvalidOutputFormat(URI uri) {
         assertStatus(415, uri);
     }
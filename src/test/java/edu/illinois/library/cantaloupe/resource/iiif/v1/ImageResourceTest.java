@@ -185,6 +185,24 @@ public class ImageResourceTest extends ResourceTest {
         // noop
     }
 
+    @Test
+    public void testGETConditionalWithIfModifiedSince() throws Exception {
+        URI uri = getHTTPURI("/" + IMAGE + "/full/full/0/color.jpg");
+        tester.testConditionalGETWithIfModifiedSince(uri);
+    }
+
+    @Test
+    public void testGETConditionalWithMatchingIfNoneMatch() throws Exception {
+        URI uri = getHTTPURI("/" + IMAGE + "/full/full/0/color.jpg");
+        tester.testConditionalGETWithMatchingIfNoneMatch(uri);
+    }
+
+    @Test
+    public void testGETConditionalWithNonMatchingIfNoneMatch() throws Exception {
+        URI uri = getHTTPURI("/" + IMAGE + "/full/full/0/color.jpg");
+        tester.testConditionalGETWithNonMatchingIfNoneMatch(uri);
+    }
+
     @Test
     public void testGETContentDispositionHeaderWithNoHeader() throws Exception {
         URI uri = getHTTPURI("/" + IMAGE + "/full/full/0/color.jpg");
@@ -204,6 +222,30 @@ public class ImageResourceTest extends ResourceTest {
         tester.testContentDispositionHeaderSetToAttachment(uri);
     }
 
+    @Test
+    public void testGETRangeRequest() throws Exception {
+        URI uri = getHTTPURI("/" + IMAGE + "/full/full/0/color.jpg");
+        tester.testRangeRequest(uri);
+    }
+
+    @Test
+    public void testGETRangeRequestWithCachedDerivative() throws Exception {
+        URI uri = getHTTPURI("/" + IMAGE + "/full/full/90/color.jpg");
+        tester.testRangeRequestWithCachedDerivative(uri);
+    }
+
+    @Test
+    public void testGETRangeRequestWithUncachedDerivative() throws Exception {
+        URI uri = getHTTPURI("/" + IMAGE + "/full/full/90/color.jpg");
+        tester.testRangeRequestWithUncachedDerivative(uri);
+    }
+
+    @Test
+    public void testGETRangeRequestWithUnsatisfiableRange() throws Exception {
+        URI uri = getHTTPURI("/" + IMAGE + "/full/full/0/color.jpg");
+        tester.testRangeRequestWithUnsatisfiableRange(uri);
+    }
+
     @Test
     public void testGETWithEndpointEnabled() {
         Configuration config = Configuration.getInstance();
@@ -347,14 +389,20 @@ public class ImageResourceTest extends ResourceTest {
         client = newClient("/" + IMAGE + "/full/full/0/color.jpg");
         Response response = client.send();
         Headers headers = response.getHeaders();
-        assertEquals(7, headers.size());
+        assertEquals(10, headers.size());
 
+        // Accept-Ranges
+        assertEquals("bytes", headers.getFirstValue("Accept-Ranges"));
         // Content-Type
         assertEquals("image/jpeg", headers.getFirstValue("Content-Type"));
         // Date
         assertNotNull(headers.getFirstValue("Date"));
+        // ETag
+        assertNotNull(headers.getFirstValue("ETag"));
         // Link
         assertTrue(headers.getFirstValue("Link").contains("://"));
+        // Last-Modified
+        assertNotNull(headers.getFirstValue("Last-Modified"));
         // Server
         assertTrue(headers.getFirstValue("Server").contains("Restlet"));
         // Transfer-Encoding
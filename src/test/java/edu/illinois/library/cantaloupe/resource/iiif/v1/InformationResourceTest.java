@@ -170,6 +170,24 @@ public class InformationResourceTest extends ResourceTest {
                 uri, TestUtil.getImage(IMAGE));
     }
 
+    @Test
+    public void testGETConditionalWithIfModifiedSince() throws Exception {
+        URI uri = getHTTPURI("/" + IMAGE + "/info.json");
+        tester.testConditionalGETWithIfModifiedSince(uri);
+    }
+
+    @Test
+    public void testGETConditionalWithMatchingIfNoneMatch() throws Exception {
+        URI uri = getHTTPURI("/" + IMAGE + "/info.json");
+        tester.testConditionalGETWithMatchingIfNoneMatch(uri);
+    }
+
+    @Test
+    public void testGETConditionalWithNonMatchingIfNoneMatch() throws Exception {
+        URI uri = getHTTPURI("/" + IMAGE + "/info.json");
+        tester.testConditionalGETWithNonMatchingIfNoneMatch(uri);
+    }
+
     @Test
     public void testGETEndpointEnabled() {
         Configuration config = Configuration.getInstance();
@@ -358,15 +376,19 @@ public class InformationResourceTest extends ResourceTest {
         client = newClient("/" + IMAGE + "/info.json");
         Response response = client.send();
         Headers headers = response.getHeaders();
-        assertEquals(7, headers.size());
+        assertEquals(9, headers.size());
 
         // Content-Type
         assertEquals("application/json;charset=UTF-8",
                 headers.getFirstValue("Content-Type"));
         // Date
         assertNotNull(headers.getFirstValue("Date"));
+        // ETag
+        assertNotNull(headers.getFirstValue("ETag"));
         // Link
         assertTrue(headers.getFirstValue("Link").contains("://"));
+        // Last-Modified
+        assertNotNull(headers.getFirstValue("Last-Modified"));
         // Server
         assertTrue(headers.getFirstValue("Server").contains("Restlet"));
         // Transfer-Encoding
@@ -184,6 +184,32 @@ public class ImageResourceTest extends ResourceTest {
                 uri, TestUtil.getImage(IMAGE));
     }
 
+    @Test
+    public void testGETConditionalWithCachedDerivativeAndResolveFirstDisabled()
+            throws Exception {
+        // The image must be modified as unmodified images aren't cached.
+        URI uri = getHTTPURI("/" + IMAGE + "/full/full/1/color.jpg");
+        tester.testConditionalGETWithCachedDerivativeAndResolveFirstDisabled(uri);
+    }
+
+    @Test
+    public void testGETConditionalWithIfModifiedSince() throws Exception {
+        URI uri = getHTTPURI("/" + IMAGE + "/full/full/0/color.jpg");
+        tester.testConditionalGETWithIfModifiedSince(uri);
+    }
+
+    @Test
+    public void testGETConditionalWithMatchingIfNoneMatch() throws Exception {
+        URI uri = getHTTPURI("/" + IMAGE + "/full/full/0/color.jpg");
+        tester.testConditionalGETWithMatchingIfNoneMatch(uri);
+    }
+
+    @Test
+    public void testGETConditionalWithNonMatchingIfNoneMatch() throws Exception {
+        URI uri = getHTTPURI("/" + IMAGE + "/full/full/0/color.jpg");
+        tester.testConditionalGETWithNonMatchingIfNoneMatch(uri);
+    }
+
     @Test
     public void testGETContentDispositionHeaderWithNoHeader() throws Exception {
         URI uri = getHTTPURI("/" + IMAGE + "/full/full/0/color.jpg");
@@ -345,6 +371,30 @@ public class ImageResourceTest extends ResourceTest {
                 uri, opList);
     }
 
+    @Test
+    public void testGETRangeRequest() throws Exception {
+        URI uri = getHTTPURI("/" + IMAGE + "/full/full/0/color.jpg");
+        tester.testRangeRequest(uri);
+    }
+
+    @Test
+    public void testGETRangeRequestWithCachedDerivative() throws Exception {
+        URI uri = getHTTPURI("/" + IMAGE + "/full/full/90/color.jpg");
+        tester.testRangeRequestWithCachedDerivative(uri);
+    }
+
+    @Test
+    public void testGETRangeRequestWithUncachedDerivative() throws Exception {
+        URI uri = getHTTPURI("/" + IMAGE + "/full/full/90/color.jpg");
+        tester.testRangeRequestWithUncachedDerivative(uri);
+    }
+
+    @Test
+    public void testGETRangeRequestWithUnsatisfiableRange() throws Exception {
+        URI uri = getHTTPURI("/" + IMAGE + "/full/full/0/color.jpg");
+        tester.testRangeRequestWithUnsatisfiableRange(uri);
+    }
+
     @Test
     public void testGETRecoveryFromDerivativeCacheNewDerivativeImageInputStreamException()
             throws Exception {
@@ -413,14 +463,20 @@ public class ImageResourceTest extends ResourceTest {
         client = newClient("/" + IMAGE + "/full/full/0/color.jpg");
         Response response = client.send();
         Headers headers = response.getHeaders();
-        assertEquals(7, headers.size());
+        assertEquals(10, headers.size());
 
+        // Accept-Ranges
+        assertEquals("bytes", headers.getFirstValue("Accept-Ranges"));
         // Content-Type
         assertEquals("image/jpeg", headers.getFirstValue("Content-Type"));
         // Date
         assertNotNull(headers.getFirstValue("Date"));
+        // ETag
+        assertNotNull(headers.getFirstValue("ETag"));
         // Link
         assertTrue(headers.getFirstValue("Link").contains("://"));
+        // Last-Modified
+        assertNotNull(headers.getFirstValue("Last-Modified"));
         // Server
         assertTrue(headers.getFirstValue("Server").contains("Restlet"));
         // Transfer-Encoding
@@ -0,0 +1,77 @@
+package edu.illinois.library.cantaloupe.util;
+
+import edu.illinois.library.cantaloupe.test.BaseTest;
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class ByteBufferInputStreamTest extends BaseTest {
+
+    private static ByteBuffer newDirectBuffer(byte[] data) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(data.length);
+        buffer.put(data);
+        buffer.flip();
+        return buffer;
+    }
+
+    @Test
+    public void testAvailable() throws Exception {
+        InputStream is = new ByteBufferInputStream(
+                ByteBuffer.wrap(new byte[] { 1, 2, 3 }));
+        assertEquals(3, is.available());
+        is.read();
+        assertEquals(2, is.available());
+    }
+
+    @Test
+    public void testMarkAndReset() throws Exception {
+        InputStream is = new ByteBufferInputStream(
+                ByteBuffer.wrap(new byte[] { 1, 2, 3 }));
+        is.read();
+        is.mark(10);
+        assertEquals(2, is.read());
+        is.reset();
+        assertEquals(2, is.read());
+    }
+
+    @Test
+    public void testRead() throws Exception {
+        InputStream is = new ByteBufferInputStream(
+                newDirectBuffer(new byte[] { 1, (byte) 0xff }));
+        assertEquals(1, is.read());
+        assertEquals(0xff, is.read());
+        assertEquals(-1, is.read());
+    }
+
+    @Test
+    public void testReadWithByteArray() throws Exception {
+        final byte[] data = new byte[10000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        InputStream is = new ByteBufferInputStream(newDirectBuffer(data));
+        assertArrayEquals(data, IOUtils.toByteArray(is));
+        assertEquals(-1, is.read(new byte[10], 0, 10));
+    }
+
+    @Test
+    public void testReadDoesNotAffectDuplicatedBuffer() throws Exception {
+        ByteBuffer buffer = newDirectBuffer(new byte[] { 1, 2, 3 });
+        IOUtils.toByteArray(new ByteBufferInputStream(buffer.duplicate()));
+        assertEquals(0, buffer.position());
+    }
+
+    @Test
+    public void testSkip() throws Exception {
+        InputStream is = new ByteBufferInputStream(
+                ByteBuffer.wrap(new byte[] { 1, 2, 3 }));
+        assertEquals(2, is.skip(2));
+        assertEquals(3, is.read());
+        assertEquals(0, is.skip(2));
+    }
+
+}
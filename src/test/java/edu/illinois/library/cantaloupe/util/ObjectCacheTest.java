@@ -35,6 +35,16 @@ public class ObjectCacheTest extends BaseTest {
         assertSame(value, instance.get(key));
     }
 
+    @Test
+    public void testGetWithExpiredEntry() throws Exception {
+        instance = new ObjectCache<>(MAX_SIZE, 1);
+        instance.put("cats", "yes");
+        assertNotNull(instance.get("cats"));
+
+        Thread.sleep(1100);
+        assertNull(instance.get("cats"));
+    }
+
     @Test
     public void testMaxSize() {
         assertEquals(MAX_SIZE, instance.maxSize());
@@ -85,6 +95,17 @@ public class ObjectCacheTest extends BaseTest {
         assertEquals(0, instance.size());
     }
 
+    @Test
+    public void testRemoveIf() {
+        instance.put("cats", "1");
+        instance.put("cats2", "2");
+        instance.put("dogs", "3");
+        instance.removeIf(key -> key.startsWith("cats"));
+        assertNull(instance.get("cats"));
+        assertNull(instance.get("cats2"));
+        assertNotNull(instance.get("dogs"));
+    }
+
     @Test
     public void testSize() {
         assertEquals(0, instance.size());
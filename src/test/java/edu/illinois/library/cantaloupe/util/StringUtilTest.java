@@ -49,4 +49,20 @@ public class StringUtilTest extends BaseTest {
                 Pattern.compile("cats"), Pattern.compile("dogs")));
     }
 
+    @Test
+    public void testToBytes() {
+        assertEquals(1024, StringUtil.toBytes("1024"));
+        assertEquals(1024 * 1024, StringUtil.toBytes("1M"));
+        assertEquals(1024 * 1024, StringUtil.toBytes("1MB"));
+        assertEquals(1536 * 1024 * 1024L, StringUtil.toBytes("1.5G"));
+        assertEquals((long) Math.pow(1024, 3) * 2, StringUtil.toBytes("2GB"));
+        assertEquals((long) Math.pow(1024, 4), StringUtil.toBytes("1T"));
+        assertEquals((long) Math.pow(1024, 5), StringUtil.toBytes("1PB"));
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void testToBytesWithInvalidArgument() {
+        StringUtil.toBytes("cats");
+    }
+
 }
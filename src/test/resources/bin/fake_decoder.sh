@@ -0,0 +1,68 @@
+#!/bin/sh
+#
+# Stand-in for the kdu_expand and opj_decompress binaries, for testing
+# KakaduProcessor, OpenJpegProcessor, and ProcessPool without Kakadu or
+# OpenJPEG installed. Point KakaduProcessor.path_to_binaries or
+# OpenJpegProcessor.path_to_binaries at this directory to use it.
+#
+# It accepts the same arguments as the real decoders, ignores the region and
+# reduction factor, and writes a 64x56 image to the file in the -o argument:
+# a TIFF fixture for a .tif file, or a mid-gray image for a .pnm file.
+#
+# Input files whose name contains "fail" cause it to exit with an error, and
+# those whose name contains "hang" cause it to sleep for a minute instead.
+#
+
+FIXTURE="$(dirname "$0")/../images/tif-rgb-monores-64x56x8-striped-uncompressed.tif"
+
+if [ $# -eq 0 ]; then
+    echo "Usage: $(basename "$0") -i <input> -o <output>"
+    exit 0
+fi
+
+while [ $# -gt 0 ]; do
+    case "$1" in
+        -h)
+            echo "It has been compiled against openjp2 library v2.3.0."
+            exit 0
+            ;;
+        -i)
+            input="$2"
+            shift
+            ;;
+        -o)
+            output="$2"
+            shift
+            ;;
+        -region|-reduce|-d|-r)
+            shift
+            ;;
+    esac
+    shift
+done
+
+case "$input" in
+    *fail*)
+        echo "Error: unable to decode $input" >&2
+        exit 1
+        ;;
+    *hang*)
+        exec sleep 60
+        ;;
+esac
+
+case "$output" in
+    *.tif)
+        cat "$FIXTURE" > "$output"
+        ;;
+    *.pnm)
+        {
+            printf 'P6\n# fake_decoder\n64 56\n255\n'
+            head -c 10752 /dev/zero | tr '\0' '\200'
+        } > "$output"
+        ;;
+    *)
+        echo "Error: unsupported output format: $output" >&2
+        exit 1
+        ;;
+esac